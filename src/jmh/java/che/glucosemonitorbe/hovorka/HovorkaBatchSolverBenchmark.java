@@ -0,0 +1,95 @@
+package che.glucosemonitorbe.hovorka;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A two-hour replay horizon for {@code lanes} independent trajectories: one in-place scalar RK4
+ * integration per lane vs the structure-of-arrays batch on its scalar and Vector API kernels (all
+ * three produce identical states).
+ *
+ * <pre>./gradlew jmh -PjmhInclude=HovorkaBatchSolverBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HovorkaBatchSolverBenchmark {
+
+    private static final int MINUTES = 120;
+
+    @Param({"8", "32", "128"})
+    public int lanes;
+
+    private HovorkaOdeSolver solver;
+    private List<HovorkaBatchSolver.Lane> batch;
+    private HovorkaStateBuffer buffer;
+    private HovorkaOdeSolver.Workspace workspace;
+
+    @Setup
+    public void setUp() {
+        solver = new HovorkaOdeSolver(new DallaManGutModel());
+        buffer = new HovorkaStateBuffer();
+        workspace = new HovorkaOdeSolver.Workspace();
+        batch = new ArrayList<>(lanes);
+        for (int k = 0; k < lanes; k++) {
+            double weight = HovorkaParameters.DEFAULT_WEIGHT;
+            double f01 = HovorkaParameters.F01_PER_KG * weight;
+            // Twin-scaled lanes of one user, as in a calibration replay.
+            HovorkaParameters p = new HovorkaParameters(
+                    HovorkaParameters.VG_PER_KG * weight, f01, f01, f01,
+                    HovorkaParameters.K12_POP, HovorkaParameters.K21_POP,
+                    45.0 / 1.68, 0.8 + 0.005 * k, 2.0 + 0.01 * k, weight);
+            HovorkaState state = new HovorkaState(
+                    8.0 * p.vG(), 8.0 * p.vG(), 40.0, 60.0, 30.0, 0.2, 0.05, 150.0, 250.0, 70);
+            double[] carb = new double[MINUTES + 1];
+            int[] gi = new int[MINUTES + 1];
+            double[] ie = new double[MINUTES + 1];
+            java.util.Arrays.fill(gi, -1);
+            carb[20 + k % 60] = 200.0;
+            java.util.Arrays.fill(ie, p.isf() * p.effectiveInsulinVolume() / 200.0);
+            batch.add(new HovorkaBatchSolver.Lane(p, state, carb, gi, new double[MINUTES + 1], ie, null));
+        }
+    }
+
+    @Benchmark
+    public double scalarPerLane() {
+        double sum = 0.0;
+        for (HovorkaBatchSolver.Lane lane : batch) {
+            buffer.load(lane.initial());
+            for (int m = 1; m <= MINUTES; m++) {
+                int gi = lane.mealGi()[m];
+                solver.step(buffer, lane.params(), lane.carbMmol()[m], gi >= 0 ? gi : buffer.activeGI(),
+                        0.0, lane.insulinEffect()[m], 0.0, workspace);
+            }
+            sum += buffer.q1();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double batchScalarKernel() {
+        return run(new HovorkaBatchSolver(batch, false));
+    }
+
+    @Benchmark
+    public double batchVectorKernel() {
+        return run(new HovorkaBatchSolver(batch, HovorkaBatchSolver.vectorApiAvailable()));
+    }
+
+    private static double run(HovorkaBatchSolver b) {
+        for (int m = 1; m <= MINUTES; m++) b.step();
+        double sum = 0.0;
+        for (int k = 0; k < b.lanes(); k++) sum += b.glucoseMmolL(k);
+        return sum;
+    }
+}
@@ -0,0 +1,62 @@
+package che.glucosemonitorbe.hovorka;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One simulated minute of the Hovorka ODE: record-based {@code step} vs the in-place
+ * buffer/workspace kernel. Run with the GC profiler (configured in build.gradle) and compare
+ * {@code gc.alloc.rate.norm}: the record path allocates the stage arrays and state records on
+ * every step, the in-place path allocates 0 B/op.
+ *
+ * <pre>./gradlew jmh -PjmhInclude=HovorkaOdeSolverBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HovorkaOdeSolverBenchmark {
+
+    private HovorkaOdeSolver solver;
+    private HovorkaParameters params;
+    private HovorkaState state;
+    private HovorkaStateBuffer buffer;
+    private HovorkaOdeSolver.Workspace workspace;
+    private double insulinEffect;
+
+    @Setup
+    public void setUp() {
+        solver = new HovorkaOdeSolver(new DallaManGutModel());
+        double weight = HovorkaParameters.DEFAULT_WEIGHT;
+        double f01 = HovorkaParameters.F01_PER_KG * weight;
+        params = new HovorkaParameters(
+                HovorkaParameters.VG_PER_KG * weight, f01, f01, f01,
+                HovorkaParameters.K12_POP, HovorkaParameters.K21_POP,
+                45.0 / 1.68, 1.0, 2.2, weight);
+        // Mid-absorption state so the gut and incretin branches all do real work.
+        state = new HovorkaState(
+                8.0 * params.vG(), 8.0 * params.vG(), 40.0, 60.0, 30.0, 0.2, 0.05, 150.0, 250.0, 70);
+        buffer = HovorkaStateBuffer.of(state);
+        workspace = new HovorkaOdeSolver.Workspace();
+        insulinEffect = params.isf() * params.effectiveInsulinVolume() / 200.0;
+    }
+
+    @Benchmark
+    public HovorkaState recordStep() {
+        return solver.step(state, params, 0.0, 70, 0.0, insulinEffect, 0.0);
+    }
+
+    @Benchmark
+    public double inPlaceStep() {
+        // Re-seed from the fixed state so every invocation integrates the same minute.
+        buffer.load(state);
+        solver.step(buffer, params, 0.0, 70, 0.0, insulinEffect, 0.0, workspace);
+        return buffer.q1();
+    }
+}
@@ -0,0 +1,174 @@
+package che.glucosemonitorbe.service.cgm;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.NightscoutEntryDto;
+import che.glucosemonitorbe.service.CgmReadingService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * One sync tick - every user storing one fetch's readings from its own virtual thread, as the sync
+ * schedulers do - with a commit per user vs the group-commit write-behind buffer. The database is
+ * simulated: a connection pool of {@code poolSize} permits, each transaction holding one for a fixed
+ * commit cost (round trip + WAL flush) plus a per-row cost, so the comparison isolates the number of
+ * commits. Reports tick wall time plus two counters: {@code commitsPerTick} and
+ * {@code commitsPerSecond}, the commit rate the database would see (JMH sums event counters over the
+ * measurement iterations, so divide them by the iteration count).
+ *
+ * <pre>./gradlew jmh -PjmhInclude=CgmWriteBehindBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CgmWriteBehindBenchmark {
+
+    @Param({"500", "2000"})
+    public int users;
+
+    /** An hour of 5-minute readings per fetch. */
+    @Param({"12"})
+    public int rowsPerUser;
+
+    @Param({"10"})
+    public int poolSize;
+
+    @Param({"1000"})
+    public int commitMicros;
+
+    /** Write-behind latency threshold; the commit-per-user runs ignore it. */
+    @Param({"50", "200"})
+    public int maxLatencyMs;
+
+    private SimulatedDatabase database;
+    private CgmWriteBehindBuffer buffer;
+    private ExecutorService callers;
+    private List<UUID> userIds;
+    private List<NightscoutEntryDto> entries;
+
+    /** Commit counts reported next to the timing; JMH reads the fields as-is at the end of each iteration. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Commits {
+        public long commitsPerTick;
+        public double commitsPerSecond;
+        private long total;
+        private long startNanos;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            commitsPerTick = 0;
+            commitsPerSecond = 0;
+            total = 0;
+            startNanos = System.nanoTime();
+        }
+
+        void record(long commits) {
+            commitsPerTick = commits;
+            total += commits;
+            commitsPerSecond = total * 1e9 / (System.nanoTime() - startNanos);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new SimulatedDatabase(poolSize, TimeUnit.MICROSECONDS.toNanos(commitMicros));
+        buffer = new CgmWriteBehindBuffer(database,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class),
+                true, 2_000, maxLatencyMs, 100_000, true, 30_000);
+        buffer.start();
+        callers = Executors.newVirtualThreadPerTaskExecutor();
+        userIds = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) userIds.add(UUID.randomUUID());
+        entries = new ArrayList<>(rowsPerUser);
+        for (int i = 0; i < rowsPerUser; i++) {
+            entries.add(new NightscoutEntryDto("e" + i, 120, 1_700_000_000_000L + i * 300_000L,
+                    null, 4, "Flat", null, "sgv", 0, null));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        buffer.stop();
+        callers.close();
+    }
+
+    @Benchmark
+    public void commitPerUser(Commits counter) {
+        long before = database.commits.get();
+        tick(userId -> database.storeChartData(userId, entries, CgmReading.DataSource.NIGHTSCOUT));
+        counter.record(database.commits.get() - before);
+    }
+
+    @Benchmark
+    public void groupCommit(Commits counter) {
+        long before = database.commits.get();
+        tick(userId -> buffer.store(userId, entries, CgmReading.DataSource.NIGHTSCOUT, false));
+        counter.record(database.commits.get() - before);
+    }
+
+    private void tick(Consumer<UUID> store) {
+        List<CompletableFuture<Void>> done = new ArrayList<>(users);
+        for (UUID userId : userIds) done.add(CompletableFuture.runAsync(() -> store.accept(userId), callers));
+        CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).join();
+    }
+
+    /** Stands in for Postgres behind the connection pool; only the transaction boundaries matter here. */
+    static final class SimulatedDatabase extends CgmReadingService {
+        private static final long ROW_NANOS = 5_000;
+
+        private final Semaphore connections;
+        private final long commitNanos;
+        final AtomicLong commits = new AtomicLong();
+
+        SimulatedDatabase(int poolSize, long commitNanos) {
+            super(null, null, null, null, null, null);
+            this.connections = new Semaphore(poolSize, true);
+            this.commitNanos = commitNanos;
+        }
+
+        @Override
+        public void storeChartData(UUID userId, List<NightscoutEntryDto> entries, CgmReading.DataSource dataSource) {
+            transaction(entries.size());
+        }
+
+        @Override
+        public void storeChartDataGroup(List<CgmWriteBatch> batches) {
+            int rows = 0;
+            for (CgmWriteBatch b : batches) rows += b.entries().size();
+            transaction(rows);
+        }
+
+        private void transaction(int rows) {
+            connections.acquireUninterruptibly();
+            try {
+                LockSupport.parkNanos(commitNanos + rows * ROW_NANOS);
+                commits.incrementAndGet();
+            } finally {
+                connections.release();
+            }
+        }
+    }
+}
@@ -30,6 +30,19 @@ public class AnalysisContext {
     private double avgGlucose;
     private double latestGlucose;
     private double deltaGlucose;
+    /** Change over the last 30 min; null when the window has no reading ~30 min before the latest. */
+    private Double deltaGlucose30m;
+    private double glucoseSd;
+    /** Coefficient of variation, percent. */
+    private double glucoseCv;
+    /** Percent of readings below / within / above 3.9-10.0 mmol/L. */
+    private double timeBelowRange;
+    private double timeInRange;
+    private double timeAboveRange;
+    /** Mean (mmol/L), CV and time in range (percent) over the last 14 days from the CGM rollups; null without readings. */
+    private Double avgGlucose14d;
+    private Double glucoseCv14d;
+    private Double timeInRange14d;
     private Double activeCob;
     private Double activeIob;
     private Double predictedGlucose2h;
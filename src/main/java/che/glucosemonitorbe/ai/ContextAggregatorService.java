@@ -1,18 +1,21 @@
 package che.glucosemonitorbe.ai;
 
 import che.glucosemonitorbe.domain.CarbsEntry;
-import che.glucosemonitorbe.domain.CgmReading;
 import che.glucosemonitorbe.domain.InsulinDose;
+import che.glucosemonitorbe.dto.GlucoseReportDTO;
 import che.glucosemonitorbe.dto.RapidInsulinIobParameters;
 import che.glucosemonitorbe.dto.UserInsulinPreferencesDTO;
 import che.glucosemonitorbe.dto.UserSettingsDTO;
 import che.glucosemonitorbe.entity.Note;
-import che.glucosemonitorbe.repository.CgmReadingRepository;
 import che.glucosemonitorbe.repository.NoteRepository;
 import che.glucosemonitorbe.service.CarbsOnBoardService;
 import che.glucosemonitorbe.service.InsulinCalculatorService;
 import che.glucosemonitorbe.service.UserInsulinPreferencesService;
 import che.glucosemonitorbe.service.UserSettingsService;
+import che.glucosemonitorbe.service.cgm.CgmRollupService;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
+import che.glucosemonitorbe.service.cgm.GlucoseWindowStats;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -32,13 +35,15 @@ public class ContextAggregatorService {
     private static final double CORRECTION_TARGET_MMOl = 6.5;
     private static final long PRE_BOLUS_WINDOW_MINUTES = 90L;
     private static final double PRE_BOLUS_MAX_TIMING_EFFECT = 1.2;
+    private static final int LONG_RANGE_DAYS = 14;
 
-    private final CgmReadingRepository chartDataRepository;
+    private final CgmSeriesCache cgmSeriesCache;
     private final NoteRepository noteRepository;
     private final UserSettingsService userSettingsService;
     private final UserInsulinPreferencesService insulinPreferencesService;
     private final CarbsOnBoardService carbsOnBoardService;
     private final InsulinCalculatorService insulinCalculatorService;
+    private final CgmRollupService cgmRollupService;
 
     public AnalysisContext buildContext(UUID userId, int windowHours) {
         LocalDateTime end = LocalDateTime.now();
@@ -46,19 +51,21 @@ public class ContextAggregatorService {
         long startTsMs = start.toInstant(ZoneOffset.UTC).toEpochMilli();
         long endTsMs = end.toInstant(ZoneOffset.UTC).toEpochMilli();
 
-        List<CgmReading> all = chartDataRepository.findByUserIdOrderByDateTimestampAsc(userId);
-        List<CgmReading> inWindow = all.stream()
-                .filter(r -> r.getDateTimestamp() != null && r.getDateTimestamp() >= startTsMs && r.getDateTimestamp() <= endTsMs)
-                .toList();
-
-        List<Double> glucoseValues = new ArrayList<>();
-        List<Long> glucoseTimes = new ArrayList<>();
-        for (CgmReading row : inWindow) {
-            if (row.getSgv() == null) continue;
-            glucoseValues.add(row.getSgv() / 18.0);
-            glucoseTimes.add(row.getDateTimestamp());
+        // Only the requested window is read (binary search into the cached series), so the cost is
+        // bounded by windowHours rather than by the length of the user's history.
+        CgmSeries inWindow = cgmSeriesCache.range(userId, startTsMs, endTsMs);
+        GlucoseWindowStats stats = GlucoseWindowStats.of(inWindow);
+        List<Double> glucoseValues = new ArrayList<>(inWindow.size());
+        List<Long> glucoseTimes = new ArrayList<>(inWindow.size());
+        for (int i = 0; i < inWindow.size(); i++) {
+            glucoseValues.add(inWindow.sgvAt(i) / GlucoseWindowStats.MGDL_PER_MMOL);
+            glucoseTimes.add(inWindow.timeAt(i));
         }
 
+        // Two-week background from the hourly rollups: a few hundred buckets, not thousands of readings.
+        GlucoseReportDTO.Summary longRange = cgmRollupService.summary(userId, LONG_RANGE_DAYS);
+        boolean hasLongRange = longRange.readingCount() > 0;
+
         List<Note> notes = noteRepository.findByUserIdAndTimestampBetween(userId, start, end)
                 .stream()
                 .sorted(Comparator.comparing(Note::getTimestamp))
@@ -77,11 +84,7 @@ public class ContextAggregatorService {
                 .map(this::toInsulinDose)
                 .toList();
 
-        double min = glucoseValues.stream().mapToDouble(v -> v).min().orElse(0.0);
-        double max = glucoseValues.stream().mapToDouble(v -> v).max().orElse(0.0);
-        double avg = glucoseValues.stream().mapToDouble(v -> v).average().orElse(0.0);
-        double latest = glucoseValues.isEmpty() ? 0.0 : glucoseValues.get(glucoseValues.size() - 1);
-        double first = glucoseValues.isEmpty() ? latest : glucoseValues.get(0);
+        double latest = stats.latest();
         double activeCob = carbsOnBoardService.calculateTotalCarbsOnBoard(carbsEntries, end, userId);
         double activeIob = insulinCalculatorService.calculateTotalActiveInsulin(
                 insulinDoses, end, rapidIob.diaHours(), rapidIob.peakMinutes());
@@ -104,11 +107,20 @@ public class ContextAggregatorService {
                 .notes(notes)
                 .userSettings(cob)
                 .insulinPreferences(insulin)
-                .minGlucose(min)
-                .maxGlucose(max)
-                .avgGlucose(avg)
+                .minGlucose(stats.min())
+                .maxGlucose(stats.max())
+                .avgGlucose(stats.mean())
                 .latestGlucose(latest)
-                .deltaGlucose(latest - first)
+                .deltaGlucose(stats.delta())
+                .deltaGlucose30m(stats.delta30m() != null ? round1(stats.delta30m()) : null)
+                .glucoseSd(round2(stats.sd()))
+                .glucoseCv(round1(stats.cv()))
+                .timeBelowRange(round1(stats.timeBelowRange()))
+                .timeInRange(round1(stats.timeInRange()))
+                .timeAboveRange(round1(stats.timeAboveRange()))
+                .avgGlucose14d(hasLongRange ? longRange.mean() : null)
+                .glucoseCv14d(hasLongRange ? longRange.cv() : null)
+                .timeInRange14d(hasLongRange ? longRange.timeInRange() : null)
                 .activeCob(round1(activeCob))
                 .activeIob(round2(activeIob))
                 .predictedGlucose2h(round1(predicted2h))
@@ -417,16 +417,7 @@ public class LlmGatewayService {
                 + "For correction support, provide calculation guidance with formula and explicit safety language (never imperative dosing orders). "
                 + "Treat source=real notes as primary evidence and source=mock notes as synthetic/testing context. "
                 + "No markdown, no extra text. "
-                + "Latest=" + context.getLatestGlucose()
-                + ", avg=" + context.getAvgGlucose()
-                + ", delta=" + context.getDeltaGlucose()
-                + ", activeCOB=" + context.getActiveCob()
-                + ", activeIOB=" + context.getActiveIob()
-                + ", predicted2h=" + context.getPredictedGlucose2h()
-                + ", estimatedCorrectionUnits=" + context.getEstimatedCorrectionUnits()
-                + ", avgPreBolusPauseMin=" + context.getAvgPreBolusPauseMinutes()
-                + ", latestPreBolusPauseMin=" + context.getLatestPreBolusPauseMinutes()
-                + ", notesCount=" + context.getNotes().size()
+                + formatContextStats(context)
                 + ". Recent notes:\n" + notesBlock
                 + "\nPrediction math:\n" + predictionMathBlock
                 + "\nReferences:\n" + refs;
@@ -453,23 +444,37 @@ public class LlmGatewayService {
                 + "Never issue imperative dosing commands; provide cautious decision-support wording. "
                 + "Treat source=real notes as primary evidence and source=mock notes as synthetic/testing context. "
                 + "Use bullet points where relevant. Do not output JSON. "
-                + "Latest=" + context.getLatestGlucose()
+                + formatContextStats(context)
+                + ". Recent notes:\n" + notesBlock
+                + "\nPrediction math:\n" + predictionMathBlock
+                + "\nReferences:\n" + refs
+                + (historyBlock.isBlank() ? "" : "\nConversation history:\n" + historyBlock)
+                + (hasFollowUp
+                ? "\nUser follow-up question:\n" + followUpQuestion + "\nRespond directly to this question while using the same context and references."
+                : "\nNo direct user question provided. Provide proactive analysis.");
+    }
+
+    /** The window statistics, therapy state and note count line shared by both prompts. */
+    private String formatContextStats(AnalysisContext context) {
+        return "Latest=" + context.getLatestGlucose()
                 + ", avg=" + context.getAvgGlucose()
                 + ", delta=" + context.getDeltaGlucose()
+                + ", delta30m=" + context.getDeltaGlucose30m()
+                + ", sd=" + context.getGlucoseSd()
+                + ", cv%=" + context.getGlucoseCv()
+                + ", tir%=" + context.getTimeInRange()
+                + ", tbr%=" + context.getTimeBelowRange()
+                + ", tar%=" + context.getTimeAboveRange()
+                + ", avg14d=" + context.getAvgGlucose14d()
+                + ", cv14d%=" + context.getGlucoseCv14d()
+                + ", tir14d%=" + context.getTimeInRange14d()
                 + ", activeCOB=" + context.getActiveCob()
                 + ", activeIOB=" + context.getActiveIob()
                 + ", predicted2h=" + context.getPredictedGlucose2h()
                 + ", estimatedCorrectionUnits=" + context.getEstimatedCorrectionUnits()
                 + ", avgPreBolusPauseMin=" + context.getAvgPreBolusPauseMinutes()
                 + ", latestPreBolusPauseMin=" + context.getLatestPreBolusPauseMinutes()
-                + ", notesCount=" + context.getNotes().size()
-                + ". Recent notes:\n" + notesBlock
-                + "\nPrediction math:\n" + predictionMathBlock
-                + "\nReferences:\n" + refs
-                + (historyBlock.isBlank() ? "" : "\nConversation history:\n" + historyBlock)
-                + (hasFollowUp
-                ? "\nUser follow-up question:\n" + followUpQuestion + "\nRespond directly to this question while using the same context and references."
-                : "\nNo direct user question provided. Provide proactive analysis.");
+                + ", notesCount=" + context.getNotes().size();
     }
 
     private String formatPredictionMath(AnalysisContext context) {
@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
@@ -73,6 +74,34 @@ public class CircuitBreaker {
         }
     }
     
+    /**
+     * Async variant of {@link #executeWithFallback}: the returned future's outcome counts as the
+     * call's success or failure, and the fallback value replaces a failure or an open circuit.
+     */
+    public <T> CompletableFuture<T> executeAsyncWithFallback(Supplier<CompletableFuture<T>> call, Supplier<T> fallback) {
+        if (isCircuitOpen()) {
+            log.warn("Circuit breaker {} is OPEN - using fallback", name);
+            return CompletableFuture.completedFuture(fallback.get());
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (Exception e) {
+            onFailure();
+            log.error("Call failed for circuit breaker {} - using fallback", name, e);
+            return CompletableFuture.completedFuture(fallback.get());
+        }
+        return future.handle((result, error) -> {
+            if (error == null) {
+                onSuccess();
+                return result;
+            }
+            onFailure();
+            log.error("Call failed for circuit breaker {} - using fallback", name, error);
+            return fallback.get();
+        });
+    }
+
     /**
      * Check if circuit is currently open
      */
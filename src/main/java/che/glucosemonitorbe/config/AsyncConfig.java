@@ -1,10 +1,14 @@
 package che.glucosemonitorbe.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.config.ScheduledTaskHolder;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
@@ -23,20 +27,22 @@ public class AsyncConfig {
      * which would serialise every scheduler onto one thread. The nightly
      * {@code DigitalTwinCalibrationScheduler} replays the Hovorka ODE over 30 days of CGM for every
      * user and can run for minutes; on a single thread it would starve the frequent jobs - the 5-min
-     * Nightscout/LibreLinkUp CGM syncs, the 5-min anomaly detector, and the 15-min verification poll
-     * - stalling CGM ingestion and alerting for all users while it runs.
+     * Nightscout/LibreLinkUp CGM syncs and the 15-min verification poll - stalling CGM ingestion (and
+     * the ingestion-driven alerting) for all users while it runs.
      *
-     * <p>Pool size = the number of distinct scheduled methods (6) so each can run on its own thread
-     * and a long job can never block a frequent one. Spring auto-detects a {@link TaskScheduler}
+     * <p>The pool starts with one thread and {@link #sizeSchedulerToScheduledTasks} grows it to the
+     * number of registered scheduled tasks once the context is refreshed, so each can run on its own
+     * thread and a long job can never block a frequent one - adding a scheduler needs no change here.
+     * Spring auto-detects a {@link TaskScheduler}
      * bean named {@code taskScheduler} and uses it for all {@code @Scheduled} tasks. Note this does
      * not make a single scheduled method re-enter concurrently with itself - {@code fixedDelay}/cron
      * still wait for the prior run to finish before the next fires; it only decouples the schedulers
      * from each other.
      */
     @Bean(name = "taskScheduler")
-    public TaskScheduler taskScheduler() {
+    public ThreadPoolTaskScheduler taskScheduler() {
         ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
-        scheduler.setPoolSize(6);
+        scheduler.setPoolSize(1);
         scheduler.setThreadNamePrefix("scheduled-");
         scheduler.setWaitForTasksToCompleteOnShutdown(false);
         scheduler.setAwaitTerminationSeconds(10);
@@ -45,6 +51,21 @@ public class AsyncConfig {
         return scheduler;
     }
 
+    /**
+     * One scheduler thread per {@code @Scheduled} method. Runs after the annotation post-processor has
+     * registered every task; {@link ThreadPoolTaskScheduler#setPoolSize} resizes the live executor.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void sizeSchedulerToScheduledTasks(ContextRefreshedEvent event) {
+        int tasks = event.getApplicationContext().getBeansOfType(ScheduledTaskHolder.class).values().stream()
+                .mapToInt(holder -> holder.getScheduledTasks().size())
+                .sum();
+        ThreadPoolTaskScheduler scheduler = taskScheduler();
+        if (tasks > scheduler.getPoolSize()) {
+            scheduler.setPoolSize(tasks);
+        }
+    }
+
     /**
      * Dedicated pool for offloading chart-data persistence off the request thread.
      * Bounded queue + CallerRunsPolicy so that if we ever saturate, the request thread absorbs
@@ -63,4 +84,25 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Pool for ingestion-driven glucose alert evaluation ({@code GlucoseAnomalyDetector}). The detector
+     * keeps at most one queued or running task per user, so the queue is bounded by the number of users
+     * syncing at once; on saturation the task is rejected and the user is re-evaluated on its next sync
+     * rather than blocking the sync thread.
+     */
+    @Bean(name = "anomalyEvaluationExecutor")
+    public ThreadPoolTaskExecutor anomalyEvaluationExecutor(
+            @Value("${app.observer.concurrency:4}") int concurrency,
+            @Value("${app.observer.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("anomaly-eval-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
 }
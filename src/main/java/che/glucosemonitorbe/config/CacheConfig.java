@@ -24,6 +24,7 @@ public class CacheConfig {
     public static final String CACHE_CGM_READINGS           = "cgmReadings";
     public static final String CACHE_LLM_RESPONSES          = "llmResponses";
     public static final String CACHE_USER_NOTES             = "userNotes";
+    public static final String CACHE_USER_DETAILS           = "userDetails";
 
     @Bean
     public CacheManager cacheManager() {
@@ -75,6 +76,15 @@ public class CacheConfig {
                         .recordStats()
                         .build());
 
+        // Principal lookups for JWT-authenticated requests (one per request). Short TTL bounds how long
+        // a role change takes to apply; password logins never read this cache.
+        manager.registerCustomCache(CACHE_USER_DETAILS,
+                Caffeine.newBuilder()
+                        .maximumSize(10_000)
+                        .expireAfterWrite(2, TimeUnit.MINUTES)
+                        .recordStats()
+                        .build());
+
         return manager;
     }
 }
@@ -6,8 +6,11 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
 /**
- * Shared {@link RestTemplate} beans with explicit connect/read timeouts.
+ * Shared outbound HTTP client beans with explicit connect/read timeouts.
  * BE-P1-7 fix: replaces per-service {@code new RestTemplate()} with configured beans
  * so Tomcat threads are never held indefinitely by unresponsive external HTTP endpoints.
  */
@@ -40,4 +43,18 @@ public class RestTemplateConfig {
         factory.setReadTimeout(READ_TIMEOUT_MS);
         return new RestTemplate(factory);
     }
+
+    /**
+     * Non-blocking Nightscout client for the background sync: pooled connections, HTTP/2 where the
+     * host negotiates it (one multiplexed connection for all users on a shared instance), and - as
+     * for {@link #nightscoutRestTemplate()} - redirects never followed.
+     */
+    @Bean(name = "nightscoutHttpClient")
+    public HttpClient nightscoutHttpClient() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MS))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
 }
@@ -83,7 +83,8 @@ public class CarbsOnBoardController {
     @PostMapping("/timeline")
     public ResponseEntity<?> getCOBTimeline(
             @RequestParam String userId,
-            @RequestBody Map<String, Object> request) {
+            @RequestParam(defaultValue = "4") int durationHours,
+            @RequestBody CarbsOnBoardService.COBCalculationRequest request) {
         
         // Check if this user should use the backend for COB
         if (featureToggleService.shouldMigrate("carbs-on-board", userId)) {
@@ -91,7 +92,7 @@ public class CarbsOnBoardController {
             return ResponseEntity.ok(Map.of(
                 "featureEnabled", true,
                 "data", Map.of(
-                    "timeline", "COB timeline calculated using backend service",
+                    "timeline", cobService.getCOBTimeline(request, durationHours),
                     "timestamp", java.time.LocalDateTime.now()
                 ),
                 "message", "COB timeline retrieved using backend service",
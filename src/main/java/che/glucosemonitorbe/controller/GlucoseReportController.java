@@ -0,0 +1,58 @@
+package che.glucosemonitorbe.controller;
+
+import che.glucosemonitorbe.dto.GlucoseReportDTO;
+import che.glucosemonitorbe.service.UserService;
+import che.glucosemonitorbe.service.cgm.CgmRollupService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.UUID;
+
+@Tag(name = "Glucose Reports", description = "Long-range CGM summaries, AGP and daily means from hourly rollups")
+@RestController
+@RequestMapping("/api/glucose-reports")
+@RequiredArgsConstructor
+public class GlucoseReportController {
+
+    private final CgmRollupService cgmRollupService;
+    private final UserService userService;
+
+    @Operation(summary = "Summary, ambulatory glucose profile and daily means over the last 7/14/90 days")
+    @GetMapping
+    public ResponseEntity<GlucoseReportDTO> getReport(
+            @RequestParam(defaultValue = "14") int days,
+            @RequestParam(required = false) String timeZone,
+            Authentication auth) {
+        if (days < 1 || days > CgmRollupService.MAX_DAYS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "days must be between 1 and " + CgmRollupService.MAX_DAYS);
+        }
+        return ResponseEntity.ok(cgmRollupService.report(userId(auth), days, zone(timeZone)));
+    }
+
+    // -- helpers ---------------------------------------------------------------
+
+    private static ZoneId zone(String timeZone) {
+        if (timeZone == null || timeZone.isBlank()) return ZoneId.systemDefault();
+        try {
+            return ZoneId.of(timeZone);
+        } catch (DateTimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown time zone: " + timeZone);
+        }
+    }
+
+    private UUID userId(Authentication auth) {
+        return userService.getUserByUsername(auth.getName()).getId();
+    }
+}
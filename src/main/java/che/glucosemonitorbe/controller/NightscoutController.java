@@ -1,13 +1,14 @@
 package che.glucosemonitorbe.controller;
 
 import che.glucosemonitorbe.domain.CgmReading;
-import che.glucosemonitorbe.domain.UserDataSourceConfig;
+import che.glucosemonitorbe.dto.CgmReadingCursor;
 import che.glucosemonitorbe.dto.NightscoutEntryDto;
 import che.glucosemonitorbe.exception.ExternalServiceException;
 import che.glucosemonitorbe.nightscout.NightScoutIntegration;
 import che.glucosemonitorbe.service.CgmReadingService;
 import che.glucosemonitorbe.service.UserDataSourceConfigService;
 import che.glucosemonitorbe.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -15,14 +16,24 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Tag(name = "Nightscout CGM", description = "Nightscout CGM data retrieval, stored chart data, and background sync")
@@ -31,11 +42,17 @@ import java.util.UUID;
 @RequestMapping("/api/nightscout")
 @RequiredArgsConstructor
 public class NightscoutController {
+
+    /** Response header carrying the {@code before} cursor ({@link CgmReadingCursor}) of the next older chart-data page. */
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    /** Upper bound on readings per streamed chart-data request (~35 days of 5-min readings). */
+    static final int MAX_STREAM_COUNT = 10_000;
     
     private final NightScoutIntegration nightScoutIntegration;
     private final CgmReadingService chartDataService;
     private final UserService userService;
     private final UserDataSourceConfigService dataSourceConfigService;
+    private final ObjectMapper objectMapper;
     
     @Operation(summary = "Get recent glucose entries from Nightscout or stored cache")
     @ApiResponses({ @ApiResponse(responseCode = "200", description = "Glucose entries returned"),
@@ -51,11 +68,7 @@ public class NightscoutController {
         UUID userId = userService.getUserByUsername(authentication.getName()).getId();
 
         if (useStored) {
-            List<NightscoutEntryDto> storedEntries = chartDataService.getChartDataAsEntries(userId);
-            if (storedEntries.size() > count) {
-                int from = Math.max(0, storedEntries.size() - count);
-                storedEntries = storedEntries.subList(from, storedEntries.size());
-            }
+            List<NightscoutEntryDto> storedEntries = chartDataService.getLatestEntries(userId, null, null, count).entries();
             applyTimezoneOffsetToEntries(storedEntries, timezoneOffset);
             log.info("Returning {} stored chart entries for user {}", storedEntries.size(), authentication.getName());
             return ResponseEntity.ok(storedEntries);
@@ -207,41 +220,94 @@ public class NightscoutController {
         }
     }
     
-    @Operation(summary = "Get stored chart data for the authenticated user")
+    @Operation(summary = "Get stored chart data for the authenticated user",
+               description = "Without `since`: the newest `count` readings older than the optional `before` "
+                       + "cursor, oldest first; when a full page is returned the X-Next-Cursor header holds "
+                       + "the `before` value of the next older page (`<epochMs>_<id>`; a bare `<epochMs>` "
+                       + "starts strictly older than that time). With `since`: every reading newer than it.")
     @ApiResponse(responseCode = "200", description = "Stored chart data returned")
     @GetMapping("/chart-data")
     public ResponseEntity<List<NightscoutEntryDto>> getStoredChartData(
             @RequestParam(value = "count", defaultValue = "100") int count,
             @RequestParam(value = "since", required = false) Long sinceEpochMs,
+            @RequestParam(value = "before", required = false) CgmReadingCursor before,
             Authentication authentication) {
 
         UUID userId = userService.getUserByUsername(authentication.getName()).getId();
+        CgmReading.DataSource source = dataSourceConfigService.chartDataSource(userId);
 
-        List<NightscoutEntryDto> chartData = sinceEpochMs != null
-                ? chartDataService.getChartDataAsEntriesSince(userId, sinceEpochMs)
-                : chartDataService.getChartDataAsEntries(userId);
-
-        // For LibreLinkUp users, only return entries written by the LLU scheduler
-        // (id prefix "llu-"). This filters out any stale Nightscout data that may
-        // remain in the table from a previous data-source configuration.
-        boolean isLibreUser = dataSourceConfigService
-                .getActiveConfigEntity(userId, UserDataSourceConfig.DataSourceType.LIBRE_LINK_UP)
-                .isPresent();
-        if (isLibreUser) {
-            chartData = chartData.stream()
-                    .filter(e -> e.getId() != null && e.getId().startsWith("llu-"))
-                    .collect(java.util.stream.Collectors.toList());
+        // Incremental fetches are bounded by the since predicate; full fetches read only the newest
+        // `count` rows via keyset pagination, both with the source predicate applied in the query.
+        List<NightscoutEntryDto> chartData;
+        CgmReadingCursor next = null;
+        if (sinceEpochMs != null) {
+            chartData = chartDataService.getChartDataAsEntriesSince(userId, sinceEpochMs, source);
+        } else {
+            CgmReadingService.EntryPage page = chartDataService.getLatestEntries(userId, source, before, count);
+            chartData = page.entries();
+            next = page.next();
         }
 
-        // When doing a full fetch (no since), cap to most recent `count` points
-        if (sinceEpochMs == null && chartData.size() > count) {
-            int from = Math.max(0, chartData.size() - count);
-            chartData = chartData.subList(from, chartData.size());
+        log.info("Retrieved {} stored chart data entries for user {} (source={}, since={}, before={})",
+                chartData.size(), authentication.getName(), source, sinceEpochMs, before);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (next != null) {
+            response.header(NEXT_CURSOR_HEADER, next.toString());
         }
+        return response.body(chartData);
+    }
+
+    @Operation(summary = "Stream stored chart data as NDJSON, newest first",
+               description = "Emits {\"type\":\"entry\",\"entry\":{...}} lines for up to `count` readings older "
+                       + "than the optional `before` cursor, then {\"type\":\"done\",\"count\":n,\"nextCursor\":\"<epochMs>_<id>\"} - "
+                       + "pass nextCursor as `before` to continue; null means the history is exhausted.")
+    @ApiResponse(responseCode = "200", description = "Entry stream started")
+    @GetMapping(value = "/chart-data/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamStoredChartData(
+            @RequestParam(value = "count", defaultValue = "1000") int count,
+            @RequestParam(value = "before", required = false) CgmReadingCursor before,
+            Authentication authentication) {
+
+        UUID userId = userService.getUserByUsername(authentication.getName()).getId();
+        CgmReading.DataSource source = dataSourceConfigService.chartDataSource(userId);
+        int limit = Math.clamp(count, 0, MAX_STREAM_COUNT);
+
+        StreamingResponseBody body = outputStream -> {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+                int[] written = {0};
+                try {
+                    CgmReadingCursor nextCursor = chartDataService.streamEntries(userId, source, before, limit, entry -> {
+                        try {
+                            writeEvent(writer, Map.of("type", "entry", "entry", entry));
+                            written[0]++;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    Map<String, Object> done = new LinkedHashMap<>();
+                    done.put("type", "done");
+                    done.put("count", written[0]);
+                    done.put("nextCursor", nextCursor != null ? nextCursor.toString() : null);
+                    writeEvent(writer, done);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } catch (Exception e) {
+                    log.error("Chart data stream failed for user {} after {} entries", userId, written[0], e);
+                    writeEvent(writer, Map.of("type", "error", "message", "Chart data stream failed"));
+                }
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
 
-        log.info("Retrieved {} stored chart data entries for user {} (libreFiltered={}, since={})",
-                chartData.size(), authentication.getName(), isLibreUser, sinceEpochMs);
-        return ResponseEntity.ok(chartData);
+    /** One NDJSON line. Not flushed per line: the buffer goes out in chunks as it fills, and on close. */
+    private void writeEvent(BufferedWriter writer, Object event) throws IOException {
+        writer.write(objectMapper.writeValueAsString(event));
+        writer.write("\n");
     }
     
     @DeleteMapping("/chart-data")
@@ -46,7 +46,8 @@ public class CgmReading {
     @Column(name = "sgv")
     private Integer sgv;
 
-    @Column(name = "date_timestamp")
+    /** Reading time (epoch ms); also the monthly partition key of {@code cgm_readings}. */
+    @Column(name = "date_timestamp", nullable = false)
     private Long dateTimestamp;
 
     @Column(name = "date_string")
@@ -0,0 +1,33 @@
+package che.glucosemonitorbe.dto;
+
+import java.util.UUID;
+
+/**
+ * Keyset position in a user's stored CGM history, newest first: the {@code (dateTimestamp, id)} of the
+ * last reading already returned. Readings sharing a timestamp (two sources, or a re-sent upstream
+ * record) are ordered by id, so a page boundary that falls inside such a tie neither skips nor repeats
+ * a row.
+ *
+ * <p>Serialised as {@code <epochMs>_<uuid>}. A bare {@code <epochMs>} (the earlier timestamp-only
+ * cursor, or a client-chosen starting point) has a null {@link #id} and means "strictly older than
+ * that millisecond".</p>
+ */
+public record CgmReadingCursor(long timestamp, UUID id) {
+
+    private static final char SEPARATOR = '_';
+
+    /** Parses the wire form; also lets Spring bind it directly from a request parameter. */
+    public static CgmReadingCursor valueOf(String value) {
+        int sep = value.indexOf(SEPARATOR);
+        if (sep < 0) {
+            return new CgmReadingCursor(Long.parseLong(value.trim()), null);
+        }
+        return new CgmReadingCursor(Long.parseLong(value.substring(0, sep)),
+                UUID.fromString(value.substring(sep + 1)));
+    }
+
+    @Override
+    public String toString() {
+        return id == null ? Long.toString(timestamp) : timestamp + String.valueOf(SEPARATOR) + id;
+    }
+}
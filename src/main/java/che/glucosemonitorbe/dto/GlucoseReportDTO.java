@@ -0,0 +1,70 @@
+package che.glucosemonitorbe.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Long-range glucose report built from the hourly CGM rollups: window summary, ambulatory glucose
+ * profile (AGP) and daily means. Glucose values are mmol/L (1 decimal), shares are percent of readings
+ * (1 decimal). Hours and dates are in {@code timeZone}.
+ *
+ * @param days   requested window length
+ * @param fromMs window start, epoch ms (inclusive, start of a UTC hour)
+ * @param toMs   window end, epoch ms (exclusive, end of the current UTC hour)
+ * @param agp    one entry per hour of day that has readings, in hour order
+ * @param daily  one entry per date that has readings, oldest first
+ */
+public record GlucoseReportDTO(
+        int days,
+        String timeZone,
+        long fromMs,
+        long toMs,
+        Summary summary,
+        List<AgpHour> agp,
+        List<Day> daily) {
+
+    /**
+     * Whole-window statistics; every value is 0 when {@code readingCount} is 0.
+     *
+     * @param gmi glucose management indicator, percent ({@code 3.31 + 0.02392 * mean mg/dL})
+     */
+    public record Summary(
+            int readingCount,
+            double mean,
+            double sd,
+            double cv,
+            double gmi,
+            double min,
+            double max,
+            double timeBelowRange,
+            double timeInRange,
+            double timeAboveRange,
+            double p5,
+            double p25,
+            double median,
+            double p75,
+            double p95) {
+    }
+
+    /** AGP percentile bands of all readings taken in one hour of the day across the window. */
+    public record AgpHour(
+            int hour,
+            int readingCount,
+            double mean,
+            double p5,
+            double p25,
+            double median,
+            double p75,
+            double p95) {
+    }
+
+    /** One calendar day of the window (the first and last may be partial). */
+    public record Day(
+            LocalDate date,
+            int readingCount,
+            double mean,
+            double timeBelowRange,
+            double timeInRange,
+            double timeAboveRange) {
+    }
+}
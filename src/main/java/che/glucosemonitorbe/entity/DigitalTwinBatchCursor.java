@@ -0,0 +1,48 @@
+package che.glucosemonitorbe.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Resumable progress marker for a digital-twin batch run. {@code lastUserId} is a low-watermark over
+ * the users ordered by id: everything up to and including it has been processed by the run that
+ * started at {@code runStartedAt}. See {@code V11__digital_twin_batch_cursor.sql}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "digital_twin_batch_cursor")
+public class DigitalTwinBatchCursor {
+
+    /** RUNNING (in progress or crashed), INTERRUPTED (time-boxed / shut down), COMPLETED. */
+    public enum Status { RUNNING, INTERRUPTED, COMPLETED }
+
+    @Id
+    @Column(name = "batch_name", nullable = false, length = 64)
+    private String batchName;
+
+    @Column(name = "run_started_at", nullable = false)
+    private LocalDateTime runStartedAt;
+
+    @Column(name = "last_user_id")
+    private UUID lastUserId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 12)
+    @Builder.Default
+    private Status status = Status.RUNNING;
+
+    @Column(name = "processed", nullable = false)
+    @Builder.Default
+    private Integer processed = 0;
+
+    @Column(name = "updated_at", nullable = false)
+    @Builder.Default
+    private LocalDateTime updatedAt = LocalDateTime.now();
+}
@@ -23,6 +23,10 @@ public class RevokedToken {
     @Column(name = "expires_at", nullable = false)
     private Instant expiresAt;
 
+    /** Set by the database on insert; the watermark for incremental revocation-index refreshes. */
+    @Column(name = "created_at", insertable = false, updatable = false)
+    private Instant createdAt;
+
     protected RevokedToken() {
         // for JPA
     }
@@ -43,4 +47,8 @@ public class RevokedToken {
     public void setExpiresAt(Instant expiresAt) {
         this.expiresAt = expiresAt;
     }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
 }
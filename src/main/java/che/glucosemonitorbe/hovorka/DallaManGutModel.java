@@ -87,6 +87,27 @@ public class DallaManGutModel {
                 + 2.0);
     }
 
+    /**
+     * Directional derivative of {@link #kEmpt(double, double, double, double)} along a tangent
+     * {@code (dQsto, dMeal)} of its two state arguments - used by the forward-sensitivity integration.
+     * With u = α(Qsto − b·D) and v = c(Qsto − d·D), both functions of Qsto/D only:
+     * <pre>
+     *   dk = (k_max−k_min)/2 × { sech²(u)·du − sech²(v)·dv }
+     *   du = α·(dQsto − Qsto·dD/D),   dv = c·(dQsto − Qsto·dD/D)
+     * </pre>
+     */
+    public double kEmptTangent(double qstoMmol, double dQsto, double mealMmol, double dMeal,
+                               double kMaxEff, double kMinEff) {
+        if (mealMmol <= 0.0) return 0.0;
+        double alpha = 5.0 / (2.0 * (1.0 - B) * mealMmol);
+        double c     = 5.0 / (2.0 * D_LOW  * mealMmol);
+        double tu = Math.tanh(alpha * (qstoMmol - B     * mealMmol));
+        double tv = Math.tanh(c     * (qstoMmol - D_LOW * mealMmol));
+        double dRatio = dQsto - qstoMmol * dMeal / mealMmol;   // D·d(Qsto/D)
+        return (kMaxEff - kMinEff) / 2.0
+                * ((1.0 - tu * tu) * alpha * dRatio - (1.0 - tv * tv) * c * dRatio);
+    }
+
     /**
      * Caloric scale factor C_caloric = BASE_T_HALF_MIN / t½_meal.
      * Scales k_max and k_min proportionally to stretch the k_empt sigmoid for high-calorie
@@ -0,0 +1,255 @@
+package che.glucosemonitorbe.hovorka;
+
+/**
+ * Adaptive-step Dormand-Prince 5(4) integration of one prediction path over the compiled per-minute
+ * input tapes - the {@link OdeIntegrator#DORMAND_PRINCE} alternative to the fixed 1-minute RK4 loop.
+ *
+ * <h3>Inputs</h3>
+ * <p>RK4 step {@code m} covers {@code (m-1, m]}. Carb and protein+fat inputs are impulses applied at
+ * its start, so every minute {@code m} with an impulse makes {@code m-1} a hard step boundary: the
+ * state there is reported first, then the impulse is added exactly as the RK4 step adds it. The
+ * insulin effect and activity uptake are rates held constant per minute by RK4; here they are
+ * interpolated linearly between the minute midpoints, which keeps the delivered amount per minute
+ * to second order and gives the error control a continuous right-hand side.</p>
+ *
+ * <h3>Stepping</h3>
+ * <p>Standard DOPRI5 with FSAL, a mixed absolute/relative RMS error norm, step sizes limited to
+ * {@value #MAX_STEP_MIN} min and reset to 1 min after every impulse. States between step ends - every
+ * integer minute the caller asks for - come from the 4th-order dense output, so the 5/10-min emission
+ * schedule and the per-minute sensor filter see exact minute marks. The non-negativity clamp is
+ * applied to accepted steps and interpolated states, as after every RK4 step.</p>
+ *
+ * <p>Not thread-safe; one instance per integration.</p>
+ */
+final class DormandPrinceIntegrator {
+
+    static final double DEFAULT_RTOL = 1e-5;
+    static final double DEFAULT_ATOL = 1e-5;
+    /** Longest single step [min]; bounds the dense-output interval. */
+    static final double MAX_STEP_MIN = 60.0;
+    /** Steps this short are accepted regardless of the error estimate rather than shrinking further. */
+    static final double MIN_STEP_MIN = 1e-3;
+
+    private static final double SAFETY = 0.9;
+    private static final double FAC_MIN = 0.2;
+    private static final double FAC_MAX = 5.0;
+
+    // -- Butcher tableau (Dormand & Prince 1980) -------------------------------
+    private static final double C2 = 1.0 / 5, C3 = 3.0 / 10, C4 = 4.0 / 5, C5 = 8.0 / 9;
+    private static final double A21 = 1.0 / 5;
+    private static final double A31 = 3.0 / 40, A32 = 9.0 / 40;
+    private static final double A41 = 44.0 / 45, A42 = -56.0 / 15, A43 = 32.0 / 9;
+    private static final double A51 = 19372.0 / 6561, A52 = -25360.0 / 2187, A53 = 64448.0 / 6561,
+                                A54 = -212.0 / 729;
+    private static final double A61 = 9017.0 / 3168, A62 = -355.0 / 33, A63 = 46732.0 / 5247,
+                                A64 = 49.0 / 176, A65 = -5103.0 / 18656;
+    private static final double A71 = 35.0 / 384, A73 = 500.0 / 1113, A74 = 125.0 / 192,
+                                A75 = -2187.0 / 6784, A76 = 11.0 / 84;
+    /** 5th- minus embedded 4th-order weights. */
+    private static final double E1 = 71.0 / 57600, E3 = -71.0 / 16695, E4 = 71.0 / 1920,
+                                E5 = -17253.0 / 339200, E6 = 22.0 / 525, E7 = -1.0 / 40;
+    /** Dense-output weights (Hairer, Nørsett & Wanner, DOPRI5 contd5). */
+    private static final double D1 = -12715105075.0 / 11282082432.0, D3 = 87487479700.0 / 32700410799.0,
+                                D4 = -10690763975.0 / 1880347072.0, D5 = 701980252875.0 / 199316789632.0,
+                                D6 = -1453857185.0 / 822651844.0, D7 = 69997945.0 / 29380423.0;
+
+    private static final int N = HovorkaStateBuffer.N;
+
+    private final HovorkaOdeSolver solver;
+    private final HovorkaParameters p;
+    private final double[] carbMmol;
+    private final int[] mealGi;
+    private final double[] protFatKcal;
+    private final double[] insulinEffect;
+    private final double[] uptake;
+    private final int horizon;
+    private final double rtol;
+    private final double atol;
+
+    /** State at {@link #t}, the end of the last accepted step. */
+    private final double[] y = new double[N];
+    private double mealMmol;
+    private int activeGI;
+    private double t;
+    /** Start of the last accepted step, and its dense-output coefficients. */
+    private double tPrev;
+    private final double[][] cont = new double[5][N];
+
+    private double h = 1.0;
+    private int nextImpulse;
+    private boolean k1Valid;
+    private int evaluations;
+
+    private final double[] k1 = new double[N], k2 = new double[N], k3 = new double[N], k4 = new double[N],
+                           k5 = new double[N], k6 = new double[N], k7 = new double[N];
+    private final double[] yStage = new double[N];
+    private final double[] yNew = new double[N];
+
+    /**
+     * @param tapes   per-minute inputs, index 1..{@code horizon} (index 0 unused), as compiled for RK4
+     * @param insulinEffect effective insulin effect per minute [mmol/min], activity modulation included
+     * @param uptake  activity uptake rate per minute [/min], or null for none
+     * @param start   state at minute 0; only read here
+     */
+    DormandPrinceIntegrator(HovorkaOdeSolver solver, HovorkaParameters p,
+                            HovorkaGlucosePredictionService.InputTape tapes, double[] insulinEffect,
+                            double[] uptake, HovorkaStateBuffer start, int horizon) {
+        this(solver, p, tapes.carbMmol(), tapes.mealGi(), tapes.protFatKcal(), insulinEffect, uptake,
+                start, horizon, DEFAULT_RTOL, DEFAULT_ATOL);
+    }
+
+    DormandPrinceIntegrator(HovorkaOdeSolver solver, HovorkaParameters p,
+                            double[] carbMmol, int[] mealGi, double[] protFatKcal,
+                            double[] insulinEffect, double[] uptake,
+                            HovorkaStateBuffer start, int horizon, double rtol, double atol) {
+        this.solver = solver;
+        this.p = p;
+        this.carbMmol = carbMmol;
+        this.mealGi = mealGi;
+        this.protFatKcal = protFatKcal;
+        this.insulinEffect = insulinEffect;
+        this.uptake = uptake;
+        this.horizon = horizon;
+        this.rtol = rtol;
+        this.atol = atol;
+        System.arraycopy(start.y, 0, y, 0, N);
+        System.arraycopy(start.y, 0, cont[0], 0, N);
+        this.mealMmol = start.mealMmol;
+        this.activeGI = start.activeGI;
+        this.nextImpulse = impulseFrom(1);
+    }
+
+    /** Right-hand-side evaluations so far (7 per rejected step, 6 per accepted one with FSAL). */
+    int evaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Integrates up to {@code minute} and writes the state there into {@code out}; minutes must be
+     * requested in increasing order and at most {@code horizon}.
+     */
+    void advanceTo(int minute, HovorkaStateBuffer out) {
+        if (minute < tPrev || minute > horizon) {
+            throw new IllegalArgumentException("minute " + minute + " outside [" + tPrev + ", " + horizon + "]");
+        }
+        while (t < minute) step();
+        if (minute == t) {
+            for (int i = 0; i < N; i++) out.y[i] = Math.max(0.0, y[i]);
+        } else {
+            double theta = (minute - tPrev) / (t - tPrev);
+            double theta1 = 1.0 - theta;
+            for (int i = 0; i < N; i++) {
+                double v = cont[0][i] + theta * (cont[1][i]
+                        + theta1 * (cont[2][i] + theta * (cont[3][i] + theta1 * cont[4][i])));
+                out.y[i] = Math.max(0.0, v);
+            }
+        }
+        out.mealMmol = mealMmol;
+        out.activeGI = activeGI;
+    }
+
+    private void step() {
+        if (nextImpulse <= horizon && t == nextImpulse - 1) {
+            applyImpulse(nextImpulse);
+            nextImpulse = impulseFrom(nextImpulse + 1);
+            k1Valid = false;
+            h = 1.0;
+        }
+        double stop = Math.min(horizon, nextImpulse - 1);
+        if (!k1Valid) {
+            rhs(t, y, k1);
+            k1Valid = true;
+        }
+
+        while (true) {
+            double hTry = Math.min(h, MAX_STEP_MIN);
+            boolean clipped = t + hTry >= stop;
+            if (clipped) hTry = stop - t;
+
+            for (int i = 0; i < N; i++) yStage[i] = y[i] + hTry * A21 * k1[i];
+            rhs(t + C2 * hTry, yStage, k2);
+            for (int i = 0; i < N; i++) yStage[i] = y[i] + hTry * (A31 * k1[i] + A32 * k2[i]);
+            rhs(t + C3 * hTry, yStage, k3);
+            for (int i = 0; i < N; i++) yStage[i] = y[i] + hTry * (A41 * k1[i] + A42 * k2[i] + A43 * k3[i]);
+            rhs(t + C4 * hTry, yStage, k4);
+            for (int i = 0; i < N; i++) {
+                yStage[i] = y[i] + hTry * (A51 * k1[i] + A52 * k2[i] + A53 * k3[i] + A54 * k4[i]);
+            }
+            rhs(t + C5 * hTry, yStage, k5);
+            for (int i = 0; i < N; i++) {
+                yStage[i] = y[i] + hTry * (A61 * k1[i] + A62 * k2[i] + A63 * k3[i] + A64 * k4[i] + A65 * k5[i]);
+            }
+            rhs(t + hTry, yStage, k6);
+            for (int i = 0; i < N; i++) {
+                yNew[i] = y[i] + hTry * (A71 * k1[i] + A73 * k3[i] + A74 * k4[i] + A75 * k5[i] + A76 * k6[i]);
+            }
+            rhs(t + hTry, yNew, k7);
+
+            double sum = 0.0;
+            for (int i = 0; i < N; i++) {
+                double e = hTry * (E1 * k1[i] + E3 * k3[i] + E4 * k4[i] + E5 * k5[i] + E6 * k6[i] + E7 * k7[i]);
+                double sc = atol + rtol * Math.max(Math.abs(y[i]), Math.abs(yNew[i]));
+                sum += (e / sc) * (e / sc);
+            }
+            double err = Math.sqrt(sum / N);
+
+            if (err <= 1.0 || hTry <= MIN_STEP_MIN) {
+                for (int i = 0; i < N; i++) {
+                    double dy = yNew[i] - y[i];
+                    double bspl = hTry * k1[i] - dy;
+                    cont[0][i] = y[i];
+                    cont[1][i] = dy;
+                    cont[2][i] = bspl;
+                    cont[3][i] = dy - hTry * k7[i] - bspl;
+                    cont[4][i] = hTry * (D1 * k1[i] + D3 * k3[i] + D4 * k4[i] + D5 * k5[i] + D6 * k6[i]
+                            + D7 * k7[i]);
+                    y[i] = Math.max(0.0, yNew[i]);
+                }
+                tPrev = t;
+                t = clipped ? stop : t + hTry;
+                // FSAL: the derivatives clamp their inputs at 0, so k7 is also the slope at the clamped state.
+                System.arraycopy(k7, 0, k1, 0, N);
+                double grown = hTry * (err == 0.0 ? FAC_MAX : Math.min(FAC_MAX, SAFETY * Math.pow(err, -0.2)));
+                h = clipped ? Math.max(h, grown) : grown;
+                return;
+            }
+            h = hTry * Math.max(FAC_MIN, SAFETY * Math.pow(err, -0.2));
+        }
+    }
+
+    /** The impulse inputs of tape minute {@code m}, exactly as the RK4 step adds them. */
+    private void applyImpulse(int m) {
+        if (carbMmol[m] > 0) {
+            double newQsto1 = y[HovorkaStateBuffer.QSTO1] + carbMmol[m];
+            y[HovorkaStateBuffer.QSTO1] = newQsto1;
+            mealMmol = newQsto1 + y[HovorkaStateBuffer.QSTO2];
+            if (mealGi[m] >= 0) activeGI = mealGi[m];
+        }
+        if (protFatKcal[m] > 0) {
+            y[HovorkaStateBuffer.PROT_FAT_GUT] += protFatKcal[m];
+        }
+    }
+
+    /** First tape minute at or after {@code from} with an impulse input; {@code horizon + 1} if none. */
+    private int impulseFrom(int from) {
+        for (int m = from; m <= horizon; m++) {
+            if (carbMmol[m] > 0 || protFatKcal[m] > 0) return m;
+        }
+        return horizon + 1;
+    }
+
+    private void rhs(double time, double[] state, double[] out) {
+        evaluations++;
+        solver.derivatives(state, p, mealMmol, activeGI, rateAt(insulinEffect, time),
+                uptake != null ? rateAt(uptake, time) : 0.0, out);
+    }
+
+    /** Per-minute rate {@code tape[m]} placed at the minute's midpoint {@code m - 0.5}, linear in between. */
+    private double rateAt(double[] tape, double time) {
+        double s = time + 0.5;
+        int m = (int) Math.floor(s);
+        if (m < 1) return tape[1];
+        if (m >= horizon) return tape[horizon];
+        return tape[m] + (tape[m + 1] - tape[m]) * (s - m);
+    }
+}
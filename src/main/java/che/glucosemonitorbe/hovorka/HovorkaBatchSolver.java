@@ -0,0 +1,346 @@
+package che.glucosemonitorbe.hovorka;
+
+import java.util.List;
+
+/**
+ * Lock-step RK4 integration of many independent Hovorka trajectories ("lanes") over
+ * structure-of-arrays state: every ODE variable is one {@code double[K]} indexed by lane, so a
+ * derivative evaluation is a handful of straight passes over contiguous arrays instead of K calls
+ * into {@link HovorkaOdeSolver#derivatives}.
+ *
+ * <h3>Kernels</h3>
+ * <p>The derivatives run on the JDK Vector API ({@code HovorkaVectorKernel}, compiled separately in the
+ * {@code vector} source set) when the incubating {@code jdk.incubator.vector} module is resolved at
+ * runtime (bootRun, the tests and the Dockerfile add it), and on a per-lane scalar loop otherwise.
+ * Both evaluate the gastric-emptying {@code tanh} terms with {@link Math#tanh} and otherwise perform
+ * the scalar solver's IEEE operations in its order, so every lane is bit-identical to
+ * {@link HovorkaOdeSolver#step(HovorkaStateBuffer, HovorkaParameters, double, int, double, double,
+ * double, HovorkaOdeSolver.Workspace)} fed the same inputs, whichever kernel runs.</p>
+ *
+ * <h3>Per-lane coefficients</h3>
+ * <p>Everything in the derivatives that depends only on the parameters, the active GI or the meal
+ * reference D (caloric and GI scaling of the gut rates, the k_empt saturation slopes) is constant
+ * between meal impulses. It is computed per lane on construction and whenever a lane's impulse
+ * changes GI or D, with the same expressions as the scalar solver, leaving the vector passes with
+ * nothing but state arithmetic.</p>
+ *
+ * <p>Not thread-safe; one solver per batch per thread.</p>
+ */
+public final class HovorkaBatchSolver {
+
+    /**
+     * One trajectory: its (already adjusted) parameters, starting state and per-minute inputs, indexed
+     * by minute ({@code [m]} is applied on the step that ends at minute m; index 0 is unused). Minutes
+     * beyond a tape's length read as no input. A negative {@code mealGi[m]} keeps the active GI.
+     *
+     * @param insulinEffect glucose removal from bolus insulin [mmol/min]
+     * @param uptakeRate    insulin-independent activity uptake [/min], or {@code null} for none
+     */
+    public record Lane(HovorkaParameters params, HovorkaState initial, double[] carbMmol, int[] mealGi,
+                       double[] protFatKcal, double[] insulinEffect, double[] uptakeRate) {}
+
+    /** Whether the Vector API kernel can be used in this JVM. */
+    public static boolean vectorApiAvailable() {
+        return VectorApi.KERNEL != null;
+    }
+
+    /** The derivative pass of the Vector API kernel; implemented outside the main source set. */
+    interface VectorKernel {
+        void derivatives(HovorkaBatchSolver b, double[][] in, double[][] out);
+    }
+
+    /**
+     * Resolved once. The kernel class is only loaded when the module is present, and is looked up by
+     * name so the main source set compiles without the incubator module.
+     */
+    private static final class VectorApi {
+        static final VectorKernel KERNEL = load();
+
+        private static VectorKernel load() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+            try {
+                return (VectorKernel) Class.forName("che.glucosemonitorbe.hovorka.HovorkaVectorKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+    }
+
+    final int lanes;
+    private final Lane[] laneInputs;
+    private final boolean vectorized;
+    private int minute;
+
+    // -- State: y[variable][lane], variables in HovorkaStateBuffer order --------
+    final double[][] y;
+    final int[] activeGI;
+    final double[] mealMmol;
+
+    // -- Parameter-only coefficients -------------------------------------------
+    final double[] vG, f01, egp0, k12, k21;
+    /** isf × effective insulin volume: the plasma-insulin bridge denominator. */
+    final double[] insulinScale;
+    private final double[] cCal, kAbsBase;
+
+    // -- GI- and meal-dependent coefficients (refreshed on impulses) -----------
+    final double[] kGri, kMax, kMin, kAbs;
+    final double[] alpha, c, bMeal, dMeal;
+
+    // -- Per-minute inputs and scratch -----------------------------------------
+    final double[] insulinEffect, uptakeRate;
+    /** tanh arguments of the k_empt terms, overwritten in place with their tanh. */
+    final double[] tanhU, tanhV;
+    private final double[][] k1, k2, k3, k4, tmp;
+
+    /** Batch on the Vector API kernel when available, else the scalar kernel. */
+    public HovorkaBatchSolver(List<Lane> lanes) {
+        this(lanes, vectorApiAvailable());
+    }
+
+    /**
+     * @param vectorized use the Vector API kernel; requires {@link #vectorApiAvailable()}
+     */
+    public HovorkaBatchSolver(List<Lane> lanes, boolean vectorized) {
+        if (vectorized && !vectorApiAvailable()) {
+            throw new IllegalStateException("jdk.incubator.vector is not available in this JVM");
+        }
+        int n = lanes.size();
+        this.lanes = n;
+        this.laneInputs = lanes.toArray(new Lane[0]);
+        this.vectorized = vectorized;
+
+        int vars = HovorkaStateBuffer.N;
+        y = new double[vars][n];
+        k1 = new double[vars][n];
+        k2 = new double[vars][n];
+        k3 = new double[vars][n];
+        k4 = new double[vars][n];
+        tmp = new double[vars][n];
+        activeGI = new int[n];
+        mealMmol = new double[n];
+        vG = new double[n];
+        f01 = new double[n];
+        egp0 = new double[n];
+        k12 = new double[n];
+        k21 = new double[n];
+        insulinScale = new double[n];
+        cCal = new double[n];
+        kAbsBase = new double[n];
+        kGri = new double[n];
+        kMax = new double[n];
+        kMin = new double[n];
+        kAbs = new double[n];
+        alpha = new double[n];
+        c = new double[n];
+        bMeal = new double[n];
+        dMeal = new double[n];
+        insulinEffect = new double[n];
+        uptakeRate = new double[n];
+        tanhU = new double[n];
+        tanhV = new double[n];
+
+        for (int k = 0; k < n; k++) {
+            HovorkaParameters p = laneInputs[k].params();
+            HovorkaState s = laneInputs[k].initial();
+            y[HovorkaStateBuffer.Q1][k]           = s.q1();
+            y[HovorkaStateBuffer.Q2][k]           = s.q2();
+            y[HovorkaStateBuffer.QSTO1][k]        = s.qsto1();
+            y[HovorkaStateBuffer.QSTO2][k]        = s.qsto2();
+            y[HovorkaStateBuffer.QGUT][k]         = s.qgut();
+            y[HovorkaStateBuffer.INC][k]          = s.inc();
+            y[HovorkaStateBuffer.X3][k]           = s.x3();
+            y[HovorkaStateBuffer.PROT_FAT_GUT][k] = s.protFatGut();
+            activeGI[k] = s.activeGI();
+            mealMmol[k] = s.mealMmol();
+
+            vG[k]   = p.vG();
+            f01[k]  = p.f01();
+            egp0[k] = p.egp0();
+            k12[k]  = p.k12();
+            k21[k]  = p.k21();
+            insulinScale[k] = p.isf() * p.effectiveInsulinVolume();
+            cCal[k]     = DallaManGutModel.caloricScale(p.tMaxG() * 1.68);
+            kAbsBase[k] = DallaManGutModel.effectiveKAbs(p.tMaxG());
+            refreshGi(k);
+            refreshMeal(k);
+        }
+    }
+
+    /** Minutes integrated so far. */
+    public int minute() {
+        return minute;
+    }
+
+    public int lanes() {
+        return lanes;
+    }
+
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    /** Advances every lane by one minute, applying each lane's inputs for the new minute. */
+    public void step() {
+        int m = ++minute;
+        applyInputs(m);
+
+        derivatives(y, k1);
+        stage(k1, 0.5);
+        derivatives(tmp, k2);
+        stage(k2, 0.5);
+        derivatives(tmp, k3);
+        stage(k3, 1.0);
+        derivatives(tmp, k4);
+
+        for (int v = 0; v < HovorkaStateBuffer.N; v++) {
+            double[] yv = y[v], a = k1[v], b = k2[v], d = k3[v], e = k4[v];
+            for (int k = 0; k < lanes; k++) {
+                yv[k] = Math.max(0.0, yv[k] + (a[k] + 2 * b[k] + 2 * d[k] + e[k]) / 6.0);
+            }
+        }
+    }
+
+    /** Blood glucose of {@code lane} [mmol/L], clamped as {@link HovorkaStateBuffer#glucoseMmolL}. */
+    public double glucoseMmolL(int lane) {
+        return Math.max(1.0, Math.min(25.0, y[HovorkaStateBuffer.Q1][lane] / vG[lane]));
+    }
+
+    public double qgut(int lane) {
+        return y[HovorkaStateBuffer.QGUT][lane];
+    }
+
+    public int activeGI(int lane) {
+        return activeGI[lane];
+    }
+
+    /** Immutable snapshot of one lane. */
+    public HovorkaState state(int lane) {
+        return new HovorkaState(
+                y[HovorkaStateBuffer.Q1][lane], y[HovorkaStateBuffer.Q2][lane],
+                y[HovorkaStateBuffer.QSTO1][lane], y[HovorkaStateBuffer.QSTO2][lane],
+                y[HovorkaStateBuffer.QGUT][lane], y[HovorkaStateBuffer.INC][lane],
+                y[HovorkaStateBuffer.X3][lane], y[HovorkaStateBuffer.PROT_FAT_GUT][lane],
+                mealMmol[lane], activeGI[lane]);
+    }
+
+    // -- Step internals ----------------------------------------------------------
+
+    /** Meal / protein+fat impulses (the scalar step's prologue) and this minute's rate inputs. */
+    private void applyInputs(int m) {
+        double[] qsto1 = y[HovorkaStateBuffer.QSTO1];
+        double[] qsto2 = y[HovorkaStateBuffer.QSTO2];
+        double[] pf    = y[HovorkaStateBuffer.PROT_FAT_GUT];
+        for (int k = 0; k < lanes; k++) {
+            Lane lane = laneInputs[k];
+            double carb = at(lane.carbMmol(), m);
+            if (carb > 0) {
+                double newQsto1 = qsto1[k] + carb;
+                qsto1[k] = newQsto1;
+                mealMmol[k] = newQsto1 + qsto2[k];
+                int tapeGi = m < lane.mealGi().length ? lane.mealGi()[m] : -1;
+                if (tapeGi >= 0 && tapeGi != activeGI[k]) {
+                    activeGI[k] = tapeGi;
+                    refreshGi(k);
+                }
+                refreshMeal(k);
+            }
+            double protFat = at(lane.protFatKcal(), m);
+            if (protFat > 0) pf[k] += protFat;
+            insulinEffect[k] = at(lane.insulinEffect(), m);
+            uptakeRate[k] = at(lane.uptakeRate(), m);
+        }
+    }
+
+    private static double at(double[] tape, int m) {
+        return tape != null && m < tape.length ? tape[m] : 0.0;
+    }
+
+    /** {@code tmp = y + k × h} for every variable and lane. */
+    private void stage(double[][] kStage, double h) {
+        for (int v = 0; v < HovorkaStateBuffer.N; v++) {
+            double[] yv = y[v], kv = kStage[v], tv = tmp[v];
+            if (h == 1.0) {
+                for (int k = 0; k < lanes; k++) tv[k] = yv[k] + kv[k];
+            } else {
+                for (int k = 0; k < lanes; k++) tv[k] = yv[k] + kv[k] * h;
+            }
+        }
+    }
+
+    private void derivatives(double[][] in, double[][] out) {
+        if (vectorized) {
+            VectorApi.KERNEL.derivatives(this, in, out);
+        } else {
+            scalarDerivatives(in, out, 0, lanes);
+        }
+    }
+
+    /** GI scaling on top of the caloric correction (same products as the scalar solver). */
+    private void refreshGi(int k) {
+        double giScale = Math.max(0.3, Math.min(1.5, activeGI[k] / 100.0));
+        kGri[k] = DallaManGutModel.K_GRI * cCal[k] * giScale;
+        kMax[k] = DallaManGutModel.K_MAX * cCal[k] * giScale;
+        kMin[k] = DallaManGutModel.K_MIN * cCal[k] * giScale;
+        kAbs[k] = kAbsBase[k] * giScale;
+    }
+
+    /** k_empt saturation slopes and thresholds for the lane's meal reference D. */
+    private void refreshMeal(int k) {
+        double meal = mealMmol[k];
+        if (meal <= 0.0) {
+            alpha[k] = c[k] = bMeal[k] = dMeal[k] = 0.0;
+            return;
+        }
+        alpha[k] = 5.0 / (2.0 * (1.0 - DallaManGutModel.B) * meal);
+        c[k]     = 5.0 / (2.0 * DallaManGutModel.D_LOW * meal);
+        bMeal[k] = DallaManGutModel.B * meal;
+        dMeal[k] = DallaManGutModel.D_LOW * meal;
+    }
+
+    /**
+     * Per-lane derivatives over lanes {@code [from, to)}: {@link HovorkaOdeSolver#derivatives} with the
+     * per-lane coefficients. Also the tail of the vector kernel.
+     */
+    void scalarDerivatives(double[][] in, double[][] out, int from, int to) {
+        for (int k = from; k < to; k++) {
+            double q1    = Math.max(0.0, in[HovorkaStateBuffer.Q1][k]);
+            double q2    = Math.max(0.0, in[HovorkaStateBuffer.Q2][k]);
+            double qsto1 = Math.max(0.0, in[HovorkaStateBuffer.QSTO1][k]);
+            double qsto2 = Math.max(0.0, in[HovorkaStateBuffer.QSTO2][k]);
+            double qgut  = Math.max(0.0, in[HovorkaStateBuffer.QGUT][k]);
+            double inc   = Math.max(0.0, in[HovorkaStateBuffer.INC][k]);
+            double x3    = Math.max(0.0, in[HovorkaStateBuffer.X3][k]);
+            double pf    = Math.max(0.0, in[HovorkaStateBuffer.PROT_FAT_GUT][k]);
+
+            double g    = Math.max(1.0, Math.min(25.0, q1 / vG[k]));
+            double f01c = f01[k] * Math.min(1.0, g / HovorkaParameters.G_THRESHOLD);
+            double fr   = (g > HovorkaOdeSolver.KE2) ? HovorkaOdeSolver.KE1 * (q1 - HovorkaOdeSolver.KE2 * vG[k]) : 0.0;
+
+            double qsto  = qsto1 + qsto2;
+            double kempt = mealMmol[k] <= 0.0
+                    ? kMin[k]
+                    : kMin[k] + (kMax[k] - kMin[k]) / 2.0
+                      * (Math.tanh(alpha[k] * (qsto - bMeal[k])) - Math.tanh(c[k] * (qsto - dMeal[k])) + 2.0);
+            double kemptEff = kempt * (1.0 / (1.0 + HovorkaOdeSolver.KAPPA_GLP1 * inc));
+            double ra = DallaManGutModel.F * kAbs[k] * qgut;
+
+            double plasmInsulin = insulinScale[k] > 0
+                    ? insulinEffect[k] / insulinScale[k] * HovorkaOdeSolver.V_I_SCALE
+                    : 0.0;
+            double egp = egp0[k] * Math.max(0.0, 1.0 - x3);
+
+            out[HovorkaStateBuffer.Q1][k] = -f01c - fr - k12[k] * q1 + k21[k] * q2
+                    + ra + egp - insulinEffect[k]
+                    - HovorkaOdeSolver.ALPHA_INC * inc * q1
+                    - uptakeRate[k] * q1;
+            out[HovorkaStateBuffer.Q2][k]    = k12[k] * q1 - k21[k] * q2;
+            out[HovorkaStateBuffer.QSTO1][k] = -kGri[k] * qsto1;
+            out[HovorkaStateBuffer.QSTO2][k] = kGri[k] * qsto1 - kemptEff * qsto2;
+            out[HovorkaStateBuffer.QGUT][k]  = kemptEff * qsto2 - kAbs[k] * qgut;
+            out[HovorkaStateBuffer.INC][k]   = HovorkaOdeSolver.K_INC_PF * pf - HovorkaOdeSolver.K_DEL * inc;
+            out[HovorkaStateBuffer.X3][k]    = -HovorkaOdeSolver.KA3 * x3 + HovorkaOdeSolver.KB3 * plasmInsulin;
+            out[HovorkaStateBuffer.PROT_FAT_GUT][k] = -HovorkaOdeSolver.K_PF_DRAIN * pf;
+        }
+    }
+}
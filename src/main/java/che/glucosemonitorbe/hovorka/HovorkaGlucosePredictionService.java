@@ -7,7 +7,7 @@ import che.glucosemonitorbe.dto.RapidInsulinIobParameters;
 import che.glucosemonitorbe.dto.UserSettingsDTO;
 import che.glucosemonitorbe.entity.Note;
 import che.glucosemonitorbe.hovorka.learning.PredictionResidualProvider;
-import che.glucosemonitorbe.service.InsulinCalculatorService;
+import che.glucosemonitorbe.service.InsulinActionTable;
 import che.glucosemonitorbe.service.UserInsulinPreferencesService;
 import che.glucosemonitorbe.service.UserSettingsService;
 import lombok.RequiredArgsConstructor;
@@ -17,6 +17,8 @@ import org.springframework.stereotype.Service;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Hovorka-based glucose prediction path builder.
@@ -224,9 +226,22 @@ public class HovorkaGlucosePredictionService {
     }
 
     /**
-     * Core ODE integration - shared by both public overloads.
+     * A prediction path together with its exact forward sensitivities.
+     *
+     * @param points   the emitted path, identical to {@code buildPredictionPath} for the same inputs
+     * @param dGlucose per emitted point, ∂predictedGlucose/∂θ for θ = (isf, aG, egp0) of the supplied
+     *                 parameters, indexed by {@link HovorkaSensitivityBuffer#ISF}/{@code AG}/{@code EGP0}.
+     *                 Derivative of the un-rounded value; 0 where the [1, 25] mmol/L clamp is active.
      */
-    private List<PredictionPointDTO> buildWithParams(
+    public record SensitivityPath(List<PredictionPointDTO> points, double[][] dGlucose) {}
+
+    /**
+     * Compiles the scale-independent inputs of one prediction path once (see {@link PreparedPath}),
+     * for repeated integration with re-scaled isf / aG / egp by
+     * {@link #buildPredictionPath(PreparedPath, HovorkaParameters, UUID, ActivityProvider)}.
+     * Arguments as in the pre-fetched overload; {@code p} fixes the structural parameters.
+     */
+    public PreparedPath preparePath(
             HovorkaParameters p,
             RapidInsulinIobParameters rapidIob,
             UserSettingsDTO settings,
@@ -235,12 +250,13 @@ public class HovorkaGlucosePredictionService {
             List<CarbsEntry> pastCarbsEntries,
             List<InsulinDose> pastInsulinDoses,
             List<Note> longActingNotes,
-            UUID userId,
-            int pathMinutes,
-            ActivityProvider activityProvider) {
+            int pathMinutes) {
 
-        // -- State warm-up -----------------------------------------------------
-        HovorkaState state = buildWarmState(currentGlucose, pastCarbsEntries, currentTime, p);
+        // -- State warm-up. The gut part scales with aG, so warm up at a positive reference aG
+        //    (the supplied one when it is, so the live path keeps its exact state) ---------------
+        HovorkaParameters pWarm = p.aG() > 0 ? p : new HovorkaParameters(
+                p.vG(), p.f01(), p.egpNet(), p.egp0(), p.k12(), p.k21(), p.tMaxG(), 1.0, p.isf(), p.weightKg());
+        HovorkaState warm = buildWarmState(currentGlucose, pastCarbsEntries, currentTime, pWarm);
 
         // -- EGP net from long-acting insulin ----------------------------------
         double x3Basal  = basalResolver.resolveEgpSuppression(longActingNotes, currentTime);
@@ -251,36 +267,106 @@ public class HovorkaGlucosePredictionService {
         if (longActingNotes == null || longActingNotes.isEmpty()) {
             egpNow = p.f01();
         }
-        // Re-parameterise: set egpNet = egpNow (basal-adjusted) and egp0 = egpNow as well.
-        // Gap 1 (EGP suppression) is fully active during active boluses: x3 rises with plasma
-        // insulin, suppressing EGP beyond its basal level. However, the basal/fasting case is
-        // not improved here — egp0 is set equal to egpNow so EGP(t=0) = egpNow regardless of
-        // x3's value, keeping it stable without a modelled basal PK compartment. A complete
-        // basal EGP bias correction requires a steady-state PK compartment (future work).
-        HovorkaParameters pAdj = new HovorkaParameters(
-                p.vG(), p.f01(), egpNow, egpNow, p.k12(), p.k21(),
-                p.tMaxG(), p.aG(), p.isf(), p.weightKg());
 
         // With egp0 = egpNow and x3=0: EGP(0) = egpNow*(1-0) = egpNow (correct starting EGP).
         // x3Init = 0: no prior x3 suppression needed; boluses drive x3 up during the prediction.
         // x3 stays near 0 without insulin (dx3 = 0 at x3=0, plasmInsulin=0).
-        state = state.withX3(0.0);
+        warm = warm.withX3(0.0);
+
+        return compilePreparedPath(p, pWarm.aG(), warm, egpNow, pastCarbsEntries, pastInsulinDoses,
+                currentTime, pathMinutes, rapidIob, settings);
+    }
+
+    /**
+     * Integrates a {@link PreparedPath} with parameters {@code p}, which may differ from the preparing
+     * set only in isf, aG and egp (the digital-twin scales). The result is the path the pre-fetched
+     * overload builds from the same raw inputs; it is bit-identical when aG is unchanged, otherwise
+     * equal up to floating-point rounding of the rescaled warm gut state.
+     */
+    public List<PredictionPointDTO> buildPredictionPath(
+            PreparedPath prepared,
+            HovorkaParameters p,
+            UUID userId,
+            ActivityProvider activityProvider) {
+        return integrate(prepared, p, userId, activityProvider, OdeIntegrator.RK4, null);
+    }
+
+    /**
+     * As {@link #buildPredictionPath(PreparedPath, HovorkaParameters, UUID, ActivityProvider)}, with the
+     * numerical scheme chosen by the caller. {@link OdeIntegrator#DORMAND_PRINCE} agrees with the RK4
+     * path to within the integrator's tolerance, not bit for bit.
+     */
+    public List<PredictionPointDTO> buildPredictionPath(
+            PreparedPath prepared,
+            HovorkaParameters p,
+            UUID userId,
+            ActivityProvider activityProvider,
+            OdeIntegrator integrator) {
+        return integrate(prepared, p, userId, activityProvider, integrator, null);
+    }
+
+    /**
+     * As {@link #buildPredictionPath(PreparedPath, HovorkaParameters, UUID, ActivityProvider)}, but
+     * integrates the forward sensitivity equations alongside the state so a single pass yields both
+     * the path and its Jacobian with respect to (isf, aG, egp0). Used by digital-twin calibration
+     * instead of finite-difference re-replays.
+     *
+     * <p>Note that egp0 is re-derived from F01 / the basal resolver when the path is prepared (see the
+     * EGP re-parameterisation in {@link #integrate}), so ∂/∂egp0 of the supplied parameters is
+     * identically 0 here.</p>
+     */
+    public SensitivityPath buildPredictionPathWithSensitivity(
+            PreparedPath prepared,
+            HovorkaParameters p,
+            UUID userId,
+            ActivityProvider activityProvider) {
+
+        List<double[]> gradients = new ArrayList<>();
+        List<PredictionPointDTO> points = integrate(prepared, p, userId, activityProvider, OdeIntegrator.RK4,
+                gradients);
+        return new SensitivityPath(points, gradients.toArray(new double[0][]));
+    }
+
+    private List<PredictionPointDTO> buildWithParams(
+            HovorkaParameters p,
+            RapidInsulinIobParameters rapidIob,
+            UserSettingsDTO settings,
+            double currentGlucose,
+            LocalDateTime currentTime,
+            List<CarbsEntry> pastCarbsEntries,
+            List<InsulinDose> pastInsulinDoses,
+            List<Note> longActingNotes,
+            UUID userId,
+            int pathMinutes,
+            ActivityProvider activityProvider) {
+        PreparedPath prepared = preparePath(p, rapidIob, settings, currentGlucose, currentTime,
+                pastCarbsEntries, pastInsulinDoses, longActingNotes, pathMinutes);
+        return integrate(prepared, p, userId, activityProvider, OdeIntegrator.RK4, null);
+    }
 
-        // -- Pre-compute per-dose IOB timelines, each tagged with the ISF that --
-        //    was in effect when that dose was administered --------------------
-        List<DoseActivity> doseActivities = buildDoseActivities(pastInsulinDoses, currentTime,
-                pathMinutes, rapidIob, settings, pAdj.isf());
+    /**
+     * Core ODE integration - shared by every public overload. When {@code sensitivityOut} is non-null
+     * the forward sensitivities are integrated too and one gradient is appended per emitted point;
+     * those are RK4-only, so {@code integrator} is then ignored.
+     */
+    private List<PredictionPointDTO> integrate(
+            PreparedPath prepared,
+            HovorkaParameters p,
+            UUID userId,
+            ActivityProvider activityProvider,
+            OdeIntegrator integrator,
+            List<double[]> sensitivityOut) {
 
-        // -- Future carb timeline (prospective notes already in pastCarbsEntries
-        //    with future timestamps - carbs at t <= now were in the warm-up) ---
-        Map<Integer, Double> futureCarbs = buildFutureCarbTimeline(
-                pastCarbsEntries, currentTime, pAdj);
+        prepared.checkStructure(p);
+        LocalDateTime currentTime = prepared.now;
+        int pathMinutes = prepared.pathMinutes;
+        HovorkaState state = prepared.warmStateFor(p.aG());
 
-        // -- Future GI timeline: parallel map of minute -> GI for future meals --
-        Map<Integer, Integer> futureGiMap = buildFutureGiTimeline(pastCarbsEntries, currentTime);
+        HovorkaParameters pAdj = adjustedParams(prepared, p);
 
-        // -- Future protein+fat timeline: drives protFatGut compartment (GLP-1 ileal brake) --
-        Map<Integer, Double> futureProtFat = buildFutureProtFatTimeline(pastCarbsEntries, currentTime);
+        // -- Per-minute inputs: the prepared GI / protein+fat tapes plus the carb and insulin tapes
+        //    re-accumulated for this aG / isf ------------------------------------------------------
+        InputTape tape = compileInputTape(prepared, pAdj, sensitivityOut != null);
 
         // -- Integration loop (1-min steps) -----------------------------------
 
@@ -302,40 +388,84 @@ public class HovorkaGlucosePredictionService {
             }
         }
 
-        for (int min = 1; min <= pathMinutes; min++) {
-            // insulinEffect: mmol of glucose removed from Q1 per minute, summed across all
-            // active doses. effectiveInsulinVolume = 2×VG corrects for the 2-compartment
-            // distribution factor (see HovorkaParameters.effectiveInsulinVolume() for
-            // derivation). Each dose's ISF was resolved once, from the time the dose was
-            // administered - a manual isfBreakfast/isfLunch/isfDinner override applies to a
-            // dose's entire activity curve if the dose was given in that window, even once
-            // most of its activity plays out after the window ends (e.g. a dinner-time
-            // correction bolus peaking after 22:00 still uses isfDinner).
-            double insulinEffect = 0.0;
-            for (DoseActivity dose : doseActivities) {
-                // IOB activity rate: how many units/min this dose is "working" during the
-                // step that advances state from t=now+(min-1) to t=now+min, i.e. the IOB
-                // decay during [min-1, min] - NOT [min, min+1].
-                double iobActivityRate = iobActivityRate(dose.iobTimeline(), min - 1);
-                insulinEffect += dose.isf() * pAdj.effectiveInsulinVolume() * iobActivityRate;
+        // Allocation-free integration: one mutable state buffer and one RK4 workspace for the path.
+        HovorkaStateBuffer buf = HovorkaStateBuffer.of(state);
+        HovorkaOdeSolver.Workspace ws = new HovorkaOdeSolver.Workspace();
+
+        // -- Forward sensitivities (calibration only). pAdj.isf() is the supplied isf (unit seed);
+        //    pAdj.egp0() is re-derived above independently of the supplied egp0 (zero seed). The warm
+        //    gut state is proportional to aG: every warm-up meal scales with aG and k_empt depends only
+        //    on Qsto/D, so ∂(Qsto1, Qsto2, Qgut, D)/∂aG = value / aG. The sensor filter is linear, so
+        //    its tangent is the same filter seeded at 0. --
+        HovorkaSensitivityBuffer sens = null;
+        InterstitialLagModel[] dSensor = null;
+        double[] dCarb = null, dIe = null, dSensed = null;
+        if (sensitivityOut != null) {
+            sens = new HovorkaSensitivityBuffer()
+                    .egp0Seed(HovorkaSensitivityBuffer.EGP0, 0.0);
+            if (p.aG() > 0) {
+                int ag = HovorkaSensitivityBuffer.AG;
+                sens.seedState(ag, HovorkaStateBuffer.QSTO1, buf.qsto1() / p.aG())
+                    .seedState(ag, HovorkaStateBuffer.QSTO2, buf.qsto2() / p.aG())
+                    .seedState(ag, HovorkaStateBuffer.QGUT, buf.qgut() / p.aG())
+                    .seedMealMmol(ag, buf.mealMmol() / p.aG());
             }
+            dSensor = new InterstitialLagModel[HovorkaSensitivityBuffer.NP];
+            for (int j = 0; j < dSensor.length; j++) dSensor[j] = InterstitialLagModel.startingAt(0.0);
+            dCarb   = new double[HovorkaSensitivityBuffer.NP];
+            dIe     = new double[HovorkaSensitivityBuffer.NP];
+            dSensed = new double[HovorkaSensitivityBuffer.NP];
+        }
 
-            // Future carbs delivered to gut D1 at this minute [mmol]
-            double carbMmol = futureCarbs.getOrDefault(min, 0.0);
-            int    mealGI   = futureGiMap.getOrDefault(min, state.activeGI());
-            double protFatKcalNow = futureProtFat.getOrDefault(min, 0.0);
+        // -- Adaptive alternative: activity depends on time alone, so its modulation is compiled into
+        //    per-minute tapes up front and the integrator steps across as many minutes as it can. --
+        DormandPrinceIntegrator adaptive = null;
+        if (integrator == OdeIntegrator.DORMAND_PRINCE && sens == null) {
+            ModulatedInputs inputs = modulatedInputs(tape, activityProvider, currentTime, pathMinutes);
+            adaptive = new DormandPrinceIntegrator(odeSolver, pAdj, tape, inputs.insulinEffect(),
+                    inputs.uptakeRate(), buf, pathMinutes);
+        }
 
-            if (hasActivity) {
-                double aInst = activityProvider.intensityAt(currentTime.plusMinutes(min));
-                double aSens = activity.stepSensitivity(aInst);
-                double insulinEffectMod = insulinEffect * activity.insulinSensitivityFactor(aSens);
-                state = odeSolver.step(state, pAdj, carbMmol, mealGI, protFatKcalNow, insulinEffectMod, activity.uptakeRate(aInst));
+        for (int min = 1; min <= pathMinutes; min++) {
+            // Per-minute inputs are plain index reads from the compiled tape.
+            double insulinEffect  = tape.insulinEffect()[min];
+
+            if (adaptive != null) {
+                adaptive.advanceTo(min, buf);
             } else {
-                state = odeSolver.step(state, pAdj, carbMmol, mealGI, protFatKcalNow, insulinEffect, 0.0);
+                double carbMmol       = tape.carbMmol()[min];
+                int    tapeGi         = tape.mealGi()[min];
+                int    mealGI         = tapeGi >= 0 ? tapeGi : buf.activeGI();
+                double protFatKcalNow = tape.protFatKcal()[min];
+
+                double insulinEffectStep = insulinEffect;
+                double uptakeRate = 0.0;
+                double sensitivityFactor = 1.0;
+                if (hasActivity) {
+                    double aInst = activityProvider.intensityAt(currentTime.plusMinutes(min));
+                    double aSens = activity.stepSensitivity(aInst);
+                    sensitivityFactor = activity.insulinSensitivityFactor(aSens);
+                    insulinEffectStep = insulinEffect * sensitivityFactor;
+                    uptakeRate = activity.uptakeRate(aInst);
+                }
+
+                if (sens == null) {
+                    odeSolver.step(buf, pAdj, carbMmol, mealGI, protFatKcalNow, insulinEffectStep, uptakeRate, ws);
+                } else {
+                    dCarb[HovorkaSensitivityBuffer.AG] = p.aG() > 0 ? carbMmol / p.aG() : 0.0;
+                    dIe[HovorkaSensitivityBuffer.ISF]  = tape.insulinEffectDIsf()[min] * sensitivityFactor;
+                    odeSolver.step(buf, sens, pAdj, carbMmol, dCarb, mealGI, protFatKcalNow,
+                            insulinEffectStep, dIe, uptakeRate, ws);
+                }
             }
 
             // Advance the sensor model every minute, not only at emission points.
-            double gSensed = sensor.step(state.glucoseMmolL(pAdj));
+            double gSensed = sensor.step(buf.glucoseMmolL(pAdj));
+            if (sens != null) {
+                for (int j = 0; j < dSensed.length; j++) {
+                    dSensed[j] = dSensor[j].step(sens.dGlucoseMmolL(j, buf, pAdj));
+                }
+            }
 
             if (min == nextEmit) {
                 LocalDateTime pointTime = currentTime.plusMinutes(min);
@@ -345,18 +475,11 @@ public class HovorkaGlucosePredictionService {
                 // physiological range. NONE provider (calibration replay) leaves gPred untouched.
                 double correction = residualProvider.residualMmol(userId, pointTime);
                 double gAdj = Math.max(G_MIN, Math.min(G_MAX, gPred + correction));
-                double giScaleDisplay = Math.max(0.3, Math.min(1.5, state.activeGI() / 100.0));
-                double kAbsDisplay = DallaManGutModel.effectiveKAbs(pAdj.tMaxG()) * giScaleDisplay;
-                double carbEffect  = gutModel.ra(state.qgut(), kAbsDisplay) * DENSE_STEP_MIN;
-                double insulinEff  = -insulinEffect * DENSE_STEP_MIN;
-
-                points.add(PredictionPointDTO.builder()
-                        .timestamp(pointTime)
-                        .predictedGlucose(Math.round(gAdj * 10.0) / 10.0)
-                        .carbAbsorptionEffect(Math.round(carbEffect * 100.0) / 100.0)
-                        .insulinActivityEffect(Math.round(insulinEff * 100.0) / 100.0)
-                        .absorptionMode("DALLA_MAN_3COMP")
-                        .build());
+                if (sensitivityOut != null) {
+                    boolean clamped = gPred + correction <= G_MIN || gPred + correction >= G_MAX;
+                    sensitivityOut.add(clamped ? new double[HovorkaSensitivityBuffer.NP] : dSensed.clone());
+                }
+                points.add(point(pointTime, gAdj, buf.activeGI(), buf.qgut(), pAdj, insulinEffect));
 
                 nextEmit += (min < DENSE_LIMIT_MIN ? DENSE_STEP_MIN : SPARSE_STEP_MIN);
             }
@@ -365,6 +488,390 @@ public class HovorkaGlucosePredictionService {
         return points;
     }
 
+    /** One emitted point: the corrected glucose plus the display-only carb and insulin effects. */
+    private PredictionPointDTO point(LocalDateTime pointTime, double gAdj, int activeGI, double qgut,
+                                     HovorkaParameters pAdj, double insulinEffect) {
+        double giScaleDisplay = Math.max(0.3, Math.min(1.5, activeGI / 100.0));
+        double kAbsDisplay = DallaManGutModel.effectiveKAbs(pAdj.tMaxG()) * giScaleDisplay;
+        double carbEffect  = gutModel.ra(qgut, kAbsDisplay) * DENSE_STEP_MIN;
+        double insulinEff  = -insulinEffect * DENSE_STEP_MIN;
+
+        return PredictionPointDTO.builder()
+                .timestamp(pointTime)
+                .predictedGlucose(Math.round(gAdj * 10.0) / 10.0)
+                .carbAbsorptionEffect(Math.round(carbEffect * 100.0) / 100.0)
+                .insulinActivityEffect(Math.round(insulinEff * 100.0) / 100.0)
+                .absorptionMode("DALLA_MAN_3COMP")
+                .build();
+    }
+
+    /**
+     * Re-parameterise: set egpNet = egpNow (basal-adjusted) and egp0 = egpNow as well.
+     * Gap 1 (EGP suppression) is fully active during active boluses: x3 rises with plasma
+     * insulin, suppressing EGP beyond its basal level. However, the basal/fasting case is
+     * not improved here — egp0 is set equal to egpNow so EGP(t=0) = egpNow regardless of
+     * x3's value, keeping it stable without a modelled basal PK compartment. A complete
+     * basal EGP bias correction requires a steady-state PK compartment (future work).
+     */
+    private static HovorkaParameters adjustedParams(PreparedPath prepared, HovorkaParameters p) {
+        double egpNow = prepared.egpNow;
+        return new HovorkaParameters(
+                p.vG(), p.f01(), egpNow, egpNow, p.k12(), p.k21(),
+                p.tMaxG(), p.aG(), p.isf(), p.weightKg());
+    }
+
+    // -- Resumable integration -------------------------------------------------
+
+    /**
+     * Opens a {@link PathCursor} on a prepared path: the same raw forward integration as
+     * {@link #buildPredictionPath(PreparedPath, HovorkaParameters, UUID, ActivityProvider)}, advanced
+     * on demand, so a consumer that follows CGM readings as they arrive carries the ODE state forward
+     * instead of re-integrating from the anchor on every pass. The digital-twin residual correction is
+     * never applied.
+     */
+    public PathCursor openCursor(PreparedPath prepared, HovorkaParameters p, ActivityProvider activityProvider) {
+        prepared.checkStructure(p);
+        HovorkaParameters pAdj = adjustedParams(prepared, p);
+        return new PathCursor(odeSolver, pAdj, compileInputTape(prepared, pAdj, false),
+                prepared.warmStateFor(p.aG()), prepared.now, prepared.pathMinutes, activityProvider);
+    }
+
+    /**
+     * Forward integration of one prepared path that advances only as far as it is asked to. Minute
+     * {@code m} yields exactly the {@code predictedGlucose} the full path emits at {@code now + m}
+     * (with {@link PredictionResidualProvider#NONE}); unlike the emitted path, every minute up to the
+     * prepared horizon is addressable. Not thread-safe.
+     */
+    public static final class PathCursor {
+        private final HovorkaOdeSolver odeSolver;
+        private final HovorkaParameters pAdj;
+        private final InputTape tape;
+        private final LocalDateTime anchor;
+        private final int horizonMinutes;
+        private final ActivityProvider activityProvider;
+        private final boolean hasActivity;
+        private final ActivityModulation activity = new ActivityModulation();
+        private final HovorkaStateBuffer buf;
+        private final HovorkaOdeSolver.Workspace ws = new HovorkaOdeSolver.Workspace();
+        private final InterstitialLagModel sensor;
+        private int minute;
+        private double sensed;
+
+        private PathCursor(HovorkaOdeSolver odeSolver, HovorkaParameters pAdj, InputTape tape,
+                           HovorkaState warm, LocalDateTime anchor, int horizonMinutes,
+                           ActivityProvider activityProvider) {
+            this.odeSolver = odeSolver;
+            this.pAdj = pAdj;
+            this.tape = tape;
+            this.anchor = anchor;
+            this.horizonMinutes = horizonMinutes;
+            this.activityProvider = activityProvider;
+            this.hasActivity = activityProvider != ActivityProvider.NONE;
+            this.buf = HovorkaStateBuffer.of(warm);
+            this.sensor = InterstitialLagModel.startingAt(warm.glucoseMmolL(pAdj));
+            this.sensed = warm.glucoseMmolL(pAdj);
+            if (hasActivity) {
+                for (int m = ActivityModulation.WARMUP_MINUTES; m >= 1; m--) {
+                    activity.stepSensitivity(activityProvider.intensityAt(anchor.minusMinutes(m)));
+                }
+            }
+        }
+
+        /** The anchor ("now" of the prepared path). */
+        public LocalDateTime anchor() {
+            return anchor;
+        }
+
+        /** Last addressable minute. */
+        public int horizonMinutes() {
+            return horizonMinutes;
+        }
+
+        /**
+         * Integrates up to {@code target} minutes after the anchor and returns the predicted glucose
+         * there [mmol/L, clamped, 0.1 precision].
+         *
+         * @throws IllegalArgumentException if {@code target} is behind the cursor or past the horizon
+         */
+        public double advanceTo(int target) {
+            if (target < minute || target > horizonMinutes) {
+                throw new IllegalArgumentException(
+                        "minute " + target + " outside [" + minute + ", " + horizonMinutes + "]");
+            }
+            while (minute < target) {
+                int min = ++minute;
+                double insulinEffect = tape.insulinEffect()[min];
+                int    tapeGi        = tape.mealGi()[min];
+                double uptakeRate    = 0.0;
+                if (hasActivity) {
+                    double aInst = activityProvider.intensityAt(anchor.plusMinutes(min));
+                    insulinEffect *= activity.insulinSensitivityFactor(activity.stepSensitivity(aInst));
+                    uptakeRate = activity.uptakeRate(aInst);
+                }
+                odeSolver.step(buf, pAdj, tape.carbMmol()[min], tapeGi >= 0 ? tapeGi : buf.activeGI(),
+                        tape.protFatKcal()[min], insulinEffect, uptakeRate, ws);
+                sensed = sensor.step(buf.glucoseMmolL(pAdj));
+            }
+            return Math.round(Math.max(G_MIN, Math.min(G_MAX, sensed)) * 10.0) / 10.0;
+        }
+    }
+
+    // -- Branched integration --------------------------------------------------
+
+    /**
+     * One alternative future for {@link #buildBranchedPredictionPaths}: carb entries at or after
+     * "now" added to the shared history, and the branch's own path length [min].
+     */
+    public record PathBranch(List<CarbsEntry> prospectiveCarbs, int pathMinutes) {}
+
+    /**
+     * Builds one path per branch for futures that differ only in their prospective carbs - the same
+     * bolus with the meal at different pre-bolus pauses, say. Path {@code i} is exactly what
+     * {@code buildPredictionPath(customParams, currentGlucose, currentTime, pastCarbsEntries +
+     * branches[i].prospectiveCarbs, insulinDoses, longActingNotes, userId, branches[i].pathMinutes)}
+     * returns, but the warm-up, the IOB tapes and every minute before a branch's first own input are
+     * computed once: a shared trunk is integrated up to the latest divergence, checkpointed where each
+     * branch leaves it, and the branches continue from their checkpoints - on {@code pool} when one is
+     * given, otherwise on the calling thread.
+     *
+     * @throws IllegalArgumentException if a prospective entry lies before {@code currentTime}
+     */
+    public List<List<PredictionPointDTO>> buildBranchedPredictionPaths(
+            HovorkaParameters customParams,
+            double currentGlucose,
+            LocalDateTime currentTime,
+            List<CarbsEntry> pastCarbsEntries,
+            List<InsulinDose> insulinDoses,
+            List<Note> longActingNotes,
+            UUID userId,
+            List<PathBranch> branches,
+            ForkJoinPool pool) {
+
+        int n = branches.size();
+        int maxMinutes = 0;
+        for (PathBranch b : branches) {
+            maxMinutes = Math.max(maxMinutes, b.pathMinutes());
+            for (CarbsEntry e : b.prospectiveCarbs()) {
+                if (e.getTimestamp() != null && minsAgoFromNow(e.getTimestamp(), currentTime) > 0) {
+                    throw new IllegalArgumentException(
+                            "prospective carb entry at " + e.getTimestamp() + " is before " + currentTime);
+                }
+            }
+        }
+
+        // Prospective entries never reach the warm-up, so the trunk's warm state, EGP and IOB tapes
+        // are every branch's own.
+        RapidInsulinIobParameters rapidIob = insulinPrefsService.getRapidIobParameters(userId);
+        UserSettingsDTO settings = userSettingsService.getUserSettings(userId);
+        PreparedPath trunk = preparePath(customParams, rapidIob, settings, currentGlucose, currentTime,
+                pastCarbsEntries, insulinDoses, longActingNotes, maxMinutes);
+        HovorkaParameters pAdj = adjustedParams(trunk, customParams);
+        InputTape trunkTape = compileInputTape(trunk, pAdj, false);
+
+        InputTape[] tapes = new InputTape[n];
+        int[] fork = new int[n];
+        for (int i = 0; i < n; i++) {
+            PathBranch b = branches.get(i);
+            List<CarbsEntry> carbs = new ArrayList<>(pastCarbsEntries.size() + b.prospectiveCarbs().size());
+            carbs.addAll(pastCarbsEntries);
+            carbs.addAll(b.prospectiveCarbs());
+            CarbTapes c = compileCarbTapes(carbs, currentTime, maxMinutes);
+            tapes[i] = new InputTape(carbMmol(c.carbMinute(), c.carbGrams(), maxMinutes + 1, pAdj.aG()),
+                    c.mealGi(), c.protFatKcal(), trunkTape.insulinEffect(), null);
+            fork[i] = firstOwnMinute(trunkTape, tapes[i], b.pathMinutes());
+        }
+
+        // -- Trunk: one pass, checkpointed just before each branch's first own minute ----------
+        Integer[] byFork = new Integer[n];
+        for (int i = 0; i < n; i++) byFork[i] = i;
+        Arrays.sort(byFork, Comparator.comparingInt(i -> fork[i]));
+        Trajectory trunkRun = new Trajectory(trunk.warmStateFor(customParams.aG()), pAdj, currentTime, userId);
+        Trajectory[] runs = new Trajectory[n];
+        for (int i : byFork) {
+            trunkRun.advance(trunkTape, fork[i] - 1);
+            runs[i] = trunkRun.copy();
+        }
+
+        // -- Branches: independent continuations from their checkpoints ------------------------
+        if (pool == null || n < 2) {
+            for (int i = 0; i < n; i++) runs[i].advance(tapes[i], branches.get(i).pathMinutes());
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                Trajectory run = runs[i];
+                InputTape tape = tapes[i];
+                int minutes = branches.get(i).pathMinutes();
+                tasks.add(pool.submit(() -> run.advance(tape, minutes)));
+            }
+            tasks.forEach(ForkJoinTask::join);
+        }
+
+        List<List<PredictionPointDTO>> paths = new ArrayList<>(n);
+        for (Trajectory run : runs) paths.add(run.points);
+        return paths;
+    }
+
+    /** First minute in {@code 1..pathMinutes} whose inputs differ from the trunk's; pathMinutes + 1 if none. */
+    private static int firstOwnMinute(InputTape trunk, InputTape branch, int pathMinutes) {
+        for (int min = 1; min <= pathMinutes; min++) {
+            if (branch.carbMmol()[min] != trunk.carbMmol()[min]
+                    || branch.mealGi()[min] != trunk.mealGi()[min]
+                    || branch.protFatKcal()[min] != trunk.protFatKcal()[min]) {
+                return min;
+            }
+        }
+        return pathMinutes + 1;
+    }
+
+    /**
+     * The un-modulated forward integration of {@link #integrate} with its emitted points, as a
+     * value that can be advanced piecewise and copied at a checkpoint. Not thread-safe; a copy
+     * shares nothing mutable with its source.
+     */
+    private final class Trajectory {
+        private final HovorkaParameters pAdj;
+        private final LocalDateTime anchor;
+        private final UUID userId;
+        private final HovorkaStateBuffer buf;
+        private final HovorkaOdeSolver.Workspace ws = new HovorkaOdeSolver.Workspace();
+        private final InterstitialLagModel sensor;
+        private final List<PredictionPointDTO> points;
+        private int minute;
+        private int nextEmit = DENSE_STEP_MIN;
+
+        Trajectory(HovorkaState warm, HovorkaParameters pAdj, LocalDateTime anchor, UUID userId) {
+            this.pAdj = pAdj;
+            this.anchor = anchor;
+            this.userId = userId;
+            this.buf = HovorkaStateBuffer.of(warm);
+            this.sensor = InterstitialLagModel.startingAt(warm.glucoseMmolL(pAdj));
+            this.points = new ArrayList<>();
+        }
+
+        private Trajectory(Trajectory from) {
+            this.pAdj = from.pAdj;
+            this.anchor = from.anchor;
+            this.userId = from.userId;
+            this.buf = new HovorkaStateBuffer().copyFrom(from.buf);
+            this.sensor = from.sensor.copy();
+            this.points = new ArrayList<>(from.points);
+            this.minute = from.minute;
+            this.nextEmit = from.nextEmit;
+        }
+
+        Trajectory copy() {
+            return new Trajectory(this);
+        }
+
+        /** Integrates with {@code tape} up to {@code target} minutes after the anchor. */
+        void advance(InputTape tape, int target) {
+            while (minute < target) {
+                int min = ++minute;
+                double insulinEffect = tape.insulinEffect()[min];
+                int    tapeGi        = tape.mealGi()[min];
+                odeSolver.step(buf, pAdj, tape.carbMmol()[min], tapeGi >= 0 ? tapeGi : buf.activeGI(),
+                        tape.protFatKcal()[min], insulinEffect, 0.0, ws);
+                double gSensed = sensor.step(buf.glucoseMmolL(pAdj));
+
+                if (min == nextEmit) {
+                    LocalDateTime pointTime = anchor.plusMinutes(min);
+                    double correction = residualProvider.residualMmol(userId, pointTime);
+                    double gAdj = Math.max(G_MIN, Math.min(G_MAX, gSensed + correction));
+                    points.add(point(pointTime, gAdj, buf.activeGI(), buf.qgut(), pAdj, insulinEffect));
+                    nextEmit += (min < DENSE_LIMIT_MIN ? DENSE_STEP_MIN : SPARSE_STEP_MIN);
+                }
+            }
+        }
+    }
+
+    // -- Batched integration ---------------------------------------------------
+
+    /**
+     * Integrates many prepared paths at once on the structure-of-arrays {@link HovorkaBatchSolver}, all
+     * lanes advancing minute by minute in lock-step. Path {@code i} equals
+     * {@link #buildPredictionPath(PreparedPath, HovorkaParameters, UUID, ActivityProvider)} of
+     * {@code prepared[i]} with {@code params[i]} bit for bit; paths may have different horizons. Meant for
+     * callers that integrate dozens of independent anchors or candidates per pass (calibration replay).
+     */
+    public List<List<PredictionPointDTO>> buildPredictionPaths(
+            List<PreparedPath> prepared,
+            List<HovorkaParameters> params,
+            UUID userId,
+            ActivityProvider activityProvider) {
+
+        int n = prepared.size();
+        if (params.size() != n) {
+            throw new IllegalArgumentException(n + " prepared paths but " + params.size() + " parameter sets");
+        }
+        HovorkaParameters[] pAdj = new HovorkaParameters[n];
+        double[][] insulinEffect = new double[n][];
+        InterstitialLagModel[] sensors = new InterstitialLagModel[n];
+        List<HovorkaBatchSolver.Lane> lanes = new ArrayList<>(n);
+        List<List<PredictionPointDTO>> paths = new ArrayList<>(n);
+        int maxMinutes = 0;
+        for (int i = 0; i < n; i++) {
+            PreparedPath path = prepared.get(i);
+            HovorkaParameters p = params.get(i);
+            path.checkStructure(p);
+            pAdj[i] = adjustedParams(path, p);
+            HovorkaState state = path.warmStateFor(p.aG());
+            InputTape tape = compileInputTape(path, pAdj[i], false);
+            ModulatedInputs inputs = modulatedInputs(tape, activityProvider, path.now, path.pathMinutes);
+            lanes.add(new HovorkaBatchSolver.Lane(pAdj[i], state, tape.carbMmol(), tape.mealGi(),
+                    tape.protFatKcal(), inputs.insulinEffect(), inputs.uptakeRate()));
+            insulinEffect[i] = tape.insulinEffect();
+            sensors[i] = InterstitialLagModel.startingAt(state.glucoseMmolL(pAdj[i]));
+            paths.add(new ArrayList<>());
+            maxMinutes = Math.max(maxMinutes, path.pathMinutes);
+        }
+
+        HovorkaBatchSolver solver = new HovorkaBatchSolver(lanes);
+        int nextEmit = DENSE_STEP_MIN;
+        for (int min = 1; min <= maxMinutes; min++) {
+            solver.step();
+            boolean emit = min == nextEmit;
+            for (int i = 0; i < n; i++) {
+                PreparedPath path = prepared.get(i);
+                if (min > path.pathMinutes) continue;
+                double gSensed = sensors[i].step(solver.glucoseMmolL(i));
+                if (emit) {
+                    LocalDateTime pointTime = path.now.plusMinutes(min);
+                    double correction = residualProvider.residualMmol(userId, pointTime);
+                    double gAdj = Math.max(G_MIN, Math.min(G_MAX, gSensed + correction));
+                    paths.get(i).add(point(pointTime, gAdj, solver.activeGI(i), solver.qgut(i), pAdj[i],
+                            insulinEffect[i][min]));
+                }
+            }
+            if (emit) nextEmit += (min < DENSE_LIMIT_MIN ? DENSE_STEP_MIN : SPARSE_STEP_MIN);
+        }
+        return paths;
+    }
+
+    /** Per-minute insulin effect and activity uptake with the activity modulation applied. */
+    private record ModulatedInputs(double[] insulinEffect, double[] uptakeRate) {}
+
+    /**
+     * Activity depends on time alone, so its modulation can be compiled into tapes up front for the
+     * integrators that do not step minute by minute. NONE returns the tape's own insulin effect and no
+     * uptake; otherwise the same sequence of {@link ActivityModulation} updates as the RK4 loop.
+     */
+    private static ModulatedInputs modulatedInputs(InputTape tape, ActivityProvider activityProvider,
+                                                   LocalDateTime currentTime, int pathMinutes) {
+        if (activityProvider == ActivityProvider.NONE) return new ModulatedInputs(tape.insulinEffect(), null);
+        ActivityModulation activity = new ActivityModulation();
+        for (int m = ActivityModulation.WARMUP_MINUTES; m >= 1; m--) {
+            activity.stepSensitivity(activityProvider.intensityAt(currentTime.minusMinutes(m)));
+        }
+        double[] insulinEffect = tape.insulinEffect().clone();
+        double[] uptakeRate = new double[pathMinutes + 1];
+        for (int min = 1; min <= pathMinutes; min++) {
+            double aInst = activityProvider.intensityAt(currentTime.plusMinutes(min));
+            insulinEffect[min] *= activity.insulinSensitivityFactor(activity.stepSensitivity(aInst));
+            uptakeRate[min] = activity.uptakeRate(aInst);
+        }
+        return new ModulatedInputs(insulinEffect, uptakeRate);
+    }
+
     // -- State warm-up ---------------------------------------------------------
 
     /**
@@ -451,172 +958,247 @@ public class HovorkaGlucosePredictionService {
         return warm;
     }
 
-    // -- Per-dose IOB timelines -----------------------------------------------
+    // -- Prepared inputs and compiled input tapes ---------------------------------
 
-    /**
-     * A single insulin dose's IOB [units] timeline (index 0 = current time, index m =
-     * currentTime + m minutes) paired with the ISF [mmol/L per unit] resolved from the
-     * moment the dose was administered.
-     */
-    private record DoseActivity(double[] iobTimeline, double isf) {}
+    /** Sentinel in {@link InputTape#mealGi()}: no meal lands at this minute (keep the active GI). */
+    static final int NO_MEAL_GI = -1;
 
     /**
-     * Pre-computes, for each past or prospective dose, its IOB timeline from the OpenAPS
-     * curve and the ISF in effect when it was administered: the user's manual
-     * isfBreakfast/isfLunch/isfDinner/isfNight override for the dose's own meal window, or
-     * {@code fallbackIsf} if none applies.
+     * The scale-independent inputs of one prediction path, compiled once by {@link #preparePath} so
+     * callers that integrate the same anchor many times (digital-twin calibration) only re-run the
+     * forward ODE:
+     * <ul>
+     *   <li>the warm state - its gut part (Qsto1, Qsto2, Qgut, D) is proportional to aG, because every
+     *       warm-up meal scales with aG and k_empt depends only on Qsto/D, so it is stored for the
+     *       preparing aG and rescaled;</li>
+     *   <li>the basal-adjusted EGP, which depends only on F01, body weight and the long-acting notes;</li>
+     *   <li>the GI and protein+fat tapes, and the future carb grams (carb mmol = grams × aG / 0.18);</li>
+     *   <li>each dose's per-minute IOB activity and its meal-window ISF override, so the summed insulin
+     *       effect is re-accumulated for the current isf in the original dose order.</li>
+     * </ul>
+     * Immutable once built and safe to share across replay threads.
      */
-    private List<DoseActivity> buildDoseActivities(
-            List<InsulinDose> doses,
-            LocalDateTime now,
-            int pathMinutes,
-            RapidInsulinIobParameters rapidIob,
-            UserSettingsDTO settings,
-            double fallbackIsf) {
-
-        int size = pathMinutes + 2;
-        List<DoseActivity> activities = new ArrayList<>();
-        for (InsulinDose dose : doses) {
-            if (dose.getTimestamp() == null || dose.getUnits() == null) continue;
-            double minsAgoDose = minsAgoFromNow(dose.getTimestamp(), now);
-            double[] iob = new double[size];
-            for (int m = 0; m < size; m++) {
-                // Elapsed time since this dose at prediction step m. For past doses
-                // (minsAgoDose > 0), more time has passed by step m, so IOB must keep
-                // decaying - NOT fold back toward the full dose. For prospective doses
-                // (minsAgoDose < 0), this is negative until m reaches the delivery
-                // minute; iobOpenApsExponential returns 0 for negative input.
-                double minsAgoAtStep = minsAgoDose + m;
-                iob[m] = InsulinCalculatorService.iobOpenApsExponential(
-                        dose.getUnits(), minsAgoAtStep,
-                        rapidIob.diaHours(), rapidIob.peakMinutes());
-            }
-            double isf = resolveIsf(settings, fallbackIsf, dose.getTimestamp());
-            activities.add(new DoseActivity(iob, isf));
+    public static final class PreparedPath {
+        private final HovorkaParameters structure;
+        private final double warmAG;
+        private final HovorkaState warm;
+        private final double egpNow;
+        private final LocalDateTime now;
+        private final int pathMinutes;
+        private final int[] carbMinute;
+        private final double[] carbGrams;
+        private final int[] mealGi;
+        private final double[] protFatKcal;
+        private final double[][] doseActivity;
+        private final double[] doseIsfOverride;   // NaN = the model ISF
+
+        private PreparedPath(HovorkaParameters structure, double warmAG, HovorkaState warm, double egpNow,
+                             LocalDateTime now, int pathMinutes, int[] carbMinute, double[] carbGrams,
+                             int[] mealGi, double[] protFatKcal, double[][] doseActivity,
+                             double[] doseIsfOverride) {
+            this.structure = structure;
+            this.warmAG = warmAG;
+            this.warm = warm;
+            this.egpNow = egpNow;
+            this.now = now;
+            this.pathMinutes = pathMinutes;
+            this.carbMinute = carbMinute;
+            this.carbGrams = carbGrams;
+            this.mealGi = mealGi;
+            this.protFatKcal = protFatKcal;
+            this.doseActivity = doseActivity;
+            this.doseIsfOverride = doseIsfOverride;
         }
-        return activities;
-    }
 
-    /**
-     * Resolves the ISF [mmol/L per unit] in effect at {@code time}: the user's manual
-     * per-meal-window override (isfBreakfast/isfLunch/isfDinner/isfNight) if one applies to
-     * {@code time}'s meal window, otherwise {@code fallbackIsf} (the Hovorka-calibrated
-     * ISF from {@link HovorkaParameterService#buildForUser}).
-     */
-    private double resolveIsf(UserSettingsDTO settings, double fallbackIsf, LocalDateTime time) {
-        if (settings == null) {
-            return fallbackIsf;
+        /** The warm state for meal magnitude {@code aG} - the stored state itself when aG is unchanged. */
+        private HovorkaState warmStateFor(double aG) {
+            if (aG == warmAG) return warm;
+            double f = aG / warmAG;
+            return new HovorkaState(warm.q1(), warm.q2(), warm.qsto1() * f, warm.qsto2() * f,
+                    warm.qgut() * f, warm.inc(), warm.x3(), warm.protFatGut(), warm.mealMmol() * f,
+                    warm.activeGI());
         }
-        Double effectiveIsf = settings.getEffectiveIsf(time);
-        return effectiveIsf != null ? effectiveIsf : fallbackIsf;
-    }
 
-    /**
-     * Minutes elapsed from {@code eventTimestamp} to {@code now}: positive when the
-     * event is in the past, negative when it is still ahead (a prospective entry).
-     * Shared by the warm-up replay, IOB timeline, and future-carb timeline so all
-     * three use the same "elapsed time since event" sign convention.
-     */
-    private long minsAgoFromNow(LocalDateTime eventTimestamp, LocalDateTime now) {
-        return Duration.between(eventTimestamp, now).toMinutes();
+        /** Only isf, aG and egp may differ from the preparing parameters. */
+        private void checkStructure(HovorkaParameters p) {
+            if (p.vG() != structure.vG() || p.f01() != structure.f01() || p.k12() != structure.k12()
+                    || p.k21() != structure.k21() || p.tMaxG() != structure.tMaxG()
+                    || p.weightKg() != structure.weightKg()) {
+                throw new IllegalArgumentException(
+                        "prepared path was compiled for different structural parameters than " + p);
+            }
+        }
     }
 
     /**
-     * IOB activity rate at minute m [units/min] - the rate at which IOB is being consumed.
-     * Computed as a forward difference: max(0, IOB[m] - IOB[m+1]).
+     * Dense per-minute inputs for the forward integration, indexed by minute offset from "now"
+     * (index {@code min} drives the step that advances t=now+(min-1) to t=now+min; index 0 unused).
+     *
+     * @param carbMmol      carbs entering Qsto1 at this minute [mmol]
+     * @param mealGi        carb-weighted GI of the arriving meal, or {@link #NO_MEAL_GI}
+     * @param protFatKcal   protein+fat load entering the gut at this minute [kcal]
+     * @param insulinEffect summed bolus glucose-removal rate over all doses [mmol/min]
+     * @param insulinEffectDIsf ∂insulinEffect/∂isf - only the doses dosed with the model ISF (no manual
+     *                      meal-window override) move with it; null unless sensitivities were requested
      */
-    private double iobActivityRate(double[] iobTimeline, int m) {
-        if (m + 1 >= iobTimeline.length) return 0.0;
-        return Math.max(0.0, iobTimeline[m] - iobTimeline[m + 1]);
-    }
-
-    // -- Future carb timeline --------------------------------------------------
+    record InputTape(double[] carbMmol, int[] mealGi, double[] protFatKcal, double[] insulinEffect,
+                     double[] insulinEffectDIsf) {}
 
     /**
-     * Builds a map of minute -> carb mmol for future events only.
-     * Past events (minsAgo > 0) are already captured in the warm-up.
+     * Compiles the scale-independent part of every per-minute input of the forward loop in one pass
+     * over the carb entries and one pass per dose, so neither the integration loop nor a re-scaled
+     * re-integration ever boxes, hashes, or re-evaluates an IOB curve.
      */
-    private Map<Integer, Double> buildFutureCarbTimeline(
+    private PreparedPath compilePreparedPath(
+            HovorkaParameters p,
+            double warmAG,
+            HovorkaState warm,
+            double egpNow,
             List<CarbsEntry> carbsEntries,
+            List<InsulinDose> doses,
             LocalDateTime now,
-            HovorkaParameters p) {
+            int pathMinutes,
+            RapidInsulinIobParameters rapidIob,
+            UserSettingsDTO settings) {
+
+        CarbTapes carbs = compileCarbTapes(carbsEntries, now, pathMinutes);
+        int size = pathMinutes + 1;
+
+        // -- Per-dose IOB activity [U/min]. Each dose's ISF is resolved once, from the time the dose
+        //    was administered - a manual isfBreakfast/isfLunch/isfDinner override applies to a dose's
+        //    entire activity curve if the dose was given in that window, even once most of its
+        //    activity plays out after the window ends. Doses with no activity left over the horizon
+        //    would only add zeros and are dropped.
+        List<double[]> activities = new ArrayList<>(doses.size());
+        double[] isfOverrides = new double[doses.size()];
+        InsulinActionTable curve = InsulinActionTable.of(rapidIob.diaHours(), rapidIob.peakMinutes());
+        for (InsulinDose dose : doses) {
+            if (dose.getTimestamp() == null || dose.getUnits() == null) continue;
+            double minsAgoDose = minsAgoFromNow(dose.getTimestamp(), now);
+            // Elapsed time since this dose at offset m: past doses keep decaying, prospective doses
+            // (minsAgoDose < 0) are zero until delivery (no activity before t = 0).
+            // The step min uses the IOB decay during [min-1, min] - NOT [min, min+1].
+            double[] activity = new double[size];
+            boolean active = false;
+            for (int min = 1; min < size; min++) {
+                activity[min] = curve.activity(dose.getUnits(), minsAgoDose + min);
+                active |= activity[min] > 0.0;
+            }
+            if (!active) continue;
+            Double isfOverride = isfOverride(settings, dose.getTimestamp());
+            isfOverrides[activities.size()] = isfOverride != null ? isfOverride : Double.NaN;
+            activities.add(activity);
+        }
 
-        Map<Integer, Double> timeline = new HashMap<>();
+        return new PreparedPath(p, warmAG, warm, egpNow, now, pathMinutes,
+                carbs.carbMinute(), carbs.carbGrams(), carbs.mealGi(), carbs.protFatKcal(),
+                activities.toArray(new double[0][]), Arrays.copyOf(isfOverrides, activities.size()));
+    }
+
+    /** Future carb inputs of a path, as compiled by {@link #compileCarbTapes}. */
+    private record CarbTapes(int[] carbMinute, double[] carbGrams, int[] mealGi, double[] protFatKcal) {}
+
+    /** The future-carb, GI and protein+fat part of {@link #compilePreparedPath}. */
+    private CarbTapes compileCarbTapes(List<CarbsEntry> carbsEntries, LocalDateTime now, int pathMinutes) {
+        int size = pathMinutes + 1;
+        double[] protFatKcal = new double[size];
+        double[] giWeighted  = new double[size];
+        double[] giCarbs     = new double[size];
+        int[]    mealGi      = new int[size];
+        Arrays.fill(mealGi, NO_MEAL_GI);
+        int[]    carbMinute  = new int[carbsEntries.size()];
+        double[] carbGrams   = new double[carbsEntries.size()];
+        int      carbCount   = 0;
+
+        // -- Future carbs, GI and protein+fat. Past events (minsAgo > 0) are already captured in the
+        //    warm-up. Future or current event: minute = |minsAgo|, clamped to 1 - minsAgo=0 (meal
+        //    logged at exactly "now") must still enter the ODE loop, which starts at min=1.
         for (CarbsEntry entry : carbsEntries) {
             if (entry.getTimestamp() == null) continue;
             long minsAgo = minsAgoFromNow(entry.getTimestamp(), now);
-            if (minsAgo > 0) continue; // past - captured in warm-up
-
-            // Future or current event: minute = |minsAgo|.
-            // Clamp to 1: minsAgo=0 (meal logged at exactly "now") must still enter the ODE loop,
-            // which starts at min=1 - storing at key=0 would cause the meal to be silently dropped.
+            if (minsAgo > 0) continue;
             int futureMin = Math.max(1, (int) Math.abs(minsAgo));
-            double carbMmol = toCarbMmol(entry, p);
-            if (carbMmol > 0) {
-                timeline.merge(futureMin, carbMmol, Double::sum);
+            if (futureMin > pathMinutes) continue;
+
+            // Several meals at the same minute -> carb-weighted average GI (default 70).
+            double carbs = entry.getCarbs() != null ? entry.getCarbs() : 0.0;
+            if (carbs > 0.0) {
+                carbMinute[carbCount] = futureMin;
+                carbGrams[carbCount++] = carbs;
+                int gi = entry.getEstimatedGi() != null ? entry.getEstimatedGi().intValue() : 70;
+                giWeighted[futureMin] += carbs * gi;
+                giCarbs[futureMin]    += carbs;
             }
+
+            double proteinKcal = entry.getProtein() != null ? entry.getProtein() * 4.0 : 0.0;
+            double fatKcal     = entry.getFat()     != null ? entry.getFat()     * 9.0 : 0.0;
+            double kcal = proteinKcal + fatKcal;
+            if (kcal > 0) protFatKcal[futureMin] += kcal;
+        }
+        for (int m = 1; m < size; m++) {
+            if (giCarbs[m] > 0.0) mealGi[m] = (int) Math.round(giWeighted[m] / giCarbs[m]);
         }
-        return timeline;
+        return new CarbTapes(Arrays.copyOf(carbMinute, carbCount), Arrays.copyOf(carbGrams, carbCount),
+                mealGi, protFatKcal);
     }
 
     /**
-     * Builds a map of minute -> GI for future carb events only.
-     * Mirrors the minute-offset logic of {@link #buildFutureCarbTimeline}: past entries
-     * (minsAgo > 0) are captured in the warm-up and excluded here.
-     * Default GI of 70 is used when {@code estimatedGi} is null.
-     *
-     * <p>When multiple meals land at the same minute, computes the carb-weighted average GI
-     * instead of silently dropping the first meal (which would happen with {@code put}).
-     * Accumulates weighted numerator (gi × carbMmol) and carb denominator separately,
-     * then divides to get the final weighted-average GI per minute.</p>
+     * Builds the scale-dependent tapes for one integration: carb mmol for {@code p.aG()} and the
+     * summed insulin effect, mmol of glucose removed from Q1 per minute over all doses, for
+     * {@code p.isf()}. effectiveInsulinVolume = 2×VG corrects for the 2-compartment distribution
+     * factor (see HovorkaParameters.effectiveInsulinVolume()). Values are accumulated in the same
+     * entry/dose order as a from-scratch compilation, so the integrated path is bit-identical.
      */
-    private Map<Integer, Integer> buildFutureGiTimeline(
-            List<CarbsEntry> carbsEntries, LocalDateTime now) {
-        Map<Integer, Double> giWeightedSum = new HashMap<>();
-        Map<Integer, Double> carbWeightMap  = new HashMap<>();
+    private static InputTape compileInputTape(PreparedPath prepared, HovorkaParameters p,
+                                              boolean withIsfSensitivity) {
+        int size = prepared.pathMinutes + 1;
+        double[] carbMmol = carbMmol(prepared.carbMinute, prepared.carbGrams, size, p.aG());
+
+        double vol = p.effectiveInsulinVolume();
+        double[] insulinEffect = new double[size];
+        double[] insulinEffectDIsf = withIsfSensitivity ? new double[size] : null;
+        for (int d = 0; d < prepared.doseActivity.length; d++) {
+            double[] activity = prepared.doseActivity[d];
+            boolean modelIsf = Double.isNaN(prepared.doseIsfOverride[d]);
+            double isf = modelIsf ? p.isf() : prepared.doseIsfOverride[d];
+            double[] dIsfTape = modelIsf ? insulinEffectDIsf : null;
+            for (int min = 1; min < size; min++) {
+                insulinEffect[min] += isf * vol * activity[min];
+                if (dIsfTape != null) dIsfTape[min] += vol * activity[min];
+            }
+        }
 
-        for (CarbsEntry entry : carbsEntries) {
-            if (entry.getTimestamp() == null) continue;
-            long minsAgo = minsAgoFromNow(entry.getTimestamp(), now);
-            if (minsAgo > 0) continue; // past - captured in warm-up
+        return new InputTape(carbMmol, prepared.mealGi, prepared.protFatKcal, insulinEffect, insulinEffectDIsf);
+    }
 
-            int futureMin = Math.max(1, (int) Math.abs(minsAgo));
-            double carbs = entry.getCarbs() != null ? entry.getCarbs() : 0.0;
-            if (carbs <= 0.0) continue;
-            int gi = entry.getEstimatedGi() != null ? entry.getEstimatedGi().intValue() : 70;
-            giWeightedSum.merge(futureMin, carbs * gi, Double::sum);
-            carbWeightMap.merge(futureMin, carbs, Double::sum);
-        }
-
-        Map<Integer, Integer> timeline = new HashMap<>();
-        giWeightedSum.forEach((min, weightedGi) -> {
-            double totalCarbs = carbWeightMap.getOrDefault(min, 1.0);
-            timeline.put(min, (int) Math.round(weightedGi / totalCarbs));
-        });
-        return timeline;
+    /** Per-minute carb input [mmol] for meal magnitude {@code aG}, accumulated in entry order. */
+    private static double[] carbMmol(int[] carbMinute, double[] carbGrams, int size, double aG) {
+        double[] carbMmol = new double[size];
+        for (int i = 0; i < carbGrams.length; i++) {
+            double mmol = carbGrams[i] * aG / 0.18;
+            if (mmol > 0) carbMmol[carbMinute[i]] += mmol;
+        }
+        return carbMmol;
     }
 
     /**
-     * Maps future minute-offset → protein+fat caloric load [kcal] entering the gut.
-     * Used to drive the protFatGut compartment (GLP-1 ileal brake).
-     *
-     * <p>Mirrors the minute-offset logic of {@link #buildFutureCarbTimeline}: past entries
-     * (minsAgo &gt; 0) are already captured in the warm-up and excluded here.</p>
+     * The user's manual per-meal-window ISF override [mmol/L per unit]
+     * (isfBreakfast/isfLunch/isfDinner/isfNight) if one applies to {@code time}'s meal window,
+     * otherwise null - the dose then uses the Hovorka-calibrated ISF from
+     * {@link HovorkaParameterService#buildForUser}.
      */
-    private Map<Integer, Double> buildFutureProtFatTimeline(
-            List<CarbsEntry> carbsEntries, LocalDateTime now) {
-        Map<Integer, Double> timeline = new HashMap<>();
-        for (CarbsEntry entry : carbsEntries) {
-            if (entry.getTimestamp() == null) continue;
-            long minsAgo = minsAgoFromNow(entry.getTimestamp(), now);
-            if (minsAgo > 0) continue; // past - captured in warm-up
-            int futureMin = Math.max(1, (int) Math.abs(minsAgo));
-            double proteinKcal = entry.getProtein() != null ? entry.getProtein() * 4.0 : 0.0;
-            double fatKcal     = entry.getFat()     != null ? entry.getFat()     * 9.0 : 0.0;
-            double kcal = proteinKcal + fatKcal;
-            if (kcal > 0) timeline.merge(futureMin, kcal, Double::sum);
-        }
-        return timeline;
+    private static Double isfOverride(UserSettingsDTO settings, LocalDateTime time) {
+        return settings != null ? settings.getEffectiveIsf(time) : null;
+    }
+
+    /**
+     * Minutes elapsed from {@code eventTimestamp} to {@code now}: positive when the
+     * event is in the past, negative when it is still ahead (a prospective entry).
+     * Shared by the warm-up replay, IOB timeline, and future-carb timeline so all
+     * three use the same "elapsed time since event" sign convention.
+     */
+    private long minsAgoFromNow(LocalDateTime eventTimestamp, LocalDateTime now) {
+        return Duration.between(eventTimestamp, now).toMinutes();
     }
 
     /**
@@ -24,6 +24,13 @@ import org.springframework.stereotype.Component;
  *   dx3/dt    = -KA3*x3 + KB3*plasmInsulin
  *   dProtFatGut/dt = -K_PF_DRAIN*ProtFatGut
  * </pre>
+ *
+ * <p>Two entry points share one kernel: the record-based {@code step} overloads (convenient,
+ * allocate a new {@link HovorkaState} per minute) and the in-place
+ * {@link #step(HovorkaStateBuffer, HovorkaParameters, double, int, double, double, double, Workspace)}
+ * used by hot loops, which advances a caller-owned {@link HovorkaStateBuffer} with zero allocation.
+ * A third, sensitivity-carrying in-place step also propagates ∂state/∂(isf, aG, egp0) through the
+ * same RK4 stages ({@link HovorkaSensitivityBuffer}) for the digital-twin fit's exact Jacobian.</p>
  */
 @Component
 public class HovorkaOdeSolver {
@@ -119,39 +126,150 @@ public class HovorkaOdeSolver {
             double insulinEffect,
             double activityRate) {
 
-        HovorkaState s0 = state;
-        int activeGI = state.activeGI();
+        HovorkaStateBuffer buf = HovorkaStateBuffer.of(state);
+        step(buf, p, carbMmolNow, mealGI, protFatKcalNow, insulinEffect, activityRate, new Workspace());
+        return buf.toState();
+    }
+
+    /**
+     * Allocation-free master step: advance {@code state} in place by 1 minute.
+     *
+     * <p>Same arithmetic, in the same order, as the record-based overloads (which delegate here),
+     * so results are bit-identical. {@code state} and {@code ws} are owned by the caller and reused
+     * across steps; nothing is allocated per call. Hot loops (prediction paths, calibration replay)
+     * should hold one buffer and one workspace per integration.</p>
+     *
+     * @param state          state buffer, updated in place
+     * @param ws             caller-owned scratch arrays (not shared between threads)
+     * @param carbMmolNow    carbs ingested at this minute [mmol]
+     * @param mealGI         glycemic index of the arriving carbs [0-100]; ignored if no new meal
+     * @param protFatKcalNow protein+fat caloric load entering gut at this minute [kcal]
+     * @param insulinEffect  glucose removal from bolus insulin [mmol/min]
+     * @param activityRate   insulin-independent muscle uptake rate [/min]
+     */
+    public void step(
+            HovorkaStateBuffer state,
+            HovorkaParameters p,
+            double carbMmolNow,
+            int    mealGI,
+            double protFatKcalNow,
+            double insulinEffect,
+            double activityRate,
+            Workspace ws) {
+
+        double[] y = state.y;
+        if (carbMmolNow > 0) {
+            double newQsto1 = y[HovorkaStateBuffer.QSTO1] + carbMmolNow;
+            y[HovorkaStateBuffer.QSTO1] = newQsto1;
+            state.mealMmol = newQsto1 + y[HovorkaStateBuffer.QSTO2];
+            state.activeGI = mealGI;
+        }
+        if (protFatKcalNow > 0) {
+            y[HovorkaStateBuffer.PROT_FAT_GUT] += protFatKcalNow;
+        }
+
+        final int gi = state.activeGI;
+        double mealMmol = state.mealMmol;
+        double[] k1 = ws.k1, k2 = ws.k2, k3 = ws.k3, k4 = ws.k4, tmp = ws.tmp;
+
+        derivatives(y, p, mealMmol, gi, insulinEffect, activityRate, k1);
+        for (int i = 0; i < 8; i++) tmp[i] = y[i] + k1[i] * 0.5;
+        derivatives(tmp, p, mealMmol, gi, insulinEffect, activityRate, k2);
+        for (int i = 0; i < 8; i++) tmp[i] = y[i] + k2[i] * 0.5;
+        derivatives(tmp, p, mealMmol, gi, insulinEffect, activityRate, k3);
+        for (int i = 0; i < 8; i++) tmp[i] = y[i] + k3[i];
+        derivatives(tmp, p, mealMmol, gi, insulinEffect, activityRate, k4);
+
+        for (int i = 0; i < 8; i++) {
+            y[i] = Math.max(0.0, y[i] + (k1[i] + 2 * k2[i] + 2 * k3[i] + k4[i]) / 6.0);
+        }
+    }
+
+    /**
+     * In-place step that also advances the forward sensitivities {@code sens} (dual-number RK4).
+     *
+     * <p>The state update is the plain {@link #step(HovorkaStateBuffer, HovorkaParameters, double,
+     * int, double, double, double, Workspace)} arithmetic, so {@code state} ends bit-identical to an
+     * un-differentiated run. Each RK4 stage additionally evaluates the tangent of the derivatives
+     * ({@link #derivativesTangent}), giving the exact derivative of the discrete step in all
+     * {@link HovorkaSensitivityBuffer#NP} directions at once.</p>
+     *
+     * @param dCarbMmolNow    ∂carbMmolNow/∂θ<sub>j</sub> per direction (length NP)
+     * @param dInsulinEffect  ∂insulinEffect/∂θ<sub>j</sub> per direction (length NP)
+     */
+    public void step(
+            HovorkaStateBuffer state,
+            HovorkaSensitivityBuffer sens,
+            HovorkaParameters p,
+            double carbMmolNow,
+            double[] dCarbMmolNow,
+            int    mealGI,
+            double protFatKcalNow,
+            double insulinEffect,
+            double[] dInsulinEffect,
+            double activityRate,
+            Workspace ws) {
 
+        double[] y = state.y;
+        final int np = HovorkaSensitivityBuffer.NP;
         if (carbMmolNow > 0) {
-            double newQsto1    = state.qsto1() + carbMmolNow;
-            double stomachLoad = newQsto1 + state.qsto2();
-            activeGI = mealGI;
-            s0 = new HovorkaState(
-                    state.q1(), state.q2(),
-                    newQsto1, state.qsto2(), state.qgut(), state.inc(),
-                    state.x3(), state.protFatGut(),
-                    stomachLoad, activeGI);
+            double newQsto1 = y[HovorkaStateBuffer.QSTO1] + carbMmolNow;
+            y[HovorkaStateBuffer.QSTO1] = newQsto1;
+            state.mealMmol = newQsto1 + y[HovorkaStateBuffer.QSTO2];
+            state.activeGI = mealGI;
+            for (int j = 0; j < np; j++) {
+                double[] dyj = sens.dy[j];
+                dyj[HovorkaStateBuffer.QSTO1] += dCarbMmolNow[j];
+                sens.dMealMmol[j] = dyj[HovorkaStateBuffer.QSTO1] + dyj[HovorkaStateBuffer.QSTO2];
+            }
         }
         if (protFatKcalNow > 0) {
-            s0 = new HovorkaState(
-                    s0.q1(), s0.q2(), s0.qsto1(), s0.qsto2(), s0.qgut(), s0.inc(),
-                    s0.x3(), s0.protFatGut() + protFatKcalNow,
-                    s0.mealMmol(), s0.activeGI());
+            y[HovorkaStateBuffer.PROT_FAT_GUT] += protFatKcalNow;
         }
 
-        final int gi = activeGI;
-        double mealMmol = s0.mealMmol();
-        double[] y  = toArray(s0);
-        double[] k1 = derivatives(y, p, mealMmol, gi, insulinEffect, activityRate);
-        double[] k2 = derivatives(add(y, scale(k1, 0.5)), p, mealMmol, gi, insulinEffect, activityRate);
-        double[] k3 = derivatives(add(y, scale(k2, 0.5)), p, mealMmol, gi, insulinEffect, activityRate);
-        double[] k4 = derivatives(add(y, k3),             p, mealMmol, gi, insulinEffect, activityRate);
+        final int gi = state.activeGI;
+        double mealMmol = state.mealMmol;
+        double[] k1 = ws.k1, k2 = ws.k2, k3 = ws.k3, k4 = ws.k4, tmp = ws.tmp;
+        double[][] dy = sens.dy, dk1 = sens.dk1, dk2 = sens.dk2, dk3 = sens.dk3, dk4 = sens.dk4,
+                   dtmp = sens.dtmp;
+
+        derivatives(y, p, mealMmol, gi, insulinEffect, activityRate, k1);
+        derivativesTangent(y, dy, p, sens, mealMmol, gi, insulinEffect, dInsulinEffect, activityRate, dk1);
+        for (int i = 0; i < 8; i++) tmp[i] = y[i] + k1[i] * 0.5;
+        for (int j = 0; j < np; j++) for (int i = 0; i < 8; i++) dtmp[j][i] = dy[j][i] + dk1[j][i] * 0.5;
+        derivatives(tmp, p, mealMmol, gi, insulinEffect, activityRate, k2);
+        derivativesTangent(tmp, dtmp, p, sens, mealMmol, gi, insulinEffect, dInsulinEffect, activityRate, dk2);
+        for (int i = 0; i < 8; i++) tmp[i] = y[i] + k2[i] * 0.5;
+        for (int j = 0; j < np; j++) for (int i = 0; i < 8; i++) dtmp[j][i] = dy[j][i] + dk2[j][i] * 0.5;
+        derivatives(tmp, p, mealMmol, gi, insulinEffect, activityRate, k3);
+        derivativesTangent(tmp, dtmp, p, sens, mealMmol, gi, insulinEffect, dInsulinEffect, activityRate, dk3);
+        for (int i = 0; i < 8; i++) tmp[i] = y[i] + k3[i];
+        for (int j = 0; j < np; j++) for (int i = 0; i < 8; i++) dtmp[j][i] = dy[j][i] + dk3[j][i];
+        derivatives(tmp, p, mealMmol, gi, insulinEffect, activityRate, k4);
+        derivativesTangent(tmp, dtmp, p, sens, mealMmol, gi, insulinEffect, dInsulinEffect, activityRate, dk4);
 
-        double[] yn = new double[8];
         for (int i = 0; i < 8; i++) {
-            yn[i] = y[i] + (k1[i] + 2 * k2[i] + 2 * k3[i] + k4[i]) / 6.0;
+            double next = y[i] + (k1[i] + 2 * k2[i] + 2 * k3[i] + k4[i]) / 6.0;
+            for (int j = 0; j < np; j++) {
+                // max(0, ·): the tangent is cut wherever the non-negativity clamp is active.
+                dy[j][i] = next > 0.0
+                        ? dy[j][i] + (dk1[j][i] + 2 * dk2[j][i] + 2 * dk3[j][i] + dk4[j][i]) / 6.0
+                        : 0.0;
+            }
+            y[i] = Math.max(0.0, next);
         }
-        return fromArray(yn, mealMmol, gi).clampNonNegative();
+    }
+
+    /**
+     * Preallocated RK4 stage arrays for {@link #step(HovorkaStateBuffer, HovorkaParameters, double,
+     * int, double, double, double, Workspace)}. Cheap to create; reuse one per integration loop.
+     */
+    public static final class Workspace {
+        final double[] k1  = new double[8];
+        final double[] k2  = new double[8];
+        final double[] k3  = new double[8];
+        final double[] k4  = new double[8];
+        final double[] tmp = new double[8];
     }
 
     /**
@@ -183,6 +301,19 @@ public class HovorkaOdeSolver {
     double[] derivatives(double[] y, HovorkaParameters p,
                          double mealMmol, int gi,
                          double insulinEffect, double activityUptakeRate) {
+        return derivatives(y, p, mealMmol, gi, insulinEffect, activityUptakeRate, new double[8]);
+    }
+
+    /**
+     * Compute the 8 ODE derivatives into the caller-supplied {@code out} array (length &ge; 8).
+     * Allocation-free kernel behind every other {@code derivatives} overload.
+     *
+     * @return {@code out}, for call chaining
+     */
+    double[] derivatives(double[] y, HovorkaParameters p,
+                         double mealMmol, int gi,
+                         double insulinEffect, double activityUptakeRate,
+                         double[] out) {
 
         double q1    = Math.max(0.0, y[0]);
         double q2    = Math.max(0.0, y[1]);
@@ -266,30 +397,105 @@ public class HovorkaOdeSolver {
         // Pre-loading protein/fat triggers ileal brake before carbs arrive.
         double dinc = K_INC_PF * protFatGut - K_DEL * inc;
 
-        return new double[]{dq1, dq2, dqsto1, dqsto2, dqgut, dinc, dx3, dProtFatGut};
+        out[0] = dq1;
+        out[1] = dq2;
+        out[2] = dqsto1;
+        out[3] = dqsto2;
+        out[4] = dqgut;
+        out[5] = dinc;
+        out[6] = dx3;
+        out[7] = dProtFatGut;
+        return out;
     }
 
-    // -- Array helpers ---------------------------------------------------------
-
-    private double[] toArray(HovorkaState s) {
-        return new double[]{s.q1(), s.q2(), s.qsto1(), s.qsto2(), s.qgut(), s.inc(),
-                            s.x3(), s.protFatGut()};
-    }
+    /**
+     * Forward-mode tangent of {@link #derivatives(double[], HovorkaParameters, double, int, double,
+     * double, double[])}: for every direction j, {@code dOut[j] = ∂f/∂y · dy[j] + ∂f/∂θ_j}, where the
+     * parameter and input tangents come from {@code sens} (isf, egp0, D reference) and
+     * {@code dInsulinEffect}. Clamps ({@code max(0,·)}, the glucose and F01 limits, renal threshold,
+     * EGP floor) contribute a zero derivative on their inactive side, matching the primal branches.
+     * The scale-independent partials are computed once and shared by all directions.
+     */
+    void derivativesTangent(double[] y, double[][] dy, HovorkaParameters p,
+                            HovorkaSensitivityBuffer sens,
+                            double mealMmol, int gi,
+                            double insulinEffect, double[] dInsulinEffect,
+                            double activityUptakeRate, double[][] dOut) {
 
-    private HovorkaState fromArray(double[] y, double mealMmol, int activeGI) {
-        return new HovorkaState(y[0], y[1], y[2], y[3], y[4], y[5], y[6], y[7],
-                                mealMmol, activeGI);
-    }
+        double q1    = Math.max(0.0, y[0]);
+        double q2    = Math.max(0.0, y[1]);
+        double qsto1 = Math.max(0.0, y[2]);
+        double qsto2 = Math.max(0.0, y[3]);
+        double inc   = Math.max(0.0, y[5]);
+        double x3    = Math.max(0.0, y[6]);
 
-    private double[] add(double[] a, double[] b) {
-        double[] r = new double[8];
-        for (int i = 0; i < 8; i++) r[i] = a[i] + b[i];
-        return r;
-    }
+        double gRaw  = q1 / p.vG();
+        double g     = p.glucoseClamped(q1);
+        double dgDq1 = (gRaw > 1.0 && gRaw < 25.0) ? 1.0 / p.vG() : 0.0;
+        double df01Dg = (g / HovorkaParameters.G_THRESHOLD < 1.0) ? p.f01() / HovorkaParameters.G_THRESHOLD : 0.0;
+        double dfrDq1 = (g > KE2) ? KE1 : 0.0;
 
-    private double[] scale(double[] a, double s) {
-        double[] r = new double[8];
-        for (int i = 0; i < 8; i++) r[i] = a[i] * s;
-        return r;
+        double tHalfMeal = p.tMaxG() * 1.68;
+        double cCal      = DallaManGutModel.caloricScale(tHalfMeal);
+        double giScale   = Math.max(0.3, Math.min(1.5, gi / 100.0));
+        double kGriEff   = DallaManGutModel.K_GRI * cCal * giScale;
+        double kMaxEff   = DallaManGutModel.K_MAX * cCal * giScale;
+        double kMinEff   = DallaManGutModel.K_MIN * cCal * giScale;
+        double kAbsEff   = DallaManGutModel.effectiveKAbs(p.tMaxG()) * giScale;
+
+        double qsto     = qsto1 + qsto2;
+        double kempt    = gutModel.kEmpt(qsto, mealMmol, kMaxEff, kMinEff);
+        double phi      = 1.0 / (1.0 + KAPPA_GLP1 * inc);
+        double dPhiDInc = -KAPPA_GLP1 * phi * phi;
+        double kemptEff = kempt * phi;
+        double dRaDQgut = DallaManGutModel.F * kAbsEff;
+
+        double vol      = p.effectiveInsulinVolume();
+        double denom    = p.isf() * vol;
+        double plasm    = denom > 0 ? insulinEffect / denom * V_I_SCALE : 0.0;
+        double egpFloor = Math.max(0.0, 1.0 - x3);
+        double dEgpDx3  = (1.0 - x3 > 0.0) ? -p.egp0() : 0.0;
+
+        for (int j = 0; j < HovorkaSensitivityBuffer.NP; j++) {
+            double[] t = dy[j];
+            double dq1    = y[0] > 0.0 ? t[0] : 0.0;
+            double dq2    = y[1] > 0.0 ? t[1] : 0.0;
+            double dqsto1 = y[2] > 0.0 ? t[2] : 0.0;
+            double dqsto2 = y[3] > 0.0 ? t[3] : 0.0;
+            double dqgut  = y[4] > 0.0 ? t[4] : 0.0;
+            double dinc   = y[5] > 0.0 ? t[5] : 0.0;
+            double dx3    = y[6] > 0.0 ? t[6] : 0.0;
+            double dpf    = y[7] > 0.0 ? t[7] : 0.0;
+            double dIe    = dInsulinEffect[j];
+
+            double dg    = dgDq1 * dq1;
+            double df01c = df01Dg * dg;
+            double dfr   = dfrDq1 * dq1;
+
+            double dKempt    = gutModel.kEmptTangent(qsto, dqsto1 + dqsto2, mealMmol, sens.dMealMmol[j],
+                                                     kMaxEff, kMinEff);
+            double dKemptEff = dKempt * phi + kempt * dPhiDInc * dinc;
+            double dRa       = dRaDQgut * dqgut;
+
+            // plasm = IE / (isf × vol) × V_I_SCALE
+            double dPlasm = denom > 0
+                    ? (dIe / denom - plasm / V_I_SCALE * sens.dIsf[j] / p.isf()) * V_I_SCALE
+                    : 0.0;
+            double ddx3 = -KA3 * dx3 + KB3 * dPlasm;
+            double dEgp = dEgpDx3 * dx3 + egpFloor * sens.dEgp0[j];
+
+            double[] o = dOut[j];
+            o[0] = -df01c - dfr - p.k12() * dq1 + p.k21() * dq2
+                 + dRa + dEgp - dIe
+                 - ALPHA_INC * (dinc * q1 + inc * dq1)
+                 - activityUptakeRate * dq1;
+            o[1] = p.k12() * dq1 - p.k21() * dq2;
+            o[2] = -kGriEff * dqsto1;
+            o[3] = kGriEff * dqsto1 - (dKemptEff * qsto2 + kemptEff * dqsto2);
+            o[4] = dKemptEff * qsto2 + kemptEff * dqsto2 - kAbsEff * dqgut;
+            o[5] = K_INC_PF * dpf - K_DEL * dinc;
+            o[6] = ddx3;
+            o[7] = -K_PF_DRAIN * dpf;
+        }
     }
 }
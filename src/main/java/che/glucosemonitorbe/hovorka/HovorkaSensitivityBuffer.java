@@ -0,0 +1,84 @@
+package che.glucosemonitorbe.hovorka;
+
+/**
+ * Forward sensitivities of a {@link HovorkaStateBuffer} with respect to the model parameters the
+ * digital twin calibrates - the tangent half of the dual-number integration in
+ * {@link HovorkaOdeSolver#step(HovorkaStateBuffer, HovorkaSensitivityBuffer, HovorkaParameters,
+ * double, double[], int, double, double, double[], double, HovorkaOdeSolver.Workspace)}.
+ *
+ * <p>Direction {@code j} carries ∂y/∂θ<sub>j</sub> for θ = ({@link #ISF isf}, {@link #AG aG},
+ * {@link #EGP0 egp0}) of the parameter set passed to the integration. Since the tangent is propagated
+ * through the same RK4 stages as the state, it is the exact derivative of the discrete path (not of
+ * the continuous ODE), which is what a least-squares fit on that path needs.</p>
+ *
+ * <p>{@link #dIsf} / {@link #dEgp0} hold how the integrated parameter set itself moves along each
+ * direction (1 when it is θ, 0 when the caller re-derives that value independently of θ). Not
+ * thread-safe - one buffer per integration, like the state buffer it shadows.</p>
+ */
+public final class HovorkaSensitivityBuffer {
+
+    /** Direction index: ∂/∂isf. */
+    public static final int ISF  = 0;
+    /** Direction index: ∂/∂aG (meal magnitude - enters through the carb inputs and warm gut state). */
+    public static final int AG   = 1;
+    /** Direction index: ∂/∂egp0. */
+    public static final int EGP0 = 2;
+    /** Number of directions. */
+    public static final int NP   = 3;
+
+    final double[][] dy = new double[NP][HovorkaStateBuffer.N];
+    final double[] dMealMmol = new double[NP];
+    final double[] dIsf  = new double[NP];
+    final double[] dEgp0 = new double[NP];
+
+    // RK4 stage tangents, reused every step.
+    final double[][] dk1  = new double[NP][HovorkaStateBuffer.N];
+    final double[][] dk2  = new double[NP][HovorkaStateBuffer.N];
+    final double[][] dk3  = new double[NP][HovorkaStateBuffer.N];
+    final double[][] dk4  = new double[NP][HovorkaStateBuffer.N];
+    final double[][] dtmp = new double[NP][HovorkaStateBuffer.N];
+
+    /** Zero tangents with unit parameter seeds: ∂isf/∂isf = ∂egp0/∂egp0 = 1. */
+    public HovorkaSensitivityBuffer() {
+        dIsf[ISF]   = 1.0;
+        dEgp0[EGP0] = 1.0;
+    }
+
+    /** Set ∂(integrated egp0)/∂θ<sub>j</sub> - 0 when the caller derives egp0 independently of θ. */
+    public HovorkaSensitivityBuffer egp0Seed(int direction, double value) {
+        dEgp0[direction] = value;
+        return this;
+    }
+
+    /** Set ∂(integrated isf)/∂θ<sub>j</sub>. */
+    public HovorkaSensitivityBuffer isfSeed(int direction, double value) {
+        dIsf[direction] = value;
+        return this;
+    }
+
+    /** Set the tangent of one state variable (index as in {@link HovorkaStateBuffer}). */
+    public HovorkaSensitivityBuffer seedState(int direction, int variable, double value) {
+        dy[direction][variable] = value;
+        return this;
+    }
+
+    /** Set the tangent of the Dalla Man D reference ({@code mealMmol}). */
+    public HovorkaSensitivityBuffer seedMealMmol(int direction, double value) {
+        dMealMmol[direction] = value;
+        return this;
+    }
+
+    /** ∂y<sub>variable</sub>/∂θ<sub>direction</sub>. */
+    public double d(int direction, int variable) {
+        return dy[direction][variable];
+    }
+
+    /**
+     * ∂G/∂θ<sub>direction</sub> of {@link HovorkaStateBuffer#glucoseMmolL} - zero where the [1, 25]
+     * mmol/L clamp is active.
+     */
+    public double dGlucoseMmolL(int direction, HovorkaStateBuffer state, HovorkaParameters p) {
+        double g = state.y[HovorkaStateBuffer.Q1] / p.vG();
+        return (g > 1.0 && g < 25.0) ? dy[direction][HovorkaStateBuffer.Q1] / p.vG() : 0.0;
+    }
+}
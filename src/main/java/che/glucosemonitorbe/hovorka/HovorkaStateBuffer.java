@@ -0,0 +1,79 @@
+package che.glucosemonitorbe.hovorka;
+
+/**
+ * Mutable, caller-owned counterpart of {@link HovorkaState} for the allocation-free
+ * integration mode of {@link HovorkaOdeSolver}.
+ *
+ * <p>The 8 ODE variables live in {@link #y} using the same index layout as
+ * {@link HovorkaOdeSolver#derivatives}: y[0]=Q1, y[1]=Q2, y[2]=Qsto1, y[3]=Qsto2, y[4]=Qgut,
+ * y[5]=Inc, y[6]=x3, y[7]=protFatGut. The two tracking fields (mealMmol, activeGI) are plain
+ * fields. One buffer is advanced in place minute by minute, so a full prediction path allocates
+ * no per-step state objects. Not thread-safe - each integration owns its own buffer.</p>
+ */
+public final class HovorkaStateBuffer {
+
+    /** Number of ODE state variables. */
+    public static final int N = 8;
+
+    static final int Q1 = 0, Q2 = 1, QSTO1 = 2, QSTO2 = 3, QGUT = 4, INC = 5, X3 = 6, PROT_FAT_GUT = 7;
+
+    final double[] y = new double[N];
+    double mealMmol;
+    int activeGI;
+
+    public HovorkaStateBuffer() {
+        this.activeGI = 70;
+    }
+
+    /** New buffer initialised from an immutable state. */
+    public static HovorkaStateBuffer of(HovorkaState state) {
+        HovorkaStateBuffer b = new HovorkaStateBuffer();
+        b.load(state);
+        return b;
+    }
+
+    /** Overwrite this buffer with the contents of {@code state}. */
+    public HovorkaStateBuffer load(HovorkaState state) {
+        y[Q1]           = state.q1();
+        y[Q2]           = state.q2();
+        y[QSTO1]        = state.qsto1();
+        y[QSTO2]        = state.qsto2();
+        y[QGUT]         = state.qgut();
+        y[INC]          = state.inc();
+        y[X3]           = state.x3();
+        y[PROT_FAT_GUT] = state.protFatGut();
+        mealMmol        = state.mealMmol();
+        activeGI        = state.activeGI();
+        return this;
+    }
+
+    /** Overwrite this buffer with the contents of another buffer (checkpoint restore). */
+    public HovorkaStateBuffer copyFrom(HovorkaStateBuffer other) {
+        System.arraycopy(other.y, 0, y, 0, N);
+        mealMmol = other.mealMmol;
+        activeGI = other.activeGI;
+        return this;
+    }
+
+    /** Immutable snapshot of the current contents. */
+    public HovorkaState toState() {
+        return new HovorkaState(y[Q1], y[Q2], y[QSTO1], y[QSTO2], y[QGUT], y[INC], y[X3], y[PROT_FAT_GUT],
+                                mealMmol, activeGI);
+    }
+
+    public double q1()         { return y[Q1]; }
+    public double q2()         { return y[Q2]; }
+    public double qsto1()      { return y[QSTO1]; }
+    public double qsto2()      { return y[QSTO2]; }
+    public double qgut()       { return y[QGUT]; }
+    public double inc()        { return y[INC]; }
+    public double x3()         { return y[X3]; }
+    public double protFatGut() { return y[PROT_FAT_GUT]; }
+    public double mealMmol()   { return mealMmol; }
+    public int    activeGI()   { return activeGI; }
+
+    /** Blood glucose concentration [mmol/L] - same clamp as {@link HovorkaState#glucoseMmolL}. */
+    public double glucoseMmolL(HovorkaParameters p) {
+        return p.glucoseClamped(y[Q1]);
+    }
+}
@@ -49,6 +49,11 @@ public final class InterstitialLagModel {
         this.gi = g0;
     }
 
+    private InterstitialLagModel(InterstitialLagModel from) {
+        this.alpha = from.alpha;
+        this.gi = from.gi;
+    }
+
     /**
      * A filter seeded at the anchor glucose. At the anchor the subject is treated as being in
      * quasi-equilibrium, so interstitial equals plasma there and the lag only builds up as the
@@ -64,6 +69,11 @@ public final class InterstitialLagModel {
         return gi;
     }
 
+    /** An independent filter in the same state (for forking an integration at a checkpoint). */
+    public InterstitialLagModel copy() {
+        return new InterstitialLagModel(this);
+    }
+
     /** Current sensed value [mmol/L]. */
     public double sensed() {
         return gi;
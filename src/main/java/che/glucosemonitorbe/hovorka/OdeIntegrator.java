@@ -0,0 +1,17 @@
+package che.glucosemonitorbe.hovorka;
+
+/**
+ * Numerical scheme for the forward integration of a prediction path.
+ *
+ * <p>{@link #RK4} is the reference: fixed 1-minute classical Runge-Kutta steps with per-minute
+ * piecewise-constant inputs. {@link #DORMAND_PRINCE} is the adaptive alternative
+ * ({@link DormandPrinceIntegrator}): error-controlled steps up to an hour long through quiet stretches,
+ * short steps around meal impulses and fast insulin action, with every emitted minute interpolated
+ * from the dense output. Its glucose state tracks RK4 to under 0.01 mmol/L on meal-and-bolus paths at
+ * a fraction of the derivative evaluations on long horizons; the two are not bit-identical, so points
+ * emitted at 0.1 mmol/L resolution may differ by one rounding step.</p>
+ */
+public enum OdeIntegrator {
+    RK4,
+    DORMAND_PRINCE
+}
@@ -14,4 +14,22 @@ public interface AnchorSampleSource {
 
     /** Evaluate the model at every anchor with the given scales and return all comparison samples. */
     List<AnchorSample> replay(TwinScales scales);
+
+    /**
+     * As {@link #replay}, plus the exact derivative of every sample's {@code predicted} value with
+     * respect to each scale - the calibrator's analytic Jacobian. Returns null when the source cannot
+     * differentiate its model, in which case the fit falls back to finite differences.
+     */
+    default SampleSensitivities replayWithSensitivity(TwinScales scales) {
+        return null;
+    }
+
+    /**
+     * Samples with their sensitivities.
+     *
+     * @param samples    exactly what {@link #replay} returns for the same scales
+     * @param dPredicted per sample, ∂predicted/∂scale indexed by {@link TwinScales#ISF},
+     *                   {@link TwinScales#AG}, {@link TwinScales#TMAX_G} and {@link TwinScales#EGP}
+     */
+    record SampleSensitivities(List<AnchorSample> samples, double[][] dPredicted) {}
 }
@@ -34,6 +34,9 @@ import java.util.function.Predicate;
  *       anchors with EGP₀ fixed at the stage-1 value.</li>
  * </ol>
  *
+ * <p>LM's Jacobian comes from the source's forward sensitivities when available
+ * ({@link AnchorSampleSource#replayWithSensitivity}) and from finite differences otherwise.</p>
+ *
  * <p>Finally a {@link ResidualBiasModel} and {@link PredictionUncertaintyModel} are fitted on what the
  * calibrated physiology leaves behind, and baseline vs. calibrated MAE are scored on the held-out
  * validation window - the twin only reports {@code improved} when it genuinely beats the un-calibrated
@@ -60,6 +63,8 @@ public final class DigitalTwinCalibrator {
         public double huberDelta = 1.345;
         /** Number of IRLS re-weighting passes. */
         public int    irlsIterations = 4;
+        /** Use the source's forward-sensitivity Jacobian when it offers one (finite differences otherwise). */
+        public boolean sensitivityJacobian = true;
     }
 
     /** Outcome of a calibration run. */
@@ -87,8 +92,9 @@ public final class DigitalTwinCalibrator {
 
     public DigitalTwinCalibrator(Config cfg) {
         this.cfg = cfg;
-        // Bounded LM: FD Jacobian is fine for O(1) scales. Budget is generous enough to converge on
-        // most users; LmParameterFitter degrades gracefully to the start point if a fit still can't.
+        // Bounded LM. The FD step only matters for sources without sensitivities (the replay engine
+        // supplies an exact Jacobian). Budget is generous enough to converge on most users;
+        // LmParameterFitter degrades gracefully to the start point if a fit still can't.
         this.lm = new LmParameterFitter(1e-3, 100, 2000);
     }
 
@@ -117,6 +123,7 @@ public final class DigitalTwinCalibrator {
                 new double[]{TwinScales.MIN_SCALE, TwinScales.MIN_SCALE},
                 new double[]{TwinScales.MAX_SCALE, TwinScales.MAX_SCALE},
                 p -> new TwinScales(p[0], p[1], 1.0, egpScale),
+                new int[]{TwinScales.ISF, TwinScales.AG},
                 null);
         TwinScales scales = new TwinScales(isfAg[0], isfAg[1], 1.0, egpScale).clamped();
 
@@ -172,6 +179,7 @@ public final class DigitalTwinCalibrator {
                 new double[]{TwinScales.MIN_SCALE},
                 new double[]{TwinScales.MAX_SCALE},
                 p -> new TwinScales(1.0, 1.0, 1.0, p[0]),
+                new int[]{TwinScales.EGP},
                 s -> s.regime() == Regime.FASTING);
         return TwinScales.clamp(egp[0]);
     }
@@ -183,33 +191,70 @@ public final class DigitalTwinCalibrator {
      * samples selected by {@code filter} (all samples when {@code filter} is null). Runs LM inside an
      * IRLS loop that re-derives Huber weights from the current residuals each pass, and appends
      * ridge-to-1.0 rows so the fit is regularised toward physiology and never rank-deficient.
+     *
+     * <p>{@code scaleIndex[j]} names the {@link TwinScales} component parameter j drives. When the source
+     * supplies sensitivities ({@link Config#sensitivityJacobian}), LM gets the exact Jacobian
+     * {@code √w_i · ∂predicted_i/∂scale} from a single replay per evaluation instead of one extra
+     * replay per parameter.</p>
      */
     private double[] robustFit(AnchorSampleSource src, double[] start, double[] lower, double[] upper,
-                               Function<double[], TwinScales> toScales, Predicate<AnchorSample> filter) {
+                               Function<double[], TwinScales> toScales, int[] scaleIndex,
+                               Predicate<AnchorSample> filter) {
         double[] p = LmParameterFitter.clampToBounds(start.clone(), lower, upper);
 
+        // Probe once: the first IRLS pass reuses these samples, and null means "no sensitivities".
+        AnchorSampleSource.SampleSensitivities probe =
+                cfg.sensitivityJacobian ? src.replayWithSensitivity(toScales.apply(p)) : null;
+        boolean analytic = probe != null;
+
         for (int iter = 0; iter < cfg.irlsIterations; iter++) {
-            List<AnchorSample> sel = select(src.replay(toScales.apply(p)), filter);
+            List<AnchorSample> all = (iter == 0 && analytic) ? probe.samples() : src.replay(toScales.apply(p));
+            List<AnchorSample> sel = select(all, filter);
             if (sel.isEmpty()) return p;
 
             final double[] weights = huberWeights(sel);
             final int m = sel.size();
             final double ridge = Math.sqrt(cfg.ridgeLambda);
 
-            LmParameterFitter.ResidualModel model = params -> {
-                List<AnchorSample> s = select(src.replay(toScales.apply(params)), filter);
-                int rows = Math.min(s.size(), m);
-                double[] r = new double[rows + params.length];
-                for (int i = 0; i < rows; i++) {
-                    r[i] = Math.sqrt(weights[i]) * s.get(i).error();
-                }
-                for (int j = 0; j < params.length; j++) {
-                    r[rows + j] = ridge * (params[j] - 1.0);   // Tikhonov pull toward physiology
-                }
-                return r;
-            };
-
-            LmParameterFitter.Result res = lm.fit(model, p, lower, upper);
+            LmParameterFitter.Result res;
+            if (analytic) {
+                LmParameterFitter.JacobianModel model = params -> {
+                    AnchorSampleSource.SampleSensitivities r = src.replayWithSensitivity(toScales.apply(params));
+                    List<AnchorSample> s = r.samples();
+                    double[][] d = r.dPredicted();
+                    int n = params.length;
+                    double[] res0 = new double[m + n];
+                    double[][] jac = new double[m + n][n];
+                    int row = 0;
+                    for (int i = 0; i < s.size() && row < m; i++) {
+                        if (filter != null && !filter.test(s.get(i))) continue;
+                        double sw = Math.sqrt(weights[row]);
+                        res0[row] = sw * s.get(i).error();
+                        for (int j = 0; j < n; j++) jac[row][j] = sw * d[i][scaleIndex[j]];
+                        row++;
+                    }
+                    for (int j = 0; j < n; j++) {
+                        res0[m + j] = ridge * (params[j] - 1.0);   // Tikhonov pull toward physiology
+                        jac[m + j][j] = ridge;
+                    }
+                    return new LmParameterFitter.Evaluation(res0, jac);
+                };
+                res = lm.fitWithJacobian(model, p, lower, upper);
+            } else {
+                LmParameterFitter.ResidualModel model = params -> {
+                    List<AnchorSample> s = select(src.replay(toScales.apply(params)), filter);
+                    int rows = Math.min(s.size(), m);
+                    double[] r = new double[rows + params.length];
+                    for (int i = 0; i < rows; i++) {
+                        r[i] = Math.sqrt(weights[i]) * s.get(i).error();
+                    }
+                    for (int j = 0; j < params.length; j++) {
+                        r[rows + j] = ridge * (params[j] - 1.0);   // Tikhonov pull toward physiology
+                    }
+                    return r;
+                };
+                res = lm.fit(model, p, lower, upper);
+            }
             double delta = maxAbsDiff(p, res.params());
             p = res.params();
             if (delta < 1e-3) break;
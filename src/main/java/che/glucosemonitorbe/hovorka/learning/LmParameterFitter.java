@@ -26,8 +26,11 @@ import org.apache.commons.math3.util.Pair;
  * reshape the same post-meal curve).
  *
  * <h3>Derivatives</h3>
- * <p>The forward model is an ODE integration with no closed-form Jacobian, so ∂residual/∂θ is
- * approximated by forward finite differences. The number of residuals must be constant across
+ * <p>The forward model is an ODE integration with no closed-form Jacobian. A plain
+ * {@link ResidualModel} gets ∂residual/∂θ by forward finite differences - one extra model evaluation
+ * per parameter. A {@link JacobianModel} supplies residuals and the exact Jacobian together (e.g. from
+ * forward sensitivity equations integrated alongside the ODE), so each LM step costs one evaluation
+ * and is not at the mercy of the FD step size. The number of residuals must be constant across
  * evaluations (it is - the sample set is fixed by the CGM/anchor grid, independent of θ).</p>
  *
  * <h3>Hard clamping</h3>
@@ -49,6 +52,18 @@ public final class LmParameterFitter {
         double[] residuals(double[] params);
     }
 
+    /**
+     * A forward model that returns its residuals together with their Jacobian
+     * {@code jacobian[i][j] = ∂r_i/∂θ_j} from one evaluation.
+     */
+    @FunctionalInterface
+    public interface JacobianModel {
+        Evaluation evaluate(double[] params);
+    }
+
+    /** Residuals and Jacobian of one {@link JacobianModel} evaluation. */
+    public record Evaluation(double[] residuals, double[][] jacobian) {}
+
     /** Outcome of a fit. */
     public record Result(double[] params, double rmse, double cost, int iterations, int evaluations) {}
 
@@ -78,30 +93,35 @@ public final class LmParameterFitter {
      * @return the fitted parameters (already clamped) plus fit diagnostics
      */
     public Result fit(ResidualModel model, double[] start, double[] lower, double[] upper) {
+        double[] start0 = checkedStart(start, lower, upper);
+        // Residual length is fixed by the sample grid; probe it once at the start point.
+        int residualCount = model.residuals(start0).length;
+        return optimize(finiteDifferences(model), residualCount, start0, lower, upper);
+    }
+
+    /**
+     * As {@link #fit(ResidualModel, double[], double[], double[])}, with the model's own Jacobian
+     * instead of finite differences.
+     */
+    public Result fitWithJacobian(JacobianModel model, double[] start, double[] lower, double[] upper) {
+        double[] start0 = checkedStart(start, lower, upper);
+        int residualCount = model.evaluate(start0).residuals().length;
+        return optimize(model, residualCount, start0, lower, upper);
+    }
+
+    private static double[] checkedStart(double[] start, double[] lower, double[] upper) {
         if (start.length != lower.length || start.length != upper.length) {
             throw new IllegalArgumentException("start/lower/upper length mismatch");
         }
-        double[] start0 = clampToBounds(start.clone(), lower, upper);
-
-        // Residual length is fixed by the sample grid; probe it once at the start point.
-        int residualCount = model.residuals(start0).length;
+        return clampToBounds(start.clone(), lower, upper);
+    }
 
+    private Result optimize(JacobianModel model, int residualCount, double[] start0,
+                            double[] lower, double[] upper) {
         MultivariateJacobianFunction jacobianModel = params -> {
-            double[] theta = params.toArray();
-            double[] r0 = model.residuals(theta);
-            RealVector value = new ArrayRealVector(r0, false);
-
-            double[][] jac = new double[r0.length][theta.length];
-            for (int j = 0; j < theta.length; j++) {
-                double h = fdRelStep * Math.max(1e-3, Math.abs(theta[j]));
-                double[] perturbed = theta.clone();
-                perturbed[j] += h;
-                double[] rj = model.residuals(perturbed);
-                for (int i = 0; i < r0.length; i++) {
-                    jac[i][j] = (rj[i] - r0[i]) / h;
-                }
-            }
-            return new Pair<>(value, (RealMatrix) new Array2DRowRealMatrix(jac, false));
+            Evaluation e = model.evaluate(params.toArray());
+            return new Pair<>((RealVector) new ArrayRealVector(e.residuals(), false),
+                              (RealMatrix) new Array2DRowRealMatrix(e.jacobian(), false));
         };
 
         LeastSquaresProblem problem = new LeastSquaresBuilder()
@@ -131,6 +151,24 @@ public final class LmParameterFitter {
         }
     }
 
+    /** Wraps a residual-only model with a forward finite-difference Jacobian (relative step {@link #fdRelStep}). */
+    private JacobianModel finiteDifferences(ResidualModel model) {
+        return theta -> {
+            double[] r0 = model.residuals(theta);
+            double[][] jac = new double[r0.length][theta.length];
+            for (int j = 0; j < theta.length; j++) {
+                double h = fdRelStep * Math.max(1e-3, Math.abs(theta[j]));
+                double[] perturbed = theta.clone();
+                perturbed[j] += h;
+                double[] rj = model.residuals(perturbed);
+                for (int i = 0; i < r0.length; i++) {
+                    jac[i][j] = (rj[i] - r0[i]) / h;
+                }
+            }
+            return new Evaluation(r0, jac);
+        };
+    }
+
     /** Project a parameter vector into {@code [lower, upper]} element-wise. */
     static double[] clampToBounds(double[] p, double[] lower, double[] upper) {
         for (int i = 0; i < p.length; i++) {
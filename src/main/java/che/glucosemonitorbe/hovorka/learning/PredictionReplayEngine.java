@@ -9,7 +9,9 @@ import che.glucosemonitorbe.entity.Note;
 import che.glucosemonitorbe.hovorka.HovorkaGlucosePredictionService;
 import che.glucosemonitorbe.hovorka.HovorkaParameterService;
 import che.glucosemonitorbe.hovorka.HovorkaParameters;
+import che.glucosemonitorbe.hovorka.HovorkaSensitivityBuffer;
 import che.glucosemonitorbe.hovorka.MacroNutrientGastricModel;
+import che.glucosemonitorbe.hovorka.OdeIntegrator;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -18,6 +20,10 @@ import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Replays the Hovorka predictor over a user's own history to produce {@link AnchorSample}s for
@@ -29,8 +35,29 @@ import java.util.UUID;
  * <h3>Cost control</h3>
  * <p>The optimiser evaluates {@link #replay(TwinScales)} many times, so the per-anchor input
  * assembly (history windows, macro-modulated {@code tMaxG}, regime) is done <b>once</b> in the
- * constructor; each replay only re-runs the ODE with freshly scaled parameters. Anchors are strided
- * and capped ({@link Config#maxAnchors}) to keep a full calibration well under a second.</p>
+ * constructor, together with everything of the prediction path that does not depend on the scales -
+ * warm gut state, per-dose IOB activity, GI / protein+fat tapes and basal EGP (see
+ * {@link HovorkaGlucosePredictionService.PreparedPath}). Each replay only re-runs the forward ODE with
+ * freshly scaled parameters. Anchors are strided and capped ({@link Config#maxAnchors}) to keep a full
+ * calibration well under a second.</p>
+ *
+ * <h3>Parallel replay</h3>
+ * <p>Anchors are independent, so when {@link Config#replayPool} is set each replay forks the anchor
+ * range across that pool (see {@link #newReplayPool(int)}). Per-anchor results are written into
+ * anchor-indexed slots and concatenated in anchor order, so the sample list - and therefore every
+ * LM residual vector built from it - is identical to the sequential replay.</p>
+ *
+ * <h3>Batched replay</h3>
+ * <p>A plain RK4 replay hands the anchors to the predictor's structure-of-arrays batch kernel
+ * {@link Config#batchLanes} at a time (within each fork-join leaf when parallel, whose leaves then hold
+ * at least {@code batchLanes} anchors), so one pass of SIMD arithmetic advances many anchor paths per
+ * simulated minute. Each anchor's curve is bit-identical to
+ * its single-path integration.</p>
+ *
+ * <h3>Sensitivities</h3>
+ * <p>{@link #replayWithSensitivity} runs the same replay with the forward sensitivity equations
+ * integrated alongside each ODE path, so the calibrator gets residuals and their exact Jacobian
+ * from a single pass instead of one extra replay per fitted scale.</p>
  */
 public final class PredictionReplayEngine implements AnchorSampleSource {
 
@@ -65,6 +92,43 @@ public final class PredictionReplayEngine implements AnchorSampleSource {
         public boolean fpuEquiv       = true;
         /** Horizons (min) to emit samples at - must be a subset of the model's emission schedule. */
         public int[]  sampleHorizons  = {30, 60, 90, 120};
+        /** Pool to fork anchors across during {@link #replay}; null = sequential on the caller thread.
+         *  The engine never shuts it down - the owner (e.g. the calibration service) does. */
+        public ForkJoinPool replayPool = null;
+        /** Anchors per fork-join leaf task. Each anchor is a full ODE path, so small leaves are fine;
+         *  a batched replay raises this to {@link #batchLanes} so each leaf fills the batch kernel. */
+        public int    anchorsPerTask  = 4;
+        /** {@link System#nanoTime()} deadline for the whole calibration using this engine; 0 = none.
+         *  Checked before every anchor, so a runaway fit stops within one ODE path of the budget. */
+        public long   deadlineNanos   = 0L;
+        /** Scheme for the plain {@link #replay} paths. {@link #replayWithSensitivity} always integrates
+         *  with RK4, whose discrete step its tangents differentiate. */
+        public OdeIntegrator integrator = OdeIntegrator.RK4;
+        /** Anchors integrated together by the batched kernel in a plain RK4 {@link #replay} (see
+         *  {@link HovorkaGlucosePredictionService#buildPredictionPaths}); 1 = one path at a time. The
+         *  samples are the same either way. */
+        public int    batchLanes      = 32;
+    }
+
+    /** Thrown from {@link #replay} once {@link Config#deadlineNanos} has passed. */
+    public static final class DeadlineExceededException extends RuntimeException {
+        public DeadlineExceededException() {
+            super("replay time budget exceeded");
+        }
+    }
+
+    /**
+     * Creates a dedicated, bounded pool for parallel replay with named daemon workers
+     * ({@code twin-replay-N}), so calibration never competes for the JVM-wide common pool.
+     */
+    public static ForkJoinPool newReplayPool(int parallelism) {
+        AtomicInteger seq = new AtomicInteger();
+        return new ForkJoinPool(Math.max(1, parallelism), pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("twin-replay-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
     }
 
     private final HovorkaGlucosePredictionService predictor;
@@ -81,9 +145,8 @@ public final class PredictionReplayEngine implements AnchorSampleSource {
 
     /** Per-anchor inputs, assembled once (scale-independent). */
     private record AnchorContext(
-            double g0, LocalDateTime now,
-            List<CarbsEntry> carbs, List<InsulinDose> insulin, List<Note> longActing,
-            Regime regime, HovorkaParameters macroParams) {}
+            double g0, LocalDateTime now, Regime regime, HovorkaParameters macroParams,
+            HovorkaGlucosePredictionService.PreparedPath prepared) {}
 
     /**
      * @param predicted  a predictor wired with {@link PredictionResidualProvider#NONE} (raw model)
@@ -135,88 +198,294 @@ public final class PredictionReplayEngine implements AnchorSampleSource {
      * (predicted, actual) samples.
      */
     public List<AnchorSample> replay(TwinScales scales) {
+        return replayAll(scales, false).samples();
+    }
+
+    /**
+     * One replay that also integrates the forward sensitivity equations, returning every sample's
+     * exact ∂predicted/∂scale (see {@link HovorkaGlucosePredictionService#buildPredictionPathWithSensitivity}).
+     * Samples are identical to {@link #replay}; tMaxGScale is not wired into the ODE, so its column is 0.
+     */
+    public SampleSensitivities replayWithSensitivity(TwinScales scales) {
+        return replayAll(scales, true);
+    }
+
+    private SampleSensitivities replayAll(TwinScales scales, boolean withSensitivity) {
         TwinScales s = scales.clamped();
+        if (cfg.replayPool == null || anchors.size() <= leafSize(withSensitivity)) {
+            List<AnchorSample> out = new ArrayList<>();
+            List<double[]> dOut = withSensitivity ? new ArrayList<>() : null;
+            if (batched(withSensitivity)) {
+                for (List<AnchorSample> samples : replayBatched(0, anchors.size(), s)) out.addAll(samples);
+            } else {
+                for (AnchorContext a : anchors) replayAnchor(a, s, out, dOut);
+            }
+            return new SampleSensitivities(out, dOut == null ? null : dOut.toArray(new double[0][]));
+        }
+
+        // Fork anchors across the pool; each leaf fills its own anchor-indexed slots, which are then
+        // merged in anchor order so the result is deterministic and identical to the sequential path.
+        @SuppressWarnings("unchecked")
+        List<AnchorSample>[] perAnchor = new List[anchors.size()];
+        @SuppressWarnings("unchecked")
+        List<double[]>[] perAnchorD = withSensitivity ? new List[anchors.size()] : null;
+        cfg.replayPool.invoke(new AnchorRangeTask(s, perAnchor, perAnchorD, 0, anchors.size()));
         List<AnchorSample> out = new ArrayList<>();
-        for (AnchorContext a : anchors) {
-            HovorkaParameters p = applyScales(a.macroParams(), s);
-            List<PredictionPointDTO> curve = predictor.buildPredictionPath(
-                    p, rapidIob, settings, a.g0(), a.now(), a.carbs(), a.insulin(), a.longActing(),
-                    userId, cfg.horizonMin, activityProvider);
-            long t0 = a.now().toInstant(ZoneOffset.UTC).toEpochMilli();
-            for (PredictionPointDTO pt : curve) {
-                int h = (int) Duration.between(a.now(), pt.getTimestamp()).toMinutes();
-                if (!isSampleHorizon(h)) continue;
-                Double actual = nearest(cgmT, cgmG, t0 + h * 60_000L, cfg.alignToleranceMs);
-                if (actual == null) continue;
-                out.add(new AnchorSample(h, pt.getPredictedGlucose(), actual, a.g0(),
-                        a.regime(), pt.getTimestamp().getHour()));
+        for (List<AnchorSample> samples : perAnchor) out.addAll(samples);
+        if (perAnchorD == null) return new SampleSensitivities(out, null);
+        List<double[]> dOut = new ArrayList<>(out.size());
+        for (List<double[]> d : perAnchorD) dOut.addAll(d);
+        return new SampleSensitivities(out, dOut.toArray(new double[0][]));
+    }
+
+    /**
+     * Run the model at one anchor and append its samples to {@code out}; when {@code dOut} is
+     * non-null also append each sample's ∂predicted/∂scale (one row per sample, same order).
+     */
+    private void replayAnchor(AnchorContext a, TwinScales s, List<AnchorSample> out, List<double[]> dOut) {
+        if (cfg.deadlineNanos != 0L && System.nanoTime() - cfg.deadlineNanos > 0) {
+            throw new DeadlineExceededException();
+        }
+        HovorkaParameters p = applyScales(a.macroParams(), s);
+        List<PredictionPointDTO> curve;
+        double[][] dGlucose = null;
+        if (dOut == null) {
+            curve = predictor.buildPredictionPath(a.prepared(), p, userId, activityProvider, cfg.integrator);
+        } else {
+            HovorkaGlucosePredictionService.SensitivityPath path =
+                    predictor.buildPredictionPathWithSensitivity(a.prepared(), p, userId, activityProvider);
+            curve = path.points();
+            dGlucose = path.dGlucose();
+        }
+        collectSamples(a, curve, dGlucose, out, dOut);
+    }
+
+    private boolean batched(boolean withSensitivity) {
+        return !withSensitivity && cfg.integrator == OdeIntegrator.RK4 && cfg.batchLanes > 1;
+    }
+
+    /** Most anchors a fork-join leaf replays itself; a batched leaf takes a full batch. */
+    private int leafSize(boolean withSensitivity) {
+        int perTask = Math.max(1, cfg.anchorsPerTask);
+        return batched(withSensitivity) ? Math.max(perTask, cfg.batchLanes) : perTask;
+    }
+
+    /**
+     * Replays anchors {@code [from, to)} through the batched predictor, {@link Config#batchLanes} at a
+     * time, and returns each anchor's samples in anchor order.
+     */
+    private List<List<AnchorSample>> replayBatched(int from, int to, TwinScales s) {
+        List<List<AnchorSample>> perAnchor = new ArrayList<>(to - from);
+        for (int lo = from; lo < to; lo += cfg.batchLanes) {
+            if (cfg.deadlineNanos != 0L && System.nanoTime() - cfg.deadlineNanos > 0) {
+                throw new DeadlineExceededException();
+            }
+            int hi = Math.min(to, lo + cfg.batchLanes);
+            List<HovorkaGlucosePredictionService.PreparedPath> prepared = new ArrayList<>(hi - lo);
+            List<HovorkaParameters> params = new ArrayList<>(hi - lo);
+            for (int i = lo; i < hi; i++) {
+                prepared.add(anchors.get(i).prepared());
+                params.add(applyScales(anchors.get(i).macroParams(), s));
+            }
+            List<List<PredictionPointDTO>> curves =
+                    predictor.buildPredictionPaths(prepared, params, userId, activityProvider);
+            for (int i = lo; i < hi; i++) {
+                List<AnchorSample> samples = new ArrayList<>(cfg.sampleHorizons.length);
+                collectSamples(anchors.get(i), curves.get(i - lo), null, samples, null);
+                perAnchor.add(samples);
             }
         }
-        return out;
+        return perAnchor;
     }
 
-    // -- Anchor preparation ------------------------------------------------------
+    /** Pairs an anchor's curve with the CGM at each sample horizon (and its gradient row when given). */
+    private void collectSamples(AnchorContext a, List<PredictionPointDTO> curve, double[][] dGlucose,
+                                List<AnchorSample> out, List<double[]> dOut) {
+        long t0 = a.now().toInstant(ZoneOffset.UTC).toEpochMilli();
+        for (int k = 0; k < curve.size(); k++) {
+            PredictionPointDTO pt = curve.get(k);
+            int h = (int) Duration.between(a.now(), pt.getTimestamp()).toMinutes();
+            if (!isSampleHorizon(h)) continue;
+            Double actual = nearest(cgmT, cgmG, t0 + h * 60_000L, cfg.alignToleranceMs);
+            if (actual == null) continue;
+            out.add(new AnchorSample(h, pt.getPredictedGlucose(), actual, a.g0(),
+                    a.regime(), pt.getTimestamp().getHour()));
+            if (dOut != null) dOut.add(toScaleGradient(dGlucose[k], a.macroParams()));
+        }
+    }
 
-    private List<AnchorContext> prepareAnchors(List<Event> events) {
-        List<AnchorContext> result = new ArrayList<>();
-        if (cgmT.length == 0) return result;
+    /**
+     * Chain rule from the ODE parameters to the scales: {@link #applyScales} multiplies isf, aG and
+     * egp0 by their scale, so ∂G/∂scale = ∂G/∂param × unscaled param.
+     */
+    private static double[] toScaleGradient(double[] dParam, HovorkaParameters unscaled) {
+        double[] d = new double[TwinScales.COMPONENTS];
+        d[TwinScales.ISF] = dParam[HovorkaSensitivityBuffer.ISF]  * unscaled.isf();
+        d[TwinScales.AG]  = dParam[HovorkaSensitivityBuffer.AG]   * unscaled.aG();
+        d[TwinScales.EGP] = dParam[HovorkaSensitivityBuffer.EGP0] * unscaled.egp0();
+        return d;
+    }
 
-        long first = cgmT[0];
-        long last  = cgmT[cgmT.length - 1];
-        long strideMs = cfg.strideMin * 60_000L;
-        long horizonMs = cfg.horizonMin * 60_000L;
+    /** Fork-join split of the anchor index range {@code [from, to)}. */
+    private final class AnchorRangeTask extends RecursiveAction {
+        private final TwinScales scales;
+        private final List<AnchorSample>[] slots;
+        private final List<double[]>[] dSlots;   // null unless sensitivities were requested
+        private final int from, to;
+
+        AnchorRangeTask(TwinScales scales, List<AnchorSample>[] slots, List<double[]>[] dSlots,
+                        int from, int to) {
+            this.scales = scales;
+            this.slots = slots;
+            this.dSlots = dSlots;
+            this.from = from;
+            this.to = to;
+        }
 
-        // Collect candidate anchor times first so we can evenly subsample to the cap.
-        List<Long> candidates = new ArrayList<>();
-        for (long t0 = first; t0 + horizonMs <= last; t0 += strideMs) candidates.add(t0);
-        int step = Math.max(1, (int) Math.ceil(candidates.size() / (double) cfg.maxAnchors));
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize(dSlots != null)) {
+                if (batched(dSlots != null)) {
+                    List<List<AnchorSample>> samples = replayBatched(from, to, scales);
+                    for (int i = from; i < to; i++) slots[i] = samples.get(i - from);
+                    return;
+                }
+                for (int i = from; i < to; i++) {
+                    List<AnchorSample> samples = new ArrayList<>(cfg.sampleHorizons.length);
+                    List<double[]> d = dSlots != null ? new ArrayList<>(cfg.sampleHorizons.length) : null;
+                    replayAnchor(anchors.get(i), scales, samples, d);
+                    slots[i] = samples;
+                    if (dSlots != null) dSlots[i] = d;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new AnchorRangeTask(scales, slots, dSlots, from, mid),
+                      new AnchorRangeTask(scales, slots, dSlots, mid, to));
+        }
+    }
 
-        for (int idx = 0; idx < candidates.size(); idx += step) {
-            long t0 = candidates.get(idx);
-            Double g0 = nearest(cgmT, cgmG, t0, cfg.alignToleranceMs);
-            if (g0 == null) continue;
-            LocalDateTime now = toLdt(t0);
+    // -- Anchor preparation ------------------------------------------------------
 
-            List<CarbsEntry> carbs = new ArrayList<>();
-            List<InsulinDose> insulin = new ArrayList<>();
-            List<Note> longActing = new ArrayList<>();
-            boolean carbActive = false, insulinActive = false;
-            double domCarbAmt = -1, domCarbs = 0, domProtein = 0, domFat = 0, domFiber = 0;
+    /** Meals/boluses this far before an anchor feed its warm-up and IOB curve. */
+    private static final long PAST_WINDOW_MS        = 8 * 3600_000L;
+    /** Long-acting notes this far before an anchor feed its basal EGP. */
+    private static final long LONG_ACTING_WINDOW_MS = 36 * 3600_000L;
+    /** Events this far before an anchor (or within its horizon) decide its regime. */
+    private static final long ACTIVE_WINDOW_MS      = 3 * 3600_000L;
 
-            for (Event n : events) {
-                long age = t0 - n.epochMs();
-                boolean inPast   = age >= 0 && age <= 8 * 3600_000L;
-                boolean inFuture = age < 0 && -age <= horizonMs;
+    /**
+     * The sorted events as model inputs, built once per event and shared by every anchor whose window
+     * covers it (the predictor only reads them). Meal/bolus events and long-acting notes are split into
+     * two time-ordered arrays so each anchor's window is a contiguous index range {@code [lo, hi)};
+     * an event's carb entries (logged carbs, then its FPU equivalent) and bolus occupy the contiguous
+     * ranges {@code [carbStart[i], carbStart[i+1])} / {@code [insulinStart[i], insulinStart[i+1])}, so a
+     * window's inputs are sub-list views in the same order the per-anchor scan produced them.
+     */
+    private static final class EventViews {
+        final Event[] events;
+        final List<CarbsEntry> carbs;
+        final int[] carbStart;
+        final List<InsulinDose> insulin;
+        final int[] insulinStart;
+        final long[] longActingT;
+        final List<Note> longActing;
+
+        EventViews(List<Event> sorted, boolean fpuEquiv) {
+            List<Event> regular = new ArrayList<>();
+            List<CarbsEntry> carbList = new ArrayList<>();
+            List<InsulinDose> insulinList = new ArrayList<>();
+            List<Note> notes = new ArrayList<>();
+            List<Long> noteTimes = new ArrayList<>();
+            List<Integer> carbStarts = new ArrayList<>();
+            List<Integer> insulinStarts = new ArrayList<>();
+            for (Event n : sorted) {
                 if (n.longActing()) {
-                    if (age >= 0 && age <= 36 * 3600_000L) longActing.add(makeLongActing(n));
+                    notes.add(makeLongActing(n));
+                    noteTimes.add(n.epochMs());
                     continue;
                 }
-                if (!inPast && !inFuture) continue;
-
+                regular.add(n);
+                carbStarts.add(carbList.size());
+                insulinStarts.add(insulinList.size());
                 if (n.carbs() > 0) {
-                    carbs.add(CarbsEntry.builder().timestamp(toLdt(n.epochMs())).carbs(n.carbs()).build());
+                    carbList.add(CarbsEntry.builder().timestamp(toLdt(n.epochMs())).carbs(n.carbs()).build());
                 }
                 if (n.insulin() > 0) {
-                    insulin.add(InsulinDose.builder().timestamp(toLdt(n.epochMs()))
+                    insulinList.add(InsulinDose.builder().timestamp(toLdt(n.epochMs()))
                             .units(n.insulin()).type(InsulinDose.InsulinType.BOLUS).build());
                 }
-                if (cfg.fpuEquiv) {
+                if (fpuEquiv) {
                     double fpu = (n.protein() * 4.0 * FPU_GLUC_FRACTION + n.fat() * 9.0)
                             / 100.0 * FPU_CARB_EQUIV_G;
                     if (fpu >= FPU_MIN_EQUIV_G) {
-                        carbs.add(CarbsEntry.builder()
+                        carbList.add(CarbsEntry.builder()
                                 .timestamp(toLdt(n.epochMs() + FPU_ONSET_MIN * 60_000L)).carbs(fpu).build());
                     }
                 }
+            }
+            carbStarts.add(carbList.size());
+            insulinStarts.add(insulinList.size());
+
+            this.events = regular.toArray(new Event[0]);
+            this.carbs = List.copyOf(carbList);
+            this.carbStart = carbStarts.stream().mapToInt(Integer::intValue).toArray();
+            this.insulin = List.copyOf(insulinList);
+            this.insulinStart = insulinStarts.stream().mapToInt(Integer::intValue).toArray();
+            this.longActingT = noteTimes.stream().mapToLong(Long::longValue).toArray();
+            this.longActing = List.copyOf(notes);
+        }
+    }
 
-                boolean active = age <= 3 * 3600_000L && -age <= horizonMs;
-                if (active) {
-                    if (n.carbs() > 0 || n.protein() > 0 || n.fat() > 0) carbActive = true;
-                    if (n.insulin() > 0) insulinActive = true;
-                    if (n.carbs() > domCarbAmt) {
-                        domCarbAmt = n.carbs();
-                        domCarbs = n.carbs(); domProtein = n.protein(); domFat = n.fat(); domFiber = n.fiber();
-                    }
+    /**
+     * Builds the anchor contexts with a sweep line: anchors are visited in time order, so the
+     * meal/bolus window {@code [t0 - 8 h, t0 + horizon]} and the long-acting window
+     * {@code [t0 - 36 h, t0]} only ever slide forward - each event enters and leaves once, and an
+     * anchor's inputs are views into the shared {@link EventViews}.
+     */
+    private List<AnchorContext> prepareAnchors(List<Event> events) {
+        List<AnchorContext> result = new ArrayList<>();
+        if (cgmT.length == 0) return result;
+
+        long first = cgmT[0];
+        long last  = cgmT[cgmT.length - 1];
+        long strideMs = cfg.strideMin * 60_000L;
+        long horizonMs = cfg.horizonMin * 60_000L;
+
+        // Candidate anchors are first, first + stride, ... while the horizon fits; evenly subsample
+        // them to the cap.
+        int candidates = last - first >= horizonMs ? (int) ((last - first - horizonMs) / strideMs) + 1 : 0;
+        int step = Math.max(1, (int) Math.ceil(candidates / (double) cfg.maxAnchors));
+
+        EventViews views = new EventViews(events, cfg.fpuEquiv);
+        Event[] ev = views.events;
+        int lo = 0, hi = 0, laLo = 0, laHi = 0;
+
+        for (int idx = 0; idx < candidates; idx += step) {
+            long t0 = first + idx * strideMs;
+            Double g0 = nearest(cgmT, cgmG, t0, cfg.alignToleranceMs);
+            if (g0 == null) continue;
+            LocalDateTime now = toLdt(t0);
+
+            while (lo < ev.length && ev[lo].epochMs() < t0 - PAST_WINDOW_MS) lo++;
+            while (hi < ev.length && ev[hi].epochMs() <= t0 + horizonMs) hi++;
+            while (laLo < views.longActingT.length && views.longActingT[laLo] < t0 - LONG_ACTING_WINDOW_MS) laLo++;
+            while (laHi < views.longActingT.length && views.longActingT[laHi] <= t0) laHi++;
+
+            List<CarbsEntry> carbs = views.carbs.subList(views.carbStart[lo], views.carbStart[hi]);
+            List<InsulinDose> insulin = views.insulin.subList(views.insulinStart[lo], views.insulinStart[hi]);
+            List<Note> longActing = views.longActing.subList(laLo, laHi);
+
+            boolean carbActive = false, insulinActive = false;
+            double domCarbAmt = -1, domCarbs = 0, domProtein = 0, domFat = 0, domFiber = 0;
+            for (int i = lo; i < hi; i++) {
+                Event n = ev[i];
+                if (t0 - n.epochMs() > ACTIVE_WINDOW_MS) continue;
+                if (n.carbs() > 0 || n.protein() > 0 || n.fat() > 0) carbActive = true;
+                if (n.insulin() > 0) insulinActive = true;
+                if (n.carbs() > domCarbAmt) {
+                    domCarbAmt = n.carbs();
+                    domCarbs = n.carbs(); domProtein = n.protein(); domFat = n.fat(); domFiber = n.fiber();
                 }
             }
 
@@ -228,7 +497,9 @@ public final class PredictionReplayEngine implements AnchorSampleSource {
                         domCarbs, domProtein, domFat, domFiber, HovorkaParameterService.HALF_LIFE_TO_TMAX_G);
                 macroParams = withTMaxG(baseParams, tMaxG);
             }
-            result.add(new AnchorContext(g0, now, carbs, insulin, longActing, regime, macroParams));
+            HovorkaGlucosePredictionService.PreparedPath prepared = predictor.preparePath(
+                    macroParams, rapidIob, settings, g0, now, carbs, insulin, longActing, cfg.horizonMin);
+            result.add(new AnchorContext(g0, now, regime, macroParams, prepared));
         }
         return result;
     }
@@ -39,6 +39,11 @@ public record TwinScales(
     /** Upper bound for any scale. */
     public static final double MAX_SCALE = 2.0;
 
+    /** Component indices, in declaration order - used to address per-scale sensitivities. */
+    public static final int ISF = 0, AG = 1, TMAX_G = 2, EGP = 3;
+    /** Number of scale components. */
+    public static final int COMPONENTS = 4;
+
     /** The neutral twin: every scale 1.0, i.e. predictions identical to the un-calibrated model. */
     public static TwinScales neutral() {
         return new TwinScales(1.0, 1.0, 1.0, 1.0);
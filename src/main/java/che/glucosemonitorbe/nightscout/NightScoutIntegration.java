@@ -22,31 +22,44 @@ import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 public class NightScoutIntegration {
     
+    /** Headers-received budget for the async client; the whole response gets twice this. */
+    private static final Duration ASYNC_RESPONSE_TIMEOUT = Duration.ofSeconds(30);
+
     private final RestTemplate restTemplate;
+    private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
     private final UserDataSourceConfigService userDataSourceConfigService;
     private final CircuitBreakerManager circuitBreakerManager;
 
     public NightScoutIntegration(
             @Qualifier("nightscoutRestTemplate") RestTemplate restTemplate,
+            @Qualifier("nightscoutHttpClient") HttpClient httpClient,
             ObjectMapper objectMapper,
             UserDataSourceConfigService userDataSourceConfigService,
             CircuitBreakerManager circuitBreakerManager) {
         this.restTemplate = restTemplate;
+        this.httpClient = httpClient;
         this.objectMapper = objectMapper;
         this.userDataSourceConfigService = userDataSourceConfigService;
         this.circuitBreakerManager = circuitBreakerManager;
@@ -94,36 +107,8 @@ public class NightScoutIntegration {
                     String fullUrl = url.replaceAll("/$", "") + "/api/v2/entries.json?count=" + count;
                     log.info("Final URL: {}", fullUrl);
                     
-                    // Create headers
-                    HttpHeaders headers = new HttpHeaders();
-                    headers.set("Content-Type", "application/json");
-                    headers.set("Accept", "application/json");
-                    
-                    // Add authentication headers
-                    if (apiSecret != null && !apiSecret.isEmpty()) {
-                        String hashedSecret = hashApiSecret(apiSecret);
-                        headers.set("api-secret", hashedSecret);
-                        log.info("Added api-secret header (hashed)");
-                    } else {
-                        log.warn("No API secret provided for Nightscout configuration");
-                    }
-                    if (apiToken != null && !apiToken.isEmpty()) {
-                        headers.set("Authorization", "Bearer " + apiToken);
-                        log.info("Added Authorization header");
-                    } else {
-                        log.warn("No API token provided for Nightscout configuration");
-                    }
-                    
-                    HttpEntity<String> entity = new HttpEntity<>(headers);
-                    
-                    // Make the request
-                    ResponseEntity<String> response = restTemplate.exchange(fullUrl, HttpMethod.GET, entity, String.class);
-                    
-                    if (response.getStatusCode().is2xxSuccessful()) {
-                        return objectMapper.readValue(response.getBody(), new TypeReference<List<NightscoutEntryDto>>() {});
-                    } else {
-                        throw new RuntimeException("Nightscout API returned status: " + response.getStatusCode());
-                    }
+                    HttpHeaders headers = requestHeaders(apiSecret, apiToken);
+                    return fetchEntries(fullUrl, headers);
                     
                 } catch (Exception e) {
                     log.error("Failed to fetch glucose entries from Nightscout for user {}: {}", userId, e.getMessage());
@@ -171,36 +156,8 @@ public class NightScoutIntegration {
                                 "&find[date][$lte]=" + endDateStr;
                     log.info("Final URL: {}", fullUrl);
                     
-                    // Create headers
-                    HttpHeaders headers = new HttpHeaders();
-                    headers.set("Content-Type", "application/json");
-                    headers.set("Accept", "application/json");
-                    
-                    // Add authentication headers
-                    if (apiSecret != null && !apiSecret.isEmpty()) {
-                        String hashedSecret = hashApiSecret(apiSecret);
-                        headers.set("api-secret", hashedSecret);
-                        log.info("Added api-secret header (hashed)");
-                    } else {
-                        log.warn("No API secret provided for Nightscout configuration");
-                    }
-                    if (apiToken != null && !apiToken.isEmpty()) {
-                        headers.set("Authorization", "Bearer " + apiToken);
-                        log.info("Added Authorization header");
-                    } else {
-                        log.warn("No API token provided for Nightscout configuration");
-                    }
-                    
-                    HttpEntity<String> entity = new HttpEntity<>(headers);
-                    
-                    // Make the request
-                    ResponseEntity<String> response = restTemplate.exchange(fullUrl, HttpMethod.GET, entity, String.class);
-                    
-                    if (response.getStatusCode().is2xxSuccessful()) {
-                        return objectMapper.readValue(response.getBody(), new TypeReference<List<NightscoutEntryDto>>() {});
-                    } else {
-                        throw new RuntimeException("Nightscout API returned status: " + response.getStatusCode());
-                    }
+                    HttpHeaders headers = requestHeaders(apiSecret, apiToken);
+                    return fetchEntries(fullUrl, headers);
                     
                 } catch (Exception e) {
                     log.error("Failed to fetch glucose entries by date from Nightscout for user {}: {}", userId, e.getMessage());
@@ -317,6 +274,78 @@ public class NightScoutIntegration {
         }
     }
     
+    /**
+     * Non-blocking variant of {@link #getGlucoseEntries} for the background sync: pooled HTTP/2
+     * connections (many users share a host) and the body parsed incrementally as it arrives, so no
+     * thread waits on the upstream and no response copy is held. Not cached - the sync has its own
+     * per-user backoff. Completes with an empty list when the fetch fails or the breaker is open,
+     * like the blocking variant.
+     */
+    public CompletableFuture<List<NightscoutEntryDto>> getGlucoseEntriesAsync(UUID userId, int count) {
+        CircuitBreaker circuitBreaker = circuitBreakerManager.getCircuitBreaker("nightscout-entries:" + userId);
+
+        return circuitBreaker.executeAsyncWithFallback(
+            () -> {
+                NightscoutCredentials config = userDataSourceConfigService.getNightscoutCredentials(userId)
+                        .orElseThrow(() -> new RuntimeException("No active Nightscout configuration found for user. Please configure Nightscout in Data Source settings."));
+                String url = config.url();
+                if (url == null || url.trim().isEmpty()) {
+                    throw new RuntimeException("Nightscout URL is not configured. Please set the URL in Data Source settings.");
+                }
+                NightscoutUrlValidator.validateSafeForOutboundFetch(url);
+
+                String fullUrl = url.replaceAll("/$", "") + "/api/v2/entries.json?count=" + count;
+                log.debug("Fetching {} glucose entries from Nightscout (async): {}", count, url);
+                HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(fullUrl))
+                        .timeout(ASYNC_RESPONSE_TIMEOUT)
+                        .GET();
+                requestHeaders(config.apiSecret(), config.apiToken())
+                        .forEach((name, values) -> values.forEach(v -> request.header(name, v)));
+
+                return httpClient.sendAsync(request.build(), NightscoutEntryReader.bodyHandler(objectMapper.getFactory()))
+                        .thenApply(HttpResponse::body)
+                        .orTimeout(ASYNC_RESPONSE_TIMEOUT.toMillis() * 2, TimeUnit.MILLISECONDS);
+            },
+            () -> {
+                log.warn("Nightscout entries circuit breaker is OPEN or fetch failed for user {} - returning empty list", userId);
+                return List.of();
+            }
+        );
+    }
+
+    /** GET {@code fullUrl} and stream the entries array out of the response body. */
+    private List<NightscoutEntryDto> fetchEntries(String fullUrl, HttpHeaders headers) {
+        return restTemplate.execute(fullUrl, HttpMethod.GET,
+                request -> request.getHeaders().putAll(headers),
+                response -> {
+                    if (!response.getStatusCode().is2xxSuccessful()) {
+                        throw new RuntimeException("Nightscout API returned status: " + response.getStatusCode());
+                    }
+                    return NightscoutEntryReader.read(objectMapper.getFactory(), response.getBody());
+                });
+    }
+
+    /** Accept/Content-Type plus the hashed {@code api-secret} and bearer token, when configured. */
+    private HttpHeaders requestHeaders(String apiSecret, String apiToken) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Content-Type", "application/json");
+        headers.set("Accept", "application/json");
+
+        if (apiSecret != null && !apiSecret.isEmpty()) {
+            headers.set("api-secret", hashApiSecret(apiSecret));
+            log.info("Added api-secret header (hashed)");
+        } else {
+            log.warn("No API secret provided for Nightscout configuration");
+        }
+        if (apiToken != null && !apiToken.isEmpty()) {
+            headers.set("Authorization", "Bearer " + apiToken);
+            log.info("Added Authorization header");
+        } else {
+            log.warn("No API token provided for Nightscout configuration");
+        }
+        return headers;
+    }
+
     /**
      * Hash the API secret using SHA-1 as required by Nightscout
      */
@@ -0,0 +1,212 @@
+package che.glucosemonitorbe.nightscout;
+
+import che.glucosemonitorbe.dto.NightscoutEntryDto;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Streams a Nightscout {@code /api/v2/entries.json} array straight into {@link NightscoutEntryDto}s,
+ * one JSON token at a time - no response {@code String}, byte array or tree is materialised, so a
+ * {@code count=...} backfill costs the DTOs themselves plus one network chunk.
+ *
+ * <p>Tokens are pushed in by {@link #accept}, so the same reader serves a blocking
+ * {@link InputStream} ({@link #read}) and the non-blocking HTTP client path ({@link #bodyHandler}),
+ * where chunks are fed to Jackson's async parser as they arrive. Field handling matches the lenient
+ * databind mapping it replaces: unknown fields (Nightscout adds {@code noise}, {@code filtered},
+ * {@code mills}, ...) and nested values are skipped, numbers in strings and strings in numbers are
+ * coerced, and non-object array elements are ignored.</p>
+ */
+final class NightscoutEntryReader {
+
+    private final List<NightscoutEntryDto> entries = new ArrayList<>();
+    private NightscoutEntryDto current;
+    private String field;
+    /** Nesting depth of the token just consumed: 1 inside the array, 2 inside an entry. */
+    private int depth;
+    private boolean done;
+
+    /** Reads a whole entries array from {@code body} (blocking). */
+    static List<NightscoutEntryDto> read(JsonFactory factory, InputStream body) throws IOException {
+        NightscoutEntryReader reader = new NightscoutEntryReader();
+        try (JsonParser p = factory.createParser(body)) {
+            JsonToken t;
+            while ((t = p.nextToken()) != null) reader.accept(t, p);
+        }
+        return reader.finish();
+    }
+
+    /**
+     * Body handler for {@link java.net.http.HttpClient#sendAsync}: parses 2xx bodies incrementally
+     * on the client's own threads and fails other statuses without reading the body.
+     */
+    static HttpResponse.BodyHandler<List<NightscoutEntryDto>> bodyHandler(JsonFactory factory) {
+        return info -> {
+            if (info.statusCode() / 100 != 2) {
+                return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.discarding(), ignored -> {
+                    throw new IllegalStateException("Nightscout API returned status: " + info.statusCode());
+                });
+            }
+            try {
+                return new Subscriber(factory.createNonBlockingByteArrayParser());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /** Consumes one token; {@code p} is positioned on it. */
+    void accept(JsonToken token, JsonParser p) throws IOException {
+        if (done) throw new IOException("Unexpected content after the Nightscout entries array");
+        switch (token) {
+            case START_ARRAY, START_OBJECT -> {
+                if (depth == 0 && token != JsonToken.START_ARRAY) {
+                    throw new IOException("Expected a JSON array of Nightscout entries");
+                }
+                if (depth == 1 && token == JsonToken.START_OBJECT) current = new NightscoutEntryDto();
+                depth++;
+            }
+            case END_ARRAY, END_OBJECT -> {
+                depth--;
+                if (depth == 1 && current != null) {
+                    entries.add(current);
+                    current = null;
+                } else if (depth == 0) {
+                    done = true;
+                }
+                field = null;
+            }
+            case FIELD_NAME -> {
+                if (depth == 2) field = p.currentName();
+            }
+            default -> {
+                if (depth == 2 && current != null && field != null) set(current, field, token, p);
+                field = depth == 2 ? null : field;
+            }
+        }
+    }
+
+    /** The parsed entries; fails if the input ended before the array was closed. */
+    List<NightscoutEntryDto> finish() throws IOException {
+        if (!done) throw new IOException("Truncated Nightscout entries response");
+        return entries;
+    }
+
+    private static void set(NightscoutEntryDto e, String name, JsonToken token, JsonParser p) throws IOException {
+        switch (name) {
+            case "_id" -> e.setId(text(token, p));
+            case "sgv" -> e.setSgv(intValue(token, p));
+            case "date" -> e.setDate(longValue(token, p));
+            case "dateString" -> e.setDateString(text(token, p));
+            case "trend" -> e.setTrend(intValue(token, p));
+            case "direction" -> e.setDirection(text(token, p));
+            case "device" -> e.setDevice(text(token, p));
+            case "type" -> e.setType(text(token, p));
+            case "utcOffset" -> e.setUtcOffset(intValue(token, p));
+            case "sysTime" -> e.setSysTime(text(token, p));
+            default -> { }
+        }
+    }
+
+    private static String text(JsonToken token, JsonParser p) throws IOException {
+        return token == JsonToken.VALUE_NULL ? null : p.getText();
+    }
+
+    private static Integer intValue(JsonToken token, JsonParser p) throws IOException {
+        Long v = longValue(token, p);
+        return v == null ? null : v.intValue();
+    }
+
+    private static Long longValue(JsonToken token, JsonParser p) throws IOException {
+        return switch (token) {
+            case VALUE_NUMBER_INT -> p.getLongValue();
+            case VALUE_NUMBER_FLOAT -> (long) p.getDoubleValue();
+            case VALUE_STRING -> {
+                String s = p.getText().strip();
+                if (s.isEmpty()) yield null;
+                try {
+                    yield s.contains(".") ? (long) Double.parseDouble(s) : Long.parseLong(s);
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Not a number in Nightscout entry: " + s, ex);
+                }
+            }
+            case VALUE_TRUE -> 1L;
+            case VALUE_FALSE -> 0L;
+            default -> null;
+        };
+    }
+
+    /** Feeds network chunks to Jackson's non-blocking parser and the reader as they arrive. */
+    private static final class Subscriber implements HttpResponse.BodySubscriber<List<NightscoutEntryDto>> {
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+        private final NightscoutEntryReader reader = new NightscoutEntryReader();
+        private final CompletableFuture<List<NightscoutEntryDto>> result = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        Subscriber(JsonParser parser) {
+            this.parser = parser;
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        @Override
+        public CompletionStage<List<NightscoutEntryDto>> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> chunks) {
+            try {
+                for (ByteBuffer chunk : chunks) {
+                    byte[] bytes = new byte[chunk.remaining()];
+                    chunk.get(bytes);
+                    feeder.feedInput(bytes, 0, bytes.length);
+                    drain();
+                }
+                subscription.request(1);
+            } catch (IOException | RuntimeException e) {
+                subscription.cancel();
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                feeder.endOfInput();
+                drain();
+                result.complete(reader.finish());
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void drain() throws IOException {
+            JsonToken t;
+            while ((t = parser.nextToken()) != null && t != JsonToken.NOT_AVAILABLE) reader.accept(t, parser);
+        }
+    }
+}
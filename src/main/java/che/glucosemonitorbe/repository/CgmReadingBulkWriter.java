@@ -0,0 +1,233 @@
+package che.glucosemonitorbe.repository;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.StringUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * JDBC bulk write path for {@code cgm_readings}: a whole sync batch in one statement per key space,
+ * with the source-scoped unique indexes as conflict arbiters instead of existence queries.
+ * <ul>
+ *   <li>Rows with an upstream id first replace any stored copy of that id at a different timestamp
+ *       (an upstream record re-sent with a corrected time): the partition key is part of
+ *       {@code uk_cgm_readings_user_source_external}, so the index alone would let both times stand.
+ *       The deleted copies are reported, so their rollup contribution can be taken back out.</li>
+ *   <li>They then go through {@code uk_cgm_readings_user_source_external}; a conflict
+ *       back-fills {@code trend}/{@code direction} where the stored trend is still null/0 and the
+ *       incoming one is known (as {@code CgmReadingRepository#updateTrendIfZero} did per row).</li>
+ *   <li>Rows without one go through {@code uk_cgm_readings_user_source_ts} and are skipped on
+ *       conflict.</li>
+ * </ul>
+ * The batch is bound as one array per column and expanded with {@code unnest}, so the SQL text is the
+ * same for every batch size, and {@code RETURNING} reports which rows were inserted and which had
+ * their trend back-filled. PostgreSQL only - {@link #isAvailable()} is false on other databases
+ * (the H2 test profile), where callers keep the JPA path.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class CgmReadingBulkWriter {
+
+    private static final String INSERT_FROM_ARRAYS = """
+            INSERT INTO cgm_readings (user_id, data_source, external_id, sgv, date_timestamp, date_string, trend,
+                                      direction, device, type, utc_offset, sys_time, last_updated)
+            SELECT ?, ?, t.external_id, t.sgv, t.date_timestamp, t.date_string, t.trend,
+                   t.direction, t.device, t.type, t.utc_offset, t.sys_time, ?
+            FROM unnest(?::varchar[], ?::int[], ?::bigint[], ?::varchar[], ?::int[],
+                        ?::varchar[], ?::varchar[], ?::varchar[], ?::int[], ?::varchar[])
+                 AS t(external_id, sgv, date_timestamp, date_string, trend,
+                      direction, device, type, utc_offset, sys_time)
+            """;
+
+    private static final String UPSERT_BY_EXTERNAL_ID = INSERT_FROM_ARRAYS + """
+            ON CONFLICT (user_id, data_source, external_id, date_timestamp)
+                WHERE external_id IS NOT NULL AND btrim(external_id) <> ''
+            DO UPDATE SET trend = EXCLUDED.trend, direction = EXCLUDED.direction
+                WHERE (cgm_readings.trend IS NULL OR cgm_readings.trend = 0) AND EXCLUDED.trend > 0
+            RETURNING id, external_id, date_timestamp, (xmax = 0) AS inserted
+            """;
+
+    private static final String DELETE_MOVED = """
+            DELETE FROM cgm_readings c
+            USING unnest(?::varchar[], ?::bigint[]) AS t(external_id, date_timestamp)
+            WHERE c.user_id = ? AND c.data_source = ?
+              AND c.external_id = t.external_id AND c.date_timestamp <> t.date_timestamp
+            RETURNING c.id, c.external_id, c.sgv, c.date_timestamp
+            """;
+
+    private static final String INSERT_BY_TIMESTAMP = INSERT_FROM_ARRAYS + """
+            ON CONFLICT (user_id, data_source, date_timestamp)
+                WHERE external_id IS NULL OR btrim(external_id) = ''
+            DO NOTHING
+            RETURNING id, external_id, date_timestamp, TRUE AS inserted
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.cgm-bulk-upsert.enabled:true}")
+    private boolean enabled;
+
+    /** Null until the first call looks at the database product. */
+    private volatile Boolean postgres;
+
+    /**
+     * Outcome of one batch: the readings inserted (ids assigned), those whose trend was back-filled, and
+     * the previously stored readings deleted because their upstream id came back at another time.
+     */
+    public record Result(List<CgmReading> inserted, List<CgmReading> trendBackfilled, List<CgmReading> moved) {
+    }
+
+    /** True when enabled and the database is PostgreSQL. */
+    public boolean isAvailable() {
+        if (!enabled) return false;
+        Boolean pg = postgres;
+        if (pg == null) {
+            String product = jdbcTemplate.execute(
+                    (ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+            pg = product != null && product.toLowerCase(Locale.ROOT).contains("postgres");
+            postgres = pg;
+            log.info("CGM bulk upsert {} (database: {})", pg ? "enabled" : "unavailable", product);
+        }
+        return pg;
+    }
+
+    /**
+     * Writes {@code readings} (one user and source, already deduplicated per key) and returns which of
+     * them were inserted and which only had their trend back-filled; the rest were already stored. Also
+     * returns the stored readings replaced by a re-sent upstream id with a new timestamp.
+     */
+    public Result upsert(UUID userId, CgmReading.DataSource dataSource, List<CgmReading> readings,
+                         LocalDateTime lastUpdated) {
+        List<CgmReading> byExternalId = new ArrayList<>();
+        List<CgmReading> byTimestamp = new ArrayList<>();
+        for (CgmReading r : readings) {
+            (StringUtils.hasText(r.getExternalId()) ? byExternalId : byTimestamp).add(r);
+        }
+        Result result = new Result(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        if (!byExternalId.isEmpty()) {
+            deleteMoved(userId, dataSource, byExternalId, result.moved());
+            Map<String, CgmReading> byKey = new HashMap<>();
+            for (CgmReading r : byExternalId) byKey.put(r.getExternalId(), r);
+            run(UPSERT_BY_EXTERNAL_ID, userId, dataSource, byExternalId, lastUpdated,
+                    (id, externalId, ts, inserted) -> collect(byKey.get(externalId), id, inserted, result));
+        }
+        if (!byTimestamp.isEmpty()) {
+            Map<Long, CgmReading> byKey = new HashMap<>();
+            for (CgmReading r : byTimestamp) byKey.put(r.getDateTimestamp(), r);
+            run(INSERT_BY_TIMESTAMP, userId, dataSource, byTimestamp, lastUpdated,
+                    (id, externalId, ts, inserted) -> collect(byKey.get(ts), id, inserted, result));
+        }
+        return result;
+    }
+
+    private void deleteMoved(UUID userId, CgmReading.DataSource dataSource, List<CgmReading> rows,
+                             List<CgmReading> moved) {
+        String[] externalId = new String[rows.size()];
+        Long[] dateTimestamp = new Long[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            externalId[i] = rows.get(i).getExternalId();
+            dateTimestamp[i] = rows.get(i).getDateTimestamp();
+        }
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(DELETE_MOVED);
+            ps.setArray(1, con.createArrayOf("varchar", externalId));
+            ps.setArray(2, con.createArrayOf("int8", dateTimestamp));
+            ps.setObject(3, userId);
+            ps.setString(4, dataSource.name());
+            return ps;
+        }, rs -> {
+            int sgv = rs.getInt("sgv");
+            moved.add(CgmReading.builder()
+                    .id(rs.getObject("id", UUID.class))
+                    .userId(userId)
+                    .dataSource(dataSource)
+                    .externalId(rs.getString("external_id"))
+                    .sgv(rs.wasNull() ? null : sgv)
+                    .dateTimestamp(rs.getLong("date_timestamp"))
+                    .build());
+        });
+        if (!moved.isEmpty()) {
+            log.info("CGM readings for user {} ({}): {} re-sent upstream ids moved to a new timestamp",
+                    userId, dataSource, moved.size());
+        }
+    }
+
+    private static void collect(CgmReading reading, UUID id, boolean inserted, Result result) {
+        if (reading == null) return;
+        if (inserted) {
+            reading.setId(id);
+            result.inserted().add(reading);
+        } else {
+            result.trendBackfilled().add(reading);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReturnedRow {
+        void accept(UUID id, String externalId, Long dateTimestamp, boolean inserted);
+    }
+
+    private void run(String sql, UUID userId, CgmReading.DataSource dataSource, List<CgmReading> rows,
+                     LocalDateTime lastUpdated, ReturnedRow sink) {
+        jdbcTemplate.query(con -> bind(con, sql, userId, dataSource, rows, lastUpdated), rs -> {
+            long ts = rs.getLong("date_timestamp");
+            sink.accept(rs.getObject("id", UUID.class), rs.getString("external_id"),
+                    rs.wasNull() ? null : ts, rs.getBoolean("inserted"));
+        });
+    }
+
+    private static PreparedStatement bind(Connection con, String sql, UUID userId, CgmReading.DataSource dataSource,
+                                          List<CgmReading> rows, LocalDateTime lastUpdated) throws SQLException {
+        int n = rows.size();
+        String[] externalId = new String[n], dateString = new String[n], direction = new String[n],
+                device = new String[n], type = new String[n], sysTime = new String[n];
+        Integer[] sgv = new Integer[n], trend = new Integer[n], utcOffset = new Integer[n];
+        Long[] dateTimestamp = new Long[n];
+        for (int i = 0; i < n; i++) {
+            CgmReading r = rows.get(i);
+            externalId[i] = r.getExternalId();
+            sgv[i] = r.getSgv();
+            dateTimestamp[i] = r.getDateTimestamp();
+            dateString[i] = r.getDateString();
+            trend[i] = r.getTrend();
+            direction[i] = r.getDirection();
+            device[i] = r.getDevice();
+            type[i] = r.getType();
+            utcOffset[i] = r.getUtcOffset();
+            sysTime[i] = r.getSysTime();
+        }
+        PreparedStatement ps = con.prepareStatement(sql);
+        int p = 1;
+        ps.setObject(p++, userId);
+        ps.setString(p++, dataSource.name());
+        ps.setTimestamp(p++, Timestamp.valueOf(lastUpdated));
+        ps.setArray(p++, con.createArrayOf("varchar", externalId));
+        ps.setArray(p++, con.createArrayOf("int4", sgv));
+        ps.setArray(p++, con.createArrayOf("int8", dateTimestamp));
+        ps.setArray(p++, con.createArrayOf("varchar", dateString));
+        ps.setArray(p++, con.createArrayOf("int4", trend));
+        ps.setArray(p++, con.createArrayOf("varchar", direction));
+        ps.setArray(p++, con.createArrayOf("varchar", device));
+        ps.setArray(p++, con.createArrayOf("varchar", type));
+        ps.setArray(p++, con.createArrayOf("int4", utcOffset));
+        ps.setArray(p, con.createArrayOf("varchar", sysTime));
+        return ps;
+    }
+}
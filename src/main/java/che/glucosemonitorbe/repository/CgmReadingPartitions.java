@@ -0,0 +1,55 @@
+package che.glucosemonitorbe.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Maintenance of the monthly range partitions of {@code cgm_readings} (see migration V13), through the
+ * PL/pgSQL functions installed there: upcoming months are created ahead of the data, and retention drops
+ * whole expired months. {@link #isPartitioned()} is false on databases without them (the H2 test
+ * profile), where callers keep row-level retention.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class CgmReadingPartitions {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Null until the first call looks at the catalog. */
+    private volatile Boolean partitioned;
+
+    /** True when {@code cgm_readings} is a partitioned PostgreSQL table. */
+    public boolean isPartitioned() {
+        Boolean p = partitioned;
+        if (p == null) {
+            try {
+                p = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('cgm_readings'))",
+                        Boolean.class));
+            } catch (DataAccessException e) {
+                p = false; // no PostgreSQL catalog
+            }
+            partitioned = p;
+            log.info("cgm_readings is {}", p ? "partitioned by month" : "not partitioned");
+        }
+        return p;
+    }
+
+    /** Creates the current UTC month's partition and the next {@code monthsAhead}; returns how many were new. */
+    public int ensurePartitions(int monthsAhead) {
+        Integer created = jdbcTemplate.queryForObject(
+                "SELECT cgm_readings_ensure_partitions(?)", Integer.class, monthsAhead);
+        return created != null ? created : 0;
+    }
+
+    /** Drops every monthly partition that ends at or before {@code cutoffMs}; returns how many were dropped. */
+    public int dropPartitionsBefore(long cutoffMs) {
+        Integer dropped = jdbcTemplate.queryForObject(
+                "SELECT cgm_readings_drop_partitions_before(?)", Integer.class, cutoffMs);
+        return dropped != null ? dropped : 0;
+    }
+}
@@ -55,6 +55,48 @@ public interface CgmReadingRepository extends JpaRepository<CgmReading, UUID> {
     List<CgmReading> findByUserIdAndDateTimestampGreaterThanOrderByDateTimestampAsc(
             UUID userId, Long dateTimestamp);
 
+    /** Incremental fetch restricted to one data source. */
+    List<CgmReading> findByUserIdAndDataSourceAndDateTimestampGreaterThanOrderByDateTimestampAsc(
+            UUID userId, CgmReading.DataSource dataSource, Long dateTimestamp);
+
+    /**
+     * Keyset page: the newest readings strictly older than {@code beforeTimestamp}, newest first, ties
+     * on the timestamp broken by id. The page size comes from {@code pageable} (use page 0). Used for
+     * the first page and for a timestamp-only cursor; later pages continue with
+     * {@link #findPageBefore}. Served by {@code idx_cgm_readings_user_date_id}.
+     */
+    List<CgmReading> findByUserIdAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+            UUID userId, Long beforeTimestamp, Pageable pageable);
+
+    /** First keyset page restricted to one data source; served by {@code idx_cgm_readings_user_source_date_id}. */
+    List<CgmReading> findByUserIdAndDataSourceAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+            UUID userId, CgmReading.DataSource dataSource, Long beforeTimestamp, Pageable pageable);
+
+    /**
+     * Keyset page after the row {@code (beforeTimestamp, beforeId)} in {@code (dateTimestamp DESC, id DESC)}
+     * order - the rest of that row's timestamp tie first, then strictly older readings - so a page
+     * boundary inside a tie neither skips nor repeats a reading.
+     */
+    @Query("SELECT n FROM CgmReading n WHERE n.userId = :userId "
+            + "AND (n.dateTimestamp < :beforeTimestamp "
+            + "OR (n.dateTimestamp = :beforeTimestamp AND n.id < :beforeId)) "
+            + "ORDER BY n.dateTimestamp DESC, n.id DESC")
+    List<CgmReading> findPageBefore(@Param("userId") UUID userId,
+                                    @Param("beforeTimestamp") Long beforeTimestamp,
+                                    @Param("beforeId") UUID beforeId,
+                                    Pageable pageable);
+
+    /** {@link #findPageBefore} restricted to one data source. */
+    @Query("SELECT n FROM CgmReading n WHERE n.userId = :userId AND n.dataSource = :dataSource "
+            + "AND (n.dateTimestamp < :beforeTimestamp "
+            + "OR (n.dateTimestamp = :beforeTimestamp AND n.id < :beforeId)) "
+            + "ORDER BY n.dateTimestamp DESC, n.id DESC")
+    List<CgmReading> findPageBeforeForSource(@Param("userId") UUID userId,
+                                             @Param("dataSource") CgmReading.DataSource dataSource,
+                                             @Param("beforeTimestamp") Long beforeTimestamp,
+                                             @Param("beforeId") UUID beforeId,
+                                             Pageable pageable);
+
     /**
      * Readings whose epoch-ms timestamp falls within {@code [startTimestamp, endTimestamp]}, oldest
      * first. Used to locate the CGM reading nearest a target time (e.g. verification baseline / +2h)
@@ -63,6 +105,17 @@ public interface CgmReadingRepository extends JpaRepository<CgmReading, UUID> {
     List<CgmReading> findByUserIdAndDateTimestampBetweenOrderByDateTimestampAsc(
             UUID userId, Long startTimestamp, Long endTimestamp);
 
+    /**
+     * Column projection {@code [dateTimestamp, sgv, trend]} of readings at or after
+     * {@code fromTimestamp}, oldest first - loads the columnar CGM series cache without
+     * materialising entities. Rows without an sgv are excluded.
+     */
+    @Query("SELECT n.dateTimestamp, n.sgv, n.trend FROM CgmReading n "
+            + "WHERE n.userId = :userId AND n.dateTimestamp >= :fromTimestamp AND n.sgv IS NOT NULL "
+            + "ORDER BY n.dateTimestamp ASC")
+    List<Object[]> findSeriesColumns(@Param("userId") UUID userId,
+                                     @Param("fromTimestamp") Long fromTimestamp);
+
     Optional<CgmReading> findByUserIdAndDataSourceAndExternalId(
             UUID userId, CgmReading.DataSource dataSource, String externalId);
 
@@ -79,6 +132,15 @@ public interface CgmReadingRepository extends JpaRepository<CgmReading, UUID> {
                                          @Param("dataSource") CgmReading.DataSource dataSource,
                                          @Param("ids") List<String> ids);
 
+    /**
+     * The stored readings for a batch of upstream ids, scoped to one user and one source. The JPA
+     * write path uses this instead of {@link #findExistingExternalIds} because it also needs each
+     * stored timestamp, to notice an id re-sent with a corrected time.
+     */
+    List<CgmReading> findByUserIdAndDataSourceAndExternalIdIn(UUID userId,
+                                                               CgmReading.DataSource dataSource,
+                                                               List<String> externalIds);
+
     /**
      * Single-round-trip existence check for a batch of reading timestamps (used when
      * entries lack an upstream id).
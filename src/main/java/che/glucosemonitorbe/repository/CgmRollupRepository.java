@@ -0,0 +1,197 @@
+package che.glucosemonitorbe.repository;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.service.cgm.GlucoseRollup;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.UUID;
+
+/**
+ * JDBC access to {@code cgm_glucose_rollups} (migration V14): one row per user, data source and UTC
+ * hour or day holding a {@link GlucoseRollup}. Writes are additive upserts - {@code ON CONFLICT} adds
+ * the counters and the histogram arrays element-wise - so concurrent syncs of the same user accumulate
+ * under the row lock instead of overwriting each other. PostgreSQL only; {@link #isAvailable()} is false elsewhere (the
+ * H2 test profile), where {@code CgmRollupService} aggregates raw readings instead.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class CgmRollupRepository {
+
+    private static final String MERGE = """
+            INSERT INTO cgm_glucose_rollups AS r (user_id, data_source, bucket_ms, bucket_start, reading_count,
+                                                  sgv_sum, sgv_sum_sq, sgv_min, sgv_max, below_count,
+                                                  in_range_count, above_count, histogram)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (user_id, bucket_ms, bucket_start, data_source) DO UPDATE SET
+                reading_count  = r.reading_count + EXCLUDED.reading_count,
+                sgv_sum        = r.sgv_sum + EXCLUDED.sgv_sum,
+                sgv_sum_sq     = r.sgv_sum_sq + EXCLUDED.sgv_sum_sq,
+                sgv_min        = LEAST(r.sgv_min, EXCLUDED.sgv_min),
+                sgv_max        = GREATEST(r.sgv_max, EXCLUDED.sgv_max),
+                below_count    = r.below_count + EXCLUDED.below_count,
+                in_range_count = r.in_range_count + EXCLUDED.in_range_count,
+                above_count    = r.above_count + EXCLUDED.above_count,
+                histogram      = ARRAY(SELECT a + b
+                                       FROM unnest(r.histogram, EXCLUDED.histogram) WITH ORDINALITY AS h(a, b, i)
+                                       ORDER BY i),
+                updated_at     = NOW()
+            """;
+
+    private static final String SUBTRACT = """
+            UPDATE cgm_glucose_rollups AS r SET
+                reading_count  = r.reading_count - ?,
+                sgv_sum        = r.sgv_sum - ?,
+                sgv_sum_sq     = r.sgv_sum_sq - ?,
+                below_count    = r.below_count - ?,
+                in_range_count = r.in_range_count - ?,
+                above_count    = r.above_count - ?,
+                histogram      = ARRAY(SELECT a - b
+                                       FROM unnest(r.histogram, ?::int[]) WITH ORDINALITY AS h(a, b, i)
+                                       ORDER BY i),
+                updated_at     = NOW()
+            WHERE user_id = ? AND bucket_ms = ? AND bucket_start = ? AND data_source = ?
+            """;
+
+    private static final String FIND = """
+            SELECT bucket_start, reading_count, sgv_sum, sgv_sum_sq, sgv_min, sgv_max,
+                   below_count, in_range_count, above_count, histogram
+            FROM cgm_glucose_rollups
+            WHERE user_id = ? AND bucket_ms = ? AND bucket_start >= ? AND bucket_start < ?
+            """;
+    private static final String FIND_ALL_SOURCES = FIND + "ORDER BY bucket_start\n";
+    private static final String FIND_ONE_SOURCE = FIND + "AND data_source = ?\nORDER BY bucket_start\n";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.cgm-rollups.enabled:true}")
+    private boolean enabled;
+
+    /** Null until the first call looks at the database product. */
+    private volatile Boolean postgres;
+
+    /** True when enabled and the database is PostgreSQL. */
+    public boolean isAvailable() {
+        if (!enabled) return false;
+        Boolean pg = postgres;
+        if (pg == null) {
+            String product = jdbcTemplate.execute(
+                    (ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+            pg = product != null && product.toLowerCase(Locale.ROOT).contains("postgres");
+            postgres = pg;
+            log.info("CGM rollup store {} (database: {})", pg ? "enabled" : "unavailable", product);
+        }
+        return pg;
+    }
+
+    /**
+     * Adds each bucket's readings of {@code source} to the stored rollup of that {@code bucketMs}-wide
+     * bucket (creating it when missing). Buckets are written in ascending order, and callers merge the
+     * sources and widths in a fixed order, so two transactions touching the same rows lock them in the
+     * same order.
+     */
+    public void merge(UUID userId, CgmReading.DataSource source, long bucketMs,
+                      SortedMap<Long, GlucoseRollup> buckets) {
+        if (buckets.isEmpty()) return;
+        List<Map.Entry<Long, GlucoseRollup>> rows = new ArrayList<>(buckets.entrySet());
+        jdbcTemplate.batchUpdate(MERGE, rows, rows.size(), (ps, row) -> {
+            GlucoseRollup r = row.getValue();
+            int p = 1;
+            ps.setObject(p++, userId);
+            ps.setString(p++, source.name());
+            ps.setLong(p++, bucketMs);
+            ps.setLong(p++, row.getKey());
+            ps.setInt(p++, r.count());
+            ps.setLong(p++, r.sum());
+            ps.setLong(p++, r.sumSq());
+            ps.setInt(p++, r.min());
+            ps.setInt(p++, r.max());
+            ps.setInt(p++, r.below());
+            ps.setInt(p++, r.inRange());
+            ps.setInt(p++, r.above());
+            ps.setArray(p, ps.getConnection().createArrayOf("int4", boxed(r.histogram())));
+        });
+    }
+
+    /**
+     * Takes each bucket's readings of {@code source} back out of the stored rollup (readings deleted
+     * after they were merged). Counters and histogram are exact again; {@code sgv_min}/{@code sgv_max}
+     * are left as they were and so remain bounds. Buckets not stored are skipped.
+     */
+    public void subtract(UUID userId, CgmReading.DataSource source, long bucketMs,
+                         SortedMap<Long, GlucoseRollup> buckets) {
+        if (buckets.isEmpty()) return;
+        List<Map.Entry<Long, GlucoseRollup>> rows = new ArrayList<>(buckets.entrySet());
+        jdbcTemplate.batchUpdate(SUBTRACT, rows, rows.size(), (ps, row) -> {
+            GlucoseRollup r = row.getValue();
+            int p = 1;
+            ps.setInt(p++, r.count());
+            ps.setLong(p++, r.sum());
+            ps.setLong(p++, r.sumSq());
+            ps.setInt(p++, r.below());
+            ps.setInt(p++, r.inRange());
+            ps.setInt(p++, r.above());
+            ps.setArray(p++, ps.getConnection().createArrayOf("int4", boxed(r.histogram())));
+            ps.setObject(p++, userId);
+            ps.setLong(p++, bucketMs);
+            ps.setLong(p++, row.getKey());
+            ps.setString(p, source.name());
+        });
+    }
+
+    /**
+     * The user's {@code bucketMs}-wide buckets starting in {@code [fromMs, toMs)}, oldest first, for one
+     * source - or, when {@code source} is null, every source merged per bucket.
+     */
+    public List<GlucoseRollup.Bucket> find(UUID userId, CgmReading.DataSource source, long bucketMs,
+                                           long fromMs, long toMs) {
+        List<GlucoseRollup.Bucket> rows = source == null
+                ? jdbcTemplate.query(FIND_ALL_SOURCES, CgmRollupRepository::mapBucket, userId, bucketMs, fromMs, toMs)
+                : jdbcTemplate.query(FIND_ONE_SOURCE, CgmRollupRepository::mapBucket,
+                        userId, bucketMs, fromMs, toMs, source.name());
+        if (source != null) return rows;
+        List<GlucoseRollup.Bucket> merged = new ArrayList<>(rows.size());
+        for (GlucoseRollup.Bucket row : rows) {
+            GlucoseRollup.Bucket last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && last.startMs() == row.startMs()) last.rollup().merge(row.rollup());
+            else merged.add(row);
+        }
+        return merged;
+    }
+
+    private static Integer[] boxed(int[] counts) {
+        Integer[] boxed = new Integer[counts.length];
+        for (int i = 0; i < counts.length; i++) boxed[i] = counts[i];
+        return boxed;
+    }
+
+    private static GlucoseRollup.Bucket mapBucket(ResultSet rs, int rowNum) throws SQLException {
+        Array array = rs.getArray("histogram");
+        Object[] values = (Object[]) array.getArray();
+        int[] histogram = new int[values.length];
+        for (int i = 0; i < values.length; i++) histogram[i] = ((Number) values[i]).intValue();
+        array.free();
+        return new GlucoseRollup.Bucket(rs.getLong("bucket_start"), GlucoseRollup.of(
+                rs.getInt("reading_count"), rs.getLong("sgv_sum"), rs.getLong("sgv_sum_sq"),
+                rs.getInt("sgv_min"), rs.getInt("sgv_max"), rs.getInt("below_count"),
+                rs.getInt("in_range_count"), rs.getInt("above_count"), histogram));
+    }
+
+    /** Removes every rollup of the user; returns the number of buckets deleted. */
+    public int deleteByUserId(UUID userId) {
+        return jdbcTemplate.update("DELETE FROM cgm_glucose_rollups WHERE user_id = ?", userId);
+    }
+}
@@ -0,0 +1,10 @@
+package che.glucosemonitorbe.repository;
+
+import che.glucosemonitorbe.entity.DigitalTwinBatchCursor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/** Persistence access for the {@link DigitalTwinBatchCursor} (one row per named batch). */
+@Repository
+public interface DigitalTwinBatchCursorRepository extends JpaRepository<DigitalTwinBatchCursor, String> {
+}
@@ -1,12 +1,14 @@
 package che.glucosemonitorbe.repository;
 
 import che.glucosemonitorbe.entity.RevokedToken;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
+import java.util.List;
 
 public interface TokenBlacklistRepository extends JpaRepository<RevokedToken, String> {
 
@@ -23,6 +25,21 @@ public interface TokenBlacklistRepository extends JpaRepository<RevokedToken, St
     @Query(value = "INSERT INTO token_blacklist (token_hash, expires_at) VALUES (:tokenHash, :expiresAt) ON CONFLICT (token_hash) DO NOTHING", nativeQuery = true)
     int insertIfAbsent(@Param("tokenHash") String tokenHash, @Param("expiresAt") Instant expiresAt);
 
+    /** Number of unexpired entries (sizes the local revocation index). */
+    long countByExpiresAtAfter(Instant now);
+
+    /** One keyset page of unexpired hashes, ascending, strictly after {@code after}. */
+    @Query("select r.tokenHash from RevokedToken r where r.expiresAt > :now and r.tokenHash > :after order by r.tokenHash")
+    List<String> findActiveHashesAfter(@Param("after") String after, @Param("now") Instant now, Pageable page);
+
+    /** Newest {@code created_at} in the table (null when empty): the watermark a full rebuild starts from. */
+    @Query("select max(r.createdAt) from RevokedToken r")
+    Instant findMaxCreatedAt();
+
+    /** Unexpired entries inserted after {@code since}, oldest first - an incremental index refresh. */
+    List<RevokedToken> findByCreatedAtAfterAndExpiresAtAfterOrderByCreatedAtAsc(
+            Instant since, Instant now, Pageable page);
+
     /** Housekeeping: drop entries whose expiry has passed. */
     @Modifying
     @Query("delete from RevokedToken r where r.expiresAt < :now")
@@ -47,6 +47,13 @@ public interface UserDataSourceConfigRepository extends JpaRepository<UserDataSo
     @Query("SELECT DISTINCT c.user.id FROM UserDataSourceConfig c WHERE c.dataSource = :dataSource AND c.isActive = true")
     List<UUID> findDistinctUserIdsByDataSourceAndIsActiveTrue(@Param("dataSource") UserDataSourceConfig.DataSourceType dataSource);
 
+    /**
+     * (userId, nightscoutUrl) of every active Nightscout configuration, newest first - lets the
+     * background sync group users by Nightscout host without loading (and decrypting) each config.
+     */
+    @Query("SELECT c.user.id, c.nightscoutUrl FROM UserDataSourceConfig c WHERE c.dataSource = 'NIGHTSCOUT' AND c.isActive = true ORDER BY c.createdAt DESC")
+    List<Object[]> findActiveNightscoutUrls();
+
     /**
      * Find all active Nightscout configurations for a user
      */
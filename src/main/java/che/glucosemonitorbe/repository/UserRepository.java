@@ -2,6 +2,8 @@ package che.glucosemonitorbe.repository;
 
 import che.glucosemonitorbe.domain.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -15,5 +17,14 @@ public interface UserRepository extends JpaRepository<User, UUID> {
 
     /** Users whose email does not match {@code emailPattern} (SQL LIKE) - e.g. to exclude seed fixtures. */
     List<User> findByEmailNotLike(String emailPattern);
+
+    /** Ids of users whose email does not match {@code emailPattern}, in id order (batch cursor order). */
+    @Query("SELECT u.id FROM User u WHERE u.email NOT LIKE :pattern ORDER BY u.id")
+    List<UUID> findIdsByEmailNotLikeOrderById(@Param("pattern") String emailPattern);
+
+    /** As {@link #findIdsByEmailNotLikeOrderById}, restricted to ids after {@code afterId} (resume). */
+    @Query("SELECT u.id FROM User u WHERE u.email NOT LIKE :pattern AND u.id > :afterId ORDER BY u.id")
+    List<UUID> findIdsByEmailNotLikeAndIdAfterOrderById(@Param("pattern") String emailPattern,
+                                                        @Param("afterId") UUID afterId);
 }
 
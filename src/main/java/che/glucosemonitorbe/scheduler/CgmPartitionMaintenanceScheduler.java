@@ -0,0 +1,54 @@
+package che.glucosemonitorbe.scheduler;
+
+import che.glucosemonitorbe.repository.CgmReadingPartitions;
+import che.glucosemonitorbe.service.CgmReadingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * Keeps the monthly partitions of {@code cgm_readings} ahead of the data and applies retention. Runs
+ * shortly after startup (so a long outage never leaves the current month in the default partition) and
+ * then daily: creates partitions for the current month and the next {@code months-ahead}, and - when
+ * {@code retention-months} is set - drops the months that have wholly expired via
+ * {@link CgmReadingService#dropExpiredPartitions}. A no-op when the table is not partitioned.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CgmPartitionMaintenanceScheduler {
+
+    private final CgmReadingPartitions partitions;
+    private final CgmReadingService cgmReadingService;
+
+    @Value("${app.cgm-partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    /** Months of readings to keep; 0 keeps everything. */
+    @Value("${app.cgm-partitions.retention-months:0}")
+    private int retentionMonths;
+
+    @Scheduled(
+            initialDelayString = "${app.cgm-partitions.initial-delay-ms:60000}",
+            fixedDelayString   = "${app.cgm-partitions.fixed-delay-ms:86400000}"
+    )
+    public void maintainPartitions() {
+        try {
+            if (!partitions.isPartitioned()) return;
+            int created = partitions.ensurePartitions(monthsAhead);
+            if (created > 0) log.info("CgmPartitionMaintenance: created {} monthly partition(s)", created);
+            if (retentionMonths > 0) {
+                // Partitions are UTC months, so the cutoff is counted back on the UTC calendar.
+                cgmReadingService.dropExpiredPartitions(
+                        ZonedDateTime.now(ZoneOffset.UTC).minusMonths(retentionMonths).toInstant());
+            }
+        } catch (Exception e) {
+            log.error("CgmPartitionMaintenance failed: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package che.glucosemonitorbe.scheduler;
 
-import che.glucosemonitorbe.service.DigitalTwinCalibrationService;
+import che.glucosemonitorbe.service.DigitalTwinBatchService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.ApplicationArguments;
@@ -30,13 +30,13 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class DigitalTwinBackfillRunner implements ApplicationRunner {
 
-    private final DigitalTwinCalibrationService calibrationService;
+    private final DigitalTwinBatchService batchService;
     private final ConfigurableApplicationContext context;
 
     @Override
     public void run(ApplicationArguments args) {
         log.info("Digital-twin backfill starting - recalibrating all real users (LM + EGP0)...");
-        DigitalTwinCalibrationService.BatchSummary summary = calibrationService.calibrateAllRealUsers();
+        DigitalTwinBatchService.BatchSummary summary = batchService.calibrateAllRealUsers();
         log.info("Digital-twin backfill complete: {}", summary);
         int exitCode = SpringApplication.exit(context, () -> summary.failed() == 0 ? 0 : 1);
         System.exit(exitCode);
@@ -1,6 +1,6 @@
 package che.glucosemonitorbe.scheduler;
 
-import che.glucosemonitorbe.service.DigitalTwinCalibrationService;
+import che.glucosemonitorbe.service.DigitalTwinBatchService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -8,22 +8,23 @@ import org.springframework.stereotype.Component;
 
 /**
  * Nightly re-calibration of every real user's digital twin. Runs off-peak (03:15 local) since a full
- * per-user fit replays the ODE many times; the {@link DigitalTwinCalibrationService} itself is a
+ * per-user fit replays the ODE many times; the {@link DigitalTwinBatchService} itself is a
  * no-op when the {@code digital-twin-enabled} feature flag is off. Seed (AZT1D dataset) users are
- * excluded by {@link DigitalTwinCalibrationService#calibrateAllRealUsers()}.
+ * excluded by {@link DigitalTwinBatchService#calibrateAllRealUsers()}, which also resumes a run
+ * interrupted the night before.
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class DigitalTwinCalibrationScheduler {
 
-    private final DigitalTwinCalibrationService calibrationService;
+    private final DigitalTwinBatchService batchService;
 
     @Scheduled(cron = "${app.digital-twin.cron:0 15 3 * * *}")
     public void recalibrateAll() {
         log.debug("DigitalTwinCalibrationScheduler: starting nightly recalibration");
         try {
-            calibrationService.calibrateAllRealUsers();
+            batchService.calibrateAllRealUsers();
         } catch (Exception e) {
             log.error("DigitalTwinCalibrationScheduler failed: {}", e.getMessage(), e);
         }
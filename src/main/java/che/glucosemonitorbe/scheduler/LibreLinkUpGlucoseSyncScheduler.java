@@ -4,9 +4,12 @@ import che.glucosemonitorbe.domain.UserDataSourceConfig;
 import che.glucosemonitorbe.repository.UserDataSourceConfigRepository;
 import che.glucosemonitorbe.service.LibreLinkUpSyncService;
 import che.glucosemonitorbe.service.LibreLinkUpSyncService.Outcome;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -24,6 +27,11 @@ import java.util.concurrent.*;
  * <p>On-demand refreshes from the iOS app go through the same {@link LibreLinkUpSyncService} via
  * {@code POST /api/libre/sync-now}, so a manual refresh and a scheduler tick can never double-fetch
  * the same user concurrently.
+ *
+ * <p>Users are fanned out through {@link SyncFanOut}: one virtual thread per user, at most
+ * {@code app.libre-sync.per-host-concurrency} in flight per LibreLinkUp regional host (each host
+ * rate-limits at its edge) and {@code app.libre-sync.max-in-flight} overall. A user's regional host
+ * comes from the session store and is looked up on that user's virtual thread, not in the tick loop.
  */
 @Slf4j
 @Component
@@ -33,32 +41,30 @@ public class LibreLinkUpGlucoseSyncScheduler {
 
     private final UserDataSourceConfigRepository configRepository;
     private final LibreLinkUpSyncService syncService;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
 
-    /**
-     * BE-P1-1: bounded thread pool so N users are synced in parallel (max 8 at once) instead of
-     * sequentially. Prevents tick duration from scaling linearly with user count.
-     */
-    private static final int MAX_CONCURRENT_SYNCS = 8;
-    private final ExecutorService syncExecutor = Executors.newFixedThreadPool(
-            MAX_CONCURRENT_SYNCS,
-            r -> { Thread t = new Thread(r, "libre-sync"); t.setDaemon(true); return t; }
-    );
+    private final SyncFanOut fanOut = new SyncFanOut("glucose_sync.libre", "libre-sync");
 
     /** Safety budget for a whole tick, so a slow batch can't run past the next scheduled tick. */
     @Value("${app.libre-sync.sync-timeout-ms:240000}")
     private long syncTimeoutMs;
 
+    /** Concurrent user syncs per LibreLinkUp regional host. */
+    @Value("${app.libre-sync.per-host-concurrency:8}")
+    private int perHostConcurrency;
+
+    /** Concurrent user syncs overall; defaults to the DB pool size, since each sync ends in DB writes. */
+    @Value("${app.libre-sync.max-in-flight:${spring.datasource.hikari.maximum-pool-size:10}}")
+    private int maxInFlight;
+
+    @PostConstruct
+    void configureFanOut() {
+        fanOut.configure(perHostConcurrency, maxInFlight, meterRegistryProvider.getIfAvailable());
+    }
+
     @PreDestroy
     public void shutdownExecutor() {
-        syncExecutor.shutdown();
-        try {
-            if (!syncExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                syncExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            syncExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
+        fanOut.close();
     }
 
     @Scheduled(
@@ -66,6 +72,7 @@ public class LibreLinkUpGlucoseSyncScheduler {
             fixedDelayString    = "${app.libre-sync.fixed-delay-ms:300000}"
     )
     public void syncLibreForAllUsers() {
+        long startNanos = System.nanoTime();
         LocalDateTime now = LocalDateTime.now();
         log.info("LibreLinkUp sync tick started at {}", now);
 
@@ -78,18 +85,22 @@ public class LibreLinkUpGlucoseSyncScheduler {
         }
         log.info("LibreLinkUp sync: {} user(s) with active LibreLinkUp config", userIds.size());
 
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(syncTimeoutMs);
         List<CompletableFuture<Outcome>> futures = new ArrayList<>(userIds.size());
         for (UUID userId : userIds) {
-            futures.add(CompletableFuture.supplyAsync(() -> syncService.syncUser(userId, false), syncExecutor));
+            futures.add(fanOut.submit(() -> SyncFanOut.hostOf(syncService.upstreamBaseUrl(userId)), deadlineNanos,
+                    () -> syncService.syncUser(userId, false)));
         }
 
         SyncTally tally = awaitAndTally(futures, userIds.size());
+        fanOut.recordTick(startNanos);
 
         log.info("LibreLinkUp sync summary: users={}, completed={}, newData={}, noChange={}, skippedBackoff={}, "
-                        + "skippedNoCreds={}, inProgress={}, errors={}",
+                        + "skippedNoCreds={}, inProgress={}, errors={}, noPermit={}",
                 userIds.size(), tally.completed(),
                 tally.get(Outcome.NEW_DATA), tally.get(Outcome.NO_CHANGE), tally.get(Outcome.SKIPPED_BACKOFF),
-                tally.get(Outcome.SKIPPED_NO_CREDS), tally.get(Outcome.IN_PROGRESS), tally.get(Outcome.ERROR));
+                tally.get(Outcome.SKIPPED_NO_CREDS), tally.get(Outcome.IN_PROGRESS), tally.get(Outcome.ERROR),
+                tally.permitTimeouts());
     }
 
     /**
@@ -97,7 +108,8 @@ public class LibreLinkUpGlucoseSyncScheduler {
      * completed normally - futures still running at the deadline are excluded from the tally and
      * cancelled (best-effort: this does not interrupt the underlying sync, which is bounded by
      * RestTemplate's own connect/read timeouts, but it stops them from racing the result computed
-     * here).
+     * here). Syncs that never got an upstream permit fail with {@link TimeoutException}; they are
+     * counted as {@link SyncTally#permitTimeouts} instead and left to the next tick.
      */
     SyncTally awaitAndTally(List<CompletableFuture<Outcome>> futures, int totalUsers) {
         try {
@@ -113,22 +125,35 @@ public class LibreLinkUpGlucoseSyncScheduler {
             Thread.currentThread().interrupt();
             log.warn("LibreLinkUp sync: interrupted while waiting for user sync tasks", e);
         } catch (ExecutionException e) {
-            log.warn("LibreLinkUp sync: unexpected error in a user sync task", e.getCause());
+            // Every task has finished; permit timeouts are counted below, anything else is unexpected.
+            if (!SyncFanOut.isPermitTimeout(e.getCause())) {
+                log.warn("LibreLinkUp sync: unexpected error in a user sync task", e.getCause());
+            }
         }
 
         Map<Outcome, Long> counts = new EnumMap<>(Outcome.class);
         long completed = 0;
+        long permitTimeouts = 0;
         for (CompletableFuture<Outcome> future : futures) {
-            if (future.isDone() && !future.isCompletedExceptionally()) {
-                counts.merge(future.getNow(null), 1L, Long::sum);
+            if (future.state() == Future.State.SUCCESS) {
+                counts.merge(future.resultNow(), 1L, Long::sum);
                 completed++;
+            } else if (future.state() == Future.State.FAILED && SyncFanOut.isPermitTimeout(future.exceptionNow())) {
+                permitTimeouts++;
             }
         }
-        return new SyncTally(completed, counts);
+        if (permitTimeouts > 0) {
+            log.warn("LibreLinkUp sync: {} of {} user sync(s) got no upstream permit within {}ms; "
+                    + "they are left to the next tick", permitTimeouts, totalUsers, syncTimeoutMs);
+        }
+        return new SyncTally(completed, counts, permitTimeouts);
     }
 
-    /** Per-tick outcome tally. {@link #counts} only includes futures that completed normally. */
-    record SyncTally(long completed, Map<Outcome, Long> counts) {
+    /**
+     * Per-tick outcome tally. {@link #counts} only includes futures that completed normally;
+     * {@link #permitTimeouts} counts syncs dropped for want of a permit before the deadline.
+     */
+    record SyncTally(long completed, Map<Outcome, Long> counts, long permitTimeouts) {
         long get(Outcome outcome) {
             return counts.getOrDefault(outcome, 0L);
         }
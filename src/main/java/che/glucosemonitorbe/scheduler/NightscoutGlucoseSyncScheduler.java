@@ -8,9 +8,13 @@ import che.glucosemonitorbe.nightscout.NightScoutIntegration;
 import che.glucosemonitorbe.repository.UserDataSourceConfigRepository;
 import che.glucosemonitorbe.service.CgmReadingService;
 import che.glucosemonitorbe.service.UserGlucoseSyncStateService;
+import che.glucosemonitorbe.service.cgm.CgmWriteBehindBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -18,18 +22,27 @@ import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.OptionalLong;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Periodically pulls Nightscout entries for each user with an active Nightscout config and merges
  * them into the shared CGM cache (duplicates are ignored by {@link CgmReadingService}).
+ *
+ * <p>Users are fanned out through {@link SyncFanOut}: at most
+ * {@code app.glucose-sync.per-host-concurrency} in flight per Nightscout host and
+ * {@code app.glucose-sync.max-in-flight} overall. Each user's fetch goes out on the non-blocking
+ * {@link NightScoutIntegration#getGlucoseEntriesAsync} client and the DB write is chained onto its
+ * completion, so the permits are held for the whole sync but no thread is parked on the upstream.
  */
 @Slf4j
 @Component
@@ -40,7 +53,9 @@ public class NightscoutGlucoseSyncScheduler {
     private final UserDataSourceConfigRepository configRepository;
     private final NightScoutIntegration nightScoutIntegration;
     private final CgmReadingService cgmReadingService;
+    private final CgmWriteBehindBuffer cgmWriteBehind;
     private final UserGlucoseSyncStateService syncStateService;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
 
     @Value("${app.glucose-sync.entry-count:100}")
     private int entryCount;
@@ -51,24 +66,31 @@ public class NightscoutGlucoseSyncScheduler {
     @Value("${app.glucose-sync.slow-interval-minutes:60}")
     private long slowIntervalMinutes;
 
-    /** BE-P1-1 fix: bounded parallel executor - same pattern as LibreLinkUpGlucoseSyncScheduler. */
-    private static final int MAX_CONCURRENT_SYNCS = 8;
-    private final ExecutorService syncExecutor = Executors.newFixedThreadPool(
-            MAX_CONCURRENT_SYNCS,
-            r -> { Thread t = new Thread(r, "ns-sync"); t.setDaemon(true); return t; }
-    );
+    /** Safety budget for a whole tick, so a slow batch can't run past the next scheduled tick. */
+    @Value("${app.glucose-sync.sync-timeout-ms:240000}")
+    private long syncTimeoutMs;
+
+    /**
+     * Concurrent user syncs per Nightscout host. Many users share one self-hosted instance (often a
+     * single small dyno), so this is what protects it; users on other hosts are not held up.
+     */
+    @Value("${app.glucose-sync.per-host-concurrency:4}")
+    private int perHostConcurrency;
+
+    /** Concurrent user syncs overall; defaults to the DB pool size, since each sync ends in DB writes. */
+    @Value("${app.glucose-sync.max-in-flight:${spring.datasource.hikari.maximum-pool-size:10}}")
+    private int maxInFlight;
+
+    private final SyncFanOut fanOut = new SyncFanOut("glucose_sync.nightscout", "ns-sync");
+
+    @PostConstruct
+    void configureFanOut() {
+        fanOut.configure(perHostConcurrency, maxInFlight, meterRegistryProvider.getIfAvailable());
+    }
 
     @PreDestroy
     public void shutdownExecutor() {
-        syncExecutor.shutdown();
-        try {
-            if (!syncExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                syncExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            syncExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
+        fanOut.close();
     }
 
     @Scheduled(
@@ -76,6 +98,7 @@ public class NightscoutGlucoseSyncScheduler {
             fixedDelayString = "${app.glucose-sync.fixed-delay-ms:300000}"
     )
     public void syncNightscoutForAllUsers() {
+        long startNanos = System.nanoTime();
         LocalDateTime now = LocalDateTime.now();
         log.info("Glucose sync tick started at {}", now);
         List<UUID> userIds = configRepository.findDistinctUserIdsByDataSourceAndIsActiveTrue(
@@ -90,72 +113,128 @@ public class NightscoutGlucoseSyncScheduler {
         List<UUID> libreUserIds = configRepository.findDistinctUserIdsByDataSourceAndIsActiveTrue(
                 UserDataSourceConfig.DataSourceType.LIBRE_LINK_UP);
         java.util.Set<UUID> libreUserSet = new java.util.HashSet<>(libreUserIds);
+        Map<UUID, String> hostByUser = nightscoutHosts();
 
-        // BE-P1-1 fix: process users in parallel up to MAX_CONCURRENT_SYNCS at a time.
         AtomicInteger skippedByBackoff = new AtomicInteger();
         AtomicInteger skippedLibre = new AtomicInteger();
         AtomicInteger usersWithNewData = new AtomicInteger();
         AtomicInteger usersNoChange = new AtomicInteger();
         AtomicInteger usersErrored = new AtomicInteger();
+        AtomicInteger permitTimeouts = new AtomicInteger();
 
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(syncTimeoutMs);
         List<CompletableFuture<Void>> futures = new ArrayList<>(userIds.size());
         for (UUID userId : userIds) {
-            futures.add(CompletableFuture.runAsync(() -> {
-                if (libreUserSet.contains(userId)) {
-                    skippedLibre.incrementAndGet();
-                    log.debug("Glucose sync user={} skipped: active LibreLinkUp data source", userId);
-                    return;
-                }
+            if (libreUserSet.contains(userId)) {
+                skippedLibre.incrementAndGet();
+                log.debug("Glucose sync user={} skipped: active LibreLinkUp data source", userId);
+                continue;
+            }
+            futures.add(fanOut.submitAsync(hostByUser.getOrDefault(userId, ""), deadlineNanos, () -> {
+                CompletableFuture<Void> sync;
                 try {
                     UserGlucoseSyncState state = syncStateService.getOrCreate(userId);
                     if (state.getNextPollAt() != null && now.isBefore(state.getNextPollAt())) {
                         skippedByBackoff.incrementAndGet();
                         syncStateService.markSkippedBackoff(userId, now);
                         log.info("Glucose sync user={} skipped by backoff (nextPollAt={})", userId, state.getNextPollAt());
-                        return;
-                    }
-
-                    List<NightscoutEntryDto> entries = nightScoutIntegration.getGlucoseEntries(userId, entryCount);
-                    cgmReadingService.storeChartData(userId, entries, CgmReading.DataSource.NIGHTSCOUT);
-
-                    OptionalLong newestTs = entries.stream()
-                            .map(NightscoutEntryDto::getDate)
-                            .filter(d -> d != null)
-                            .mapToLong(Long::longValue)
-                            .max();
-
-                    long previousSeen = state.getLastSeenEntryTimestamp() == null ? Long.MIN_VALUE : state.getLastSeenEntryTimestamp();
-                    boolean hasNewData = newestTs.isPresent() && newestTs.getAsLong() > previousSeen;
-
-                    if (hasNewData) {
-                        usersWithNewData.incrementAndGet();
-                        syncStateService.markNewData(userId, newestTs.getAsLong(), now, now.plusMinutes(fastIntervalMinutes));
-                        log.info("Glucose sync user={} new data detected (entries={}, newestTs={}, nextPollAt={})",
-                                userId, entries.size(), newestTs.getAsLong(), now.plusMinutes(fastIntervalMinutes));
-                    } else {
-                        usersNoChange.incrementAndGet();
-                        syncStateService.markNoChange(userId, now, now.plusMinutes(slowIntervalMinutes));
-                        log.info("Glucose sync user={} no new data (entries={}, nextPollAt={})",
-                                userId, entries.size(), now.plusMinutes(slowIntervalMinutes));
+                        return CompletableFuture.completedFuture(null);
                     }
+                    // The fetch completes on the HTTP client; the DB write continues on a fresh virtual thread.
+                    sync = nightScoutIntegration.getGlucoseEntriesAsync(userId, entryCount)
+                            .thenAcceptAsync(entries -> {
+                                if (storeEntries(userId, state, entries, now)) {
+                                    usersWithNewData.incrementAndGet();
+                                } else {
+                                    usersNoChange.incrementAndGet();
+                                }
+                            }, fanOut.executor());
                 } catch (Exception e) {
+                    sync = CompletableFuture.failedFuture(e);
+                }
+                return sync.exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
                     usersErrored.incrementAndGet();
                     syncStateService.markError(userId, now);
-                    log.warn("Glucose sync failed for user {}: {}", userId, e.getMessage());
+                    log.warn("Glucose sync failed for user {}: {}", userId, cause.getMessage());
+                    return null;
+                });
+            }).exceptionally(e -> {
+                // The task handles its own failures; what reaches here never ran.
+                if (SyncFanOut.isPermitTimeout(e)) {
+                    permitTimeouts.incrementAndGet();
+                } else {
+                    log.warn("Glucose sync user={} was not started: {}", userId, e.getMessage());
                 }
-            }, syncExecutor));
+                return null;
+            }));
         }
 
-        // Wait for all user syncs to finish (with 4-min safety timeout to stay within fixedDelay).
+        // Wait for all user syncs to finish (within the tick budget, to stay within fixedDelay).
         try {
             CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                    .get(4, TimeUnit.MINUTES);
-        } catch (Exception e) {
-            log.warn("Glucose sync: not all user tasks finished within timeout: {}", e.getMessage());
+                    .get(syncTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Glucose sync: tick exceeded {}ms budget with {} user sync(s) still in progress",
+                    syncTimeoutMs, futures.stream().filter(f -> !f.isDone()).count());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Glucose sync: interrupted while waiting for user sync tasks", e);
+        } catch (ExecutionException e) {
+            log.warn("Glucose sync: unexpected error in a user sync task", e.getCause());
+        }
+        fanOut.recordTick(startNanos);
+        if (permitTimeouts.get() > 0) {
+            log.warn("Glucose sync: {} user sync(s) got no upstream permit within {}ms; they are left to the next tick",
+                    permitTimeouts.get(), syncTimeoutMs);
         }
 
-        log.info("Glucose sync summary: users={}, skippedLibre={}, skippedByBackoff={}, newData={}, noChange={}, errors={}",
+        log.info("Glucose sync summary: users={}, skippedLibre={}, skippedByBackoff={}, newData={}, noChange={}, "
+                        + "errors={}, noPermit={}",
                 userIds.size(), skippedLibre.get(), skippedByBackoff.get(),
-                usersWithNewData.get(), usersNoChange.get(), usersErrored.get());
+                usersWithNewData.get(), usersNoChange.get(), usersErrored.get(), permitTimeouts.get());
+    }
+
+    /**
+     * Merges one user's fetched entries into the CGM cache and records the poll outcome.
+     *
+     * @return whether the batch contained entries newer than the last one seen
+     */
+    private boolean storeEntries(UUID userId, UserGlucoseSyncState state, List<NightscoutEntryDto> entries,
+                                 LocalDateTime now) {
+        if (cgmWriteBehind.isEnabled()) {
+            cgmWriteBehind.store(userId, entries, CgmReading.DataSource.NIGHTSCOUT, false);
+        } else {
+            cgmReadingService.storeChartData(userId, entries, CgmReading.DataSource.NIGHTSCOUT);
+        }
+
+        OptionalLong newestTs = entries.stream()
+                .map(NightscoutEntryDto::getDate)
+                .filter(d -> d != null)
+                .mapToLong(Long::longValue)
+                .max();
+
+        long previousSeen = state.getLastSeenEntryTimestamp() == null ? Long.MIN_VALUE : state.getLastSeenEntryTimestamp();
+        boolean hasNewData = newestTs.isPresent() && newestTs.getAsLong() > previousSeen;
+
+        if (hasNewData) {
+            syncStateService.markNewData(userId, newestTs.getAsLong(), now, now.plusMinutes(fastIntervalMinutes));
+            log.info("Glucose sync user={} new data detected (entries={}, newestTs={}, nextPollAt={})",
+                    userId, entries.size(), newestTs.getAsLong(), now.plusMinutes(fastIntervalMinutes));
+        } else {
+            syncStateService.markNoChange(userId, now, now.plusMinutes(slowIntervalMinutes));
+            log.info("Glucose sync user={} no new data (entries={}, nextPollAt={})",
+                    userId, entries.size(), now.plusMinutes(slowIntervalMinutes));
+        }
+        return hasNewData;
+    }
+
+    /** Nightscout host per user, from the newest active config (the one the fetch will use). */
+    private Map<UUID, String> nightscoutHosts() {
+        Map<UUID, String> hosts = new HashMap<>();
+        for (Object[] row : configRepository.findActiveNightscoutUrls()) {
+            hosts.putIfAbsent((UUID) row[0], SyncFanOut.hostOf((String) row[1]));
+        }
+        return hosts;
     }
 }
@@ -0,0 +1,183 @@
+package che.glucosemonitorbe.scheduler;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Per-user fan-out shared by the glucose sync schedulers. Each user sync starts on its own virtual
+ * thread - blocking HTTP plus a short DB write ({@link #submit}), or a non-blocking fetch whose
+ * continuation does the write ({@link #submitAsync}) - so a tick is no longer bounded by a fixed
+ * pool size times upstream latency. Every sync is gated by two permit pools, held until it completes:
+ * <ul>
+ *   <li>one per upstream host, so many users on one self-hosted Nightscout (or one LibreLinkUp
+ *       region) cannot hammer it, while users on other hosts proceed;</li>
+ *   <li>one overall, sized to the DB connection pool by default: every sync ends in DB writes (the
+ *       readings and its sync state), and a sync holding a permit beyond the pool size would only
+ *       queue for a connection while keeping its upstream permit.</li>
+ * </ul>
+ * The host permit is taken first, so a sync queued behind a busy host does not hold an overall
+ * permit while it waits. A sync that cannot get its permits before the tick deadline is dropped
+ * (its future fails with {@link TimeoutException}) and picked up by the next tick instead of
+ * spilling into it.
+ */
+final class SyncFanOut implements AutoCloseable {
+
+    private static final int DEFAULT_PER_HOST = 4;
+    /** Matches the Hikari {@code maximum-pool-size} default. */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 10;
+
+    private final String metricPrefix;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private volatile int perHostLimit = DEFAULT_PER_HOST;
+    private volatile Semaphore overall = new Semaphore(DEFAULT_MAX_IN_FLIGHT, true);
+    private Timer tickTimer;
+
+    SyncFanOut(String metricPrefix, String threadPrefix) {
+        this.metricPrefix = metricPrefix;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadPrefix + "-", 0).factory());
+    }
+
+    /** Applies the configured limits and registers the metrics (no metrics when {@code registry} is null). */
+    void configure(int perHost, int maxInFlight, MeterRegistry registry) {
+        this.perHostLimit = Math.max(1, perHost);
+        this.overall = new Semaphore(Math.max(1, maxInFlight), true);
+        hostPermits.clear();
+        if (registry == null) return;
+        Gauge.builder(metricPrefix + ".in_flight", inFlight, AtomicInteger::get)
+                .description("User syncs currently talking to the upstream").register(registry);
+        Gauge.builder(metricPrefix + ".waiting", waiting, AtomicInteger::get)
+                .description("User syncs waiting for an upstream or overall permit").register(registry);
+        Gauge.builder(metricPrefix + ".hosts", hostPermits, ConcurrentHashMap::size)
+                .description("Distinct upstream hosts seen").register(registry);
+        tickTimer = Timer.builder(metricPrefix + ".tick.duration")
+                .description("Wall time of one sync tick across all users")
+                .publishPercentiles(0.5, 0.95)
+                .register(registry);
+    }
+
+    /**
+     * Runs {@code task} on a virtual thread once a permit for {@code host} and an overall permit are
+     * free, giving up if that has not happened by {@code deadlineNanos} ({@link System#nanoTime()}).
+     */
+    <T> CompletableFuture<T> submit(String host, long deadlineNanos, Supplier<T> task) {
+        return submitAsync(host, deadlineNanos, () -> CompletableFuture.completedFuture(task.get()));
+    }
+
+    /**
+     * Like {@link #submit}, for a host that is looked up ({@code hostLookup}) on the sync's own virtual
+     * thread rather than on the submitting one, so a tick's fan-out loop does no per-user lookups.
+     */
+    <T> CompletableFuture<T> submit(Supplier<String> hostLookup, long deadlineNanos, Supplier<T> task) {
+        return CompletableFuture.supplyAsync(hostLookup, executor)
+                .thenCompose(host -> submit(host, deadlineNanos, task));
+    }
+
+    /**
+     * Like {@link #submit}, for a task that starts non-blocking work: {@code task} runs on a virtual
+     * thread once both permits are held and returns a stage; the permits stay held until that stage
+     * completes, but no thread waits on it in between.
+     */
+    <T> CompletableFuture<T> submitAsync(String host, long deadlineNanos, Supplier<? extends CompletionStage<T>> task) {
+        Semaphore hostGate = hostPermits.computeIfAbsent(host == null ? "" : host, h -> new Semaphore(perHostLimit, true));
+        Semaphore overallGate = overall;
+        return CompletableFuture.supplyAsync(() -> {
+            waiting.incrementAndGet();
+            boolean hostHeld = false, overallHeld = false;
+            try {
+                hostHeld = hostGate.tryAcquire(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                overallHeld = hostHeld
+                        && overallGate.tryAcquire(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("interrupted waiting for a sync permit");
+            } finally {
+                waiting.decrementAndGet();
+                if (hostHeld && !overallHeld) hostGate.release();
+            }
+            if (!overallHeld) {
+                throw new CompletionException(new TimeoutException("no sync permit for " + host + " before the tick deadline"));
+            }
+            inFlight.incrementAndGet();
+            Runnable release = () -> {
+                inFlight.decrementAndGet();
+                overallGate.release();
+                hostGate.release();
+            };
+            CompletionStage<T> stage;
+            try {
+                stage = task.get();
+            } catch (RuntimeException | Error e) {
+                release.run();
+                throw e;
+            }
+            return stage.whenComplete((result, error) -> release.run());
+        }, executor).thenCompose(Function.identity());
+    }
+
+    /** Virtual-thread executor for blocking continuations (e.g. the DB write after an async fetch). */
+    Executor executor() {
+        return executor;
+    }
+
+    /** Records the wall time of a tick that started at {@code startNanos}. */
+    void recordTick(long startNanos) {
+        if (tickTimer != null) tickTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    /** True when {@code error}, possibly wrapped, is the {@link TimeoutException} of a sync that got no permits. */
+    static boolean isPermitTimeout(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof TimeoutException;
+    }
+
+    /** Lower-cased host of {@code url}, or the trimmed url itself when it does not parse. */
+    static String hostOf(String url) {
+        if (url == null || url.isBlank()) return "";
+        try {
+            String host = URI.create(url.strip()).getHost();
+            if (host != null) return host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException ignored) {
+            // fall through
+        }
+        return url.strip().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package che.glucosemonitorbe.security;
 
+import che.glucosemonitorbe.config.CacheConfig;
 import che.glucosemonitorbe.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -18,4 +20,13 @@ public class CustomUserDetailsService implements UserDetailsService {
         return userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
     }
+
+    /**
+     * {@link #loadUserByUsername} behind a short-TTL cache, for the principal of an already-validated
+     * JWT ({@link JwtAuthenticationFilter}). Password login keeps using the uncached lookup.
+     */
+    @Cacheable(value = CacheConfig.CACHE_USER_DETAILS, key = "#username")
+    public UserDetails loadUserForRequest(String username) throws UsernameNotFoundException {
+        return loadUserByUsername(username);
+    }
 }
@@ -0,0 +1,151 @@
+package che.glucosemonitorbe.service;
+
+import che.glucosemonitorbe.domain.CarbsEntry;
+import che.glucosemonitorbe.dto.UserSettingsDTO;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * One carbs entry's COB decay with every per-entry constant resolved once: the absorption window,
+ * half-life, decay model and, for {@code GI_GL_ENHANCED}, the three phase fractions, rate constants
+ * and delay. {@link CarbsOnBoardService} compiles a kernel per entry per request, so a prediction
+ * path or timeline only evaluates the exponentials at each step instead of re-deriving the entry
+ * (and its elapsed minutes from {@code LocalDateTime}) every time.
+ */
+final class CarbAbsorptionKernel {
+
+    private final LocalDateTime timestamp;
+    private final double carbs;
+    private final int maxDuration;
+    private final int halfLife;
+    private final boolean enhanced;
+
+    // GI_GL_ENHANCED constants (unused by the default model)
+    private final double availableCarbs;
+    private final double fastPhase;
+    private final double mediumPhase;
+    private final double delayedPhase;
+    private final double kFast;
+    private final double kMedium;
+    private final double kSlow;
+    private final double delayMinutes;
+
+    private CarbAbsorptionKernel(CarbsEntry entry, UserSettingsDTO userSettings) {
+        this.timestamp = entry.getTimestamp();
+        this.carbs = entry.getCarbs();
+
+        // Pattern-matched duration overrides user default (e.g. 8h for Double Wave pizza meals).
+        int patternDuration = entry.getSuggestedDurationHours() != null
+                ? (int) (entry.getSuggestedDurationHours() * 60) : 0;
+        // Base default from user settings; fall back to speed-class baseline when not configured.
+        // Evidence: simple carbs absorb 90% within 1-2 h (Hovorka model, 40-80 min time constant).
+        int userDefault = userSettings.getMaxCOBDuration() != null ? userSettings.getMaxCOBDuration() : 0;
+        int speedDefault = speedClassDurationMinutes(entry.getAbsorptionSpeedClass());
+        int defaultDuration = userDefault > 0 ? userDefault : speedDefault;
+        this.maxDuration = patternDuration > 0 ? Math.max(patternDuration, defaultDuration) : defaultDuration;
+        this.halfLife = userSettings.getCarbHalfLife() != null ? userSettings.getCarbHalfLife() : 45;
+        this.enhanced = "GI_GL_ENHANCED".equalsIgnoreCase(entry.getAbsorptionMode());
+
+        if (!enhanced || halfLife <= 0) {
+            availableCarbs = fastPhase = mediumPhase = delayedPhase = 0.0;
+            kFast = kMedium = kSlow = delayMinutes = 0.0;
+            return;
+        }
+        double gi = entry.getEstimatedGi() != null ? entry.getEstimatedGi() : 55.0;
+        double fiber = entry.getFiber() != null ? Math.max(0.0, entry.getFiber()) : 0.0;
+        double protein = entry.getProtein() != null ? Math.max(0.0, entry.getProtein()) : 0.0;
+        double fat = entry.getFat() != null ? Math.max(0.0, entry.getFat()) : 0.0;
+        this.availableCarbs = Math.max(0.0, carbs - fiber);
+
+        double baseFast = clamp((gi - 40.0) / 40.0, 0.2, 0.75);
+        double slowPenalty = clamp((fiber * 0.015) + ((protein + fat) * 0.008), 0.0, 0.35);
+        this.fastPhase = clamp(baseFast - slowPenalty, 0.15, 0.7);
+        this.mediumPhase = 0.25;
+        this.delayedPhase = clamp(1.0 - fastPhase - mediumPhase, 0.1, 0.6);
+
+        this.kFast = Math.log(2.0) / Math.max(15.0, halfLife * 0.35);
+        this.kMedium = Math.log(2.0) / Math.max(40.0, halfLife * 0.9);
+        this.delayMinutes = clamp((fiber * 2.5) + ((protein + fat) * 1.2), 0.0, maxDuration * 0.5);
+        this.kSlow = Math.log(2.0) / Math.max(70.0, halfLife * 1.8);
+    }
+
+    /** Kernel for an entry with a timestamp and positive carbs, under the user's COB settings. */
+    static CarbAbsorptionKernel compile(CarbsEntry entry, UserSettingsDTO userSettings) {
+        return new CarbAbsorptionKernel(entry, userSettings);
+    }
+
+    /** Carbs still on board [g] {@code minutesSinceEntry} whole minutes after the entry. */
+    double remaining(long minutesSinceEntry) {
+        if (minutesSinceEntry < 0 || minutesSinceEntry > maxDuration || halfLife <= 0) {
+            return 0.0;
+        }
+        double raw = enhanced
+                ? enhancedRemaining(minutesSinceEntry)
+                : Math.max(0.0, carbs * Math.pow(0.5, (double) minutesSinceEntry / halfLife));
+
+        // Linear taper over the last 30 min of the window so COB reaches zero smoothly
+        // instead of snapping from ~1g to 0 at maxDuration, which causes a step in the
+        // prediction path (carbsDeliveredEffect = (cobNow - cobAtT) / 10 * carbRatio).
+        int taperStartMinutes = maxDuration - 30;
+        if (minutesSinceEntry >= taperStartMinutes) {
+            double taperProgress = (double) (minutesSinceEntry - taperStartMinutes) / 30.0;
+            raw *= Math.max(0.0, 1.0 - taperProgress);
+        }
+        return raw;
+    }
+
+    /** Carbs still on board at {@code time}. */
+    double remainingAt(LocalDateTime time) {
+        return remaining(ChronoUnit.MINUTES.between(timestamp, time));
+    }
+
+    /**
+     * Adds this entry's COB at {@code start + offsetMinutes[i]} to {@code out[i]} for the whole grid in
+     * one pass. The entry-to-start duration is split once; each step's elapsed minutes then follow by
+     * integer arithmetic, truncated toward zero exactly as {@code ChronoUnit.MINUTES.between} does.
+     */
+    double[] addCurve(LocalDateTime start, int[] offsetMinutes, double[] out) {
+        Duration sinceEntry = Duration.between(timestamp, start);
+        long floorMinutes = Math.floorDiv(sinceEntry.getSeconds(), 60);
+        boolean partialMinute = sinceEntry.getNano() != 0 || Math.floorMod(sinceEntry.getSeconds(), 60) != 0;
+        for (int i = 0; i < offsetMinutes.length; i++) {
+            long minutes = floorMinutes + offsetMinutes[i];
+            if (minutes < 0 && partialMinute) minutes++;
+            out[i] += remaining(minutes);
+        }
+        return out;
+    }
+
+    private double enhancedRemaining(long minutesSinceEntry) {
+        double t = minutesSinceEntry;
+        double remainingFast = fastPhase * Math.exp(-kFast * t);
+        double remainingMedium = mediumPhase * Math.exp(-kMedium * t);
+        double shifted = Math.max(0.0, t - delayMinutes);
+        double remainingSlow = delayedPhase * Math.exp(-kSlow * shifted);
+
+        double remainingFraction = clamp(remainingFast + remainingMedium + remainingSlow, 0.0, 1.0);
+        return availableCarbs * remainingFraction;
+    }
+
+    /**
+     * Default COB window by absorption speed class, aligned with clinical evidence:
+     *   FAST  - simple/high-GI carbs: 90% absorbed within 1-2 h -> 120 min
+     *   MEDIUM - mixed meals peak 1.5-2 h, tail to 3 h -> 180 min
+     *   SLOW / DEFAULT - high-fiber or protein-heavy meals -> 240 min
+     * Pattern-matched suggestedDurationHours always overrides this value.
+     */
+    private static int speedClassDurationMinutes(String speedClass) {
+        if (speedClass == null) return 240;
+        return switch (speedClass.toUpperCase()) {
+            case "FAST"   -> 120;
+            case "MEDIUM" -> 180;
+            default       -> 240; // SLOW, DEFAULT
+        };
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -6,7 +6,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -14,6 +14,9 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class CarbsOnBoardService {
     
+    /** Longest timeline served; no absorption window comes close. */
+    private static final int MAX_TIMELINE_HOURS = 24;
+
     private final UserSettingsService userSettingsService;
 
     /**
@@ -33,96 +36,9 @@ public class CarbsOnBoardService {
      * Inner calculation using pre-loaded settings - avoids a DB round-trip per entry.
      */
     private double calculateRemainingCarbs(CarbsEntry entry, LocalDateTime currentTime, UserSettingsDTO userSettings) {
-        long minutesSinceEntry = ChronoUnit.MINUTES.between(entry.getTimestamp(), currentTime);
-        if (minutesSinceEntry < 0) {
-            return 0.0;
-        }
-
-        // Pattern-matched duration overrides user default (e.g. 8h for Double Wave pizza meals).
-        int patternDuration = entry.getSuggestedDurationHours() != null
-                ? (int) (entry.getSuggestedDurationHours() * 60) : 0;
-        // Base default from user settings; fall back to speed-class baseline when not configured.
-        // Evidence: simple carbs absorb 90% within 1-2 h (Hovorka model, 40-80 min time constant).
-        int userDefault = userSettings.getMaxCOBDuration() != null ? userSettings.getMaxCOBDuration() : 0;
-        int speedDefault = speedClassDurationMinutes(entry.getAbsorptionSpeedClass());
-        int defaultDuration = userDefault > 0 ? userDefault : speedDefault;
-        int maxDuration = patternDuration > 0 ? Math.max(patternDuration, defaultDuration) : defaultDuration;
-        if (minutesSinceEntry > maxDuration) {
-            return 0.0;
-        }
-        int halfLife = userSettings.getCarbHalfLife() != null ? userSettings.getCarbHalfLife() : 45;
-        if (halfLife <= 0) {
-            return 0.0;
-        }
-
-        double raw = "GI_GL_ENHANCED".equalsIgnoreCase(entry.getAbsorptionMode())
-                ? calculateEnhancedRemaining(entry, minutesSinceEntry, halfLife, maxDuration)
-                : calculateDefaultRemaining(entry.getCarbs(), minutesSinceEntry, halfLife);
-
-        // Linear taper over the last 30 min of the window so COB reaches zero smoothly
-        // instead of snapping from ~1g to 0 at maxDuration, which causes a step in the
-        // prediction path (carbsDeliveredEffect = (cobNow - cobAtT) / 10 * carbRatio).
-        int taperStartMinutes = maxDuration - 30;
-        if (minutesSinceEntry >= taperStartMinutes) {
-            double taperProgress = (double)(minutesSinceEntry - taperStartMinutes) / 30.0;
-            raw *= Math.max(0.0, 1.0 - taperProgress);
-        }
-        return raw;
+        return CarbAbsorptionKernel.compile(entry, userSettings).remainingAt(currentTime);
     }
 
-    private double calculateDefaultRemaining(double carbs, long minutesSinceEntry, int halfLife) {
-        double halfLives = (double) minutesSinceEntry / halfLife;
-        return Math.max(0.0, carbs * Math.pow(0.5, halfLives));
-    }
-
-    private double calculateEnhancedRemaining(CarbsEntry entry, long minutesSinceEntry, int halfLife, int maxDuration) {
-        double gi = entry.getEstimatedGi() != null ? entry.getEstimatedGi() : 55.0;
-        double fiber = entry.getFiber() != null ? Math.max(0.0, entry.getFiber()) : 0.0;
-        double protein = entry.getProtein() != null ? Math.max(0.0, entry.getProtein()) : 0.0;
-        double fat = entry.getFat() != null ? Math.max(0.0, entry.getFat()) : 0.0;
-        double availableCarbs = Math.max(0.0, entry.getCarbs() - fiber);
-
-        double baseFast = clamp((gi - 40.0) / 40.0, 0.2, 0.75);
-        double slowPenalty = clamp((fiber * 0.015) + ((protein + fat) * 0.008), 0.0, 0.35);
-        double fastPhase = clamp(baseFast - slowPenalty, 0.15, 0.7);
-        double mediumPhase = 0.25;
-        double delayedPhase = clamp(1.0 - fastPhase - mediumPhase, 0.1, 0.6);
-
-        double t = minutesSinceEntry;
-        double kFast = Math.log(2.0) / Math.max(15.0, halfLife * 0.35);
-        double kMedium = Math.log(2.0) / Math.max(40.0, halfLife * 0.9);
-        double delayMinutes = clamp((fiber * 2.5) + ((protein + fat) * 1.2), 0.0, maxDuration * 0.5);
-        double kSlow = Math.log(2.0) / Math.max(70.0, halfLife * 1.8);
-
-        double remainingFast = fastPhase * Math.exp(-kFast * t);
-        double remainingMedium = mediumPhase * Math.exp(-kMedium * t);
-        double shifted = Math.max(0.0, t - delayMinutes);
-        double remainingSlow = delayedPhase * Math.exp(-kSlow * shifted);
-
-        double remainingFraction = clamp(remainingFast + remainingMedium + remainingSlow, 0.0, 1.0);
-        return availableCarbs * remainingFraction;
-    }
-
-    /**
-     * Default COB window by absorption speed class, aligned with clinical evidence:
-     *   FAST  - simple/high-GI carbs: 90% absorbed within 1-2 h -> 120 min
-     *   MEDIUM - mixed meals peak 1.5-2 h, tail to 3 h -> 180 min
-     *   SLOW / DEFAULT - high-fiber or protein-heavy meals -> 240 min
-     * Pattern-matched suggestedDurationHours always overrides this value.
-     */
-    private int speedClassDurationMinutes(String speedClass) {
-        if (speedClass == null) return 240;
-        return switch (speedClass.toUpperCase()) {
-            case "FAST"   -> 120;
-            case "MEDIUM" -> 180;
-            default       -> 240; // SLOW, DEFAULT
-        };
-    }
-
-    private double clamp(double value, double min, double max) {
-        return Math.max(min, Math.min(max, value));
-    }
-    
     /**
      * Calculate total carbs on board from multiple entries.
      * Settings are loaded once for the batch - O(1) DB queries regardless of list size.
@@ -140,22 +56,68 @@ public class CarbsOnBoardService {
         if (entries == null || entries.isEmpty()) {
             return 0.0;
         }
-        return entries.stream()
-                .filter(e -> e != null && e.getCarbs() != null && e.getCarbs() > 0)
-                .mapToDouble(entry -> calculateRemainingCarbs(entry, currentTime, userSettings))
-                .sum();
+        double total = 0.0;
+        for (CarbsEntry entry : entries) {
+            if (hasCarbs(entry)) total += calculateRemainingCarbs(entry, currentTime, userSettings);
+        }
+        return total;
+    }
+
+    /**
+     * Total COB at {@code start + offsetMinutes[i]} for every step of a grid, in one pass: each entry is
+     * compiled once and its whole curve accumulated into the result. Element {@code i} equals
+     * {@link #calculateTotalCarbsOnBoard(List, LocalDateTime, UserSettingsDTO)} at that step.
+     */
+    public double[] calculateCarbsOnBoardCurve(List<CarbsEntry> entries, LocalDateTime start,
+                                               int[] offsetMinutes, UserSettingsDTO userSettings) {
+        double[] curve = new double[offsetMinutes.length];
+        if (entries == null) {
+            return curve;
+        }
+        for (CarbsEntry entry : entries) {
+            if (hasCarbs(entry)) CarbAbsorptionKernel.compile(entry, userSettings).addCurve(start, offsetMinutes, curve);
+        }
+        return curve;
+    }
+
+    private static boolean hasCarbs(CarbsEntry e) {
+        return e != null && e.getCarbs() != null && e.getCarbs() > 0;
     }
     
     /**
-     * Calculate COB timeline for a specific entry
+     * COB timeline for a single entry at 15-minute resolution (up to 24 h), under its owner's settings.
      */
     public List<COBPoint> getCOBTimeline(CarbsEntry entry, int durationHours) {
-        // This would generate a timeline of COB values over time
-        // For now, returning a simple calculation
-        return List.of(
-            new COBPoint(entry.getTimestamp(), entry.getCarbs()),
-            new COBPoint(entry.getTimestamp().plusHours(durationHours), 0.0)
-        );
+        if (!hasCarbs(entry)) {
+            return List.of();
+        }
+        return getCOBTimeline(entry, durationHours, userSettingsService.getUserSettings(entry.getUserId()));
+    }
+
+    /** COB timeline for a single entry with pre-loaded settings, evaluated as one curve. */
+    public List<COBPoint> getCOBTimeline(CarbsEntry entry, int durationHours, UserSettingsDTO userSettings) {
+        if (!hasCarbs(entry)) {
+            return List.of();
+        }
+        int[] offsets = new int[Math.max(0, Math.min(durationHours, MAX_TIMELINE_HOURS)) * 4 + 1];
+        for (int i = 0; i < offsets.length; i++) offsets[i] = i * 15;
+        double[] cob = calculateCarbsOnBoardCurve(List.of(entry), entry.getTimestamp(), offsets, userSettings);
+
+        List<COBPoint> timeline = new ArrayList<>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            timeline.add(new COBPoint(entry.getTimestamp().plusMinutes(offsets[i]), cob[i]));
+        }
+        return timeline;
+    }
+
+    /** Timeline for the entry described by a COB request (see {@link #calculateCOB}). */
+    public List<COBPoint> getCOBTimeline(COBCalculationRequest request, int durationHours) {
+        if (request == null || request.getCarbs() <= 0) {
+            return List.of();
+        }
+        CarbsEntry entry = toEntry(request);
+        entry.setUserId(request.getUserId());
+        return getCOBTimeline(entry, durationHours);
     }
     
     /**
@@ -173,13 +135,7 @@ public class CarbsOnBoardService {
                     .build();
         }
 
-        // Build a CarbsEntry from the request so the decay models can run
-        CarbsEntry entry = new CarbsEntry();
-        entry.setCarbs(request.getCarbs());
-        entry.setTimestamp(request.getTimestamp() != null ? request.getTimestamp() : LocalDateTime.now());
-        // Use GI_GL_ENHANCED when possible so fiber/fat/protein blunting applies
-        entry.setAbsorptionMode("GI_GL_ENHANCED");
-
+        CarbsEntry entry = toEntry(request);
         LocalDateTime now = LocalDateTime.now();
         double cob = calculateRemainingCarbs(entry, now, request.getUserId());
 
@@ -191,6 +147,16 @@ public class CarbsOnBoardService {
                 .build();
     }
     
+    /** Build a CarbsEntry from the request so the decay models can run. */
+    private static CarbsEntry toEntry(COBCalculationRequest request) {
+        CarbsEntry entry = new CarbsEntry();
+        entry.setCarbs(request.getCarbs());
+        entry.setTimestamp(request.getTimestamp() != null ? request.getTimestamp() : LocalDateTime.now());
+        // Use GI_GL_ENHANCED when possible so fiber/fat/protein blunting applies
+        entry.setAbsorptionMode("GI_GL_ENHANCED");
+        return entry;
+    }
+
     // DTO classes for COB calculations
     public static class COBCalculationRequest {
         private double carbs;
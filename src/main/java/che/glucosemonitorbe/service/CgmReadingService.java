@@ -1,18 +1,29 @@
 package che.glucosemonitorbe.service;
 
 import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.CgmReadingCursor;
 import che.glucosemonitorbe.dto.NightscoutEntryDto;
+import che.glucosemonitorbe.repository.CgmReadingBulkWriter;
+import che.glucosemonitorbe.repository.CgmReadingPartitions;
 import che.glucosemonitorbe.repository.CgmReadingRepository;
+import che.glucosemonitorbe.service.cgm.CgmReadingsStoredEvent;
+import che.glucosemonitorbe.service.cgm.CgmRollupService;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
+import che.glucosemonitorbe.service.cgm.CgmWriteBatch;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -29,12 +40,29 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class CgmReadingService {
 
+    /** Rows fetched per keyset query while streaming. */
+    static final int STREAM_PAGE_SIZE = 500;
+
     private final CgmReadingRepository repository;
+    private final CgmSeriesCache seriesCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CgmReadingBulkWriter bulkWriter;
+    private final CgmReadingPartitions partitions;
+    private final CgmRollupService rollupService;
 
     /**
      * Inserts new chart points only. Skips entries already present (same upstream id
      * for that source, or same reading timestamp when no id is supplied) and dedupes
-     * within the incoming batch.
+     * within the incoming batch. Entries without a reading timestamp cannot be placed in
+     * a partition and are skipped with a warning (they used to be stored undated). An
+     * upstream id that is already stored at a different timestamp (re-sent with a
+     * corrected time) replaces the stored reading, which is also taken back out of the
+     * rollups.
+     *
+     * <p>On PostgreSQL the batch is written by {@link CgmReadingBulkWriter} in one
+     * {@code INSERT ... ON CONFLICT} per key space, so the unique indexes - not a prior
+     * existence check - decide what is new, and concurrent syncs of the same user cannot
+     * race between check and insert. Elsewhere (H2) the JPA path below is used.</p>
      */
     @Transactional(isolation = Isolation.READ_COMMITTED)
     public void storeChartData(UUID userId,
@@ -49,56 +77,74 @@ public class CgmReadingService {
         Set<Long> batchTimestamps = new HashSet<>();
         List<NightscoutEntryDto> candidates = new ArrayList<>(entries.size());
         int skippedInBatch = 0;
+        int skippedNoDate = 0;
 
         for (NightscoutEntryDto entry : entries) {
-            if (StringUtils.hasText(entry.getId())) {
+            if (entry.getDate() == null) {
+                // The reading time is the partition key of cgm_readings - nothing to chart without it.
+                skippedNoDate++;
+            } else if (StringUtils.hasText(entry.getId())) {
                 if (batchIds.add(entry.getId())) {
                     candidates.add(entry);
                 } else {
                     skippedInBatch++;
                 }
-            } else if (entry.getDate() != null) {
-                if (batchTimestamps.add(entry.getDate())) {
-                    candidates.add(entry);
-                } else {
-                    skippedInBatch++;
-                }
+            } else if (batchTimestamps.add(entry.getDate())) {
+                candidates.add(entry);
             } else {
                 skippedInBatch++;
-                log.trace("Skipping CGM entry with no external id and no date for user {} ({})",
-                        userId, dataSource);
             }
         }
 
+        if (skippedNoDate > 0) {
+            log.warn("CGM readings for user {} ({}): skipped {} of {} entries without a reading time",
+                    userId, dataSource, skippedNoDate, entries.size());
+        }
         if (candidates.isEmpty()) {
-            log.info("CGM readings for user {} ({}): inserted 0, skipped {} (all duplicates in batch)",
-                    userId, dataSource, skippedInBatch);
+            log.info("CGM readings for user {} ({}): inserted 0, skipped {} (batch dupes: {}, no date: {})",
+                    userId, dataSource, skippedInBatch + skippedNoDate, skippedInBatch, skippedNoDate);
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (bulkWriter.isAvailable()) {
+            storeWithBulkUpsert(userId, candidates, dataSource, now, skippedInBatch);
             return;
         }
 
         // 2) Two bulk existence queries instead of one per row.
-        Set<String> alreadyStoredIds = batchIds.isEmpty()
-                ? Set.of()
-                : new HashSet<>(repository.findExistingExternalIds(
-                        userId, dataSource, new ArrayList<>(batchIds)));
+        Map<String, CgmReading> alreadyStoredIds = new HashMap<>();
+        if (!batchIds.isEmpty()) {
+            for (CgmReading stored : repository.findByUserIdAndDataSourceAndExternalIdIn(
+                    userId, dataSource, new ArrayList<>(batchIds))) {
+                alreadyStoredIds.put(stored.getExternalId(), stored);
+            }
+        }
         Set<Long> alreadyStoredTs = batchTimestamps.isEmpty()
                 ? Set.of()
                 : new HashSet<>(repository.findExistingDateTimestamps(
                         userId, dataSource, new ArrayList<>(batchTimestamps)));
 
         // 3) Build the insert list.
-        LocalDateTime now = LocalDateTime.now();
         List<CgmReading> toInsert = new ArrayList<>(candidates.size());
+        List<CgmReading> moved = new ArrayList<>();
         int skippedAlreadyStored = 0;
 
         for (NightscoutEntryDto entry : candidates) {
             if (StringUtils.hasText(entry.getId())) {
-                if (alreadyStoredIds.contains(entry.getId())) {
+                CgmReading stored = alreadyStoredIds.get(entry.getId());
+                if (stored != null && !entry.getDate().equals(stored.getDateTimestamp())) {
+                    // Same upstream record at a corrected time: replace it, as the bulk writer does.
+                    moved.add(stored);
+                } else if (stored != null) {
                     // Back-fill trend when the stored record was written from a graph point
                     // that had no TrendArrow (trend=0) and the incoming entry now carries one.
                     if (entry.getTrend() != null && entry.getTrend() > 0) {
                         repository.updateTrendIfZero(userId, dataSource, entry.getId(),
                                 entry.getTrend(), entry.getDirection());
+                        if (entry.getDate() != null) {
+                            seriesCache.onTrendBackfilled(userId, entry.getDate(), entry.getTrend());
+                        }
                     }
                     skippedAlreadyStored++;
                     continue;
@@ -108,31 +154,99 @@ public class CgmReadingService {
                 continue;
             }
 
-            toInsert.add(CgmReading.builder()
-                    .userId(userId)
-                    .dataSource(dataSource)
-                    .externalId(entry.getId())
-                    .sgv(entry.getSgv())
-                    .dateTimestamp(entry.getDate())
-                    .dateString(entry.getDateString())
-                    .trend(entry.getTrend())
-                    .direction(entry.getDirection())
-                    .device(entry.getDevice())
-                    .type(entry.getType())
-                    .utcOffset(entry.getUtcOffset())
-                    .sysTime(entry.getSysTime())
-                    .lastUpdated(now)
-                    .build());
+            toInsert.add(toReading(userId, dataSource, entry, now));
         }
 
+        if (!moved.isEmpty()) {
+            // Deleted by query, ahead of the inserts below (Hibernate would flush the inserts first).
+            repository.deleteAllByIdInBatch(moved.stream().map(CgmReading::getId).toList());
+            afterRemove(userId, moved);
+        }
         if (!toInsert.isEmpty()) {
             // saveAll + Hibernate jdbc.batch_size issues multi-row INSERTs in a single round-trip.
             repository.saveAll(toInsert);
+            afterInsert(userId, toInsert);
         }
 
-        log.info("CGM readings for user {} ({}): inserted {}, skipped {} (batch dupes: {}, already stored: {})",
+        log.info("CGM readings for user {} ({}): inserted {}, skipped {} (batch dupes: {}, already stored: {}, "
+                        + "moved: {})",
                 userId, dataSource, toInsert.size(), skippedInBatch + skippedAlreadyStored,
-                skippedInBatch, skippedAlreadyStored);
+                skippedInBatch, skippedAlreadyStored, moved.size());
+    }
+
+    /**
+     * Stores several users' batches in one transaction, so a write-behind flush costs one commit
+     * instead of one per user. Any failure rolls back the whole group; the caller
+     * ({@code CgmWriteBehindBuffer}) then retries the batches one by one.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public void storeChartDataGroup(List<CgmWriteBatch> batches) {
+        for (CgmWriteBatch batch : batches) {
+            storeChartData(batch.userId(), batch.entries(), batch.dataSource());
+        }
+    }
+
+    /** Steps 2-3 as one upsert per key space; the returned rows say what was inserted or back-filled. */
+    private void storeWithBulkUpsert(UUID userId, List<NightscoutEntryDto> candidates,
+                                     CgmReading.DataSource dataSource, LocalDateTime now, int skippedInBatch) {
+        List<CgmReading> readings = new ArrayList<>(candidates.size());
+        for (NightscoutEntryDto entry : candidates) readings.add(toReading(userId, dataSource, entry, now));
+
+        CgmReadingBulkWriter.Result result = bulkWriter.upsert(userId, dataSource, readings, now);
+
+        if (!result.moved().isEmpty()) afterRemove(userId, result.moved());
+        for (CgmReading backfilled : result.trendBackfilled()) {
+            if (backfilled.getDateTimestamp() != null) {
+                seriesCache.onTrendBackfilled(userId, backfilled.getDateTimestamp(), backfilled.getTrend());
+            }
+        }
+        if (!result.inserted().isEmpty()) afterInsert(userId, result.inserted());
+
+        int skippedAlreadyStored = readings.size() - result.inserted().size();
+        log.info("CGM readings for user {} ({}): inserted {}, skipped {} (batch dupes: {}, already stored: {}, "
+                        + "trend back-filled: {}, moved: {})",
+                userId, dataSource, result.inserted().size(), skippedInBatch + skippedAlreadyStored,
+                skippedInBatch, skippedAlreadyStored, result.trendBackfilled().size(), result.moved().size());
+    }
+
+    private static CgmReading toReading(UUID userId, CgmReading.DataSource dataSource,
+                                        NightscoutEntryDto entry, LocalDateTime now) {
+        return CgmReading.builder()
+                .userId(userId)
+                .dataSource(dataSource)
+                .externalId(entry.getId())
+                .sgv(entry.getSgv())
+                .dateTimestamp(entry.getDate())
+                .dateString(entry.getDateString())
+                .trend(entry.getTrend())
+                .direction(entry.getDirection())
+                .device(entry.getDevice())
+                .type(entry.getType())
+                .utcOffset(entry.getUtcOffset())
+                .sysTime(entry.getSysTime())
+                .lastUpdated(now)
+                .build();
+    }
+
+    /** Stored readings deleted because their upstream id came back at another time. */
+    private void afterRemove(UUID userId, List<CgmReading> removed) {
+        rollupService.onRemoved(userId, removed);
+        // A cached series only ever appends; rebuild it without the old time.
+        seriesCache.evict(userId);
+    }
+
+    private void afterInsert(UUID userId, List<CgmReading> inserted) {
+        // Same transaction as the insert, so the hourly rollups never count a rolled-back reading.
+        rollupService.onStored(userId, inserted);
+        // Cache hook first: its after-commit append is registered before the event's listeners,
+        // so they observe the new readings in the series.
+        seriesCache.onStored(userId, inserted);
+        long latest = inserted.stream()
+                .map(CgmReading::getDateTimestamp)
+                .filter(Objects::nonNull)
+                .mapToLong(Long::longValue)
+                .max().orElse(0L);
+        eventPublisher.publishEvent(new CgmReadingsStoredEvent(userId, inserted.size(), latest));
     }
 
     /**
@@ -176,16 +290,117 @@ public class CgmReadingService {
                 .collect(Collectors.toList());
     }
 
+    /** Incremental fetch restricted to one source; {@code dataSource == null} means any source. */
+    public List<NightscoutEntryDto> getChartDataAsEntriesSince(UUID userId, long sinceEpochMs,
+                                                               CgmReading.DataSource dataSource) {
+        if (dataSource == null) return getChartDataAsEntriesSince(userId, sinceEpochMs);
+        log.debug("Retrieving {} CGM readings for user {} since epoch {}", dataSource, userId, sinceEpochMs);
+        return repository
+                .findByUserIdAndDataSourceAndDateTimestampGreaterThanOrderByDateTimestampAsc(
+                        userId, dataSource, sinceEpochMs)
+                .stream()
+                .map(this::convertToEntryDto)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * One page of stored readings, oldest first, and the cursor of the next older page ({@code null}
+     * when the page came back short, i.e. the history is exhausted).
+     */
+    public record EntryPage(List<NightscoutEntryDto> entries, CgmReadingCursor next) { }
+
+    /**
+     * The newest {@code count} readings older than {@code before} (null = the newest overall), oldest
+     * first - one bounded keyset query instead of loading the whole history. Pass
+     * {@link EntryPage#next()} as {@code before} for the next older page. {@code dataSource == null}
+     * means any source.
+     */
+    public EntryPage getLatestEntries(UUID userId, CgmReading.DataSource dataSource,
+                                      CgmReadingCursor before, int count) {
+        if (count <= 0) return new EntryPage(new ArrayList<>(), null);
+        List<CgmReading> page = fetchPage(userId, dataSource, before, count);
+        List<NightscoutEntryDto> entries = page.stream()
+                .map(this::convertToEntryDto)
+                .collect(Collectors.toCollection(ArrayList::new));
+        Collections.reverse(entries);
+        return new EntryPage(entries, page.size() == count ? cursorOf(page.get(page.size() - 1)) : null);
+    }
+
+    /**
+     * Streams up to {@code limit} readings older than {@code before} (null = newest), newest first,
+     * fetching {@link #STREAM_PAGE_SIZE} rows per keyset query so memory stays bounded however many are
+     * requested. Returns the cursor for the following page (the oldest emitted reading), or null when
+     * the history is exhausted.
+     */
+    public CgmReadingCursor streamEntries(UUID userId, CgmReading.DataSource dataSource,
+                                          CgmReadingCursor before, int limit,
+                                          Consumer<NightscoutEntryDto> sink) {
+        CgmReadingCursor cursor = before;
+        int remaining = limit;
+        while (remaining > 0) {
+            int pageSize = Math.min(remaining, STREAM_PAGE_SIZE);
+            List<CgmReading> page = fetchPage(userId, dataSource, cursor, pageSize);
+            for (CgmReading reading : page) sink.accept(convertToEntryDto(reading));
+            if (page.size() < pageSize) return null;
+            cursor = cursorOf(page.get(page.size() - 1));
+            remaining -= page.size();
+        }
+        return cursor;
+    }
+
+    /**
+     * Keyset page in {@code (dateTimestamp DESC, id DESC)} order. A cursor with an id continues inside
+     * its timestamp tie; without one (first page, or a bare timestamp) it starts strictly older.
+     */
+    private List<CgmReading> fetchPage(UUID userId, CgmReading.DataSource dataSource,
+                                       CgmReadingCursor before, int size) {
+        PageRequest page = PageRequest.ofSize(size);
+        long beforeTimestamp = before != null ? before.timestamp() : Long.MAX_VALUE;
+        if (before == null || before.id() == null) {
+            return dataSource == null
+                    ? repository.findByUserIdAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+                            userId, beforeTimestamp, page)
+                    : repository.findByUserIdAndDataSourceAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+                            userId, dataSource, beforeTimestamp, page);
+        }
+        return dataSource == null
+                ? repository.findPageBefore(userId, beforeTimestamp, before.id(), page)
+                : repository.findPageBeforeForSource(userId, dataSource, beforeTimestamp, before.id(), page);
+    }
+
+    private static CgmReadingCursor cursorOf(CgmReading reading) {
+        return new CgmReadingCursor(reading.getDateTimestamp(), reading.getId());
+    }
+
     @Transactional
     public void clearChartData(UUID userId) {
         log.info("Clearing all CGM readings for user {}", userId);
         repository.deleteByUserId(userId);
+        rollupService.onCleared(userId);
+        seriesCache.evict(userId);
     }
 
+    /** Row-level retention: deletes readings last updated before {@code cutoffDate}; returns the row count. */
     @Transactional
     public int cleanupOldData(LocalDateTime cutoffDate) {
         log.info("Cleaning up CGM readings older than {}", cutoffDate);
-        return repository.deleteOlderThan(cutoffDate);
+        int deleted = repository.deleteOlderThan(cutoffDate);
+        if (deleted > 0) seriesCache.evictAll();
+        return deleted;
+    }
+
+    /**
+     * Partition retention on the monthly-partitioned PostgreSQL table: drops every month that ends at or
+     * before {@code cutoff} (by reading time, UTC months) and returns the number of partitions dropped -
+     * no row deletes, no vacuum debt; the month straddling the cutoff is kept until it is wholly expired.
+     * The rollups ({@link CgmRollupService}) are kept, so long-range reports outlive raw retention.
+     */
+    @Transactional
+    public int dropExpiredPartitions(Instant cutoff) {
+        int dropped = partitions.dropPartitionsBefore(cutoff.toEpochMilli());
+        log.info("Dropped {} CGM reading partitions older than {}", dropped, cutoff);
+        if (dropped > 0) seriesCache.evictAll();
+        return dropped;
     }
 
     private NightscoutEntryDto convertToEntryDto(CgmReading reading) {
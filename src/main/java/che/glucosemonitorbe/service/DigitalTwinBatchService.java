@@ -0,0 +1,342 @@
+package che.glucosemonitorbe.service;
+
+import che.glucosemonitorbe.config.FeatureToggleConfig;
+import che.glucosemonitorbe.entity.DigitalTwinBatchCursor;
+import che.glucosemonitorbe.hovorka.learning.DigitalTwinCalibrator;
+import che.glucosemonitorbe.hovorka.learning.PredictionReplayEngine;
+import che.glucosemonitorbe.repository.DigitalTwinBatchCursorRepository;
+import che.glucosemonitorbe.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch engine for calibrating every real (non-seed) user's digital twin - the nightly
+ * {@code DigitalTwinCalibrationScheduler} and the {@code recalibrate-cli} backfill both run through it.
+ *
+ * <h3>Execution</h3>
+ * <p>Users are calibrated on a bounded worker pool ({@code app.digital-twin.batch.concurrency}). Each
+ * {@link DigitalTwinCalibrationService#calibrateUser(UUID, long)} call gets a per-user time budget; a
+ * fit that overruns it is aborted (the user keeps their previous twin) and counted as timed out. An
+ * optional whole-run budget ({@code max-run-ms}) time-boxes the batch: users not yet started when it
+ * expires are left for the next run.</p>
+ *
+ * <h3>Resumable cursor</h3>
+ * <p>Users are processed in id order and a {@link DigitalTwinBatchCursor} low-watermark is persisted as
+ * they finish - every user up to {@code lastUserId} is done. A run that crashed or was time-boxed
+ * (status not COMPLETED, started within {@link #RESUME_WINDOW}) is resumed from the watermark instead
+ * of starting over.</p>
+ *
+ * <h3>Progress metrics</h3>
+ * <p>Logged every {@link #PROGRESS_LOG_EVERY} users and in the final {@link BatchSummary}, and - when a
+ * Micrometer registry is present - exported as {@code digital_twin.batch.*} gauges (queue depth,
+ * in-flight, users/sec) plus a per-user duration timer with a p95.</p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DigitalTwinBatchService {
+
+    static final String BATCH_NAME = "real-users";
+
+    /**
+     * Seed users are non-loginable AZT1D dataset fixtures ({@code azt1d-subject-N@dataset.local}) -
+     * excluded from real-user batches so we never spend the nightly compute budget calibrating them.
+     */
+    static final String SEED_EMAIL_PATTERN = "azt1d-subject-%@dataset.local";
+
+    /**
+     * An unfinished run older than this is abandoned and the next run starts from the first user. The
+     * nightly cron fires every 24 h, so the window covers one period plus slack for a late or slow run:
+     * the night after an interruption resumes it, the night after that starts over.
+     */
+    static final Duration RESUME_WINDOW = Duration.ofHours(30);
+
+    private static final int PROGRESS_LOG_EVERY = 25;
+
+    private final DigitalTwinCalibrationService calibrationService;
+    private final UserRepository userRepository;
+    private final DigitalTwinBatchCursorRepository cursorRepository;
+    private final FeatureToggleConfig featureToggleConfig;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    /** Users calibrated in parallel. Each holds a DB connection for its whole fit - keep below the pool. */
+    @Value("${app.digital-twin.batch.concurrency:2}")
+    private int concurrency;
+
+    /** Per-user calibration budget [ms]; 0 = unbounded. */
+    @Value("${app.digital-twin.batch.per-user-timeout-ms:300000}")
+    private long perUserTimeoutMs;
+
+    /** Whole-run budget [ms]; 0 = unbounded. Unstarted users are resumed by the next run. */
+    @Value("${app.digital-twin.batch.max-run-ms:0}")
+    private long maxRunMs;
+
+    /** Aggregate outcome of a batch calibration pass. */
+    public record BatchSummary(int totalUsers, int attempted, int applied, int skipped, int failed,
+                               int timedOut, boolean completed, boolean resumed,
+                               double usersPerSecond, long p95UserMillis) {
+        static BatchSummary empty() {
+            return new BatchSummary(0, 0, 0, 0, 0, 0, true, false, 0.0, 0L);
+        }
+    }
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean stopping = new AtomicBoolean(false);
+    /** Progress of the run in flight (or the last one), read by the metric gauges. */
+    private volatile BatchProgress current = new BatchProgress(0);
+    private Timer userTimer;
+
+    @PostConstruct
+    void registerMetrics() {
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+        if (registry == null) return;
+        Gauge.builder("digital_twin.batch.queue_depth", this, s -> s.current.queueDepth())
+                .description("Users waiting for a calibration worker").register(registry);
+        Gauge.builder("digital_twin.batch.in_flight", this, s -> s.current.inFlight())
+                .description("Users currently being calibrated").register(registry);
+        Gauge.builder("digital_twin.batch.users_per_second", this, s -> s.current.usersPerSecond())
+                .description("Calibration throughput of the current run").register(registry);
+        userTimer = Timer.builder("digital_twin.batch.user.duration")
+                .description("Wall time of one user's calibration")
+                .publishPercentiles(0.95)
+                .register(registry);
+    }
+
+    @PreDestroy
+    void stop() {
+        // Workers check this before starting a user, so shutdown leaves a clean, resumable watermark.
+        stopping.set(true);
+    }
+
+    /**
+     * Calibrate every real (non-seed) user, resuming an unfinished run if there is one.
+     * No-op (empty summary) unless the {@code digital-twin-enabled} feature flag is on, or while
+     * another batch is already running in this instance.
+     */
+    public BatchSummary calibrateAllRealUsers() {
+        if (!featureToggleConfig.isDigitalTwinEnabled()) {
+            log.debug("Digital twin disabled - skipping real-user calibration");
+            return BatchSummary.empty();
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Digital-twin batch already running - ignoring overlapping trigger");
+            return BatchSummary.empty();
+        }
+        try {
+            return runBatch();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private BatchSummary runBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        DigitalTwinBatchCursor cursor = cursorRepository.findById(BATCH_NAME).orElse(null);
+        boolean resumed = cursor != null
+                && cursor.getStatus() != DigitalTwinBatchCursor.Status.COMPLETED
+                && cursor.getLastUserId() != null
+                && cursor.getRunStartedAt().isAfter(now.minus(RESUME_WINDOW));
+
+        List<UUID> userIds;
+        if (resumed) {
+            userIds = userRepository.findIdsByEmailNotLikeAndIdAfterOrderById(
+                    SEED_EMAIL_PATTERN, cursor.getLastUserId());
+            log.info("Digital-twin batch resuming run from {} after user {} ({} already processed, {} left)",
+                    cursor.getRunStartedAt(), cursor.getLastUserId(), cursor.getProcessed(), userIds.size());
+        } else {
+            userIds = userRepository.findIdsByEmailNotLikeOrderById(SEED_EMAIL_PATTERN);
+            cursor = DigitalTwinBatchCursor.builder()
+                    .batchName(BATCH_NAME).runStartedAt(now).processed(0).build();
+        }
+        cursor.setStatus(DigitalTwinBatchCursor.Status.RUNNING);
+        cursor.setUpdatedAt(now);
+        cursorRepository.save(cursor);
+
+        BatchProgress progress = new BatchProgress(userIds.size());
+        current = progress;
+        long runDeadline = maxRunMs > 0 ? progress.startNanos + TimeUnit.MILLISECONDS.toNanos(maxRunMs) : 0L;
+        final DigitalTwinBatchCursor runCursor = cursor;
+        final int alreadyProcessed = cursor.getProcessed();
+
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread t = new Thread(r, "twin-batch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (int i = 0; i < userIds.size(); i++) {
+                final int idx = i;
+                workers.execute(() -> calibrateOne(userIds, idx, runDeadline, progress, runCursor, alreadyProcessed));
+            }
+        } finally {
+            workers.shutdown();
+        }
+        awaitWorkers(workers);
+
+        boolean completed = progress.watermark() == userIds.size();
+        flushCursor(progress, userIds, runCursor, alreadyProcessed,
+                completed ? DigitalTwinBatchCursor.Status.COMPLETED : DigitalTwinBatchCursor.Status.INTERRUPTED);
+
+        BatchSummary summary = progress.summary(completed, resumed);
+        log.info("Digital-twin batch (real users): total={}, attempted={}, applied={}, "
+                        + "skipped(insufficient data)={}, failed={}, timedOut={}, completed={}, resumed={}, "
+                        + "users/sec={}, p95={}ms",
+                summary.totalUsers(), summary.attempted(), summary.applied(), summary.skipped(),
+                summary.failed(), summary.timedOut(), summary.completed(), summary.resumed(),
+                String.format("%.2f", summary.usersPerSecond()), summary.p95UserMillis());
+        return summary;
+    }
+
+    private void calibrateOne(List<UUID> userIds, int idx, long runDeadline, BatchProgress progress,
+                              DigitalTwinBatchCursor cursor, int alreadyProcessed) {
+        if (stopping.get() || (runDeadline != 0L && System.nanoTime() - runDeadline > 0)) {
+            progress.notStarted();
+            return;   // left below the watermark - the next run resumes here
+        }
+        UUID userId = userIds.get(idx);
+        long t0 = progress.started();
+        long deadline = perUserTimeoutMs > 0 ? t0 + TimeUnit.MILLISECONDS.toNanos(perUserTimeoutMs) : 0L;
+        Outcome outcome;
+        try {
+            DigitalTwinCalibrator.Result r = calibrationService.calibrateUser(userId, deadline);
+            if (r == null) {
+                outcome = Outcome.SKIPPED;   // feature off mid-run or not enough CGM history to attempt a fit
+            } else {
+                outcome = r.improved() ? Outcome.APPLIED : Outcome.ATTEMPTED;
+            }
+        } catch (PredictionReplayEngine.DeadlineExceededException e) {
+            outcome = Outcome.TIMED_OUT;
+            log.warn("Digital-twin calibration for user {} exceeded its {}ms budget - previous twin kept",
+                    userId, perUserTimeoutMs);
+        } catch (Exception e) {
+            outcome = Outcome.FAILED;
+            log.warn("Digital-twin calibration failed for user {}: {}", userId, e.getMessage());
+        }
+        long elapsed = System.nanoTime() - t0;
+        if (userTimer != null) userTimer.record(elapsed, TimeUnit.NANOSECONDS);
+
+        if (progress.finished(idx, outcome, elapsed) % PROGRESS_LOG_EVERY == 0) {
+            flushCursor(progress, userIds, cursor, alreadyProcessed, DigitalTwinBatchCursor.Status.RUNNING);
+            log.info("Digital-twin batch progress: {}/{} users, {} in flight, queue={}, {} users/sec, p95={}ms",
+                    progress.completedCount(), progress.total, progress.inFlight(), progress.queueDepth(),
+                    String.format("%.2f", progress.usersPerSecond()), progress.p95Millis());
+        }
+    }
+
+    /** Persist the low-watermark. Serialised so a slower writer can never move the cursor backwards. */
+    private void flushCursor(BatchProgress progress, List<UUID> userIds, DigitalTwinBatchCursor cursor,
+                             int alreadyProcessed, DigitalTwinBatchCursor.Status status) {
+        synchronized (cursor) {
+            int watermark = progress.watermark();
+            if (watermark > 0) cursor.setLastUserId(userIds.get(watermark - 1));
+            cursor.setProcessed(alreadyProcessed + watermark);
+            cursor.setStatus(status);
+            cursor.setUpdatedAt(LocalDateTime.now());
+            try {
+                cursorRepository.save(cursor);
+            } catch (Exception e) {
+                log.warn("Digital-twin batch: could not persist cursor: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static void awaitWorkers(ExecutorService workers) {
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.debug("Digital-twin batch: waiting for calibration workers");
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    enum Outcome { APPLIED, ATTEMPTED, SKIPPED, FAILED, TIMED_OUT }
+
+    /** Thread-safe counters, per-user durations and the contiguous-completion watermark of one run. */
+    static final class BatchProgress {
+        final int total;
+        final long startNanos = System.nanoTime();
+        private final boolean[] done;
+        private final long[] durations;
+        private final int[] outcomeCounts = new int[Outcome.values().length];
+        private int completed;
+        private int started;
+        private int notStarted;
+        private int watermark;
+
+        BatchProgress(int total) {
+            this.total = total;
+            this.done = new boolean[total];
+            this.durations = new long[total];
+        }
+
+        synchronized long started() {
+            started++;
+            return System.nanoTime();
+        }
+
+        synchronized void notStarted() {
+            notStarted++;
+        }
+
+        /** Record a finished user; returns the new completed count. */
+        synchronized int finished(int idx, Outcome outcome, long elapsedNanos) {
+            done[idx] = true;
+            durations[completed] = elapsedNanos;
+            outcomeCounts[outcome.ordinal()]++;
+            completed++;
+            while (watermark < total && done[watermark]) watermark++;
+            return completed;
+        }
+
+        synchronized int watermark()      { return watermark; }
+        synchronized int completedCount() { return completed; }
+        synchronized int inFlight()       { return started - completed; }
+        synchronized int queueDepth()     { return total - started - notStarted; }
+
+        synchronized double usersPerSecond() {
+            double secs = (System.nanoTime() - startNanos) / 1e9;
+            return secs > 0 ? completed / secs : 0.0;
+        }
+
+        synchronized long p95Millis() {
+            if (completed == 0) return 0L;
+            long[] sorted = Arrays.copyOf(durations, completed);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(0.95 * completed) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, rank)]);
+        }
+
+        synchronized BatchSummary summary(boolean runCompleted, boolean resumed) {
+            int applied = outcomeCounts[Outcome.APPLIED.ordinal()];
+            return new BatchSummary(total,
+                    applied + outcomeCounts[Outcome.ATTEMPTED.ordinal()],
+                    applied,
+                    outcomeCounts[Outcome.SKIPPED.ordinal()],
+                    outcomeCounts[Outcome.FAILED.ordinal()],
+                    outcomeCounts[Outcome.TIMED_OUT.ordinal()],
+                    runCompleted, resumed, usersPerSecond(), p95Millis());
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package che.glucosemonitorbe.service;
 
 import che.glucosemonitorbe.config.FeatureToggleConfig;
-import che.glucosemonitorbe.domain.CgmReading;
-import che.glucosemonitorbe.domain.User;
 import che.glucosemonitorbe.dto.RapidInsulinIobParameters;
 import che.glucosemonitorbe.dto.UserSettingsDTO;
 import che.glucosemonitorbe.entity.Note;
@@ -14,15 +12,19 @@ import che.glucosemonitorbe.hovorka.HovorkaGlucosePredictionService;
 import che.glucosemonitorbe.hovorka.HovorkaOdeSolver;
 import che.glucosemonitorbe.hovorka.HovorkaParameterService;
 import che.glucosemonitorbe.hovorka.HovorkaParameters;
+import che.glucosemonitorbe.hovorka.OdeIntegrator;
 import che.glucosemonitorbe.hovorka.learning.DigitalTwinCalibrator;
 import che.glucosemonitorbe.hovorka.learning.PredictionReplayEngine;
 import che.glucosemonitorbe.hovorka.learning.PredictionResidualProvider;
-import che.glucosemonitorbe.repository.CgmReadingRepository;
 import che.glucosemonitorbe.repository.NoteRepository;
 import che.glucosemonitorbe.repository.UserDigitalTwinRepository;
-import che.glucosemonitorbe.repository.UserRepository;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -31,6 +33,8 @@ import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,9 +62,8 @@ public class DigitalTwinCalibrationService {
 
     private static final String MACRO_FMT = "\"%s\"\\s*:\\s*(-?\\d+(?:\\.\\d+)?)";
 
-    private final CgmReadingRepository cgmReadingRepository;
+    private final CgmSeriesCache cgmSeriesCache;
     private final NoteRepository noteRepository;
-    private final UserRepository userRepository;
     private final UserDigitalTwinRepository twinRepository;
     private final che.glucosemonitorbe.repository.UnloggedEventFlagRepository unloggedEventFlagRepository;
 
@@ -73,46 +76,47 @@ public class DigitalTwinCalibrationService {
 
     private final DigitalTwinService digitalTwinService;
     private final FeatureToggleConfig featureToggleConfig;
+    private final PredictionResultCache predictionResultCache;
 
     /**
-     * Seed users are non-loginable AZT1D dataset fixtures ({@code azt1d-subject-N@dataset.local}) -
-     * excluded from real-user batches so we never spend the nightly compute budget calibrating them.
+     * Worker threads for parallel per-anchor replay inside one user's fit (0 = one per available
+     * core, 1 = sequential). Anchors are independent ODE runs, so this is what lets a single user's
+     * LM fit use more than one core.
      */
-    private static final String SEED_EMAIL_PATTERN = "azt1d-subject-%@dataset.local";
-
-    /** Aggregate outcome of a batch calibration pass. */
-    public record BatchSummary(int totalUsers, int attempted, int applied, int skipped, int failed) {}
+    @Value("${app.digital-twin.replay-parallelism:0}")
+    private int replayParallelism;
 
     /**
-     * Calibrate every real (non-seed) user. Nightly entry point and on-demand backfill trigger.
-     * No-op (empty summary) unless the {@code digital-twin-enabled} feature flag is on.
+     * Integrator for the residual replays of a fit (the Jacobian replays always use RK4). RK4 keeps
+     * fits reproducible against earlier runs; DORMAND_PRINCE needs far fewer derivative evaluations.
      */
-    public BatchSummary calibrateAllRealUsers() {
-        if (!featureToggleConfig.isDigitalTwinEnabled()) {
-            log.debug("Digital twin disabled - skipping real-user calibration");
-            return new BatchSummary(0, 0, 0, 0, 0);
-        }
-        List<User> users = userRepository.findByEmailNotLike(SEED_EMAIL_PATTERN);
-        int attempted = 0, applied = 0, skipped = 0, failed = 0;
-        for (User user : users) {
-            try {
-                DigitalTwinCalibrator.Result r = calibrateUser(user.getId());
-                if (r == null) {
-                    skipped++;   // feature off mid-run or not enough CGM history to attempt a fit
-                } else {
-                    attempted++;
-                    if (r.improved()) applied++;
-                }
-            } catch (Exception e) {
-                failed++;
-                log.warn("Digital-twin calibration failed for user {}: {}", user.getId(), e.getMessage());
+    @Value("${app.digital-twin.replay-integrator:RK4}")
+    private OdeIntegrator replayIntegrator;
+
+    /** Dedicated bounded pool for {@link PredictionReplayEngine} replays; null when sequential. */
+    private ForkJoinPool replayPool;
+
+    @PostConstruct
+    void initReplayPool() {
+        int parallelism = replayParallelism > 0
+                ? replayParallelism : Runtime.getRuntime().availableProcessors();
+        replayPool = parallelism > 1 ? PredictionReplayEngine.newReplayPool(parallelism) : null;
+        log.info("Digital-twin replay: {}", replayPool != null
+                ? "parallel across " + parallelism + " worker(s)" : "sequential");
+    }
+
+    @PreDestroy
+    void shutdownReplayPool() {
+        if (replayPool == null) return;
+        replayPool.shutdown();
+        try {
+            if (!replayPool.awaitTermination(5, TimeUnit.SECONDS)) {
+                replayPool.shutdownNow();
             }
+        } catch (InterruptedException e) {
+            replayPool.shutdownNow();
+            Thread.currentThread().interrupt();
         }
-        BatchSummary summary = new BatchSummary(users.size(), attempted, applied, skipped, failed);
-        log.info("Digital-twin batch (real users): total={}, attempted={}, applied={}, "
-                + "skipped(insufficient data)={}, failed={}",
-                summary.totalUsers(), attempted, applied, skipped, failed);
-        return summary;
     }
 
     /**
@@ -121,6 +125,17 @@ public class DigitalTwinCalibrationService {
      */
     @Transactional
     public DigitalTwinCalibrator.Result calibrateUser(UUID userId) {
+        return calibrateUser(userId, 0L);
+    }
+
+    /**
+     * As {@link #calibrateUser(UUID)}, bounded by a {@link System#nanoTime()} deadline (0 = none).
+     * Past the deadline the replay aborts with {@link PredictionReplayEngine.DeadlineExceededException}
+     * and nothing is persisted - the user keeps their previous twin. Used by the batch runner's
+     * per-user time budget.
+     */
+    @Transactional
+    public DigitalTwinCalibrator.Result calibrateUser(UUID userId, long deadlineNanos) {
         if (!featureToggleConfig.isDigitalTwinEnabled()) return null;
 
         LocalDateTime now = LocalDateTime.now();
@@ -128,17 +143,15 @@ public class DigitalTwinCalibrationService {
         long cutoffMs = windowStart.toInstant(ZoneOffset.UTC).toEpochMilli();
 
         // -- Load CGM ----------------------------------------------------------
-        List<CgmReading> readings = cgmReadingRepository
-                .findByUserIdAndDateTimestampGreaterThanOrderByDateTimestampAsc(userId, cutoffMs);
+        CgmSeries readings = cgmSeriesCache.since(userId, cutoffMs);
         if (readings.size() < MIN_CGM_READINGS) {
             log.debug("User {}: only {} CGM readings in last {}d - skipping calibration",
                     userId, readings.size(), LOOKBACK_DAYS);
             return null;
         }
         List<PredictionReplayEngine.Reading> cgm = new ArrayList<>(readings.size());
-        for (CgmReading r : readings) {
-            if (r.getSgv() == null || r.getDateTimestamp() == null) continue;
-            cgm.add(new PredictionReplayEngine.Reading(r.getDateTimestamp(), r.getSgv() / MGDL_PER_MMOL));
+        for (int i = 0; i < readings.size(); i++) {
+            cgm.add(new PredictionReplayEngine.Reading(readings.timeAt(i), readings.sgvAt(i) / MGDL_PER_MMOL));
         }
         // Down-weight (exclude) windows the user's log doesn't explain, so an unlogged/mis-logged event
         // can't bias the fit - unless doing so would starve the fit of data.
@@ -179,6 +192,9 @@ public class DigitalTwinCalibrationService {
                         : che.glucosemonitorbe.hovorka.ActivityProvider.NONE;
 
         PredictionReplayEngine.Config cfg = new PredictionReplayEngine.Config();
+        cfg.replayPool = replayPool;
+        cfg.deadlineNanos = deadlineNanos;
+        cfg.integrator = replayIntegrator;
         PredictionReplayEngine train = new PredictionReplayEngine(
                 rawPredictor, baseParams, rapidIob, settings, userId, trainCgm, events, cfg, activity);
         PredictionReplayEngine val = new PredictionReplayEngine(
@@ -244,6 +260,7 @@ public class DigitalTwinCalibrationService {
         twin.setFittedAt(now);
 
         twinRepository.save(twin);
+        predictionResultCache.onTwinFitted(userId, now);
     }
 
     /**
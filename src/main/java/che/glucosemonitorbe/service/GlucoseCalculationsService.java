@@ -17,6 +17,7 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
@@ -55,6 +56,7 @@ public class GlucoseCalculationsService {
     private static final int PREDICTION_PATH_STEP_SPARSE_MINUTES = 10;
     private final UserSettingsService userSettingsService;
     private final NoteToCarbsEntryMapper noteToCarbsEntryMapper;
+    private final PredictionResultCache predictionResultCache;
 
     /**
      * Optional: injected only when Hovorka model is on the classpath and enabled.
@@ -64,7 +66,9 @@ public class GlucoseCalculationsService {
     private HovorkaGlucosePredictionService hovorkaService;
 
     /**
-     * Calculate comprehensive glucose calculations including COB, IOB, and predictions
+     * Calculate comprehensive glucose calculations including COB, IOB, and predictions.
+     * Results for requests without prospective notes are reused from {@link PredictionResultCache}
+     * until a new CGM reading, note, setting or twin fit arrives.
      */
     public GlucoseCalculationsResponse calculateGlucoseData(GlucoseCalculationsRequest request) {
         // Use client time instead of server time
@@ -77,6 +81,30 @@ public class GlucoseCalculationsService {
         // Convert username to UUID using UserService
         UUID userUUID = userService.getUserByUsername(userId).getId();
 
+        // What-if requests are one-off overlays; everything else is a poll worth caching. The stamp is
+        // read before any input so a concurrent write can only make the stored entry stale.
+        boolean cacheable = predictionResultCache != null && predictionResultCache.isEnabled()
+                && (request.getProspectiveNotes() == null || request.getProspectiveNotes().isEmpty());
+        if (!cacheable) {
+            return computeGlucoseData(request, currentTime, userUUID);
+        }
+        PredictionResultCache.RequestKey key = new PredictionResultCache.RequestKey(
+                request.getCurrentGlucose(), request.getPredictionHorizonMinutes(),
+                request.getCurrentTrendMmolPerMin(), featureToggleConfig.isHovorkaModelEnabled(),
+                featureToggleConfig.isActivityLoggingEnabled(),
+                featureToggleConfig.isNutritionAwarePredictionEnabled());
+        PredictionResultCache.Stamp stamp = predictionResultCache.stamp(userUUID);
+        GlucoseCalculationsResponse cached = predictionResultCache.get(userUUID, key, stamp, currentTime);
+        if (cached != null) {
+            return cached;
+        }
+        GlucoseCalculationsResponse response = computeGlucoseData(request, currentTime, userUUID);
+        predictionResultCache.put(userUUID, key, stamp, currentTime, response);
+        return response;
+    }
+
+    private GlucoseCalculationsResponse computeGlucoseData(GlucoseCalculationsRequest request,
+                                                           LocalDateTime currentTime, UUID userUUID) {
         // Shared, single source of truth for COB/IOB inputs, built from PERSISTED notes only
         // (nutrition-aware, long-acting excluded). The Experiments "background check" calls the
         // very same method, so the dashboard and the Experiments tab can never show different
@@ -287,21 +315,25 @@ public class GlucoseCalculationsService {
         int pathMinutes = resolvePathDurationMinutes(carbsEntries);
 
         List<PredictionPointDTO> points = new ArrayList<>();
-        final double diaHours = rapidIob.diaHours();
-        final double peakMinutes = rapidIob.peakMinutes();
         final String pathAbsorptionMode = resolvePathAbsorptionMode(carbsEntries);
 
+        // Whole COB/IOB curves over the step grid, each entry compiled once.
+        int[] grid = predictionPathGrid(pathMinutes);
+        double[] cobCurve = cobService.calculateCarbsOnBoardCurve(carbsEntries, currentTime, grid, userSettings);
+        double[] iobCurve = insulinCalculatorService.calculateActiveInsulinCurve(
+                insulinEntries, currentTime, grid, rapidIob.diaHours(), rapidIob.peakMinutes());
+
         // Per-step IOB/ISF accumulation: ISF can vary by meal window across the path,
         // so each step's incremental IOB change is priced at the ISF effective for
         // that step, rather than applying one ISF snapshot to the whole cumulative delta.
         double previousIob = activeIobNow;
         double cumulativeInsulinEffect = 0.0;
 
-        for (int minute = PREDICTION_PATH_STEP_MINUTES; minute <= pathMinutes; ) {
+        for (int i = 0; i < grid.length; i++) {
+            int minute = grid[i];
             LocalDateTime t = currentTime.plusMinutes(minute);
-            double cobAtT = cobService.calculateTotalCarbsOnBoard(carbsEntries, t, userSettings);
-            double iobAtT = insulinCalculatorService.calculateTotalActiveInsulin(
-                    insulinEntries, t, diaHours, peakMinutes);
+            double cobAtT = cobCurve[i];
+            double iobAtT = iobCurve[i];
 
             double carbsDeliveredEffect = ((activeCobNow - cobAtT) / 10.0) * userCarbRatio;
             double stepIsf = resolveIsf(userSettings, t);
@@ -328,13 +360,22 @@ public class GlucoseCalculationsService {
                     .insulinActivityEffect(Math.round(insulinDeliveredEffect * 100.0) / 100.0)
                     .absorptionMode(pathAbsorptionMode)
                     .build());
+        }
+        return points;
+    }
 
+    /** Minutes after now of each path point: 5-min steps through 4 h, 10-min steps beyond. */
+    private static int[] predictionPathGrid(int pathMinutes) {
+        int[] grid = new int[pathMinutes / PREDICTION_PATH_STEP_MINUTES];
+        int n = 0;
+        for (int minute = PREDICTION_PATH_STEP_MINUTES; minute <= pathMinutes; ) {
+            grid[n++] = minute;
             int step = minute <= PREDICTION_PATH_MINUTES
                     ? PREDICTION_PATH_STEP_MINUTES
                     : PREDICTION_PATH_STEP_SPARSE_MINUTES;
             minute += step;
         }
-        return points;
+        return Arrays.copyOf(grid, n);
     }
     
     /**
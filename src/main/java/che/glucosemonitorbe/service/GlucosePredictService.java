@@ -14,8 +14,11 @@ import che.glucosemonitorbe.repository.NoteRepository;
 import che.glucosemonitorbe.service.nutrition.NoteToCarbsEntryMapper;
 import che.glucosemonitorbe.service.prebolus.PreBolusContext;
 import che.glucosemonitorbe.service.prebolus.PreBolusResolver;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -26,6 +29,10 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implements the {@code POST /api/predict} prediction pipeline.
@@ -48,11 +55,12 @@ import java.util.UUID;
  *       window from the injection onward - including the pre-meal interval, where an
  *       over-long pre-bolus causes its hypo - as a trapezoidal time-weighted mean of the
  *       hypo-weighted squared deviation from 5.5 mmol/L (see
- *       {@link #timeWeightedMeanCost}). The response reports the winning pause as
- *       {@code preBolusMinutes} and leaves {@code observedPreBolusMinutes} null.</li>
- *   <li>Return the final prediction curve - on the advisory branch it spans
- *       {@code horizon + recommendedPause}, so it is the winning candidate's own curve -
- *       together with the pause fields and the bolus strategy.</li>
+ *       {@link #timeWeightedMeanCost}). The candidates are simulated as branches of one
+ *       shared integration (see {@link #optimisePreBolus}). The response reports the winning
+ *       pause as {@code preBolusMinutes} and leaves {@code observedPreBolusMinutes} null.</li>
+ *   <li>Return the final prediction curve - on the advisory branch with a dose this is the
+ *       winning candidate's own curve, spanning {@code horizon + recommendedPause} - together
+ *       with the pause fields and the bolus strategy.</li>
  * </ol>
  */
 @Slf4j
@@ -93,6 +101,51 @@ public class GlucosePredictService {
     private final NoteToCarbsEntryMapper           noteToCarbsEntryMapper;
     private final PreBolusResolver                     preBolusResolver;
 
+    /**
+     * Worker threads for the pre-bolus candidate branches (0 = one per available core,
+     * 1 = on the request thread). Shared by all concurrent {@code /api/predict} requests.
+     */
+    @Value("${app.predict.branch-parallelism:0}")
+    private int branchParallelism;
+
+    /** Dedicated bounded pool for candidate branches; null when they run on the request thread. */
+    private ForkJoinPool branchPool;
+
+    /** The recommended pause and, when candidates were simulated, the winner's curve. */
+    private record PreBolusChoice(int pauseMinutes, List<PredictionPointDTO> curve) {}
+
+    @PostConstruct
+    void initBranchPool() {
+        int parallelism = branchParallelism > 0
+                ? branchParallelism : Runtime.getRuntime().availableProcessors();
+        parallelism = Math.min(parallelism, PREBOLUS_CANDIDATES.length);
+        if (parallelism > 1) {
+            AtomicInteger seq = new AtomicInteger();
+            branchPool = new ForkJoinPool(parallelism, pool -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("predict-branch-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }, null, false);
+        }
+        log.info("Pre-bolus candidate branches: {}", branchPool != null
+                ? "parallel across " + parallelism + " worker(s)" : "on the request thread");
+    }
+
+    @PreDestroy
+    void shutdownBranchPool() {
+        if (branchPool == null) return;
+        branchPool.shutdown();
+        try {
+            if (!branchPool.awaitTermination(5, TimeUnit.SECONDS)) {
+                branchPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            branchPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Run the prediction pipeline and return the response.
      *
@@ -145,6 +198,7 @@ public class GlucosePredictService {
         Integer recommendedPause = null;
         Integer observedPause    = null;
         List<InsulinDose> finalDoses = new ArrayList<>(pastDoses);
+        List<PredictionPointDTO> curve = null;
 
         if (preBolus.isPresent()) {
             PreBolusContext ctx = preBolus.get();
@@ -155,38 +209,27 @@ public class GlucosePredictService {
             }
             // The dose is already in pastDoses. Adding it again would double-count it.
         } else {
-            int bestPause = optimisePreBolus(
+            PreBolusChoice choice = optimisePreBolus(
                     req.getCurrentGlucose(), now,
                     pastCarbs, pastDoses, longActingNotes,
                     userId, mealParams, req, insulinDose, horizon);
-            recommendedPause = bestPause;
-            carbsWithMeal    = withProspectiveMeal(pastCarbs, req, userId, now.plusMinutes(bestPause));
-            if (insulinDose > 0) {
-                // Bolus now, meal after `bestPause` minutes - that is what a pre-bolus is.
-                finalDoses.add(InsulinDose.builder()
-                        .id(UUID.randomUUID())
-                        .userId(userId)
-                        .units(insulinDose)
-                        .type(InsulinDose.InsulinType.BOLUS)
-                        .timestamp(now)
-                        .build());
-            }
+            recommendedPause = choice.pauseMinutes();
+            // The winner's branch already is the final curve: bolus now, meal after the pause,
+            // simulated for horizon + pause.
+            curve = choice.curve();
         }
 
         // -- 5. Final simulation ----------------------------------------------
-        // On the advisory path the meal sits at now + recommendedPause, so simulating only
-        // `horizon` would return a curve ending `recommendedPause` minutes short of every
-        // window the optimiser scored - at the clamp floor (horizon 60, pause 30) the curve
-        // would stop before the meal it was asked about had even peaked. Extending by the
-        // pause makes the returned curve the winning candidate's own curve. On the live-timer
-        // path recommendedPause is null and the meal is already at now, so `horizon` stands.
-        int finalPathMinutes = horizon + (recommendedPause != null ? recommendedPause : 0);
-
-        List<PredictionPointDTO> curve = hovorkaService.buildPredictionPath(
-                mealParams,
-                req.getCurrentGlucose(), now,
-                carbsWithMeal, finalDoses, longActingNotes,
-                userId, finalPathMinutes);
+        // Only needed when no candidate curve exists: the live-timer path (meal at now, the
+        // dose already in the history, `horizon` minutes) and the advisory path without a
+        // dose (pause 0, so again the meal at now and `horizon` minutes).
+        if (curve == null) {
+            curve = hovorkaService.buildPredictionPath(
+                    mealParams,
+                    req.getCurrentGlucose(), now,
+                    carbsWithMeal, finalDoses, longActingNotes,
+                    userId, horizon);
+        }
 
         double betaWeighted = MacroNutrientGastricModel.weightedBeta(carbsG, proteinG, fatG);
         String strategy     = MacroNutrientGastricModel.bolusStrategy(fatG, proteinG);
@@ -212,10 +255,13 @@ public class GlucosePredictService {
      * scored over the entire simulated window from the bolus (at {@code now}) through
      * {@code horizon} minutes past that candidate's own meal time.
      *
-     * <p>Runs at most {@code PREBOLUS_CANDIDATES.length} ODE simulations - each is
-     * a few milliseconds, so the total overhead is negligible.</p>
+     * <p>The candidates differ only in where the meal lands, so they are simulated as branches
+     * of one integration ({@link HovorkaGlucosePredictionService#buildBranchedPredictionPaths}):
+     * the warm-up, the IOB tapes and the minutes before each candidate's meal are computed once,
+     * and the branches run on {@link #branchPool}. The winner's curve is returned with the
+     * pause, so no final re-simulation is needed.</p>
      */
-    private int optimisePreBolus(
+    private PreBolusChoice optimisePreBolus(
             double currentGlucose,
             LocalDateTime now,
             List<CarbsEntry> history,
@@ -227,45 +273,44 @@ public class GlucosePredictService {
             double insulinDose,
             int horizon) {
 
-        if (insulinDose <= 0) return 0;
-
-        int    bestPause = 0;
-        double bestCost  = Double.MAX_VALUE;
-
+        if (insulinDose <= 0) return new PreBolusChoice(0, null);
+
+        // Bolus now, meal after `pause` minutes - that is what a pre-bolus is.
+        List<InsulinDose> doses = new ArrayList<>(baseDoses);
+        doses.add(InsulinDose.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .units(insulinDose)
+                .type(InsulinDose.InsulinType.BOLUS)
+                .timestamp(now)
+                .build());
+
+        // Extend each simulation by `pause` so every candidate's post-meal excursion is
+        // fully covered by the same `horizon`-length window past its own meal time.
+        List<HovorkaGlucosePredictionService.PathBranch> branches = new ArrayList<>(PREBOLUS_CANDIDATES.length);
         for (int pause : PREBOLUS_CANDIDATES) {
-            LocalDateTime mealTime = now.plusMinutes(pause);
-
-            // Bolus now, meal after `pause` minutes - that is what a pre-bolus is.
-            List<InsulinDose> doses = new ArrayList<>(baseDoses);
-            doses.add(InsulinDose.builder()
-                    .id(UUID.randomUUID())
-                    .userId(userId)
-                    .units(insulinDose)
-                    .type(InsulinDose.InsulinType.BOLUS)
-                    .timestamp(now)
-                    .build());
-
-            List<CarbsEntry> entries = withProspectiveMeal(history, req, userId, mealTime);
-
-            // Extend the simulation by `pause` so every candidate's post-meal excursion is
-            // fully covered by the same `horizon`-length window past its own meal time.
-            List<PredictionPointDTO> sim = hovorkaService.buildPredictionPath(
-                    params, currentGlucose, now,
-                    entries, doses, longActingNotes, userId, horizon + pause);
+            branches.add(new HovorkaGlucosePredictionService.PathBranch(
+                    withProspectiveMeal(List.of(), req, userId, now.plusMinutes(pause)), horizon + pause));
+        }
+        List<List<PredictionPointDTO>> sims = hovorkaService.buildBranchedPredictionPaths(
+                params, currentGlucose, now, history, doses, longActingNotes, userId, branches, branchPool);
 
+        int    best     = 0;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = 0; i < PREBOLUS_CANDIDATES.length; i++) {
             // Score every emitted point from the bolus (now) onward - NOT just from the meal.
             // The interval [now, mealTime) is exactly where an over-long pre-bolus does its
             // damage (insulin acting with no carbs yet), and that interval grows with the
             // pause, so excluding it would weaken the hypo penalty precisely for the most
             // aggressive candidates.
-            double cost = timeWeightedMeanCost(sim, currentGlucose);
+            double cost = timeWeightedMeanCost(sims.get(i), currentGlucose);
 
             if (cost < bestCost) {
-                bestCost  = cost;
-                bestPause = pause;
+                bestCost = cost;
+                best     = i;
             }
         }
-        return bestPause;
+        return new PreBolusChoice(PREBOLUS_CANDIDATES[best], sims.get(best));
     }
 
     /**
@@ -0,0 +1,104 @@
+package che.glucosemonitorbe.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One rapid-insulin action curve tabulated at minute resolution: the unit-dose IOB of
+ * {@link InsulinCalculatorService#iobOpenApsExponential} at every whole minute of the DIA, and the
+ * activity (IOB decay) over each minute. A curve depends only on {@code (diaHours, peakMinutes)} of its
+ * catalog entry, so each table is built once, cached for the life of the JVM and shared read-only by
+ * every user and dose on that insulin.
+ *
+ * <p>At whole minutes {@link #iob} equals the closed form bit for bit (the closed form is linear in
+ * the units); between minutes it interpolates linearly, which is within 1e-4 of the closed form per
+ * unit. Elapsed times come from {@code Duration.toMinutes()} on every production path, so they always
+ * hit a table entry.</p>
+ */
+public final class InsulinActionTable {
+
+    /** Curves with a longer DIA (not a rapid insulin) are evaluated in closed form, not tabulated. */
+    static final double MAX_TABULATED_MINUTES = 48 * 60;
+    /** Distinct curves kept; the catalog has a handful, anything beyond is built per call. */
+    private static final int MAX_CACHED_CURVES = 256;
+
+    private record Curve(double diaHours, double peakMinutes) {}
+
+    private static final ConcurrentMap<Curve, InsulinActionTable> TABLES = new ConcurrentHashMap<>();
+
+    private final double diaHours;
+    private final double peakMinutes;
+    private final double endMinutes;
+    /** Unit-dose IOB at minute m, m = 0..ceil(end); 0 from the end of action on. Null = closed form. */
+    private final double[] iob;
+    /** Unit-dose IOB decay over [m-1, m], floored at 0; activity[0] = 0. Null = closed form. */
+    private final double[] activity;
+
+    private InsulinActionTable(double diaHours, double peakMinutes) {
+        this.diaHours = diaHours;
+        this.peakMinutes = peakMinutes;
+        this.endMinutes = diaHours * 60.0;
+        if (!(endMinutes > 0) || endMinutes > MAX_TABULATED_MINUTES) {
+            this.iob = null;
+            this.activity = null;
+            return;
+        }
+        int last = (int) Math.ceil(endMinutes);
+        iob = new double[last + 1];
+        activity = new double[last + 2];
+        for (int m = 0; m <= last; m++) {
+            iob[m] = InsulinCalculatorService.iobOpenApsExponential(1.0, m, diaHours, peakMinutes);
+        }
+        for (int m = 1; m <= last; m++) {
+            activity[m] = Math.max(0.0, iob[m - 1] - iob[m]);
+        }
+    }
+
+    /** The shared table for a curve, built on first use. */
+    public static InsulinActionTable of(double diaHours, double peakMinutes) {
+        Curve key = new Curve(diaHours, peakMinutes);
+        InsulinActionTable table = TABLES.get(key);
+        if (table != null) return table;
+        if (TABLES.size() >= MAX_CACHED_CURVES) return new InsulinActionTable(diaHours, peakMinutes);
+        return TABLES.computeIfAbsent(key, k -> new InsulinActionTable(k.diaHours(), k.peakMinutes()));
+    }
+
+    public double diaHours() {
+        return diaHours;
+    }
+
+    public double peakMinutes() {
+        return peakMinutes;
+    }
+
+    /** Insulin still on board [U] {@code minsAgo} minutes after a bolus of {@code units}. */
+    public double iob(double units, double minsAgo) {
+        if (units <= 0 || !(minsAgo >= 0) || minsAgo >= endMinutes) return 0.0;
+        if (iob == null) {
+            return InsulinCalculatorService.iobOpenApsExponential(units, minsAgo, diaHours, peakMinutes);
+        }
+        return units * lookup(iob, minsAgo);
+    }
+
+    /**
+     * Insulin absorbed [U] during the minute ending {@code minsAgo} minutes after a bolus of
+     * {@code units}: {@code max(0, iob(t - 1) - iob(t))}, the per-minute activity rate [U/min].
+     */
+    public double activity(double units, double minsAgo) {
+        if (units <= 0 || !(minsAgo > 0)) return 0.0;
+        if (activity == null) {
+            return Math.max(0.0, InsulinCalculatorService.iobOpenApsExponential(units, minsAgo - 1, diaHours, peakMinutes)
+                    - InsulinCalculatorService.iobOpenApsExponential(units, minsAgo, diaHours, peakMinutes));
+        }
+        if (minsAgo >= activity.length - 1) return 0.0;
+        return units * lookup(activity, minsAgo);
+    }
+
+    /** Table value at {@code t} (0 <= t < length - 1), linear between whole minutes. */
+    private static double lookup(double[] table, double t) {
+        int i = (int) t;
+        double v = table[i];
+        double frac = t - i;
+        return frac == 0.0 ? v : v + (table[i + 1] - v) * frac;
+    }
+}
@@ -43,37 +43,37 @@ public class InsulinCalculatorService {
 
     /**
      * Insulin on board (IOB) for one bolus using OpenAPS exponential curve with caller-supplied DIA / peak
-     * (from {@link che.glucosemonitorbe.entity.InsulinCatalog} for the user's rapid insulin).
+     * (from {@link che.glucosemonitorbe.entity.InsulinCatalog} for the user's rapid insulin), read from
+     * the curve's shared {@link InsulinActionTable}.
      */
     public double calculateRemainingInsulin(
             InsulinDose dose,
             LocalDateTime currentTime,
             double diaHours,
             double peakMinutes) {
-        double units = dose.getUnits();
-        if (units <= 0 || dose.getTimestamp() == null || currentTime == null) {
-            return 0.0;
-        }
         if (diaHours <= 0 || peakMinutes <= 0) {
             return 0.0;
         }
+        return remainingInsulin(dose, currentTime, InsulinActionTable.of(diaHours, peakMinutes));
+    }
 
-        double minsAgo = java.time.Duration.between(dose.getTimestamp(), currentTime).toMinutes();
-        if (minsAgo < 0) {
+    private static double remainingInsulin(InsulinDose dose, LocalDateTime currentTime, InsulinActionTable curve) {
+        double units = dose.getUnits();
+        if (units <= 0 || dose.getTimestamp() == null || currentTime == null) {
             return 0.0;
         }
 
-        double endMinutes = diaHours * 60.0;
-        if (minsAgo >= endMinutes) {
+        double minsAgo = java.time.Duration.between(dose.getTimestamp(), currentTime).toMinutes();
+        if (minsAgo < 0) {
             return 0.0;
         }
 
-        return iobOpenApsExponential(units, minsAgo, diaHours, peakMinutes);
+        return curve.iob(units, minsAgo);
     }
 
     /**
-     * Port of OpenAPS oref0 {@code iobCalcExponential} IOB term.
-     * Public so the Hovorka prediction service can reuse the same curve.
+     * Port of OpenAPS oref0 {@code iobCalcExponential} IOB term - the closed form behind
+     * {@link InsulinActionTable}, which the hot paths read instead.
      */
     public static double iobOpenApsExponential(double insulinUnits, double minsAgo, double diaHours, double peakMinutes) {
         double end = diaHours * 60.0;
@@ -112,9 +112,42 @@ public class InsulinCalculatorService {
             LocalDateTime currentTime,
             double diaHours,
             double peakMinutes) {
-        return doses.stream()
-                .mapToDouble(dose -> calculateRemainingInsulin(dose, currentTime, diaHours, peakMinutes))
-                .sum();
+        if (diaHours <= 0 || peakMinutes <= 0) {
+            return 0.0;
+        }
+        InsulinActionTable curve = InsulinActionTable.of(diaHours, peakMinutes);
+        double total = 0.0;
+        for (InsulinDose dose : doses) total += remainingInsulin(dose, currentTime, curve);
+        return total;
+    }
+
+    /**
+     * Total IOB at {@code start + offsetMinutes[i]} for every step of a grid, in one pass over the doses:
+     * each dose's elapsed seconds are taken once and every step reads the shared action table. Element
+     * {@code i} equals {@link #calculateTotalActiveInsulin(List, LocalDateTime, double, double)} at that step.
+     */
+    public double[] calculateActiveInsulinCurve(
+            List<InsulinDose> doses,
+            LocalDateTime start,
+            int[] offsetMinutes,
+            double diaHours,
+            double peakMinutes) {
+        double[] curve = new double[offsetMinutes.length];
+        if (diaHours <= 0 || peakMinutes <= 0 || start == null) {
+            return curve;
+        }
+        InsulinActionTable table = InsulinActionTable.of(diaHours, peakMinutes);
+        for (InsulinDose dose : doses) {
+            double units = dose.getUnits();
+            if (units <= 0 || dose.getTimestamp() == null) continue;
+            // Duration.toMinutes() truncates the whole seconds; offsets shift those seconds exactly.
+            long seconds = java.time.Duration.between(dose.getTimestamp(), start).getSeconds();
+            for (int i = 0; i < offsetMinutes.length; i++) {
+                long minsAgo = (seconds + 60L * offsetMinutes[i]) / 60;
+                if (minsAgo >= 0) curve[i] += table.iob(units, minsAgo);
+            }
+        }
+        return curve;
     }
 
     public List<ActiveInsulinResponse> getInsulinActivityTimeline(InsulinDose dose, double durationHours) {
@@ -129,12 +162,16 @@ public class InsulinCalculatorService {
         List<ActiveInsulinResponse> timeline = new ArrayList<>();
         LocalDateTime startTime = dose.getTimestamp();
 
-        for (double hour = 0; hour <= durationHours; hour += 0.25) {
-            LocalDateTime currentTime = startTime.plusMinutes((long) (hour * 60));
-            double remainingUnits = calculateRemainingInsulin(dose, currentTime, diaHours, peakMinutes);
+        int[] offsets = new int[durationHours >= 0 ? (int) Math.floor(durationHours * 4) + 1 : 0];
+        for (int i = 0; i < offsets.length; i++) offsets[i] = i * 15;
+        double[] remaining = calculateActiveInsulinCurve(List.of(dose), startTime, offsets, diaHours, peakMinutes);
+
+        for (int i = 0; i < offsets.length; i++) {
+            LocalDateTime currentTime = startTime.plusMinutes(offsets[i]);
+            double remainingUnits = remaining[i];
             double percentageRemaining = dose.getUnits() > 0 ? (remainingUnits / dose.getUnits()) * 100 : 0;
 
-            double minutesSinceDose = hour * 60;
+            double minutesSinceDose = offsets[i];
             boolean isPeak = Math.abs(minutesSinceDose - peakMinutes) <= 15;
 
             timeline.add(ActiveInsulinResponse.builder()
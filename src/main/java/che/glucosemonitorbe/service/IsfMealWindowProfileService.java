@@ -1,6 +1,5 @@
 package che.glucosemonitorbe.service;
 
-import che.glucosemonitorbe.domain.CgmReading;
 import che.glucosemonitorbe.domain.IsfMealWindowSnapshot;
 import che.glucosemonitorbe.domain.MealWindow;
 import che.glucosemonitorbe.dto.IsfMealWindowDTO;
@@ -8,9 +7,10 @@ import che.glucosemonitorbe.dto.IsfMealWindowProfileResponse;
 import che.glucosemonitorbe.dto.RapidInsulinIobParameters;
 import che.glucosemonitorbe.dto.UserSettingsDTO;
 import che.glucosemonitorbe.entity.Note;
-import che.glucosemonitorbe.repository.CgmReadingRepository;
 import che.glucosemonitorbe.repository.IsfMealWindowSnapshotRepository;
 import che.glucosemonitorbe.repository.NoteRepository;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -72,7 +72,7 @@ public class IsfMealWindowProfileService {
     private static final double DEFAULT_CARB_RATIO = 2.0;
 
     private final NoteRepository noteRepository;
-    private final CgmReadingRepository cgmReadingRepository;
+    private final CgmSeriesCache cgmSeriesCache;
     private final UserInsulinPreferencesService userInsulinPreferencesService;
     private final UserSettingsService userSettingsService;
     private final CarbsOnBoardService carbsOnBoardService;
@@ -114,7 +114,7 @@ public class IsfMealWindowProfileService {
         LocalDateTime since = now.minusDays(HISTORY_DAYS);
 
         List<Note> notes = noteRepository.findByUserIdAndTimestampBetween(userId, since, now);
-        List<CgmReading> cgmReadings = loadCgmReadings(userId, since);
+        CgmSeries cgmReadings = loadCgmReadings(userId, since);
 
         RapidInsulinIobParameters rapid = userInsulinPreferencesService.getRapidIobParameters(userId);
         UserSettingsDTO userSettings = userSettingsService.getUserSettings(userId);
@@ -168,10 +168,9 @@ public class IsfMealWindowProfileService {
     // Internals
     // ---
 
-    private List<CgmReading> loadCgmReadings(UUID userId, LocalDateTime since) {
+    private CgmSeries loadCgmReadings(UUID userId, LocalDateTime since) {
         long sinceEpochMs = since.toInstant(ZoneOffset.UTC).toEpochMilli();
-        return cgmReadingRepository.findByUserIdAndDateTimestampGreaterThanOrderByDateTimestampAsc(
-                userId, sinceEpochMs);
+        return cgmSeriesCache.since(userId, sinceEpochMs);
     }
 
     /**
@@ -181,7 +180,7 @@ public class IsfMealWindowProfileService {
     EventEstimate estimateForBolus(
             Note bolus,
             List<Note> allNotes,
-            List<CgmReading> cgmReadings,
+            CgmSeries cgmReadings,
             RapidInsulinIobParameters rapid,
             UserSettingsDTO userSettings,
             double carbRatio) {
@@ -246,22 +245,11 @@ public class IsfMealWindowProfileService {
      * {@code sgv} as mg/dL × 1 (or as mmol/L × 10 depending on source) - this helper assumes
      * mg/dL, the dominant Nightscout convention. LibreLinkUp readings already arrive normalised.
      */
-    Double nearestCgmMmol(List<CgmReading> readings, LocalDateTime target) {
+    Double nearestCgmMmol(CgmSeries readings, LocalDateTime target) {
         if (readings == null || readings.isEmpty() || target == null) return null;
         long targetEpochMs = target.toInstant(ZoneOffset.UTC).toEpochMilli();
-        long bestDelta = Long.MAX_VALUE;
-        CgmReading best = null;
-        for (CgmReading r : readings) {
-            if (r.getDateTimestamp() == null || r.getSgv() == null) continue;
-            long delta = Math.abs(r.getDateTimestamp() - targetEpochMs);
-            if (delta < bestDelta) {
-                bestDelta = delta;
-                best = r;
-            }
-        }
-        if (best == null) return null;
-        if (bestDelta > CGM_LOOKUP_WINDOW_MIN * 60L * 1000L) return null;
-        return sgvToMmol(best.getSgv());
+        int best = readings.nearestIndex(targetEpochMs, CGM_LOOKUP_WINDOW_MIN * 60L * 1000L);
+        return best >= 0 ? sgvToMmol(readings.sgvAt(best)) : null;
     }
 
     /** Nightscout stores sgv as mg/dL - divide by 18.0182 for mmol/L. */
@@ -64,6 +64,14 @@ public class LibreLinkUpService {
         return sessionStore.baseUrlOrDefault(userId, LibreLinkUpRegionResolver.normalizeBaseUrl(defaultBaseUrl));
     }
 
+    /**
+     * Regional base URL the user's next request will go to - the pinned region after login, the
+     * configured default before it. Used by the sync scheduler to throttle per regional host.
+     */
+    public String apiBaseUrl(UUID userId) {
+        return baseUrlFor(userId);
+    }
+
     /**
      * Authenticate with LibreLinkUp and store the resulting token per-user.
      * BE-1: credentials are keyed by userId - no shared singleton state.
@@ -6,6 +6,7 @@ import che.glucosemonitorbe.domain.UserGlucoseSyncState;
 import che.glucosemonitorbe.dto.LibreAuthRequest;
 import che.glucosemonitorbe.dto.NightscoutEntryDto;
 import che.glucosemonitorbe.repository.UserDataSourceConfigRepository;
+import che.glucosemonitorbe.service.cgm.CgmWriteBehindBuffer;
 import che.glucosemonitorbe.service.libre.LibreLinkUpTrend;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -69,6 +70,7 @@ public class LibreLinkUpSyncService {
     private final UserDataSourceConfigRepository configRepository;
     private final LibreLinkUpService libreLinkUpService;
     private final CgmReadingService cgmReadingService;
+    private final CgmWriteBehindBuffer cgmWriteBehind;
     private final UserGlucoseSyncStateService syncStateService;
 
     @Value("${app.libre-sync.fast-interval-minutes:5}")
@@ -142,6 +144,11 @@ public class LibreLinkUpSyncService {
         }
     }
 
+    /** LibreLinkUp base URL this user's sync will hit (for per-region throttling by the scheduler). */
+    public String upstreamBaseUrl(UUID userId) {
+        return libreLinkUpService.apiBaseUrl(userId);
+    }
+
     /** The actual fetch+store. Always called while holding this user's lock. */
     private Outcome doSync(UUID userId, boolean force, LocalDateTime now) {
         try {
@@ -200,7 +207,12 @@ public class LibreLinkUpSyncService {
                 entries.add(entry);
             }
 
-            cgmReadingService.storeChartData(userId, entries, CgmReading.DataSource.LIBRE_LINK_UP);
+            if (cgmWriteBehind.isEnabled()) {
+                // On-demand syncs flush the group right away so the refreshed chart reads its own write.
+                cgmWriteBehind.store(userId, entries, CgmReading.DataSource.LIBRE_LINK_UP, force);
+            } else {
+                cgmReadingService.storeChartData(userId, entries, CgmReading.DataSource.LIBRE_LINK_UP);
+            }
 
             OptionalLong newestTs = entries.stream().mapToLong(NightscoutEntryDto::getDate).max();
             long prevSeen = state.getLastSeenEntryTimestamp() == null ? Long.MIN_VALUE
@@ -43,6 +43,7 @@ public class NotesService {
     private final UserService userService;
     private final VerificationService verificationService;
     private final NotePhotoStorageService notePhotoStorageService;
+    private final PredictionResultCache predictionResultCache;
     
     /**
      * Get all notes for a user.
@@ -120,6 +121,7 @@ public class NotesService {
         }
         
         Note savedNote = noteRepository.save(note);
+        predictionResultCache.onNotesChanged(userId);
 
         // Fire over-injection check asynchronously - does not block the response.
         // Condition: note has insulin AND we have a current glucose reading to anchor the prediction.
@@ -200,6 +202,7 @@ public class NotesService {
         enrichNutrition(existingNote);
         
         Note updatedNote = noteRepository.save(existingNote);
+        predictionResultCache.onNotesChanged(userId);
         return toDtoWithPhoto(updatedNote);
     }
     
@@ -220,6 +223,7 @@ public class NotesService {
         } catch (Exception e) {
             return false;
         }
+        predictionResultCache.onNotesChanged(userId);
         notePhotoStorageService.delete(note.getPhotoKey());
         return true;
     }
@@ -0,0 +1,215 @@
+package che.glucosemonitorbe.service;
+
+import che.glucosemonitorbe.dto.GlucoseCalculationsResponse;
+import che.glucosemonitorbe.service.cgm.CgmReadingsStoredEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Last {@link GlucoseCalculationsService#calculateGlucoseData} result per user, so the dashboard's
+ * ~30 s polls and the alerting loop reuse one COB/IOB derivation and prediction path until something
+ * it was built from changes.
+ *
+ * <h3>Validity</h3>
+ * <p>Every user has a {@link Stamp} of input versions: newest stored CGM reading, notes mutation
+ * counter, settings mutation counter (glucose settings, insulin preferences, accepted ratio
+ * suggestions) and the digital twin's last fit. An entry is served only when the request has the same
+ * {@link RequestKey}, the stamp it was computed under is still current, and the request time lies
+ * within {@code app.prediction-cache.max-age-seconds} after the entry's {@code calculatedAt}. Hits
+ * return the original response unchanged, so its {@code calculatedAt} tells the client when COB/IOB
+ * and the path were evaluated.</p>
+ *
+ * <h3>Invalidation</h3>
+ * <p>The writers that already evict the {@code userNotes} / {@code userSettings} caches call the
+ * {@code on*Changed} hooks, and stored CGM batches arrive as {@link CgmReadingsStoredEvent}. Stamps are
+ * bumped after the writing transaction commits; because a computation reads the stamp before it reads
+ * any input, a result built from pre-commit data is always stored under a stamp that is already stale.
+ * Writes that bypass these hooks are picked up once the entry ages out.</p>
+ *
+ * <p>Stamps of idle users expire after twice the max-age without access. A stamp is read when a
+ * computation starts and bumped when its inputs change, and an entry is only served within max-age of
+ * its {@code calculatedAt}, so no servable entry can outlive the stamp it must be compared against.</p>
+ *
+ * <h3>Multiple instances</h3>
+ * <p>Stamps and entries are per instance, like the {@code userNotes} / {@code userSettings} caches the
+ * hooks sit next to. Accepted trade-off: a note, setting or CGM batch written through another instance
+ * is not seen here until the entry ages out, so {@code max-age-seconds} is the cross-instance staleness
+ * bound for COB/IOB and is kept short (60 s by default - two dashboard polls). The instance that served
+ * the write invalidates at once. A shared stamp would need a database read per poll, which is the work
+ * this cache exists to save; set {@code max-age-seconds} lower, or disable the cache, if instances
+ * must agree sooner.</p>
+ *
+ * <p>Cached responses are shared between callers and must not be modified.</p>
+ */
+@Component
+public class PredictionResultCache {
+
+    /** Input versions a result was computed under; compared for equality on lookup. */
+    public record Stamp(long latestCgmMs, long notesVersion, long settingsVersion, long twinFittedAtMs) {
+        static final Stamp INITIAL = new Stamp(0L, 0L, 0L, 0L);
+    }
+
+    /** The request parameters that shape the result besides the user's stored data. */
+    public record RequestKey(Double currentGlucose, Integer predictionHorizonMinutes,
+                             Double currentTrendMmolPerMin, boolean hovorkaEnabled,
+                             boolean activityLoggingEnabled, boolean nutritionAwareEnabled) {}
+
+    private record Entry(RequestKey key, Stamp stamp, LocalDateTime calculatedAt,
+                         GlucoseCalculationsResponse response) {}
+
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+    private final Cache<UUID, Entry> entries;
+    private final Cache<UUID, Stamp> stamps;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    @Autowired
+    public PredictionResultCache(@Value("${app.prediction-cache.enabled:true}") boolean enabled,
+                                 @Value("${app.prediction-cache.max-age-seconds:60}") long maxAgeSeconds,
+                                 @Value("${app.prediction-cache.max-users:10000}") long maxUsers,
+                                 ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this(enabled, maxAgeSeconds, maxUsers, meterRegistryProvider, Ticker.systemTicker());
+    }
+
+    PredictionResultCache(boolean enabled, long maxAgeSeconds, long maxUsers,
+                          ObjectProvider<MeterRegistry> meterRegistryProvider, Ticker ticker) {
+        this.enabled = enabled;
+        this.maxAge = Duration.ofSeconds(maxAgeSeconds);
+        this.meterRegistryProvider = meterRegistryProvider;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(maxAge)
+                .ticker(ticker)
+                .build();
+        // Time-based only: a size eviction could drop the stamp of a user whose entry is still servable.
+        this.stamps = Caffeine.newBuilder()
+                .expireAfterAccess(maxAge.multipliedBy(2))
+                .ticker(ticker)
+                .build();
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+        if (registry == null || !enabled) return;
+        FunctionCounter.builder("prediction_cache.hits", hits, AtomicLong::get)
+                .description("Glucose calculations answered from the cache").register(registry);
+        FunctionCounter.builder("prediction_cache.misses", misses, AtomicLong::get)
+                .description("Glucose calculations computed because no entry matched").register(registry);
+        FunctionCounter.builder("prediction_cache.stale", stale, AtomicLong::get)
+                .description("Misses on an entry invalidated by new inputs or age").register(registry);
+        Gauge.builder("prediction_cache.size", entries, Cache::estimatedSize)
+                .description("Users with a cached glucose calculation").register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // -- Lookups ---------------------------------------------------------------
+
+    /** The user's current input versions; read before loading any input of a computation. */
+    public Stamp stamp(UUID userId) {
+        Stamp stamp = stamps.getIfPresent(userId);
+        return stamp != null ? stamp : Stamp.INITIAL;
+    }
+
+    /** The cached response for an identical request under {@code stamp} at {@code now}, or {@code null}. */
+    public GlucoseCalculationsResponse get(UUID userId, RequestKey key, Stamp stamp, LocalDateTime now) {
+        Entry entry = entries.getIfPresent(userId);
+        if (entry == null || !entry.key().equals(key)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (!entry.stamp().equals(stamp) || now.isBefore(entry.calculatedAt())
+                || now.isAfter(entry.calculatedAt().plus(maxAge))) {
+            misses.incrementAndGet();
+            stale.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.response();
+    }
+
+    /** Stores a response computed from inputs read under {@code stamp}. */
+    public void put(UUID userId, RequestKey key, Stamp stamp, LocalDateTime calculatedAt,
+                    GlucoseCalculationsResponse response) {
+        entries.put(userId, new Entry(key, stamp, calculatedAt, response));
+    }
+
+    // -- Invalidation hooks (applied after the surrounding transaction commits) --
+
+    /** A note was created, edited or deleted. */
+    public void onNotesChanged(UUID userId) {
+        bump(userId, s -> new Stamp(s.latestCgmMs(), s.notesVersion() + 1, s.settingsVersion(), s.twinFittedAtMs()));
+    }
+
+    /** Glucose settings or insulin preferences changed. */
+    public void onSettingsChanged(UUID userId) {
+        bump(userId, s -> new Stamp(s.latestCgmMs(), s.notesVersion(), s.settingsVersion() + 1, s.twinFittedAtMs()));
+    }
+
+    /** The user's digital twin was re-fitted at {@code fittedAt}. */
+    public void onTwinFitted(UUID userId, LocalDateTime fittedAt) {
+        long fittedAtMs = fittedAt.toInstant(ZoneOffset.UTC).toEpochMilli();
+        bump(userId, s -> new Stamp(s.latestCgmMs(), s.notesVersion(), s.settingsVersion(), fittedAtMs));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReadingsStored(CgmReadingsStoredEvent event) {
+        if (!enabled) return;
+        // Already after commit. Back-filled batches older than the newest reading leave the stamp alone.
+        stamps.asMap().compute(event.userId(), (id, s) -> {
+            Stamp current = s != null ? s : Stamp.INITIAL;
+            return event.latestTimestampMs() > current.latestCgmMs()
+                    ? new Stamp(event.latestTimestampMs(), current.notesVersion(), current.settingsVersion(),
+                            current.twinFittedAtMs())
+                    : current;
+        });
+        entries.invalidate(event.userId());
+    }
+
+    private void bump(UUID userId, UnaryOperator<Stamp> next) {
+        if (!enabled) return;
+        afterCommit(() -> {
+            stamps.asMap().compute(userId, (id, s) -> next.apply(s != null ? s : Stamp.INITIAL));
+            entries.invalidate(userId);
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
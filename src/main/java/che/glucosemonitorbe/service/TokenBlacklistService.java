@@ -8,16 +8,21 @@ import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Date;
 import java.util.HexFormat;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -26,6 +31,20 @@ import java.util.concurrent.TimeUnit;
  * <p>Durable across restarts and shared across instances (the previous in-memory map lost all
  * revocations on restart and was per-instance). Tokens are stored as a SHA-256 hex hash - the raw
  * token is never persisted. Naturally-expired entries are pruned hourly and ignored on lookup.
+ *
+ * <p>Lookups sit on the JWT filter's hot path, so they first consult a local
+ * {@link TokenRevocationIndex}: a token it rules out is accepted without touching the table, and only a
+ * possible hit is confirmed by query. The index is fed immediately by the revocations made here. Every
+ * {@code security.jwt.revocation-index.rebuild-ms} it catches up with the rows inserted since its
+ * {@code created_at} watermark; a full rebuild (which also drops expired and cleared entries) runs at
+ * startup, every {@code security.jwt.revocation-index.full-rebuild-ms}, and whenever the filter has
+ * outgrown its sizing. If refreshes keep failing the index is bypassed and every lookup queries the
+ * table again.</p>
+ *
+ * <p>Accepted trade-off: a revocation made on another instance takes effect here at the next catch-up,
+ * up to {@code rebuild-ms} later (30 s by default) - the logout itself is enforced at once on the
+ * instance that served it. A revocation whose transaction stays open longer than
+ * {@link #CATCH_UP_OVERLAP} may be missed by the catch-ups and is picked up by the next full rebuild.</p>
  */
 @Service
 @Slf4j
@@ -37,8 +56,17 @@ public class TokenBlacklistService {
     private static final long FALLBACK_TTL_MS = TimeUnit.HOURS.toMillis(24);
     /** Extra buffer so the sentinel outlives clock skew past the last refresh token. */
     private static final long LOGOUT_ALL_TTL_BUFFER_MS = TimeUnit.HOURS.toMillis(1);
+    /** Rebuilds missed before the index is considered stale and bypassed. */
+    private static final int MAX_MISSED_REBUILDS = 3;
+    private static final int REBUILD_PAGE_SIZE = 10_000;
+    /**
+     * How far behind the watermark each catch-up re-reads. {@code created_at} is the inserting
+     * transaction's start time, so a row can become visible after a later-stamped row was already read.
+     */
+    static final Duration CATCH_UP_OVERLAP = Duration.ofMinutes(1);
 
     private final TokenBlacklistRepository repository;
+    private final TokenRevocationIndex revocationIndex = new TokenRevocationIndex();
 
     @Value("${security.jwt.secret}")
     private String jwtSecret;
@@ -47,6 +75,16 @@ public class TokenBlacklistService {
     @Value("${security.jwt.refresh-expiration-ms}")
     private long refreshExpirationMs;
 
+    @Value("${security.jwt.revocation-index.rebuild-ms:30000}")
+    private long revocationIndexRebuildMs;
+
+    @Value("${security.jwt.revocation-index.full-rebuild-ms:3600000}")
+    private long revocationIndexFullRebuildMs;
+
+    /** Newest {@code created_at} folded into the index; null until the first full rebuild. */
+    private volatile Instant indexWatermark;
+    private volatile long lastFullRebuildMs;
+
     public TokenBlacklistService(TokenBlacklistRepository repository) {
         this.repository = repository;
     }
@@ -97,6 +135,7 @@ public class TokenBlacklistService {
         if (username == null || username.isBlank()) {
             return;
         }
+        // Nothing to do in the index: a stale positive is re-checked against the table.
         repository.deleteById(sha256Hex(LOGOUT_ALL_DEVICES_PREFIX + username.trim()));
         log.info("Global logout sentinel cleared for user {}", username);
     }
@@ -150,7 +189,9 @@ public class TokenBlacklistService {
             expirationTime = System.currentTimeMillis() + FALLBACK_TTL_MS;
             log.warn("Token blacklisted with fallback expiration (24h)");
         }
-        int inserted = repository.insertIfAbsent(sha256Hex(token), Instant.ofEpochMilli(expirationTime));
+        String hash = sha256Hex(token);
+        int inserted = repository.insertIfAbsent(hash, Instant.ofEpochMilli(expirationTime));
+        index(hash);
         return inserted > 0;
     }
 
@@ -184,12 +225,95 @@ public class TokenBlacklistService {
         }
     }
 
+    /**
+     * Keeps the local revocation index current: at startup and then on a fixed delay, adds the entries
+     * inserted since the watermark (other instances' revocations), or rebuilds it fully when the
+     * watermark is unset, the full-rebuild period has passed, the filter has outgrown its sizing, or the
+     * catch-up is too large for one page.
+     */
+    @Scheduled(initialDelayString = "PT0S", fixedDelayString = "${security.jwt.revocation-index.rebuild-ms:30000}")
+    public void refreshRevocationIndex() {
+        Instant watermark = indexWatermark;
+        if (watermark == null || revocationIndex.needsRebuild()
+                || System.currentTimeMillis() - lastFullRebuildMs >= revocationIndexFullRebuildMs) {
+            rebuildRevocationIndex();
+            return;
+        }
+        try {
+            List<RevokedToken> added = repository.findByCreatedAtAfterAndExpiresAtAfterOrderByCreatedAtAsc(
+                    watermark.minus(CATCH_UP_OVERLAP), Instant.now(), PageRequest.of(0, REBUILD_PAGE_SIZE));
+            if (added.size() == REBUILD_PAGE_SIZE) {
+                rebuildRevocationIndex();
+                return;
+            }
+            for (RevokedToken token : added) {
+                revocationIndex.add(token.getTokenHash());
+                if (token.getCreatedAt() != null && token.getCreatedAt().isAfter(watermark)) {
+                    watermark = token.getCreatedAt();
+                }
+            }
+            indexWatermark = watermark;
+            revocationIndex.markCurrent();
+        } catch (RuntimeException e) {
+            log.warn("Token revocation index catch-up failed, keeping the current index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the local revocation index from the table (keyset-paged by hash), dropping expired and
+     * cleared entries, and resets the catch-up watermark to the newest row at the start of the scan.
+     */
+    public void rebuildRevocationIndex() {
+        Instant now = Instant.now();
+        TokenRevocationIndex.Rebuild rebuild = null;
+        try {
+            Instant watermark = repository.findMaxCreatedAt();
+            rebuild = revocationIndex.beginRebuild(repository.countByExpiresAtAfter(now));
+            String after = "";
+            List<String> page;
+            do {
+                page = repository.findActiveHashesAfter(after, now, PageRequest.of(0, REBUILD_PAGE_SIZE));
+                page.forEach(rebuild::add);
+                if (!page.isEmpty()) after = page.get(page.size() - 1);
+            } while (page.size() == REBUILD_PAGE_SIZE);
+            rebuild.publish();
+            indexWatermark = watermark != null ? watermark : Instant.EPOCH;
+            lastFullRebuildMs = System.currentTimeMillis();
+        } catch (RuntimeException e) {
+            if (rebuild != null) rebuild.abandon();
+            log.warn("Token revocation index rebuild failed, keeping the previous index: {}", e.getMessage());
+        }
+    }
+
     private void store(String rawKey, long expiresAtMs) {
-        repository.save(new RevokedToken(sha256Hex(rawKey), Instant.ofEpochMilli(expiresAtMs)));
+        String hash = sha256Hex(rawKey);
+        repository.save(new RevokedToken(hash, Instant.ofEpochMilli(expiresAtMs)));
+        index(hash);
+    }
+
+    /**
+     * Adds a revocation to the index now, and again once it has committed: a rebuild that read the
+     * table before the commit must still end up containing it.
+     */
+    private void index(String hash) {
+        revocationIndex.add(hash);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    revocationIndex.add(hash);
+                }
+            });
+        }
     }
 
     private boolean isActive(String rawKey) {
-        return repository.existsByTokenHashAndExpiresAtAfter(sha256Hex(rawKey), Instant.now());
+        String hash = sha256Hex(rawKey);
+        if (revocationIndex.definitelyAbsent(hash, System.currentTimeMillis(),
+                MAX_MISSED_REBUILDS * revocationIndexRebuildMs)) {
+            return false;
+        }
+        return repository.existsByTokenHashAndExpiresAtAfter(hash, Instant.now());
     }
 
     private static String sha256Hex(String value) {
@@ -0,0 +1,163 @@
+package che.glucosemonitorbe.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory Bloom filter over the SHA-256 hashes in {@code token_blacklist}, so the JWT filter can
+ * answer "certainly not revoked" - the answer for nearly every request - without a database
+ * round-trip. A "maybe" (a real revocation or a ~1% false positive) is confirmed against the table by
+ * {@link TokenBlacklistService}.
+ *
+ * <p>Bloom filters cannot delete, so the filter is occasionally rebuilt from the table, which drops
+ * expired and cleared entries. In between, revocations written by other instances are added
+ * incrementally ({@link #add} then {@link #markCurrent}). Local revocations are added as they happen -
+ * to the live filter and to any filter being rebuilt, so a rebuild whose snapshot was read before the
+ * revocation committed cannot lose it. Once more entries have been added than the filter was sized for,
+ * {@link #needsRebuild} asks for a rebuild before the false-positive rate drifts up.</p>
+ *
+ * <p>The stored hashes are uniformly distributed already, so the probe positions come straight from
+ * their first 128 bits (Kirsch-Mitzenmacher double hashing) - no re-hashing on lookup.</p>
+ */
+final class TokenRevocationIndex {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    /** Headroom for revocations added between rebuilds. */
+    private static final double GROWTH_FACTOR = 1.25;
+    private static final long MIN_CAPACITY = 4_096;
+
+    private final Object lock = new Object();
+    private volatile Filter live;          // null until the first rebuild completes
+    private volatile long currentAtMs;     // last rebuild or incremental catch-up
+    private Filter pending;                // guarded by lock; non-null while a rebuild is in progress
+
+    /** Records a revocation in the live filter and in the one being rebuilt, if any. */
+    void add(String tokenHash) {
+        long h1 = h1(tokenHash), h2 = h2(tokenHash);
+        synchronized (lock) {
+            if (live != null) live.put(h1, h2);
+            if (pending != null) pending.put(h1, h2);
+        }
+    }
+
+    /** Records that the live filter has caught up with the table (an incremental refresh succeeded). */
+    void markCurrent() {
+        synchronized (lock) {
+            if (live != null) currentAtMs = System.currentTimeMillis();
+        }
+    }
+
+    /** True before the first rebuild, and once the live filter holds more entries than it was sized for. */
+    boolean needsRebuild() {
+        Filter f = live;
+        return f == null || f.saturated();
+    }
+
+    /**
+     * True when {@code tokenHash} is certainly not in the table as of the filter's last rebuild or
+     * catch-up plus the revocations recorded here since. Always false (ask the table) before the first
+     * rebuild, or when the filter has not caught up for {@code maxAgeMs} because refreshes keep failing.
+     */
+    boolean definitelyAbsent(String tokenHash, long nowMs, long maxAgeMs) {
+        Filter f = live;
+        return f != null && nowMs - currentAtMs <= maxAgeMs && !f.mightContain(h1(tokenHash), h2(tokenHash));
+    }
+
+    /** Starts a rebuild sized for {@code expectedEntries}; fill it, then {@link Rebuild#publish()}. */
+    Rebuild beginRebuild(long expectedEntries) {
+        Filter f = new Filter(Math.max(MIN_CAPACITY, (long) (expectedEntries * GROWTH_FACTOR)));
+        synchronized (lock) {
+            pending = f;
+        }
+        return new Rebuild(f);
+    }
+
+    /** A filter under construction from a table snapshot. */
+    final class Rebuild {
+        private final Filter filter;
+
+        private Rebuild(Filter filter) {
+            this.filter = filter;
+        }
+
+        void add(String tokenHash) {
+            filter.put(h1(tokenHash), h2(tokenHash));
+        }
+
+        /** Swaps the rebuilt filter in (unless a newer rebuild has started since). */
+        void publish() {
+            synchronized (lock) {
+                if (pending != filter) return;
+                live = filter;
+                currentAtMs = System.currentTimeMillis();
+                pending = null;
+            }
+        }
+
+        /** Discards a failed rebuild; the live filter keeps serving until it ages out. */
+        void abandon() {
+            synchronized (lock) {
+                if (pending == filter) pending = null;
+            }
+        }
+    }
+
+    // -- Hash positions ------------------------------------------------------------
+
+    private static long h1(String hexHash) {
+        return hexHash.length() >= 16 ? Long.parseUnsignedLong(hexHash, 0, 16, 16) : mix(hexHash.hashCode());
+    }
+
+    private static long h2(String hexHash) {
+        // Odd, so the k probes never collapse onto one position.
+        return (hexHash.length() >= 32 ? Long.parseUnsignedLong(hexHash, 16, 32, 16) : mix(~hexHash.hashCode())) | 1L;
+    }
+
+    private static long mix(long x) {
+        x *= 0x9E3779B97F4A7C15L;
+        return x ^ (x >>> 32);
+    }
+
+    /** Fixed-size, lock-free Bloom filter (concurrent puts and reads). */
+    static final class Filter {
+        private final AtomicLongArray words;
+        private final long bits;
+        private final int probes;
+        private final long capacity;
+        /** Puts so far, repeats included - an upper bound on the distinct entries. */
+        private final AtomicLong puts = new AtomicLong();
+
+        Filter(long capacity) {
+            this.capacity = capacity;
+            long m = (long) Math.ceil(-capacity * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE - 8, (m + 63) >>> 6));
+            this.bits = (long) words.length() << 6;
+            this.probes = Math.max(1, (int) Math.round((double) bits / capacity * Math.log(2)));
+        }
+
+        boolean saturated() {
+            return puts.get() > capacity;
+        }
+
+        void put(long h1, long h2) {
+            puts.incrementAndGet();
+            for (int i = 0; i < probes; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+                long mask = 1L << bit;
+                int w = (int) (bit >>> 6);
+                long cur;
+                while (((cur = words.get(w)) & mask) == 0 && !words.compareAndSet(w, cur, cur | mask)) {
+                    // retry: another bit of this word was set concurrently
+                }
+            }
+        }
+
+        boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < probes; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -2,10 +2,8 @@ package che.glucosemonitorbe.service;
 
 import che.glucosemonitorbe.config.FeatureToggleConfig;
 import che.glucosemonitorbe.domain.CarbsEntry;
-import che.glucosemonitorbe.domain.CgmReading;
 import che.glucosemonitorbe.domain.InsulinDose;
 import che.glucosemonitorbe.domain.User;
-import che.glucosemonitorbe.dto.PredictionPointDTO;
 import che.glucosemonitorbe.dto.RapidInsulinIobParameters;
 import che.glucosemonitorbe.dto.UnloggedEventFlagDTO;
 import che.glucosemonitorbe.dto.UserSettingsDTO;
@@ -23,10 +21,13 @@ import che.glucosemonitorbe.hovorka.HovorkaOdeSolver;
 import che.glucosemonitorbe.hovorka.HovorkaParameterService;
 import che.glucosemonitorbe.hovorka.HovorkaParameters;
 import che.glucosemonitorbe.hovorka.learning.PredictionResidualProvider;
-import che.glucosemonitorbe.repository.CgmReadingRepository;
 import che.glucosemonitorbe.repository.NoteRepository;
 import che.glucosemonitorbe.repository.UnloggedEventFlagRepository;
 import che.glucosemonitorbe.repository.UserRepository;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -36,21 +37,20 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.TreeMap;
 import java.util.UUID;
 
 /**
  * Detects windows where glucose moved in a way the logged inputs (COB/IOB) do not explain, using the
- * physiological model residual (see {@code specs/unlogged-event-detector.md}). Runs the raw Hovorka
- * prediction over a recent CGM window, finds a sustained same-sign residual that exceeds an adaptive
+ * physiological model residual (see {@code specs/unlogged-event-detector.md}). Follows the raw Hovorka
+ * prediction over a recent CGM window incrementally ({@link UnloggedResidualStream}), finds a sustained same-sign residual that exceeds an adaptive
  * (robust-σ) threshold, classifies it, and persists an {@link UnloggedEventFlag} (deduped against any
  * open flag). Also serves the list / confirm / dismiss operations.
  */
@@ -62,8 +62,11 @@ public class UnloggedEventDetectionService {
     private static final double MGDL_PER_MMOL = 18.0182;
     private static final String SEED_EMAIL_PATTERN = "azt1d-subject-%@dataset.local";
     private static final int WARMUP_LOOKBACK_HOURS = 8;
+    private static final int STREAM_CACHE_MAX_USERS = 10_000;
+    /** Idle streams are dropped; a stream idle this long would be past its horizon anyway. */
+    private static final Duration STREAM_CACHE_EXPIRY = Duration.ofHours(6);
 
-    private final CgmReadingRepository cgmReadingRepository;
+    private final CgmSeriesCache cgmSeriesCache;
     private final NoteRepository noteRepository;
     private final UserRepository userRepository;
     private final UnloggedEventFlagRepository flagRepository;
@@ -74,6 +77,7 @@ public class UnloggedEventDetectionService {
     private final UserInsulinPreferencesService insulinPrefsService;
     private final UserSettingsService userSettingsService;
     private final FeatureToggleConfig featureToggleConfig;
+    private final PredictionResultCache predictionResultCache;
 
     /** Length of the CGM window scanned each pass [min]. */
     @Value("${app.unlogged-events.window-minutes:180}")
@@ -102,6 +106,12 @@ public class UnloggedEventDetectionService {
     /** Raw predictor (no twin overlay, no residual correction) - the calibration-consistent baseline. */
     private HovorkaGlucosePredictionService rawPredictor;
 
+    /** Per-user incremental scan state; one is rebuilt from the window whenever it is missing. */
+    private final Cache<UUID, UnloggedResidualStream> streams = Caffeine.newBuilder()
+            .maximumSize(STREAM_CACHE_MAX_USERS)
+            .expireAfterAccess(STREAM_CACHE_EXPIRY)
+            .build();
+
     @PostConstruct
     void initPredictor() {
         this.rawPredictor = new HovorkaGlucosePredictionService(
@@ -140,6 +150,12 @@ public class UnloggedEventDetectionService {
     /**
      * Scan one user's recent window. Returns the created/updated flag when a sustained unexplained
      * residual is found, else empty (feature off, too little data, or nothing unexplained).
+     *
+     * <p>Incremental: the user's {@link UnloggedResidualStream} keeps the raw model path, the window's
+     * residuals, their robust scale and same-sign runs between passes, and a pass only integrates and
+     * scores the readings that arrived since the last one. The path is re-anchored at the window start
+     * when the notes behind it change, readings were back-filled, or it reaches its horizon (twice the
+     * window, which also bounds how long model-parameter or settings changes take to be picked up).</p>
      */
     @Transactional
     public Optional<UnloggedEventFlag> scanUser(UUID userId) {
@@ -150,13 +166,38 @@ public class UnloggedEventDetectionService {
         long startMs = toEpochMs(start);
         long endMs = toEpochMs(end);
 
-        List<CgmReading> readings = cgmReadingRepository
-                .findByUserIdAndDateTimestampBetweenOrderByDateTimestampAsc(userId, startMs, endMs);
+        CgmSeries readings = cgmSeriesCache.range(userId, startMs, endMs);
         if (readings.size() < minReadings) return Optional.empty();
 
-        // Events for warm-up + prediction inputs (and for the matching-event check).
+        // Events for warm-up + prediction inputs (and for the matching-event check). A live stream
+        // keeps querying from its own anchor's lookback so the fingerprint covers the same notes.
+        LocalDateTime warmupFrom = start.minusHours(WARMUP_LOOKBACK_HOURS);
+        UnloggedResidualStream stream = streams.getIfPresent(userId);
         List<Note> notes = noteRepository.findByUserIdAndTimestampBetween(
-                userId, start.minusHours(WARMUP_LOOKBACK_HOURS), end);
+                userId, stream != null ? stream.notesFrom() : warmupFrom, end);
+        if (stream == null || !stream.advance(readings, startMs, notesFingerprint(notes))) {
+            if (stream != null) {
+                notes = notes.stream().filter(n -> !n.getTimestamp().isBefore(warmupFrom)).toList();
+            }
+            stream = anchor(userId, readings, notes, warmupFrom);
+            stream.advance(readings, startMs, notesFingerprint(notes));
+            streams.put(userId, stream);
+        }
+        if (stream.alignedCount() < minReadings) return Optional.empty();
+
+        double sigma = stream.robustScale();
+        double threshold = sigmaMultiple * sigma;
+
+        // Strongest sustained same-sign run above threshold.
+        Run best = stream.strongestRun(threshold, persistenceMinutes);
+        if (best == null) return Optional.empty();
+
+        return Optional.of(persistFlag(userId, best, sigma, notes));
+    }
+
+    /** Anchors a fresh stream on a raw forward prediction from the first reading of the window. */
+    private UnloggedResidualStream anchor(UUID userId, CgmSeries readings, List<Note> notes,
+                                          LocalDateTime notesFrom) {
         List<CarbsEntry> carbs = new ArrayList<>();
         List<InsulinDose> insulin = new ArrayList<>();
         List<Note> longActing = new ArrayList<>();
@@ -171,11 +212,8 @@ public class UnloggedEventDetectionService {
             }
         }
 
-        // Raw forward prediction anchored at the window start.
-        CgmReading first = readings.get(0);
-        if (first.getSgv() == null) return Optional.empty();
-        LocalDateTime anchorTime = toLdt(first.getDateTimestamp());
-        double g0 = first.getSgv() / MGDL_PER_MMOL;
+        LocalDateTime anchorTime = toLdt(readings.timeAt(0));
+        double g0 = readings.sgvAt(0) / MGDL_PER_MMOL;
         HovorkaParameters baseParams = paramService.buildRawForUser(userId);
         RapidInsulinIobParameters rapidIob = insulinPrefsService.getRapidIobParameters(userId);
         UserSettingsDTO settings = userSettingsService.getUserSettings(userId);
@@ -183,34 +221,24 @@ public class UnloggedEventDetectionService {
         // explained (not mistaken for unlogged insulin). Inert when activity logging is off.
         ActivityProvider activity = featureToggleConfig.isActivityLoggingEnabled()
                 ? NotesActivityProvider.fromNotes(notes) : ActivityProvider.NONE;
-        List<PredictionPointDTO> predicted = rawPredictor.buildPredictionPath(
-                baseParams, rapidIob, settings, g0, anchorTime, carbs, insulin, longActing,
-                userId, windowMinutes, activity);
-
-        // Align predicted -> actual; residual = actual − predicted [mmol/L].
-        TreeMap<Long, Double> predByMs = new TreeMap<>();
-        for (PredictionPointDTO pt : predicted) {
-            if (pt.getPredictedGlucose() != null) predByMs.put(toEpochMs(pt.getTimestamp()), pt.getPredictedGlucose());
-        }
-        List<long[]> tMs = new ArrayList<>();
-        List<Double> resid = new ArrayList<>();
-        for (CgmReading r : readings) {
-            if (r.getSgv() == null || r.getDateTimestamp() == null) continue;
-            Double p = nearest(predByMs, r.getDateTimestamp(), alignToleranceMs);
-            if (p == null) continue;
-            tMs.add(new long[]{r.getDateTimestamp()});
-            resid.add(r.getSgv() / MGDL_PER_MMOL - p);
-        }
-        if (resid.size() < minReadings) return Optional.empty();
-
-        double sigma = robustScale(resid);
-        double threshold = sigmaMultiple * sigma;
-
-        // Strongest sustained same-sign run above threshold.
-        Run best = strongestRun(tMs, resid, threshold, persistenceMinutes);
-        if (best == null) return Optional.empty();
+        int horizonMinutes = 2 * windowMinutes;
+        HovorkaGlucosePredictionService.PathCursor cursor = rawPredictor.openCursor(
+                rawPredictor.preparePath(baseParams, rapidIob, settings, g0, anchorTime,
+                        carbs, insulin, longActing, horizonMinutes),
+                baseParams, activity);
+        return new UnloggedResidualStream(readings.timeAt(0), horizonMinutes, notesFrom,
+                notesFingerprint(notes), alignToleranceMs, cursor::advanceTo);
+    }
 
-        return Optional.of(persistFlag(userId, best, sigma, notes));
+    /** Order-independent digest of every note field that feeds the path or the activity signal. */
+    static long notesFingerprint(List<Note> notes) {
+        long h = notes.size();
+        for (Note n : notes) {
+            h += 0x9E3779B97F4A7C15L * Objects.hash(n.getId(), n.getTimestamp(), n.getUpdatedAt(),
+                    n.getCarbs(), n.getInsulin(), n.getType(), n.getActivityType(), n.getIntensity(),
+                    n.getDurationMin());
+        }
+        return h;
     }
 
     // -- Detection helpers ------------------------------------------------------
@@ -311,6 +339,7 @@ public class UnloggedEventDetectionService {
             note.setCreatedAt(LocalDateTime.now());
             note.setUpdatedAt(LocalDateTime.now());
             noteRepository.save(note);
+            predictionResultCache.onNotesChanged(userId);
         }
         flag.setState(State.CONFIRMED);
         flag.setResolvedAt(LocalDateTime.now());
@@ -352,30 +381,8 @@ public class UnloggedEventDetectionService {
 
     /** Robust spread: 1.4826*MAD, floored at 0.3 mmol/L (CGM sensor noise) - matches the calibrator. */
     static double robustScale(List<Double> values) {
-        if (values.isEmpty()) return 0.3;
-        double[] a = values.stream().mapToDouble(Double::doubleValue).toArray();
-        double median = median(a.clone());
-        double[] dev = new double[a.length];
-        for (int i = 0; i < a.length; i++) dev[i] = Math.abs(a[i] - median);
-        return Math.max(0.3, 1.4826 * median(dev));
-    }
-
-    private static double median(double[] a) {
-        Arrays.sort(a);
-        int n = a.length;
-        if (n == 0) return 0.0;
-        return (n % 2 == 1) ? a[n / 2] : 0.5 * (a[n / 2 - 1] + a[n / 2]);
-    }
-
-    /** Nearest value in a time->value map within tolerance, or null. */
-    private static Double nearest(TreeMap<Long, Double> map, long target, long tolMs) {
-        Map.Entry<Long, Double> floor = map.floorEntry(target);
-        Map.Entry<Long, Double> ceil = map.ceilingEntry(target);
-        Map.Entry<Long, Double> best = null;
-        long bestDiff = Long.MAX_VALUE;
-        if (floor != null) { best = floor; bestDiff = target - floor.getKey(); }
-        if (ceil != null && (ceil.getKey() - target) < bestDiff) { best = ceil; bestDiff = ceil.getKey() - target; }
-        return (best != null && bestDiff <= tolMs) ? best.getValue() : null;
+        double[] a = values.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        return UnloggedResidualStream.robustScaleOfSorted(a, a.length);
     }
 
     private static LocalDateTime toLdt(long epochMs) {
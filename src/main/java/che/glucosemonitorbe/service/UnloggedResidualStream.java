@@ -0,0 +1,239 @@
+package che.glucosemonitorbe.service;
+
+import che.glucosemonitorbe.service.UnloggedEventDetectionService.Run;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * One user's streaming residual state for {@link UnloggedEventDetectionService}: a raw model path
+ * anchored once and advanced as readings arrive, the residuals of the readings still inside the scan
+ * window, a sorted copy of them for the robust scale, and their same-sign runs. Each scan appends only
+ * the readings newer than the last one consumed and evicts those that left the window, so its cost is
+ * O(new readings) rather than a re-integration and re-scan of the whole window.
+ *
+ * <p>Residuals are computed exactly like the windowed scan: each reading is aligned to the nearest
+ * 5-min point of the path (never the anchor itself) within the alignment tolerance, and unaligned
+ * readings neither count nor break a run. The path is only valid for the inputs it was anchored on -
+ * {@link #advance} refuses (and the service re-anchors) when the notes fingerprint changed, readings
+ * were back-filled or deleted behind the cursor, or a reading lies past the path horizon.</p>
+ *
+ * <p>Synchronised: scheduled and on-demand scans of the same user may overlap.</p>
+ */
+final class UnloggedResidualStream {
+
+    private static final double MGDL_PER_MMOL = 18.0182;
+    private static final long POINT_STEP_MS = 5 * 60_000L;
+
+    private final long anchorMs;
+    private final long horizonMs;
+    private final LocalDateTime notesFrom;
+    private final long notesFingerprint;
+    private final long alignToleranceMs;
+    /** Predicted glucose at a minute offset from the anchor; called with non-decreasing minutes. */
+    private final IntToDoubleFunction prediction;
+
+    // Consumed readings still in the window, oldest first, addressed by absolute sequence number
+    // (ring index = seq & mask). Unaligned readings hold NaN.
+    private long[] times = new long[64];
+    private double[] resid = new double[64];
+    private long headSeq;
+    private long tailSeq;
+    private long lastReadingMs = Long.MIN_VALUE;
+
+    // Aligned residuals in ascending order (for median / MAD).
+    private double[] sorted = new double[64];
+    private int aligned;
+
+    // Maximal same-sign runs of aligned residuals, oldest first.
+    private final ArrayDeque<RunAcc> runs = new ArrayDeque<>();
+
+    UnloggedResidualStream(long anchorMs, int horizonMinutes, LocalDateTime notesFrom, long notesFingerprint,
+                           long alignToleranceMs, IntToDoubleFunction prediction) {
+        this.anchorMs = anchorMs;
+        this.horizonMs = horizonMinutes * 60_000L;
+        this.notesFrom = notesFrom;
+        this.notesFingerprint = notesFingerprint;
+        this.alignToleranceMs = alignToleranceMs;
+        this.prediction = prediction;
+    }
+
+    /** Start of the notes query the path was anchored on; later scans query from here. */
+    LocalDateTime notesFrom() {
+        return notesFrom;
+    }
+
+    /**
+     * Brings the stream up to date with {@code window} (the readings in {@code [startMs, now]}): evicts
+     * readings before {@code startMs} and appends the new ones. Returns false, leaving the stream
+     * unusable, when it cannot continue on its anchor.
+     */
+    synchronized boolean advance(CgmSeries window, long startMs, long notesFingerprint) {
+        if (notesFingerprint != this.notesFingerprint) return false;
+        if (!window.isEmpty() && window.timeAt(window.size() - 1) > anchorMs + horizonMs) return false;
+
+        while (headSeq < tailSeq && times[index(headSeq)] < startMs) evictHead();
+        if (lastReadingMs != Long.MIN_VALUE && window.range(startMs, lastReadingMs).size() != tailSeq - headSeq) {
+            return false;   // back-filled or deleted readings behind the cursor
+        }
+
+        CgmSeries fresh = lastReadingMs == Long.MIN_VALUE ? window : window.range(lastReadingMs + 1, Long.MAX_VALUE);
+        for (int i = 0; i < fresh.size(); i++) append(fresh.timeAt(i), fresh.sgvAt(i));
+        return true;
+    }
+
+    /** Aligned residuals currently in the window. */
+    synchronized int alignedCount() {
+        return aligned;
+    }
+
+    /** {@link UnloggedEventDetectionService#robustScale} of the residuals in the window. */
+    synchronized double robustScale() {
+        return robustScaleOfSorted(sorted, aligned);
+    }
+
+    /** As {@link UnloggedEventDetectionService#strongestRun}, over the runs in the window. */
+    synchronized Run strongestRun(double threshold, int persistenceMinutes) {
+        Run best = null;
+        for (RunAcc r : runs) {
+            long runStart = times[index(r.firstSeq)], runEnd = times[index(r.lastSeq)];
+            double durMin = (runEnd - runStart) / 60_000.0;
+            double mean = r.sum / r.count;
+            if (durMin >= persistenceMinutes && Math.abs(mean) >= threshold
+                    && (best == null || Math.abs(mean) > Math.abs(best.mean()))) {
+                best = new Run(runStart, runEnd, mean);
+            }
+        }
+        return best;
+    }
+
+    // -- Append / evict ----------------------------------------------------------
+
+    private void append(long t, int sgv) {
+        double r = Double.NaN;
+        long offset = t - anchorMs;
+        long k = Math.floorDiv(offset, POINT_STEP_MS);
+        long rem = offset - k * POINT_STEP_MS;
+        if (POINT_STEP_MS - rem < rem) k++;          // ties go to the earlier point
+        if (k < 1) k = 1;                            // the path has no point at the anchor itself
+        long pointOffset = Math.min(k * POINT_STEP_MS, horizonMs - Math.floorMod(horizonMs, POINT_STEP_MS));
+        if (Math.abs(offset - pointOffset) <= alignToleranceMs) {
+            r = sgv / MGDL_PER_MMOL - prediction.applyAsDouble((int) (pointOffset / 60_000L));
+        }
+
+        ensureCapacity();
+        long seq = tailSeq++;
+        times[index(seq)] = t;
+        resid[index(seq)] = r;
+        lastReadingMs = t;
+        if (Double.isNaN(r)) return;
+
+        insertSorted(r);
+        int sign = r >= 0 ? 1 : -1;
+        RunAcc last = runs.peekLast();
+        if (last != null && last.sign == sign) {
+            last.sum += r;
+            last.count++;
+            last.lastSeq = seq;
+        } else {
+            runs.addLast(new RunAcc(sign, r, seq));
+        }
+    }
+
+    private void evictHead() {
+        long seq = headSeq++;
+        double r = resid[index(seq)];
+        if (Double.isNaN(r)) return;
+
+        removeSorted(r);
+        RunAcc first = runs.peekFirst();
+        if (--first.count == 0) {
+            runs.pollFirst();
+            return;
+        }
+        first.sum -= r;
+        long next = seq + 1;
+        while (Double.isNaN(resid[index(next)])) next++;
+        first.firstSeq = next;
+    }
+
+    private int index(long seq) {
+        return (int) (seq & (times.length - 1));
+    }
+
+    private void ensureCapacity() {
+        int size = (int) (tailSeq - headSeq);
+        if (size < times.length) return;
+        long[] t = new long[times.length * 2];
+        double[] r = new double[times.length * 2];
+        for (long seq = headSeq; seq < tailSeq; seq++) {
+            t[(int) (seq & (t.length - 1))] = times[index(seq)];
+            r[(int) (seq & (r.length - 1))] = resid[index(seq)];
+        }
+        times = t;
+        resid = r;
+    }
+
+    private void insertSorted(double r) {
+        if (aligned == sorted.length) sorted = Arrays.copyOf(sorted, aligned * 2);
+        int pos = Arrays.binarySearch(sorted, 0, aligned, r);
+        if (pos < 0) pos = -pos - 1;
+        System.arraycopy(sorted, pos, sorted, pos + 1, aligned - pos);
+        sorted[pos] = r;
+        aligned++;
+    }
+
+    private void removeSorted(double r) {
+        int pos = Arrays.binarySearch(sorted, 0, aligned, r);
+        System.arraycopy(sorted, pos + 1, sorted, pos, aligned - pos - 1);
+        aligned--;
+    }
+
+    // -- Robust scale --------------------------------------------------------------
+
+    /**
+     * 1.4826*MAD floored at 0.3 mmol/L, for the first {@code n} values of {@code a} in ascending order.
+     * The absolute deviations from the median are two sorted sequences (walking down from the median
+     * and up from it), so their median is found by merging the two in O(n) without sorting.
+     */
+    static double robustScaleOfSorted(double[] a, int n) {
+        if (n == 0) return 0.3;
+        double median = (n % 2 == 1) ? a[n / 2] : 0.5 * (a[n / 2 - 1] + a[n / 2]);
+
+        int up = Arrays.binarySearch(a, 0, n, median);
+        if (up < 0) up = -up - 1;
+        while (up > 0 && a[up - 1] >= median) up--;
+        int down = up - 1;
+
+        // Walk the merged deviations up to the middle one(s).
+        int target = n / 2;
+        double prev = 0.0, cur = 0.0;
+        for (int k = 0; k <= target; k++) {
+            prev = cur;
+            if (down < 0 || (up < n && a[up] - median <= median - a[down])) cur = a[up++] - median;
+            else cur = median - a[down--];
+        }
+        double mad = (n % 2 == 1) ? cur : 0.5 * (prev + cur);
+        return Math.max(0.3, 1.4826 * mad);
+    }
+
+    /** Running sum of one maximal same-sign run; {@code firstSeq}/{@code lastSeq} are aligned readings. */
+    private static final class RunAcc {
+        final int sign;
+        double sum;
+        int count;
+        long firstSeq;
+        long lastSeq;
+
+        RunAcc(int sign, double r, long seq) {
+            this.sign = sign;
+            this.sum = r;
+            this.count = 1;
+            this.firstSeq = seq;
+            this.lastSeq = seq;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package che.glucosemonitorbe.service;
 
 import che.glucosemonitorbe.config.CacheConfig;
+import che.glucosemonitorbe.domain.CgmReading;
 import che.glucosemonitorbe.domain.User;
 import che.glucosemonitorbe.domain.UserDataSourceConfig;
 import che.glucosemonitorbe.dto.DataSourceConfigRequestDto;
@@ -103,6 +104,16 @@ public class UserDataSourceConfigService {
         return repository.findByUserIdAndDataSourceAndIsActiveTrue(userId, dataSource);
     }
 
+    /**
+     * Source whose stored readings the user's charts and glucose reports show: LibreLinkUp while a
+     * LibreLinkUp config is active - filtering out stale Nightscout data left from a previous
+     * configuration - otherwise null (readings of any source).
+     */
+    public CgmReading.DataSource chartDataSource(UUID userId) {
+        return getActiveConfigEntity(userId, UserDataSourceConfig.DataSourceType.LIBRE_LINK_UP).isPresent()
+                ? CgmReading.DataSource.LIBRE_LINK_UP : null;
+    }
+
     /**
      * Hot-path lookup for Nightscout credentials. Returns a small immutable record rather than
      * the JPA entity (no lazy fields to trip on outside the tx) and is cached in Caffeine for
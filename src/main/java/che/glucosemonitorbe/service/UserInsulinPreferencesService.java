@@ -28,6 +28,7 @@ public class UserInsulinPreferencesService {
 
     private final UserInsulinPreferencesRepository userInsulinPreferencesRepository;
     private final InsulinCatalogService insulinCatalogService;
+    private final PredictionResultCache predictionResultCache;
 
     @Transactional(readOnly = true)
     public UserInsulinPreferencesDTO getPreferences(UUID userId) {
@@ -91,6 +92,7 @@ public class UserInsulinPreferencesService {
         }
 
         UserInsulinPreferences saved = userInsulinPreferencesRepository.save(entity);
+        predictionResultCache.onSettingsChanged(userId);
         log.info("[insulin-prefs] persisted user={} injectionTime={}", userId, saved.getLongActingInjectionTime());
         return toDto(saved);
     }
@@ -20,6 +20,7 @@ import java.util.UUID;
 public class UserSettingsService {
 
     private final UserSettingsRepository userSettingsRepository;
+    private final PredictionResultCache predictionResultCache;
     
     /**
      * Get COB settings for a user, creating default settings if none exist
@@ -69,6 +70,7 @@ public class UserSettingsService {
         }
 
         UserSettings savedSettings = userSettingsRepository.save(settings);
+        predictionResultCache.onSettingsChanged(userId);
         log.info("saveUserSettings persisted for userId={}: isf={}, isfBreakfast={}, isfLunch={}, isfDinner={}, isfNight={}",
                 userId, savedSettings.getIsf(), savedSettings.getIsfBreakfast(),
                 savedSettings.getIsfLunch(), savedSettings.getIsfDinner(), savedSettings.getIsfNight());
@@ -82,6 +84,7 @@ public class UserSettingsService {
     @CacheEvict(value = "userSettings", key = "#userId")
     public void deleteUserSettings(UUID userId) {
         userSettingsRepository.deleteByUserId(userId);
+        predictionResultCache.onSettingsChanged(userId);
     }
     
     /**
@@ -1,6 +1,5 @@
 package che.glucosemonitorbe.service;
 
-import che.glucosemonitorbe.domain.CgmReading;
 import che.glucosemonitorbe.dto.VerificationEventDTO;
 import che.glucosemonitorbe.dto.VerificationSummaryDTO;
 import che.glucosemonitorbe.entity.Note;
@@ -8,6 +7,8 @@ import che.glucosemonitorbe.entity.UserSettings;
 import che.glucosemonitorbe.entity.VerificationEvent;
 import che.glucosemonitorbe.entity.VerificationSummary;
 import che.glucosemonitorbe.repository.*;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -50,7 +51,8 @@ public class VerificationService {
     private final VerificationSummaryRepository verificationSummaryRepository;
     private final NoteRepository noteRepository;
     private final UserSettingsRepository userSettingsRepository;
-    private final CgmReadingRepository cgmReadingRepository;
+    private final CgmSeriesCache cgmSeriesCache;
+    private final PredictionResultCache predictionResultCache;
 
     // -- Enqueue a note for verification --------------------------------------
 
@@ -233,6 +235,7 @@ public class VerificationService {
         if (summary.getSuggestedCarbRatio() != null) cob.setCarbRatio(summary.getSuggestedCarbRatio());
         if (summary.getSuggestedIsf()       != null) cob.setIsf(summary.getSuggestedIsf());
         userSettingsRepository.save(cob);
+        predictionResultCache.onSettingsChanged(userId);
 
         // Reset rolling window by marking completed events as stale (re-use skip status)
         List<VerificationEvent> completed = verificationEventRepository.findCompletedByUserId(userId);
@@ -286,12 +289,12 @@ public class VerificationService {
         // Rescue carbs turn the recovery into an apparent post-meal rise, which would push
         // the carb ratio UP - directly increasing future doses and causing more lows.
         LocalDateTime windowEnd = note.getTimestamp().plusHours(EVALUATION_WINDOW_HOURS);
-        List<CgmReading> windowReadings = cgmReadingRepository
-                .findByUserIdAndDateTimestampBetweenOrderByDateTimestampAsc(
-                        userId, toEpochMs(note.getTimestamp()), toEpochMs(windowEnd));
-        boolean hypo = windowReadings.stream()
-                .filter(r -> r.getSgv() != null)
-                .anyMatch(r -> (r.getSgv() / 18.0) < HYPO_THRESHOLD_MMOL);
+        CgmSeries windowReadings = cgmSeriesCache.range(
+                userId, toEpochMs(note.getTimestamp()), toEpochMs(windowEnd));
+        boolean hypo = false;
+        for (int i = 0; i < windowReadings.size() && !hypo; i++) {
+            hypo = (windowReadings.sgvAt(i) / 18.0) < HYPO_THRESHOLD_MMOL;
+        }
         if (hypo) return "hypo_in_window";
 
         // A carbs-only note in the window is a rescue treatment, not part of the meal.
@@ -325,22 +328,12 @@ public class VerificationService {
         // OrderByDateTimestampAsc page-0 query returns the OLDEST readings, so for any user with
         // more than a page of history the recent baseline/+2h target was never in range and every
         // event was wrongly skipped as cgm_data_unavailable.
-        List<CgmReading> readings = cgmReadingRepository
-                .findByUserIdAndDateTimestampBetweenOrderByDateTimestampAsc(
-                        userId, targetMs - CGM_MATCH_TOLERANCE_MS, targetMs + CGM_MATCH_TOLERANCE_MS);
-        CgmReading closest = null;
-        long minDiff = Long.MAX_VALUE;
-        for (CgmReading r : readings) {
-            if (r.getDateTimestamp() == null) continue;
-            long diff = Math.abs(r.getDateTimestamp() - targetMs);
-            if (diff < minDiff) {  // window already bounds to within tolerance
-                minDiff = diff;
-                closest = r;
-            }
-        }
-        if (closest == null || closest.getSgv() == null) return null;
+        CgmSeries readings = cgmSeriesCache.range(
+                userId, targetMs - CGM_MATCH_TOLERANCE_MS, targetMs + CGM_MATCH_TOLERANCE_MS);
+        int closest = readings.nearestIndex(targetMs, CGM_MATCH_TOLERANCE_MS);
+        if (closest < 0) return null;
         // sgv is mg/dL - convert to mmol/L
-        return round2(closest.getSgv() / 18.0);
+        return round2(readings.sgvAt(closest) / 18.0);
     }
 
     private Long toEpochMs(LocalDateTime ldt) {
@@ -0,0 +1,14 @@
+package che.glucosemonitorbe.service.cgm;
+
+import java.util.UUID;
+
+/**
+ * Published by {@link che.glucosemonitorbe.service.CgmReadingService#storeChartData} when a sync
+ * inserted new readings for a user. Listeners that need the rows should use
+ * {@code @TransactionalEventListener} so they run after the insert commits.
+ *
+ * @param userId            owner of the readings
+ * @param inserted          number of newly inserted readings
+ * @param latestTimestampMs newest inserted reading (epoch ms)
+ */
+public record CgmReadingsStoredEvent(UUID userId, int inserted, long latestTimestampMs) {}
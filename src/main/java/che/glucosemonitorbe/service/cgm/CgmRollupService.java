@@ -0,0 +1,257 @@
+package che.glucosemonitorbe.service.cgm;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.GlucoseReportDTO;
+import che.glucosemonitorbe.repository.CgmReadingRepository;
+import che.glucosemonitorbe.repository.CgmRollupRepository;
+import che.glucosemonitorbe.service.UserDataSourceConfigService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Incrementally maintained hourly and daily {@link GlucoseRollup}s per user and data source, and the
+ * long-range views built on them: 7/14/90-day summaries (mean, SD, CV, GMI, time in / below / above
+ * range, percentiles), the ambulatory glucose profile and daily means.
+ *
+ * <p>{@link che.glucosemonitorbe.service.CgmReadingService#storeChartData} feeds {@link #onStored}
+ * with the readings it actually inserted, inside its transaction, so the rollups commit or roll back
+ * with the readings and a re-synced duplicate is never counted twice. The report merges at most
+ * {@code 24 * days} hourly rows (2160 for 90 days) whatever the number of readings; the summary reads
+ * daily rows for the whole UTC days of its window and hourly rows only for the partial days at either
+ * end.</p>
+ *
+ * <p>Reads are restricted to the source the user's charts show
+ * ({@link UserDataSourceConfigService#chartDataSource}); with no source configured every source is
+ * merged, as the chart does. Without the PostgreSQL rollup store (H2, or
+ * {@code app.cgm-rollups.enabled: false}) the same hourly buckets are built from the raw readings on
+ * each query. Hours are UTC hours mapped to {@code zone}, so in zones with a half-hour offset the AGP
+ * hours are shifted by those 30 minutes.</p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CgmRollupService {
+
+    public static final int MAX_DAYS = 90;
+    static final long HOUR_MS = 3_600_000L;
+    static final long DAY_MS = 24 * HOUR_MS;
+
+    private static final double[] AGP_QUANTILES = {0.05, 0.25, 0.50, 0.75, 0.95};
+
+    private final CgmRollupRepository repository;
+    private final CgmSeriesCache seriesCache;
+    private final CgmReadingRepository readingRepository;
+    private final UserDataSourceConfigService dataSourceConfigService;
+
+    // -- Maintenance -----------------------------------------------------------
+
+    /**
+     * Adds newly inserted readings to their source's hourly and daily rollups; call inside the inserting
+     * transaction. Rows are merged source by source, hours before days, so concurrent syncs of one user
+     * lock them in the same order.
+     */
+    public void onStored(UUID userId, List<CgmReading> inserted) {
+        if (inserted.isEmpty() || !repository.isAvailable()) return;
+        forEachBucketSet(inserted,
+                (source, bucketMs, buckets) -> repository.merge(userId, source, bucketMs, buckets));
+    }
+
+    /**
+     * Takes deleted readings back out of their source's hourly and daily rollups - stored readings
+     * replaced because their upstream id was re-sent with another timestamp; call inside the deleting
+     * transaction. The buckets' min/max are not narrowed, so they stay bounds rather than exact values.
+     */
+    public void onRemoved(UUID userId, List<CgmReading> removed) {
+        if (removed.isEmpty() || !repository.isAvailable()) return;
+        forEachBucketSet(removed,
+                (source, bucketMs, buckets) -> repository.subtract(userId, source, bucketMs, buckets));
+    }
+
+    @FunctionalInterface
+    private interface BucketSetSink {
+        void accept(CgmReading.DataSource source, long bucketMs, SortedMap<Long, GlucoseRollup> buckets);
+    }
+
+    /** Groups readings by source into hourly and daily buckets and hands them over source by source, hours first. */
+    private static void forEachBucketSet(List<CgmReading> readings, BucketSetSink sink) {
+        Map<CgmReading.DataSource, SortedMap<Long, GlucoseRollup>> hours = new EnumMap<>(CgmReading.DataSource.class);
+        Map<CgmReading.DataSource, SortedMap<Long, GlucoseRollup>> days = new EnumMap<>(CgmReading.DataSource.class);
+        for (CgmReading r : readings) {
+            if (r.getDateTimestamp() == null || r.getSgv() == null || r.getDataSource() == null) continue;
+            hours.computeIfAbsent(r.getDataSource(), s -> new TreeMap<>())
+                    .computeIfAbsent(hourOf(r.getDateTimestamp()), h -> new GlucoseRollup()).add(r.getSgv());
+            days.computeIfAbsent(r.getDataSource(), s -> new TreeMap<>())
+                    .computeIfAbsent(dayOf(r.getDateTimestamp()), d -> new GlucoseRollup()).add(r.getSgv());
+        }
+        hours.forEach((source, buckets) -> {
+            sink.accept(source, HOUR_MS, buckets);
+            sink.accept(source, DAY_MS, days.get(source));
+        });
+    }
+
+    /** Drops the user's rollups together with their readings. */
+    public void onCleared(UUID userId) {
+        if (!repository.isAvailable()) return;
+        int deleted = repository.deleteByUserId(userId);
+        log.debug("Deleted {} CGM rollup buckets for user {}", deleted, userId);
+    }
+
+    // -- Queries ---------------------------------------------------------------
+
+    /** Summary, AGP and daily means over the last {@code days} days (1..{@value #MAX_DAYS}). */
+    public GlucoseReportDTO report(UUID userId, int days, ZoneId zone) {
+        return report(userId, days, zone, System.currentTimeMillis());
+    }
+
+    /** Whole-window statistics over the last {@code days} days (1..{@value #MAX_DAYS}). */
+    public GlucoseReportDTO.Summary summary(UUID userId, int days) {
+        return summary(userId, days, System.currentTimeMillis());
+    }
+
+    GlucoseReportDTO.Summary summary(UUID userId, int days, long nowMs) {
+        long toMs = windowEnd(nowMs);
+        long fromMs = windowStart(toMs, days);
+        CgmReading.DataSource source = dataSourceConfigService.chartDataSource(userId);
+        GlucoseRollup total = new GlucoseRollup();
+        long firstDay = dayOf(fromMs + DAY_MS - 1);
+        long lastDay = dayOf(toMs);
+        if (!repository.isAvailable() || firstDay >= lastDay) {
+            for (GlucoseRollup.Bucket h : hourly(userId, source, fromMs, toMs)) total.merge(h.rollup());
+            return toSummary(total);
+        }
+        for (GlucoseRollup.Bucket h : repository.find(userId, source, HOUR_MS, fromMs, firstDay)) total.merge(h.rollup());
+        for (GlucoseRollup.Bucket d : repository.find(userId, source, DAY_MS, firstDay, lastDay)) total.merge(d.rollup());
+        for (GlucoseRollup.Bucket h : repository.find(userId, source, HOUR_MS, lastDay, toMs)) total.merge(h.rollup());
+        return toSummary(total);
+    }
+
+    GlucoseReportDTO report(UUID userId, int days, ZoneId zone, long nowMs) {
+        long toMs = windowEnd(nowMs);
+        long fromMs = windowStart(toMs, days);
+        CgmReading.DataSource source = dataSourceConfigService.chartDataSource(userId);
+
+        GlucoseRollup total = new GlucoseRollup();
+        GlucoseRollup[] byHour = new GlucoseRollup[24];
+        Map<LocalDate, GlucoseRollup> byDate = new TreeMap<>();
+        for (GlucoseRollup.Bucket h : hourly(userId, source, fromMs, toMs)) {
+            ZonedDateTime local = Instant.ofEpochMilli(h.startMs()).atZone(zone);
+            total.merge(h.rollup());
+            int hour = local.getHour();
+            if (byHour[hour] == null) byHour[hour] = new GlucoseRollup();
+            byHour[hour].merge(h.rollup());
+            byDate.computeIfAbsent(local.toLocalDate(), d -> new GlucoseRollup()).merge(h.rollup());
+        }
+
+        List<GlucoseReportDTO.AgpHour> agp = new ArrayList<>(24);
+        for (int hour = 0; hour < 24; hour++) {
+            GlucoseRollup r = byHour[hour];
+            if (r == null) continue;
+            double[] q = quantiles(r);
+            agp.add(new GlucoseReportDTO.AgpHour(hour, r.count(), mmol(r.mean()), q[0], q[1], q[2], q[3], q[4]));
+        }
+        List<GlucoseReportDTO.Day> daily = new ArrayList<>(byDate.size());
+        byDate.forEach((date, r) -> daily.add(new GlucoseReportDTO.Day(date, r.count(), mmol(r.mean()),
+                percent(r.below(), r.count()), percent(r.inRange(), r.count()), percent(r.above(), r.count()))));
+
+        return new GlucoseReportDTO(days, zone.getId(), fromMs, toMs, toSummary(total), agp, daily);
+    }
+
+    /**
+     * Hourly buckets of {@code source} (null = every source) starting in {@code [fromMs, toMs)}: stored
+     * rollups, or built from raw readings.
+     */
+    List<GlucoseRollup.Bucket> hourly(UUID userId, CgmReading.DataSource source, long fromMs, long toMs) {
+        if (repository.isAvailable()) return repository.find(userId, source, HOUR_MS, fromMs, toMs);
+
+        CgmSeries series = source == null
+                ? seriesCache.range(userId, fromMs, toMs - 1)
+                : CgmSeries.of(readingRepository
+                        .findByUserIdAndDataSourceAndDateTimestampGreaterThanOrderByDateTimestampAsc(
+                                userId, source, fromMs - 1)
+                        .stream().filter(r -> r.getDateTimestamp() < toMs).toList());
+        List<GlucoseRollup.Bucket> buckets = new ArrayList<>();
+        GlucoseRollup current = null;
+        long currentHour = Long.MIN_VALUE;
+        for (int i = 0; i < series.size(); i++) {
+            long hour = hourOf(series.timeAt(i));
+            if (hour != currentHour) {
+                current = new GlucoseRollup();
+                currentHour = hour;
+                buckets.add(new GlucoseRollup.Bucket(hour, current));
+            }
+            current.add(series.sgvAt(i));
+        }
+        return buckets;
+    }
+
+    // -- Helpers ---------------------------------------------------------------
+
+    static long hourOf(long epochMs) {
+        return Math.floorDiv(epochMs, HOUR_MS) * HOUR_MS;
+    }
+
+    static long dayOf(long epochMs) {
+        return Math.floorDiv(epochMs, DAY_MS) * DAY_MS;
+    }
+
+    /** End (exclusive) of the UTC hour holding {@code nowMs}, so the current hour's readings are included. */
+    private static long windowEnd(long nowMs) {
+        return hourOf(nowMs) + HOUR_MS;
+    }
+
+    private static long windowStart(long toMs, int days) {
+        if (days < 1 || days > MAX_DAYS) {
+            throw new IllegalArgumentException("days must be between 1 and " + MAX_DAYS + ", was " + days);
+        }
+        return toMs - days * 24 * HOUR_MS;
+    }
+
+    private static GlucoseReportDTO.Summary toSummary(GlucoseRollup r) {
+        if (r.isEmpty()) return new GlucoseReportDTO.Summary(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        double meanMgdl = r.mean();
+        double[] q = quantiles(r);
+        return new GlucoseReportDTO.Summary(
+                r.count(),
+                mmol(meanMgdl),
+                mmol(r.sd()),
+                round1(100.0 * r.sd() / meanMgdl),
+                round1(3.31 + 0.02392 * meanMgdl),
+                mmol(r.min()),
+                mmol(r.max()),
+                percent(r.below(), r.count()),
+                percent(r.inRange(), r.count()),
+                percent(r.above(), r.count()),
+                q[0], q[1], q[2], q[3], q[4]);
+    }
+
+    private static double[] quantiles(GlucoseRollup r) {
+        double[] q = new double[AGP_QUANTILES.length];
+        for (int i = 0; i < q.length; i++) q[i] = mmol(r.percentile(AGP_QUANTILES[i]));
+        return q;
+    }
+
+    private static double mmol(double mgdl) {
+        return round1(mgdl / GlucoseWindowStats.MGDL_PER_MMOL);
+    }
+
+    private static double percent(int part, int count) {
+        return count > 0 ? round1(100.0 * part / count) : 0.0;
+    }
+
+    private static double round1(double value) {
+        return Math.round(value * 10.0) / 10.0;
+    }
+}
@@ -0,0 +1,143 @@
+package che.glucosemonitorbe.service.cgm;
+
+import che.glucosemonitorbe.domain.CgmReading;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable, time-ordered columnar view of one user's CGM readings: epoch-ms timestamps, raw
+ * {@code sgv} values (as stored - mg/dL for Nightscout/LibreLinkUp) and trend codes in parallel
+ * primitive arrays, instead of a list of {@link CgmReading} entities with eleven boxed fields.
+ *
+ * <p>Holds one reading per timestamp (a reading stored from two sources at the same instant is kept
+ * once) and only readings that have both a timestamp and an sgv. A null trend is stored as 0, the
+ * same "no arrow" value the sync writes. Indices passed to the accessors are relative to this view.
+ * Range queries return views over the same arrays, so slicing never copies.</p>
+ */
+public final class CgmSeries {
+
+    public static final CgmSeries EMPTY = new CgmSeries(new long[0], new short[0], new byte[0], 0, 0);
+
+    private final long[] t;
+    private final short[] sgv;
+    private final byte[] trend;
+    private final int from;
+    private final int to;
+
+    CgmSeries(long[] t, short[] sgv, byte[] trend, int from, int to) {
+        this.t = t;
+        this.sgv = sgv;
+        this.trend = trend;
+        this.from = from;
+        this.to = to;
+    }
+
+    /** Columnar copy of {@code readings} (any order); readings without timestamp or sgv are skipped. */
+    public static CgmSeries of(List<CgmReading> readings) {
+        List<CgmReading> usable = new ArrayList<>(readings.size());
+        for (CgmReading r : readings) {
+            if (r.getDateTimestamp() != null && r.getSgv() != null) usable.add(r);
+        }
+        usable.sort(Comparator.comparingLong(CgmReading::getDateTimestamp));
+
+        long[] t = new long[usable.size()];
+        short[] sgv = new short[usable.size()];
+        byte[] trend = new byte[usable.size()];
+        int n = 0;
+        for (CgmReading r : usable) {
+            if (n > 0 && t[n - 1] == r.getDateTimestamp()) continue;
+            t[n] = r.getDateTimestamp();
+            sgv[n] = toSgv(r.getSgv());
+            trend[n] = toTrend(r.getTrend());
+            n++;
+        }
+        return new CgmSeries(t, sgv, trend, 0, n);
+    }
+
+    static short toSgv(int sgv) {
+        return (short) Math.clamp(sgv, 0, Short.MAX_VALUE);
+    }
+
+    static byte toTrend(Integer trend) {
+        return trend != null ? (byte) Math.clamp(trend, 0, Byte.MAX_VALUE) : 0;
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    public boolean isEmpty() {
+        return to == from;
+    }
+
+    /** Epoch-ms timestamp of the {@code i}-th reading. */
+    public long timeAt(int i) {
+        return t[from + Objects.checkIndex(i, size())];
+    }
+
+    /** Raw stored sgv of the {@code i}-th reading. */
+    public int sgvAt(int i) {
+        return sgv[from + Objects.checkIndex(i, size())];
+    }
+
+    /** Trend code of the {@code i}-th reading (0 = none). */
+    public int trendAt(int i) {
+        return trend[from + Objects.checkIndex(i, size())];
+    }
+
+    /** Readings with {@code fromMs <= t <= toMs}, as a view. */
+    public CgmSeries range(long fromMs, long toMs) {
+        if (fromMs > toMs) return EMPTY;
+        int lo = lowerBound(fromMs);
+        int hi = toMs == Long.MAX_VALUE ? to : lowerBound(toMs + 1);
+        return lo == from && hi == to ? this : new CgmSeries(t, sgv, trend, lo, hi);
+    }
+
+    /**
+     * Index of the reading nearest {@code targetMs} within {@code toleranceMs}, or -1. Binary search;
+     * on an exact tie the earlier reading wins.
+     */
+    public int nearestIndex(long targetMs, long toleranceMs) {
+        if (isEmpty()) return -1;
+        int hi = lowerBound(targetMs);
+        int best = hi;
+        if (hi == to || (hi > from && targetMs - t[hi - 1] <= t[hi] - targetMs)) best = hi - 1;
+        return Math.abs(t[best] - targetMs) <= toleranceMs ? best - from : -1;
+    }
+
+    /**
+     * Decimated copy keeping the first reading of every {@code bucketMs}-aligned bucket - actual sensor
+     * values at actual times, e.g. one point per 15 min for a multi-day chart.
+     */
+    public CgmSeries downsample(long bucketMs) {
+        if (bucketMs <= 0) throw new IllegalArgumentException("bucketMs must be positive");
+        long[] dt = new long[size()];
+        short[] ds = new short[size()];
+        byte[] dtr = new byte[size()];
+        int n = 0;
+        long lastBucket = Long.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            long bucket = Math.floorDiv(t[i], bucketMs);
+            if (bucket == lastBucket) continue;
+            lastBucket = bucket;
+            dt[n] = t[i];
+            ds[n] = sgv[i];
+            dtr[n] = trend[i];
+            n++;
+        }
+        return new CgmSeries(dt, ds, dtr, 0, n);
+    }
+
+    /** First absolute index in {@code [from, to)} with {@code t >= ms}, or {@code to}. */
+    private int lowerBound(long ms) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (t[mid] < ms) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+}
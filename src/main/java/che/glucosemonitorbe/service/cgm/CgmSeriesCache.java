@@ -0,0 +1,232 @@
+package che.glucosemonitorbe.service.cgm;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.repository.CgmReadingRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Per-user in-memory CGM series for the analytic and background services (digital-twin
+ * calibration, unlogged-event scan, verification, ISF profiling, glucose alerting), so each of them reads
+ * {@code (epochMs, sgv, trend)} columns by binary search instead of re-querying
+ * {@code cgm_readings} and materialising {@link CgmReading} entities.
+ *
+ * <h3>Coverage</h3>
+ * <p>A user's series is loaded on first use with one column projection covering the last
+ * {@code app.cgm-series-cache.window-days} days, and is kept current by
+ * {@link che.glucosemonitorbe.service.CgmReadingService#storeChartData}, which appends each batch
+ * after its transaction commits. Queries reaching further back than a series covers fall through to
+ * a bounded repository query (not cached), so callers always get the complete range.</p>
+ *
+ * <h3>Bounds</h3>
+ * <p>Entries are weighed by their number of readings (about 11 bytes each) and evicted LRU-style
+ * once {@code app.cgm-series-cache.max-points} is exceeded, or after
+ * {@code app.cgm-series-cache.expire-after-access-minutes} without a read. Deletes
+ * ({@code clearChartData}, retention cleanup) evict after commit.</p>
+ *
+ * <p>Rows written to {@code cgm_readings} without going through {@code CgmReadingService} are not
+ * seen until the user's entry is evicted.</p>
+ */
+@Slf4j
+@Component
+public class CgmSeriesCache {
+
+    private final CgmReadingRepository repository;
+    private final long windowMs;
+    private final Cache<UUID, UserSeries> cache;
+
+    public CgmSeriesCache(CgmReadingRepository repository,
+                          @Value("${app.cgm-series-cache.window-days:35}") int windowDays,
+                          @Value("${app.cgm-series-cache.max-points:2000000}") long maxPoints,
+                          @Value("${app.cgm-series-cache.expire-after-access-minutes:720}") long expireAfterAccessMinutes) {
+        this.repository = repository;
+        this.windowMs = Duration.ofDays(windowDays).toMillis();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxPoints)
+                .weigher((UUID userId, UserSeries series) -> series.weight())
+                .expireAfterAccess(Duration.ofMinutes(expireAfterAccessMinutes))
+                .recordStats()
+                .build();
+    }
+
+    // -- Queries ---------------------------------------------------------------
+
+    /** The user's readings with {@code fromMs <= t <= toMs} (epoch ms), oldest first. */
+    public CgmSeries range(UUID userId, long fromMs, long toMs) {
+        UserSeries series = cache.getIfPresent(userId);
+        if (series == null && fromMs >= System.currentTimeMillis() - windowMs) {
+            series = cache.get(userId, this::load);
+        }
+        if (series != null && fromMs >= series.coveredFromMs) {
+            return series.snapshot().range(fromMs, toMs);
+        }
+        return CgmSeries.of(repository.findByUserIdAndDateTimestampBetweenOrderByDateTimestampAsc(
+                userId, fromMs, toMs));
+    }
+
+    /** The user's readings strictly newer than {@code afterMs} (epoch ms), oldest first. */
+    public CgmSeries since(UUID userId, long afterMs) {
+        return range(userId, afterMs + 1, Long.MAX_VALUE);
+    }
+
+    // -- Write-path hooks (applied after the surrounding transaction commits) ---
+
+    /** Newly inserted readings for {@code userId}; appended only if the user's series is cached. */
+    public void onStored(UUID userId, List<CgmReading> inserted) {
+        if (inserted.isEmpty()) return;
+        CgmSeries batch = CgmSeries.of(inserted);
+        afterCommit(() -> cache.asMap().computeIfPresent(userId, (id, series) -> series.append(batch)));
+    }
+
+    /** A stored reading's trend was back-filled (only applied where the cached trend is still 0). */
+    public void onTrendBackfilled(UUID userId, long timestampMs, int trend) {
+        afterCommit(() -> {
+            UserSeries series = cache.getIfPresent(userId);
+            if (series != null) series.backfillTrend(timestampMs, CgmSeries.toTrend(trend));
+        });
+    }
+
+    /** Drops the user's series (their readings were deleted). */
+    public void evict(UUID userId) {
+        afterCommit(() -> cache.invalidate(userId));
+    }
+
+    /** Drops every series (bulk deletes such as retention cleanup). */
+    public void evictAll() {
+        afterCommit(cache::invalidateAll);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // -- Loading ---------------------------------------------------------------
+
+    private UserSeries load(UUID userId) {
+        long coveredFromMs = System.currentTimeMillis() - windowMs;
+        List<Object[]> rows = repository.findSeriesColumns(userId, coveredFromMs);
+        long[] t = new long[rows.size()];
+        short[] sgv = new short[rows.size()];
+        byte[] trend = new byte[rows.size()];
+        int n = 0;
+        for (Object[] row : rows) {
+            long ts = ((Number) row[0]).longValue();
+            if (n > 0 && t[n - 1] == ts) continue;
+            t[n] = ts;
+            sgv[n] = CgmSeries.toSgv(((Number) row[1]).intValue());
+            trend[n] = CgmSeries.toTrend(row[2] != null ? ((Number) row[2]).intValue() : null);
+            n++;
+        }
+        log.debug("CGM series for user {}: loaded {} readings since {}", userId, n, coveredFromMs);
+        return new UserSeries(coveredFromMs, t, sgv, trend, n);
+    }
+
+    /**
+     * One user's growable columns. Writers hold the monitor; readers take the volatile
+     * {@link #snapshot} and never lock. Appends past the tail write into slots no published snapshot
+     * covers, and anything else (growth, out-of-order merges) builds fresh arrays, so a snapshot never
+     * changes under its reader - except for the in-place trend back-fill, which only moves a trend code
+     * from 0 to the real arrow.
+     */
+    private static final class UserSeries {
+        final long coveredFromMs;
+        private long[] t;
+        private short[] sgv;
+        private byte[] trend;
+        private int size;
+        private volatile CgmSeries snapshot;
+
+        UserSeries(long coveredFromMs, long[] t, short[] sgv, byte[] trend, int size) {
+            this.coveredFromMs = coveredFromMs;
+            this.t = t;
+            this.sgv = sgv;
+            this.trend = trend;
+            this.size = size;
+            this.snapshot = new CgmSeries(t, sgv, trend, 0, size);
+        }
+
+        CgmSeries snapshot() {
+            return snapshot;
+        }
+
+        int weight() {
+            return Math.max(1, t.length);
+        }
+
+        synchronized UserSeries append(CgmSeries batch) {
+            int n = batch.size();
+            if (n == 0) return this;
+            if (size == 0 || batch.timeAt(0) > t[size - 1]) {
+                if (size + n > t.length) {
+                    int capacity = Math.max(size + n, t.length + (t.length >> 1) + 16);
+                    t = Arrays.copyOf(t, capacity);
+                    sgv = Arrays.copyOf(sgv, capacity);
+                    trend = Arrays.copyOf(trend, capacity);
+                }
+                for (int i = 0; i < n; i++) {
+                    t[size + i] = batch.timeAt(i);
+                    sgv[size + i] = (short) batch.sgvAt(i);
+                    trend[size + i] = (byte) batch.trendAt(i);
+                }
+                size += n;
+            } else {
+                mergeOutOfOrder(batch);
+            }
+            snapshot = new CgmSeries(t, sgv, trend, 0, size);
+            return this;
+        }
+
+        /** Back-filled history: two-way merge into fresh arrays, keeping existing readings on ties. */
+        private void mergeOutOfOrder(CgmSeries batch) {
+            int capacity = size + batch.size();
+            long[] mt = new long[capacity];
+            short[] ms = new short[capacity];
+            byte[] mtr = new byte[capacity];
+            int i = 0, j = 0, k = 0;
+            while (i < size || j < batch.size()) {
+                boolean takeOld = j == batch.size() || (i < size && t[i] <= batch.timeAt(j));
+                if (takeOld) {
+                    if (j < batch.size() && t[i] == batch.timeAt(j)) j++;
+                    mt[k] = t[i];
+                    ms[k] = sgv[i];
+                    mtr[k] = trend[i];
+                    i++;
+                } else {
+                    mt[k] = batch.timeAt(j);
+                    ms[k] = (short) batch.sgvAt(j);
+                    mtr[k] = (byte) batch.trendAt(j);
+                    j++;
+                }
+                k++;
+            }
+            t = mt;
+            sgv = ms;
+            trend = mtr;
+            size = k;
+        }
+
+        synchronized void backfillTrend(long timestampMs, byte newTrend) {
+            int idx = Arrays.binarySearch(t, 0, size, timestampMs);
+            if (idx >= 0 && trend[idx] == 0) trend[idx] = newTrend;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package che.glucosemonitorbe.service.cgm;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.NightscoutEntryDto;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One user's normalised readings from one sync, as queued by {@link CgmWriteBehindBuffer} and written
+ * by {@link che.glucosemonitorbe.service.CgmReadingService#storeChartDataGroup}.
+ *
+ * @param userId     owner of the readings
+ * @param entries    readings in Nightscout entry shape
+ * @param dataSource origin of the readings
+ */
+public record CgmWriteBatch(UUID userId, List<NightscoutEntryDto> entries, CgmReading.DataSource dataSource) {}
@@ -0,0 +1,318 @@
+package che.glucosemonitorbe.service.cgm;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.NightscoutEntryDto;
+import che.glucosemonitorbe.service.CgmReadingService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional group-commit stage in front of {@link CgmReadingService#storeChartData} for the sync
+ * schedulers. With thousands of users syncing in the same tick, each user's batch is queued instead of
+ * committed on its own, and a flusher thread writes the queue as multi-user groups - one transaction
+ * per group - once {@code max-batch-rows} readings are waiting or the oldest has waited
+ * {@code max-latency-ms}.
+ *
+ * <h3>Durability</h3>
+ * <p>With {@code await-commit: true} (the default) {@link #store} returns only after the group holding
+ * the caller's readings has committed, so the schedulers' "new data" bookkeeping still follows a
+ * durable write - the caller just shares the commit. With {@code false} it returns once queued, and a
+ * crash can lose up to one latency window of readings (re-fetched by the next sync, since upstreams
+ * keep history). On-demand syncs pass {@code urgent} and flush the queue on their own thread.</p>
+ *
+ * <p>A waiting caller gives up after {@code await-timeout-ms}: a batch still in the queue is taken back
+ * and written by the caller, one already being written fails the call (the sync is retried and the
+ * upsert is idempotent). If the flusher thread dies on an {@link Error}, every queued batch fails and
+ * later batches are written by their callers.</p>
+ *
+ * <h3>Backpressure</h3>
+ * <p>The queue is a lock-free {@link ConcurrentLinkedQueue} bounded by {@code capacity-rows}; a batch
+ * that does not fit is written directly by its caller in its own transaction (like the
+ * {@code chartPersistExecutor}'s caller-runs policy), so ingestion slows down instead of dropping data.
+ * A failing group is retried one batch per transaction so one user's bad data cannot fail the others.</p>
+ */
+@Slf4j
+@Component
+public class CgmWriteBehindBuffer {
+
+    private record Pending(CgmWriteBatch batch, long enqueuedNanos, CompletableFuture<Void> done) {}
+
+    private final CgmReadingService cgmReadingService;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+    private final boolean enabled;
+    private final int maxBatchRows;
+    private final long maxLatencyNanos;
+    private final int capacityRows;
+    private final boolean awaitCommit;
+    private final long awaitTimeoutMs;
+
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedRows = new AtomicInteger();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean flusherDead;
+    private volatile Thread flusher;
+    private Timer flushTimer;
+
+    public CgmWriteBehindBuffer(CgmReadingService cgmReadingService,
+                                ObjectProvider<MeterRegistry> meterRegistryProvider,
+                                @Value("${app.cgm-write-behind.enabled:false}") boolean enabled,
+                                @Value("${app.cgm-write-behind.max-batch-rows:2000}") int maxBatchRows,
+                                @Value("${app.cgm-write-behind.max-latency-ms:200}") long maxLatencyMs,
+                                @Value("${app.cgm-write-behind.capacity-rows:50000}") int capacityRows,
+                                @Value("${app.cgm-write-behind.await-commit:true}") boolean awaitCommit,
+                                @Value("${app.cgm-write-behind.await-timeout-ms:30000}") long awaitTimeoutMs) {
+        this.cgmReadingService = cgmReadingService;
+        this.meterRegistryProvider = meterRegistryProvider;
+        this.enabled = enabled;
+        this.maxBatchRows = Math.max(1, maxBatchRows);
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, maxLatencyMs));
+        this.capacityRows = Math.max(this.maxBatchRows, capacityRows);
+        this.awaitCommit = awaitCommit;
+        this.awaitTimeoutMs = Math.max(1, awaitTimeoutMs);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) return;
+        registerMetrics(meterRegistryProvider.getIfAvailable());
+        running = true;
+        flusher = Thread.ofPlatform().daemon().name("cgm-write-behind").start(this::runFlusher);
+        log.info("CGM write-behind enabled (max-batch-rows={}, max-latency-ms={}, capacity-rows={}, await-commit={}, "
+                        + "await-timeout-ms={})",
+                maxBatchRows, TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos), capacityRows, awaitCommit,
+                awaitTimeoutMs);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever was queued after the flusher's last pass is written before the context closes.
+        flush();
+    }
+
+    /** True when syncs should go through {@link #store} instead of {@code storeChartData}. */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues one user's readings for the next group commit. {@code urgent} (on-demand sync) flushes the
+     * queue on the calling thread and waits for it; otherwise the call waits for the group commit only
+     * when {@code await-commit} is set. Write failures surface here when the caller waits.
+     */
+    public void store(UUID userId, List<NightscoutEntryDto> entries, CgmReading.DataSource dataSource,
+                      boolean urgent) {
+        if (entries == null || entries.isEmpty()) return;
+        Pending pending = enqueue(new CgmWriteBatch(userId, entries, dataSource));
+        if (pending == null) return;
+        if (urgent) flush();
+        if (urgent || awaitCommit) await(pending);
+    }
+
+    /** Writes everything queued so far on the calling thread, in groups of at most {@code max-batch-rows}. */
+    public void flush() {
+        while (flushOnce() > 0) {
+            // keep draining
+        }
+    }
+
+    CompletableFuture<Void> submit(CgmWriteBatch batch) {
+        Pending pending = enqueue(batch);
+        return pending != null ? pending.done() : CompletableFuture.completedFuture(null);
+    }
+
+    /** Queues {@code batch}, or writes it on the calling thread and returns {@code null} when it cannot be queued. */
+    private Pending enqueue(CgmWriteBatch batch) {
+        int rows = batch.entries().size();
+        if (flusherDead || queuedRows.get() + rows > capacityRows) {
+            writeByCaller(batch);
+            return null;
+        }
+        Pending pending = new Pending(batch, System.nanoTime(), new CompletableFuture<>());
+        queue.add(pending);
+        int queued = queuedRows.addAndGet(rows);
+        // Wake the flusher when the queue was empty (to start the latency clock) or a group is full.
+        if (queued == rows || queued >= maxBatchRows) LockSupport.unpark(flusher);
+        return pending;
+    }
+
+    private void await(Pending pending) {
+        try {
+            pending.done().get(awaitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new CompletionException(e.getCause());
+        } catch (TimeoutException e) {
+            // remove() and the flusher's poll() cannot both win, so a batch is never written twice here.
+            if (queue.remove(pending)) {
+                queuedRows.addAndGet(-pending.batch().entries().size());
+                log.warn("CGM write-behind group commit took over {} ms, writing user {}'s batch directly",
+                        awaitTimeoutMs, pending.batch().userId());
+                writeByCaller(pending.batch());
+                pending.done().complete(null);
+                return;
+            }
+            throw new IllegalStateException("CGM write-behind group commit did not finish within "
+                    + awaitTimeoutMs + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the CGM write-behind group commit", e);
+        }
+    }
+
+    private void writeByCaller(CgmWriteBatch batch) {
+        callerRuns.incrementAndGet();
+        cgmReadingService.storeChartData(batch.userId(), batch.entries(), batch.dataSource());
+        commits.incrementAndGet();
+        rowsWritten.addAndGet(batch.entries().size());
+    }
+
+    private void runFlusher() {
+        while (running) {
+            Pending head = queue.peek();
+            if (head == null) {
+                LockSupport.parkNanos(this, maxLatencyNanos);
+                continue;
+            }
+            long waitNanos = head.enqueuedNanos() + maxLatencyNanos - System.nanoTime();
+            if (queuedRows.get() < maxBatchRows && waitNanos > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+                continue;
+            }
+            try {
+                flushOnce();
+            } catch (RuntimeException e) {
+                log.error("CGM write-behind flush failed: {}", e.getMessage(), e);
+            } catch (Error e) {
+                log.error("CGM write-behind flusher stopped; failing queued batches: {}", e.getMessage(), e);
+                flusherDead = true;
+                // Racing submits that already passed the flusherDead check time out and run themselves.
+                failQueued(e);
+                throw e;
+            }
+        }
+    }
+
+    /** Fails every queued batch; their callers see {@code cause}. */
+    private void failQueued(Throwable cause) {
+        Pending p;
+        while ((p = queue.poll()) != null) {
+            queuedRows.addAndGet(-p.batch().entries().size());
+            p.done().completeExceptionally(cause);
+        }
+    }
+
+    /** Writes one group from the head of the queue; returns its row count (0 when the queue was empty). */
+    private int flushOnce() {
+        List<Pending> group = new ArrayList<>();
+        int rows = 0;
+        Pending next;
+        while (rows < maxBatchRows && (next = queue.poll()) != null) {
+            group.add(next);
+            rows += next.batch().entries().size();
+        }
+        if (group.isEmpty()) return 0;
+        queuedRows.addAndGet(-rows);
+
+        long start = System.nanoTime();
+        List<CgmWriteBatch> batches = new ArrayList<>(group.size());
+        for (Pending p : group) batches.add(p.batch());
+        try {
+            cgmReadingService.storeChartDataGroup(batches);
+            commits.incrementAndGet();
+            rowsWritten.addAndGet(rows);
+            for (Pending p : group) p.done().complete(null);
+        } catch (RuntimeException e) {
+            log.warn("CGM write-behind group of {} batches ({} rows) failed, retrying one by one: {}",
+                    group.size(), rows, e.getMessage());
+            for (Pending p : group) retryAlone(p);
+        } catch (Error e) {
+            // Before failing the callers, so none of them queues behind a dead flusher.
+            if (Thread.currentThread() == flusher) flusherDead = true;
+            for (Pending p : group) p.done().completeExceptionally(e);
+            throw e;
+        }
+        if (flushTimer != null) flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return rows;
+    }
+
+    private void retryAlone(Pending p) {
+        CgmWriteBatch b = p.batch();
+        try {
+            cgmReadingService.storeChartData(b.userId(), b.entries(), b.dataSource());
+            commits.incrementAndGet();
+            rowsWritten.addAndGet(b.entries().size());
+            p.done().complete(null);
+        } catch (RuntimeException e) {
+            log.error("CGM write-behind failed for user {} ({}): {}", b.userId(), b.dataSource(), e.getMessage(), e);
+            p.done().completeExceptionally(e);
+        }
+    }
+
+    private void registerMetrics(MeterRegistry registry) {
+        if (registry == null) return;
+        Gauge.builder("cgm_write_behind.queued_rows", queuedRows, AtomicInteger::get)
+                .description("Readings waiting for a group commit").register(registry);
+        Gauge.builder("cgm_write_behind.oldest_age_ms", this, CgmWriteBehindBuffer::oldestAgeMs)
+                .description("How long the oldest queued batch has waited").register(registry);
+        FunctionCounter.builder("cgm_write_behind.commits", commits, AtomicLong::get)
+                .description("Transactions committed by the write-behind stage").register(registry);
+        FunctionCounter.builder("cgm_write_behind.rows", rowsWritten, AtomicLong::get)
+                .description("Readings written by the write-behind stage").register(registry);
+        FunctionCounter.builder("cgm_write_behind.caller_runs", callerRuns, AtomicLong::get)
+                .description("Batches written by their caller because the queue was full").register(registry);
+        flushTimer = Timer.builder("cgm_write_behind.flush.duration")
+                .description("Wall time of one group commit")
+                .publishPercentiles(0.5, 0.95)
+                .register(registry);
+    }
+
+    private double oldestAgeMs() {
+        Pending head = queue.peek();
+        return head == null ? 0 : (System.nanoTime() - head.enqueuedNanos()) / 1_000_000.0;
+    }
+
+    int queuedRows() {
+        return queuedRows.get();
+    }
+
+    long commits() {
+        return commits.get();
+    }
+
+    long callerRuns() {
+        return callerRuns.get();
+    }
+}
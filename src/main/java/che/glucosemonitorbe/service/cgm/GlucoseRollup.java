@@ -0,0 +1,178 @@
+package che.glucosemonitorbe.service.cgm;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable summary of a set of CGM readings (raw mg/dL {@code sgv}): count, sum, sum of squares,
+ * min/max, below / in / above range counts and a fixed-bin histogram that serves as the percentile
+ * sketch. Every field is additive (or a min/max), so an hourly or daily bucket can be updated with each
+ * stored batch and any window is answered by merging its buckets - the basis of the
+ * {@code cgm_glucose_rollups} store maintained by {@link CgmRollupService}.
+ *
+ * <p>Range counts use the same 3.9-10.0 mmol/L target as {@link GlucoseWindowStats}, which on integer
+ * mg/dL is {@code sgv <= 70} below and {@code sgv > 180} above. The histogram has {@value #BINS} bins of
+ * {@value #BIN_WIDTH} mg/dL starting at {@value #HISTOGRAM_MIN_SGV}; the first and last bins also hold
+ * everything below / above, so percentiles are exact to within half a bin (0.14 mmol/L) inside
+ * 40-400 mg/dL and clamped outside it.</p>
+ *
+ * <p>Not thread-safe; instances are built and merged by one thread.</p>
+ */
+public final class GlucoseRollup {
+
+    public static final int HISTOGRAM_MIN_SGV = 40;
+    public static final int BIN_WIDTH = 5;
+    public static final int BINS = 73;
+    /** Highest sgv counted below range (3.9 mmol/L). */
+    public static final int BELOW_RANGE_MAX_SGV = 70;
+    /** Highest sgv counted in range (10.0 mmol/L). */
+    public static final int IN_RANGE_MAX_SGV = 180;
+
+    /** One stored bucket: the readings whose time falls in the hour (or day) starting at {@code startMs}. */
+    public record Bucket(long startMs, GlucoseRollup rollup) {
+    }
+
+    private int count;
+    private long sum;
+    private long sumSq;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+    private int below;
+    private int inRange;
+    private int above;
+    private final int[] histogram;
+
+    public GlucoseRollup() {
+        this.histogram = new int[BINS];
+    }
+
+    /** Rebuilds a stored rollup; {@code histogram} must have {@link #BINS} entries and is not copied. */
+    public static GlucoseRollup of(int count, long sum, long sumSq, int min, int max,
+                                   int below, int inRange, int above, int[] histogram) {
+        if (histogram.length != BINS) {
+            throw new IllegalArgumentException("Expected " + BINS + " histogram bins, got " + histogram.length);
+        }
+        GlucoseRollup r = new GlucoseRollup(histogram);
+        r.count = count;
+        r.sum = sum;
+        r.sumSq = sumSq;
+        r.min = count > 0 ? min : Integer.MAX_VALUE;
+        r.max = count > 0 ? max : Integer.MIN_VALUE;
+        r.below = below;
+        r.inRange = inRange;
+        r.above = above;
+        return r;
+    }
+
+    private GlucoseRollup(int[] histogram) {
+        this.histogram = histogram;
+    }
+
+    /** Histogram bin of {@code sgv}. */
+    public static int bin(int sgv) {
+        return Math.clamp((sgv - HISTOGRAM_MIN_SGV) / BIN_WIDTH, 0, BINS - 1);
+    }
+
+    public void add(int sgv) {
+        count++;
+        sum += sgv;
+        sumSq += (long) sgv * sgv;
+        if (sgv < min) min = sgv;
+        if (sgv > max) max = sgv;
+        if (sgv <= BELOW_RANGE_MAX_SGV) below++;
+        else if (sgv > IN_RANGE_MAX_SGV) above++;
+        else inRange++;
+        histogram[bin(sgv)]++;
+    }
+
+    /** Adds {@code other}'s readings to this rollup and returns this. */
+    public GlucoseRollup merge(GlucoseRollup other) {
+        if (other.count == 0) return this;
+        count += other.count;
+        sum += other.sum;
+        sumSq += other.sumSq;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        below += other.below;
+        inRange += other.inRange;
+        above += other.above;
+        for (int i = 0; i < BINS; i++) histogram[i] += other.histogram[i];
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /** Mean sgv in mg/dL, 0 when empty. */
+    public double mean() {
+        return count > 0 ? (double) sum / count : 0.0;
+    }
+
+    /** Population standard deviation in mg/dL, 0 when empty. */
+    public double sd() {
+        if (count == 0) return 0.0;
+        double mean = mean();
+        return Math.sqrt(Math.max(0.0, (double) sumSq / count - mean * mean));
+    }
+
+    /**
+     * The {@code q}-quantile ({@code 0 <= q <= 1}) in mg/dL, interpolated linearly within its
+     * histogram bin and clamped to the observed min/max ({@code q = 0} and {@code 1} are the exact
+     * min and max); 0 when empty.
+     */
+    public double percentile(double q) {
+        if (count == 0) return 0.0;
+        if (q <= 0.0) return min;
+        if (q >= 1.0) return max;
+        double rank = q * count;
+        long seen = 0;
+        for (int i = 0; i < BINS; i++) {
+            int n = histogram[i];
+            if (n == 0) continue;
+            if (seen + n >= rank) {
+                double lower = HISTOGRAM_MIN_SGV + (double) i * BIN_WIDTH;
+                double value = lower + BIN_WIDTH * (rank - seen) / n;
+                return Math.clamp(value, min, max);
+            }
+            seen += n;
+        }
+        return max;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long sum() {
+        return sum;
+    }
+
+    public long sumSq() {
+        return sumSq;
+    }
+
+    public int min() {
+        return min;
+    }
+
+    public int max() {
+        return max;
+    }
+
+    public int below() {
+        return below;
+    }
+
+    public int inRange() {
+        return inRange;
+    }
+
+    public int above() {
+        return above;
+    }
+
+    /** A copy of the histogram counts. */
+    public int[] histogram() {
+        return Arrays.copyOf(histogram, BINS);
+    }
+}
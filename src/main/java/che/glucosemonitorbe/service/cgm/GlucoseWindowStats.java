@@ -0,0 +1,74 @@
+package che.glucosemonitorbe.service.cgm;
+
+/**
+ * Summary statistics of a CGM window in mmol/L, computed in one pass over a {@link CgmSeries}
+ * (Welford mean/variance, range counters, min/max) without boxing or materialising the readings.
+ *
+ * <p>Time in / below / above range uses the consensus 3.9-10.0 mmol/L target and is the share of
+ * readings (CGM readings are evenly spaced, so reading share approximates time share). With no readings
+ * every value is 0 and {@link #delta30m} is null.</p>
+ *
+ * @param count          readings in the window
+ * @param min            lowest reading
+ * @param max            highest reading
+ * @param mean           arithmetic mean of the readings
+ * @param sd             population standard deviation
+ * @param cv             coefficient of variation, percent of the mean
+ * @param first          oldest reading
+ * @param latest         newest reading
+ * @param delta          {@code latest - first}
+ * @param delta30m       {@code latest} minus the reading nearest 30 min earlier (within 10 min), or null
+ * @param timeBelowRange percent of readings below 3.9 mmol/L
+ * @param timeInRange    percent of readings within 3.9-10.0 mmol/L
+ * @param timeAboveRange percent of readings above 10.0 mmol/L
+ */
+public record GlucoseWindowStats(
+        int count,
+        double min,
+        double max,
+        double mean,
+        double sd,
+        double cv,
+        double first,
+        double latest,
+        double delta,
+        Double delta30m,
+        double timeBelowRange,
+        double timeInRange,
+        double timeAboveRange) {
+
+    public static final double MGDL_PER_MMOL = 18.0;
+    public static final double RANGE_LOW_MMOL = 3.9;
+    public static final double RANGE_HIGH_MMOL = 10.0;
+
+    private static final long DELTA_LOOKBACK_MS = 30 * 60_000L;
+    private static final long DELTA_TOLERANCE_MS = 10 * 60_000L;
+
+    public static GlucoseWindowStats of(CgmSeries series) {
+        int n = series.size();
+        if (n == 0) return new GlucoseWindowStats(0, 0, 0, 0, 0, 0, 0, 0, 0, null, 0, 0, 0);
+
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        double mean = 0.0, m2 = 0.0;
+        int below = 0, above = 0;
+        for (int i = 0; i < n; i++) {
+            double g = series.sgvAt(i) / MGDL_PER_MMOL;
+            if (g < min) min = g;
+            if (g > max) max = g;
+            if (g < RANGE_LOW_MMOL) below++;
+            else if (g > RANGE_HIGH_MMOL) above++;
+            double d = g - mean;
+            mean += d / (i + 1);
+            m2 += d * (g - mean);
+        }
+        double sd = Math.sqrt(m2 / n);
+        double first = series.sgvAt(0) / MGDL_PER_MMOL;
+        double latest = series.sgvAt(n - 1) / MGDL_PER_MMOL;
+        int back = series.nearestIndex(series.timeAt(n - 1) - DELTA_LOOKBACK_MS, DELTA_TOLERANCE_MS);
+        Double delta30m = back >= 0 && back < n - 1 ? latest - series.sgvAt(back) / MGDL_PER_MMOL : null;
+
+        return new GlucoseWindowStats(n, min, max, mean, sd, mean > 0 ? 100.0 * sd / mean : 0.0,
+                first, latest, latest - first, delta30m,
+                100.0 * below / n, 100.0 * (n - below - above) / n, 100.0 * above / n);
+    }
+}
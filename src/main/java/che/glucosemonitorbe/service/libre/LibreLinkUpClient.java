@@ -91,11 +91,15 @@ public class LibreLinkUpClient {
         return restTemplate.exchange(url, HttpMethod.POST, entity, byte[].class);
     }
 
-    /** GET {@code url} with authenticated headers for {@code userId}; returns the parsed body. */
+    /**
+     * GET {@code url} with authenticated headers for {@code userId}; returns the parsed body, decoded
+     * straight from the response stream (graph payloads are never buffered as bytes or a string).
+     */
     public JsonNode authenticatedGet(UUID userId, String url) throws Exception {
-        HttpEntity<String> entity = new HttpEntity<>(authenticatedHeaders(userId));
-        ResponseEntity<byte[]> response = restTemplate.exchange(url, HttpMethod.GET, entity, byte[].class);
-        return responseParser.parseResponseBytes(response.getBody(), response.getHeaders());
+        HttpHeaders headers = authenticatedHeaders(userId);
+        return restTemplate.execute(url, HttpMethod.GET,
+                request -> request.getHeaders().putAll(headers),
+                response -> responseParser.parseResponseStream(response.getBody(), response.getHeaders()));
     }
 
     /** Parse a raw response (used by the auth flow, which needs the multi-host retry around the POST). */
@@ -13,6 +13,8 @@ import org.springframework.stereotype.Component;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -65,6 +67,28 @@ public class LibreLinkUpResponseParser {
         return objectMapper.readTree(new String(body, offset, body.length - offset, StandardCharsets.UTF_8));
     }
 
+    /**
+     * Parse a Libre response straight off the wire - gzip and BOM are sniffed from the first bytes -
+     * without first buffering the body into a {@code byte[]} and a decoded {@code String}.
+     */
+    public JsonNode parseResponseStream(InputStream body, HttpHeaders headers) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(body, 3);
+        byte[] head = in.readNBytes(3);
+        if (head.length == 0) {
+            throw new RuntimeException("Empty LibreLinkUp response body");
+        }
+        boolean gzipMagic = head.length >= 2 && (head[0] & 0xFF) == 0x1f && (head[1] & 0xFF) == 0x8b;
+        boolean bom = head.length == 3 && (head[0] & 0xFF) == 0xef && (head[1] & 0xFF) == 0xbb && (head[2] & 0xFF) == 0xbf;
+        if (!bom) {
+            in.unread(head);
+        }
+        if (gzipMagic) {
+            // A gzip Content-Encoding header without the magic bytes means the body is plain JSON.
+            return objectMapper.readTree(new GZIPInputStream(in));
+        }
+        return objectMapper.readTree(in);
+    }
+
     /** Short message for logs/API; avoids multi-KB Cloudflare HTML pages in exception text. */
     public static String formatErrorBody(byte[] raw) {
         if (raw == null || raw.length == 0) {
@@ -58,7 +58,7 @@ public class GlucoseAlertEvaluator {
 
     /**
      * Evaluate a full calculation response for all alert types.
-     * Called by the {@link GlucoseAnomalyDetector} on each CGM cycle.
+     * Called by the {@link GlucoseAnomalyDetector} after each CGM ingestion.
      *
      * @param userId      the user being evaluated
      * @param calc        freshly-computed calculation response
@@ -141,7 +141,7 @@ public class GlucoseAlertEvaluator {
 
     /**
      * Over-injection check - call this immediately after an insulin note is saved,
-     * before the CGM cycle fires. Compares IOB glucose-lowering power against
+     * before the next CGM ingestion. Compares IOB glucose-lowering power against
      * available COB carb buffer. If the net effect puts the nadir below 4.0,
      * returns an alert.
      *
@@ -18,8 +18,9 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Orchestrates alert evaluation and dispatch.
  *
- * <p>All public methods are {@code @Async} - they run on a background thread so
- * neither note-save nor the CGM sync cycle is blocked.
+ * <p>Neither note-save nor the CGM sync cycle is blocked: the note-save check is
+ * {@code @Async}, and the CGM evaluation ({@link #evaluateNow}) is called by
+ * {@link GlucoseAnomalyDetector} on its own bounded executor.
  *
  * <p>Push delivery is a stub ({@link #deliverAlert}) until Phase 2 APNs
  * infrastructure is wired in. The stub logs at WARN level so alerts are
@@ -77,10 +78,12 @@ public class GlucoseAlertService {
         }
     }
 
-    // -- Full evaluation (fired by GlucoseAnomalyDetector on CGM cycle) --------
+    // -- Full evaluation (fired by GlucoseAnomalyDetector on CGM ingestion) ----
 
     /**
-     * Evaluate all alert types against the latest CGM data for one user.
+     * Evaluate all alert types against the latest CGM data for one user, on the calling thread.
+     * Used by {@link GlucoseAnomalyDetector}, which already runs off the sync thread and serialises
+     * evaluations per user.
      *
      * @param userId                    user UUID
      * @param username                  Spring Security principal
@@ -88,8 +91,7 @@ public class GlucoseAlertService {
      * @param roc                       rate of change mmol/L/min (negative = falling)
      * @param minutesSinceLastMealNote  minutes since last note with carbs > 0 (null if none)
      */
-    @Async
-    public void evaluateAll(UUID userId, String username,
+    public void evaluateNow(UUID userId, String username,
                             double currentGlucose, double roc,
                             Integer minutesSinceLastMealNote) {
         if (!featureToggleConfig.isGlucoseCalculationsEnabled()) return;
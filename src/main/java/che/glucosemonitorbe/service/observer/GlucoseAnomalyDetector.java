@@ -1,29 +1,44 @@
 package che.glucosemonitorbe.service.observer;
 
+import che.glucosemonitorbe.domain.User;
 import che.glucosemonitorbe.entity.Note;
 import che.glucosemonitorbe.repository.NoteRepository;
 import che.glucosemonitorbe.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
+import che.glucosemonitorbe.service.cgm.CgmReadingsStoredEvent;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
+import che.glucosemonitorbe.service.cgm.GlucoseWindowStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Scheduled observer that evaluates glucose curves for all active users
- * on every CGM sync cycle (every 5 minutes).
+ * Ingestion-driven observer: evaluates a user's glucose curve whenever a CGM sync stored new readings
+ * for them ({@link CgmReadingsStoredEvent}), so alerts follow the sync that delivered the data instead
+ * of waiting for a polling cycle, and users without new data cost nothing.
+ *
+ * <h3>Scheduling</h3>
+ * Evaluations run on the bounded {@code anomalyEvaluationExecutor}, serialised per user: at most one
+ * task per user is queued or running, and readings stored while it runs trigger exactly one re-run
+ * afterwards (bursts of back-filled batches coalesce). A rejected task is dropped - the user's next
+ * sync re-triggers evaluation.
  *
  * <h3>Rate-of-change calculation</h3>
- * Uses the last 3 CGM readings (≈15 min span) to compute a least-squares
- * slope in mmol/L per minute. Three points are the minimum for noise
- * rejection; LibreLinkUp delivers a new value every 5 min, so the window
- * is always fresh.
+ * Uses the CGM readings of the last {@value #ROC_WINDOW_MINUTES} minutes from {@code cgm_readings}
+ * (via {@link CgmSeriesCache}) to compute a least-squares slope in mmol/L per minute. LibreLinkUp and
+ * Nightscout deliver a value every 5 min, so the window holds 3-4 readings.
  *
  * <h3>Scenarios detected</h3>
  * <ul>
@@ -36,7 +51,6 @@ import java.util.UUID;
  * via {@link GlucoseAlertService#checkOverInjection}.
  */
 @Component
-@RequiredArgsConstructor
 public class GlucoseAnomalyDetector {
 
     private static final Logger log = LoggerFactory.getLogger(GlucoseAnomalyDetector.class);
@@ -45,58 +59,91 @@ public class GlucoseAnomalyDetector {
     private static final int MIN_READINGS_FOR_ROC = 2;
 
     /** Lookback window for CGM readings used in ROC computation (minutes). */
-    private static final int ROC_WINDOW_MINUTES = 20;
+    static final int ROC_WINDOW_MINUTES = 20;
 
     /** Lookback window for "did the user log a meal note?" check (minutes). */
     private static final int UNLOGGED_MEAL_WINDOW_MINUTES = 45;
 
+    private final CgmSeriesCache cgmSeriesCache;
     private final NoteRepository noteRepository;
     private final UserRepository userRepository;
     private final GlucoseAlertService alertService;
+    private final TaskExecutor executor;
+    private final boolean enabled;
 
     /**
-     * Runs every 5 minutes, aligned with the LibreLinkUp CGM sync cadence.
-     * Each user is evaluated independently; failures are caught per-user so
-     * one bad account does not block others.
+     * Per-user scheduling state: absent = idle; present = a task is queued or running, with
+     * {@code TRUE} meaning more readings arrived since it started and it must run once more.
      */
-    @Scheduled(fixedDelayString = "${app.observer.interval-ms:300000}")
-    public void scan() {
-        log.debug("GlucoseAnomalyDetector scan started");
+    private final ConcurrentHashMap<UUID, Boolean> inFlight = new ConcurrentHashMap<>();
+
+    public GlucoseAnomalyDetector(CgmSeriesCache cgmSeriesCache,
+                                  NoteRepository noteRepository,
+                                  UserRepository userRepository,
+                                  GlucoseAlertService alertService,
+                                  @Qualifier("anomalyEvaluationExecutor") TaskExecutor executor,
+                                  @Value("${app.observer.enabled:true}") boolean enabled) {
+        this.cgmSeriesCache = cgmSeriesCache;
+        this.noteRepository = noteRepository;
+        this.userRepository = userRepository;
+        this.alertService = alertService;
+        this.executor = executor;
+        this.enabled = enabled;
+    }
+
+    /** Runs after the inserting transaction commits (or immediately when there is none). */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReadingsStored(CgmReadingsStoredEvent event) {
+        if (enabled) submit(event.userId());
+    }
+
+    /** Schedules an evaluation of {@code userId}, or flags the in-flight one to run again. */
+    void submit(UUID userId) {
+        boolean[] schedule = {false};
+        inFlight.compute(userId, (id, rerun) -> {
+            if (rerun == null) {
+                schedule[0] = true;
+                return Boolean.FALSE;
+            }
+            return Boolean.TRUE;
+        });
+        if (!schedule[0]) return;
         try {
-            userRepository.findAll().forEach(user -> {
-                try {
-                    evaluateUser(user.getId(), user.getUsername());
-                } catch (Exception e) {
-                    log.warn("Anomaly scan failed for user {}: {}", user.getId(), e.getMessage());
-                }
-            });
-        } catch (Exception e) {
-            log.error("GlucoseAnomalyDetector scan aborted: {}", e.getMessage());
+            executor.execute(() -> drain(userId));
+        } catch (TaskRejectedException e) {
+            inFlight.remove(userId);
+            log.warn("Anomaly evaluation queue full - skipping user {} until their next sync", userId);
         }
     }
 
+    private void drain(UUID userId) {
+        boolean again;
+        do {
+            try {
+                evaluateUser(userId);
+            } catch (Exception e) {
+                log.warn("Anomaly evaluation failed for user {}: {}", userId, e.getMessage());
+            }
+            // Clear the entry unless a re-run was requested meanwhile; then reset the flag and loop.
+            again = inFlight.compute(userId, (id, rerun) -> Boolean.TRUE.equals(rerun) ? Boolean.FALSE : null) != null;
+        } while (again);
+    }
+
     // -- Per-user evaluation ---------------------------------------------------
 
-    private void evaluateUser(UUID userId, String username) {
+    void evaluateUser(UUID userId) {
         LocalDateTime now = LocalDateTime.now();
+        long nowMs = System.currentTimeMillis();
 
-        // 1. Collect recent CGM readings from notes (glucose-only entries)
-        //    Notes are the unified source of truth until a dedicated CGM table is added.
-        LocalDateTime rocStart = now.minusMinutes(ROC_WINDOW_MINUTES);
-        List<Note> recentReadings = noteRepository
-                .findByUserIdAndTimestampBetween(userId, rocStart, now)
-                .stream()
-                .filter(n -> n.getGlucoseLevel() != null && n.getGlucoseLevel() > 0)
-                .sorted(Comparator.comparing(Note::getTimestamp))
-                .toList();
-
-        if (recentReadings.size() < MIN_READINGS_FOR_ROC) {
-            // Not enough data to compute a meaningful ROC - skip this cycle.
+        // 1. Recent CGM readings from cgm_readings
+        CgmSeries recent = cgmSeriesCache.range(
+                userId, nowMs - ROC_WINDOW_MINUTES * 60_000L, nowMs);
+        if (recent.size() < MIN_READINGS_FOR_ROC) {
+            // Not enough data to compute a meaningful ROC - skip this evaluation.
             return;
         }
-
-        double currentGlucose = recentReadings.get(recentReadings.size() - 1).getGlucoseLevel();
-        double roc = computeRoc(recentReadings);
+        double currentGlucose = recent.sgvAt(recent.size() - 1) / GlucoseWindowStats.MGDL_PER_MMOL;
+        double roc = computeRoc(recent);
 
         // 2. Find minutes since the last carb note
         LocalDateTime mealWindow = now.minusMinutes(UNLOGGED_MEAL_WINDOW_MINUTES);
@@ -107,8 +154,10 @@ public class GlucoseAnomalyDetector {
                 .map(n -> (int) ChronoUnit.MINUTES.between(n.getTimestamp(), now))
                 .orElse(null);
 
-        // 3. Dispatch async evaluation (non-blocking)
-        alertService.evaluateAll(userId, username, currentGlucose, roc, minutesSinceLastMeal);
+        // 3. Evaluate on this (already serialised, off-sync) thread
+        String username = userRepository.findById(userId).map(User::getUsername).orElse(null);
+        if (username == null) return;
+        alertService.evaluateNow(userId, username, currentGlucose, roc, minutesSinceLastMeal);
     }
 
     // -- Rate-of-change computation --------------------------------------------
@@ -120,17 +169,17 @@ public class GlucoseAnomalyDetector {
      * <p>OLS is more robust than simple first-last delta because a single
      * sensor glitch in the middle does not dominate the result.
      */
-    static double computeRoc(List<Note> readings) {
-        if (readings.size() < 2) return 0.0;
+    static double computeRoc(CgmSeries readings) {
+        int n = readings.size();
+        if (n < 2) return 0.0;
 
         // Use minutes-since-first-reading as x, glucose as y
-        LocalDateTime t0 = readings.get(0).getTimestamp();
+        long t0 = readings.timeAt(0);
         double sumX = 0, sumY = 0, sumXY = 0, sumX2 = 0;
-        int n = readings.size();
 
-        for (Note r : readings) {
-            double x = ChronoUnit.MINUTES.between(t0, r.getTimestamp());
-            double y = r.getGlucoseLevel();
+        for (int i = 0; i < n; i++) {
+            double x = (readings.timeAt(i) - t0) / 60_000.0;
+            double y = readings.sgvAt(i) / GlucoseWindowStats.MGDL_PER_MMOL;
             sumX  += x;
             sumY  += y;
             sumXY += x * y;
@@ -0,0 +1,17 @@
+-- Resumable cursor for the nightly digital-twin batch (DigitalTwinBatchService). One row per named
+-- batch. last_user_id is a low-watermark: every user with id <= last_user_id (in the DB's UUID order)
+-- has been processed by the run that started at run_started_at, so a crashed or time-boxed run can
+-- continue where it stopped instead of recalibrating everyone from the beginning.
+
+CREATE TABLE IF NOT EXISTS digital_twin_batch_cursor (
+    batch_name      VARCHAR(64)  PRIMARY KEY,
+    run_started_at  TIMESTAMPTZ  NOT NULL,
+    last_user_id    UUID,
+    status          VARCHAR(12)  NOT NULL DEFAULT 'RUNNING',
+    processed       INTEGER      NOT NULL DEFAULT 0,
+    updated_at      TIMESTAMPTZ  NOT NULL DEFAULT NOW(),
+    CONSTRAINT chk_twin_batch_status CHECK (status IN ('RUNNING','INTERRUPTED','COMPLETED'))
+);
+
+COMMENT ON TABLE digital_twin_batch_cursor IS
+    'Progress low-watermark of the digital-twin batch calibration, so an interrupted run resumes after the last fully processed user.';
@@ -0,0 +1,13 @@
+-- Keyset pagination of stored chart data (GET /api/nightscout/chart-data): "newest N readings (of one
+-- source) older than a (timestamp, id) cursor" walks one of these indexes backwards instead of sorting
+-- the user's full history. Pages are ordered by (date_timestamp DESC, id DESC), so readings sharing a
+-- timestamp (one per data source, or a re-sent upstream record) split across a page boundary
+-- deterministically; the trailing id lets the index scan deliver that order and seek straight to the
+-- cursor. The (timestamp, id) index serves every query the plain (user_id, date_timestamp) one did.
+
+CREATE INDEX IF NOT EXISTS idx_cgm_readings_user_date_id
+    ON cgm_readings(user_id, date_timestamp, id);
+CREATE INDEX IF NOT EXISTS idx_cgm_readings_user_source_date_id
+    ON cgm_readings(user_id, data_source, date_timestamp, id);
+
+DROP INDEX IF EXISTS idx_cgm_readings_user_date;
@@ -0,0 +1,157 @@
+-- Monthly range partitioning of cgm_readings on date_timestamp (epoch ms, UTC months).
+--
+-- Range reads (chart pages, calibration and verification windows) prune to the months they touch, and
+-- retention drops whole partitions (cgm_readings_drop_partitions_before) instead of row-by-row DELETEs
+-- that bloat the heap and indexes. Partitions are named cgm_readings_pYYYYMM; the application creates
+-- upcoming months ahead of time (cgm_readings_ensure_partitions). Rows outside every monthly range land
+-- in cgm_readings_default and are moved out when their month is created.
+--
+-- Partitioned tables require the partition key in every unique constraint, so:
+--   * the primary key becomes (id, date_timestamp) and date_timestamp becomes NOT NULL - readings
+--     without a timestamp cannot be charted and are dropped here (the ingest path already skips them);
+--   * the upstream-id unique index gains date_timestamp, so it no longer stops an upstream record re-sent
+--     with a corrected time from being stored twice; the write path (CgmReadingBulkWriter, and the JPA
+--     path alike) deletes the stored copy at the old time before inserting the new one.
+
+ALTER TABLE cgm_readings RENAME TO cgm_readings_unpartitioned;
+
+CREATE TABLE cgm_readings (
+    id              UUID         NOT NULL DEFAULT gen_random_uuid(),
+    user_id         UUID         NOT NULL,
+    data_source     VARCHAR(20)  NOT NULL,
+    external_id     VARCHAR(255),
+    sgv             INTEGER,
+    date_timestamp  BIGINT       NOT NULL,
+    date_string     VARCHAR(255),
+    trend           INTEGER,
+    direction       VARCHAR(50),
+    device          VARCHAR(255),
+    type            VARCHAR(50),
+    utc_offset      INTEGER,
+    sys_time        VARCHAR(255),
+    last_updated    TIMESTAMPTZ  NOT NULL DEFAULT NOW(),
+    created_at      TIMESTAMPTZ  NOT NULL DEFAULT NOW(),
+    updated_at      TIMESTAMPTZ  NOT NULL DEFAULT NOW(),
+    CONSTRAINT pk_cgm_readings PRIMARY KEY (id, date_timestamp),
+    CONSTRAINT fk_cgm_readings_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    CONSTRAINT chk_cgm_readings_data_source CHECK (data_source IN ('NIGHTSCOUT', 'LIBRE_LINK_UP'))
+) PARTITION BY RANGE (date_timestamp);
+
+CREATE TABLE cgm_readings_default PARTITION OF cgm_readings DEFAULT;
+
+-- Creates the partition for the UTC month starting at month_start, moving any of its rows out of the
+-- default partition first. Returns false when it already exists.
+CREATE OR REPLACE FUNCTION cgm_readings_create_month_partition(month_start DATE) RETURNS BOOLEAN
+LANGUAGE plpgsql AS $$
+DECLARE
+    first_day DATE   := date_trunc('month', month_start)::date;
+    part_name TEXT   := 'cgm_readings_p' || to_char(first_day, 'YYYYMM');
+    lower_ms  BIGINT := (extract(epoch FROM first_day::timestamp AT TIME ZONE 'UTC') * 1000)::bigint;
+    upper_ms  BIGINT := (extract(epoch FROM (first_day + INTERVAL '1 month')::timestamp AT TIME ZONE 'UTC') * 1000)::bigint;
+BEGIN
+    IF to_regclass(part_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+    EXECUTE format('CREATE TABLE %I (LIKE cgm_readings INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', part_name);
+    -- Ingest keeps writing while this runs. Holding off inserts into the default partition until the
+    -- transaction ends means no row of the month can land there between the move and the attach, and
+    -- moving with one DELETE ... RETURNING means nothing is deleted that was not copied.
+    LOCK TABLE cgm_readings_default IN EXCLUSIVE MODE;
+    EXECUTE format('WITH moved AS (DELETE FROM cgm_readings_default '
+                   '               WHERE date_timestamp >= %s AND date_timestamp < %s RETURNING *) '
+                   'INSERT INTO %I SELECT * FROM moved',
+                   lower_ms, upper_ms, part_name);
+    EXECUTE format('ALTER TABLE cgm_readings ATTACH PARTITION %I FOR VALUES FROM (%s) TO (%s)',
+                   part_name, lower_ms, upper_ms);
+    RETURN TRUE;
+END;
+$$;
+
+-- Makes sure the current UTC month and the next months_ahead months have partitions; returns how many
+-- were created.
+CREATE OR REPLACE FUNCTION cgm_readings_ensure_partitions(months_ahead INT) RETURNS INT
+LANGUAGE plpgsql AS $$
+DECLARE
+    this_month DATE := date_trunc('month', NOW() AT TIME ZONE 'UTC')::date;
+    created    INT  := 0;
+BEGIN
+    FOR i IN 0..GREATEST(months_ahead, 0) LOOP
+        IF cgm_readings_create_month_partition((this_month + make_interval(months => i))::date) THEN
+            created := created + 1;
+        END IF;
+    END LOOP;
+    RETURN created;
+END;
+$$;
+
+-- Drops every monthly partition whose whole range lies before cutoff_ms (epoch ms); returns how many
+-- were dropped. A month straddling the cutoff is kept until it is entirely older.
+CREATE OR REPLACE FUNCTION cgm_readings_drop_partitions_before(cutoff_ms BIGINT) RETURNS INT
+LANGUAGE plpgsql AS $$
+DECLARE
+    part    RECORD;
+    dropped INT := 0;
+BEGIN
+    FOR part IN
+        SELECT c.relname
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'cgm_readings'::regclass
+          AND c.relname ~ '^cgm_readings_p[0-9]{6}$'
+    LOOP
+        IF (extract(epoch FROM (to_date(substring(part.relname FROM 15), 'YYYYMM') + INTERVAL '1 month')::timestamp
+                AT TIME ZONE 'UTC') * 1000)::bigint <= cutoff_ms THEN
+            EXECUTE format('DROP TABLE %I', part.relname);
+            dropped := dropped + 1;
+        END IF;
+    END LOOP;
+    RETURN dropped;
+END;
+$$;
+
+-- Partitions for every month of the last ten years already holding readings, plus the current month
+-- and three ahead. Anything older (or with a bogus timestamp) stays in the default partition.
+DO $$
+DECLARE
+    first_month DATE;
+    this_month  DATE := date_trunc('month', NOW() AT TIME ZONE 'UTC')::date;
+BEGIN
+    SELECT date_trunc('month', to_timestamp(MIN(date_timestamp) / 1000.0) AT TIME ZONE 'UTC')::date
+      INTO first_month
+      FROM cgm_readings_unpartitioned
+     WHERE date_timestamp IS NOT NULL;
+    IF first_month IS NOT NULL THEN
+        first_month := GREATEST(first_month, (this_month - INTERVAL '10 years')::date);
+    END IF;
+    WHILE first_month IS NOT NULL AND first_month < this_month LOOP
+        PERFORM cgm_readings_create_month_partition(first_month);
+        first_month := (first_month + INTERVAL '1 month')::date;
+    END LOOP;
+    PERFORM cgm_readings_ensure_partitions(3);
+END;
+$$;
+
+INSERT INTO cgm_readings
+SELECT id, user_id, data_source, external_id, sgv, date_timestamp, date_string, trend, direction, device, type,
+       utc_offset, sys_time, last_updated, created_at, updated_at
+FROM cgm_readings_unpartitioned
+WHERE date_timestamp IS NOT NULL;
+
+DROP TABLE cgm_readings_unpartitioned;
+
+-- Created on the parent, so every current and future partition gets its own copy. The former
+-- (user_id) and (user_id, data_source) indexes are prefixes of the two keyset indexes (V12) and are
+-- not recreated.
+CREATE INDEX IF NOT EXISTS idx_cgm_readings_user_date_id        ON cgm_readings(user_id, date_timestamp, id);
+CREATE INDEX IF NOT EXISTS idx_cgm_readings_user_source_date_id ON cgm_readings(user_id, data_source, date_timestamp, id);
+CREATE INDEX IF NOT EXISTS idx_cgm_readings_last_updated     ON cgm_readings(last_updated);
+CREATE UNIQUE INDEX IF NOT EXISTS uk_cgm_readings_user_source_external
+    ON cgm_readings(user_id, data_source, external_id, date_timestamp)
+    WHERE external_id IS NOT NULL AND btrim(external_id) <> '';
+CREATE UNIQUE INDEX IF NOT EXISTS uk_cgm_readings_user_source_ts
+    ON cgm_readings(user_id, data_source, date_timestamp)
+    WHERE external_id IS NULL OR btrim(external_id) = '';
+
+COMMENT ON TABLE  cgm_readings              IS 'Shared CGM reading cache for all supported data sources (Nightscout, LibreLinkUp), range-partitioned by UTC month of date_timestamp.';
+COMMENT ON COLUMN cgm_readings.data_source  IS 'Origin of the reading: NIGHTSCOUT or LIBRE_LINK_UP. Matches user_data_source_config.data_source.';
+COMMENT ON COLUMN cgm_readings.external_id  IS 'Upstream record id from the source (Nightscout _id, Libre measurement id). Null if the source did not supply one.';
@@ -0,0 +1,107 @@
+-- CGM rollups: per user, data source and UTC hour or day, the count, sum, sum of squares, min/max, below /
+-- in / above range counts (3.9-10.0 mmol/L, i.e. sgv <= 70 / 71-180 / > 180 mg/dL) and a 73-bin histogram
+-- (5 mg/dL bins from 40, ends open) used as the percentile sketch. Maintained additively by the CGM
+-- ingest path, so 7/14/90-day summaries and AGP profiles read O(hours) rows instead of every reading.
+-- Rollups are not tied to the cgm_readings partitions: dropping expired months keeps their rollups.
+--
+-- Rows are keyed by data_source because the chart and report reads serve the user's configured source
+-- only (LibreLinkUp users see LibreLinkUp readings); a query either filters on it or merges the sources.
+-- bucket_ms holds two widths: hourly rows back the AGP and the local-date daily means (a UTC day does
+-- not map onto local hours or dates), daily rows let a 90-day summary merge at most 90 rows plus the
+-- partial days at the window edges instead of 2160 hourly rows. There is no 5-minute level: CGM
+-- readings arrive every 1-5 minutes, so a 5-minute bucket holds about one reading and would save
+-- nothing over the raw keyset read.
+
+CREATE TABLE IF NOT EXISTS cgm_glucose_rollups (
+    user_id        UUID        NOT NULL,
+    data_source    VARCHAR(20) NOT NULL,
+    bucket_ms      BIGINT      NOT NULL,
+    bucket_start   BIGINT      NOT NULL,
+    reading_count  INTEGER     NOT NULL,
+    sgv_sum        BIGINT      NOT NULL,
+    sgv_sum_sq     BIGINT      NOT NULL,
+    sgv_min        INTEGER     NOT NULL,
+    sgv_max        INTEGER     NOT NULL,
+    below_count    INTEGER     NOT NULL,
+    in_range_count INTEGER     NOT NULL,
+    above_count    INTEGER     NOT NULL,
+    histogram      INTEGER[]   NOT NULL,
+    updated_at     TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    CONSTRAINT pk_cgm_glucose_rollups PRIMARY KEY (user_id, bucket_ms, bucket_start, data_source),
+    CONSTRAINT fk_cgm_glucose_rollups_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    CONSTRAINT chk_cgm_glucose_rollups_data_source CHECK (data_source IN ('NIGHTSCOUT', 'LIBRE_LINK_UP')),
+    CONSTRAINT chk_cgm_glucose_rollups_bucket_ms CHECK (bucket_ms IN (3600000, 86400000)),
+    CONSTRAINT chk_cgm_glucose_rollups_histogram CHECK (cardinality(histogram) = 73)
+);
+
+-- Hourly backfill, per source, from the readings already stored.
+WITH binned AS (
+    SELECT user_id, data_source,
+           floor(date_timestamp / 3600000.0)::bigint * 3600000 AS bucket_start,
+           LEAST(GREATEST((sgv - 40) / 5, 0), 72)              AS bin,
+           COUNT(*)::int                                        AS n
+    FROM cgm_readings
+    WHERE sgv IS NOT NULL
+    GROUP BY 1, 2, 3, 4
+),
+histograms AS (
+    SELECT k.user_id, k.data_source, k.bucket_start, array_agg(COALESCE(b.n, 0) ORDER BY g.bin) AS histogram
+    FROM (SELECT DISTINCT user_id, data_source, bucket_start FROM binned) k
+    CROSS JOIN generate_series(0, 72) AS g(bin)
+    LEFT JOIN binned b ON b.user_id = k.user_id AND b.data_source = k.data_source
+                      AND b.bucket_start = k.bucket_start AND b.bin = g.bin
+    GROUP BY k.user_id, k.data_source, k.bucket_start
+),
+totals AS (
+    SELECT user_id, data_source,
+           floor(date_timestamp / 3600000.0)::bigint * 3600000 AS bucket_start,
+           COUNT(*)::int                                        AS reading_count,
+           SUM(sgv::bigint)                                     AS sgv_sum,
+           SUM(sgv::bigint * sgv)                               AS sgv_sum_sq,
+           MIN(sgv)                                             AS sgv_min,
+           MAX(sgv)                                             AS sgv_max,
+           (COUNT(*) FILTER (WHERE sgv <= 70))::int               AS below_count,
+           (COUNT(*) FILTER (WHERE sgv > 70 AND sgv <= 180))::int AS in_range_count,
+           (COUNT(*) FILTER (WHERE sgv > 180))::int               AS above_count
+    FROM cgm_readings
+    WHERE sgv IS NOT NULL
+    GROUP BY 1, 2, 3
+)
+INSERT INTO cgm_glucose_rollups (user_id, data_source, bucket_ms, bucket_start, reading_count, sgv_sum,
+                                 sgv_sum_sq, sgv_min, sgv_max, below_count, in_range_count, above_count,
+                                 histogram)
+SELECT t.user_id, t.data_source, 3600000, t.bucket_start, t.reading_count, t.sgv_sum, t.sgv_sum_sq,
+       t.sgv_min, t.sgv_max, t.below_count, t.in_range_count, t.above_count, h.histogram
+FROM totals t
+JOIN histograms h ON h.user_id = t.user_id AND h.data_source = t.data_source AND h.bucket_start = t.bucket_start
+ON CONFLICT DO NOTHING;
+
+-- Daily rows: the sum of each UTC day's hourly rows.
+WITH hours AS (
+    SELECT r.*, floor(r.bucket_start / 86400000.0)::bigint * 86400000 AS day_start
+    FROM cgm_glucose_rollups r
+    WHERE r.bucket_ms = 3600000
+),
+histograms AS (
+    SELECT user_id, data_source, day_start, array_agg(n ORDER BY bin) AS histogram
+    FROM (SELECT h.user_id, h.data_source, h.day_start, u.bin, SUM(u.n)::int AS n
+          FROM hours h, unnest(h.histogram) WITH ORDINALITY AS u(n, bin)
+          GROUP BY 1, 2, 3, 4) per_bin
+    GROUP BY 1, 2, 3
+)
+INSERT INTO cgm_glucose_rollups (user_id, data_source, bucket_ms, bucket_start, reading_count, sgv_sum,
+                                 sgv_sum_sq, sgv_min, sgv_max, below_count, in_range_count, above_count,
+                                 histogram)
+SELECT h.user_id, h.data_source, 86400000, h.day_start, SUM(h.reading_count)::int, SUM(h.sgv_sum),
+       SUM(h.sgv_sum_sq), MIN(h.sgv_min), MAX(h.sgv_max), SUM(h.below_count)::int,
+       SUM(h.in_range_count)::int, SUM(h.above_count)::int, g.histogram
+FROM hours h
+JOIN histograms g ON g.user_id = h.user_id AND g.data_source = h.data_source AND g.day_start = h.day_start
+GROUP BY h.user_id, h.data_source, h.day_start, g.histogram
+ON CONFLICT DO NOTHING;
+
+COMMENT ON TABLE  cgm_glucose_rollups              IS 'Hourly and daily per-user, per-source CGM summaries (UTC buckets), maintained additively on ingest; read by the glucose report / AGP endpoints.';
+COMMENT ON COLUMN cgm_glucose_rollups.data_source  IS 'Source of the readings in the bucket: NIGHTSCOUT or LIBRE_LINK_UP.';
+COMMENT ON COLUMN cgm_glucose_rollups.bucket_ms    IS 'Bucket width: 3600000 (UTC hour) or 86400000 (UTC day).';
+COMMENT ON COLUMN cgm_glucose_rollups.bucket_start IS 'Start of the UTC hour or day, epoch ms.';
+COMMENT ON COLUMN cgm_glucose_rollups.histogram    IS '73 reading counts in 5 mg/dL bins from 40 mg/dL; bin 0 also holds lower and bin 72 higher values.';
@@ -0,0 +1,7 @@
+-- Insert time of each revocation, so the local revocation indexes can pick up new entries with a
+-- created_at > watermark query every few seconds instead of re-reading every active hash. Existing rows
+-- get the migration time, which the next full rebuild covers anyway.
+
+ALTER TABLE token_blacklist ADD COLUMN IF NOT EXISTS created_at TIMESTAMPTZ NOT NULL DEFAULT NOW();
+
+CREATE INDEX IF NOT EXISTS idx_token_blacklist_created_at ON token_blacklist(created_at);
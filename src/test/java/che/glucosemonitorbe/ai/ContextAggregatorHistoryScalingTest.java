@@ -0,0 +1,131 @@
+package che.glucosemonitorbe.ai;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.GlucoseReportDTO;
+import che.glucosemonitorbe.dto.RapidInsulinIobParameters;
+import che.glucosemonitorbe.dto.UserInsulinPreferencesDTO;
+import che.glucosemonitorbe.dto.UserSettingsDTO;
+import che.glucosemonitorbe.repository.CgmReadingRepository;
+import che.glucosemonitorbe.repository.NoteRepository;
+import che.glucosemonitorbe.service.CarbsOnBoardService;
+import che.glucosemonitorbe.service.InsulinCalculatorService;
+import che.glucosemonitorbe.service.UserInsulinPreferencesService;
+import che.glucosemonitorbe.service.UserSettingsService;
+import che.glucosemonitorbe.service.cgm.CgmRollupService;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Regression benchmark: building the AI context for a fixed 12 h window must cost the same for a
+ * one-month-old account as for a two-year-old one. Each user's CGM history (5-min readings) is served
+ * by a mocked repository that honours the query bounds, behind the real {@link CgmSeriesCache}.
+ */
+class ContextAggregatorHistoryScalingTest {
+
+    private static final long STEP = 5 * 60_000L;
+    private static final int WINDOW_HOURS = 12;
+    private static final int WARMUP = 200;
+    private static final int RUNS = 400;
+
+    @Test
+    @DisplayName("context build latency does not grow with CGM history length")
+    void latencyIsIndependentOfHistoryLength() {
+        Fixture month = new Fixture(30);
+        Fixture twoYears = new Fixture(730);
+
+        long small = month.medianBuildNanos();
+        long large = twoYears.medianBuildNanos();
+
+        // Same window, same work: the full-history query is never issued and every build sees the
+        // same number of readings, whatever the account age.
+        for (Fixture f : List.of(month, twoYears)) {
+            verify(f.repository, never()).findByUserIdOrderByDateTimestampAsc(any(UUID.class));
+            // +-1: the window slides with the clock between history generation and the last build.
+            assertThat(f.lastContext.getGlucoseValues().size())
+                    .isBetween(WINDOW_HOURS * 12 - 1, WINDOW_HOURS * 12 + 1);
+        }
+        // 24x the history; allow generous noise but nothing resembling linear growth.
+        assertThat(large).as("median ns: 30 d history %d, 730 d history %d", small, large)
+                .isLessThan(Math.max(3 * small, small + 2_000_000L));
+    }
+
+    private static final class Fixture {
+        final UUID userId = UUID.randomUUID();
+        final CgmReadingRepository repository = mock(CgmReadingRepository.class);
+        final ContextAggregatorService service;
+        final long[] t;
+        AnalysisContext lastContext;
+
+        Fixture(int historyDays) {
+            long now = System.currentTimeMillis();
+            int n = historyDays * 288;
+            t = new long[n];
+            for (int i = 0; i < n; i++) t[i] = now - (long) (n - i) * STEP;
+
+            when(repository.findSeriesColumns(eq(userId), anyLong())).thenAnswer(inv -> {
+                long from = inv.getArgument(1);
+                List<Object[]> rows = new ArrayList<>();
+                for (int i = lowerBound(from); i < n; i++) rows.add(new Object[]{t[i], sgv(i), 4});
+                return rows;
+            });
+            when(repository.findByUserIdAndDateTimestampBetweenOrderByDateTimestampAsc(eq(userId), anyLong(), anyLong()))
+                    .thenAnswer(inv -> {
+                        long from = inv.getArgument(1), to = inv.getArgument(2);
+                        List<CgmReading> rows = new ArrayList<>();
+                        for (int i = lowerBound(from); i < n && t[i] <= to; i++) {
+                            CgmReading r = new CgmReading();
+                            r.setDateTimestamp(t[i]);
+                            r.setSgv(sgv(i));
+                            rows.add(r);
+                        }
+                        return rows;
+                    });
+
+            UserSettingsService settings = mock(UserSettingsService.class);
+            when(settings.getUserSettings(userId)).thenReturn(new UserSettingsDTO());
+            UserInsulinPreferencesService prefs = mock(UserInsulinPreferencesService.class);
+            when(prefs.getPreferences(userId)).thenReturn(new UserInsulinPreferencesDTO());
+            when(prefs.getRapidIobParameters(userId)).thenReturn(new RapidInsulinIobParameters(4.0, 75));
+            NoteRepository notes = mock(NoteRepository.class);
+            when(notes.findByUserIdAndTimestampBetween(eq(userId), any(), any())).thenReturn(List.of());
+            CgmRollupService rollups = mock(CgmRollupService.class);
+            when(rollups.summary(eq(userId), anyInt()))
+                    .thenReturn(new GlucoseReportDTO.Summary(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0));
+
+            service = new ContextAggregatorService(
+                    new CgmSeriesCache(repository, 35, 10_000_000, 60), notes, settings, prefs,
+                    mock(CarbsOnBoardService.class), mock(InsulinCalculatorService.class), rollups);
+        }
+
+        long medianBuildNanos() {
+            for (int i = 0; i < WARMUP; i++) lastContext = service.buildContext(userId, WINDOW_HOURS);
+            long[] samples = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                long t0 = System.nanoTime();
+                lastContext = service.buildContext(userId, WINDOW_HOURS);
+                samples[i] = System.nanoTime() - t0;
+            }
+            Arrays.sort(samples);
+            return samples[RUNS / 2];
+        }
+
+        private int lowerBound(long ms) {
+            int idx = Arrays.binarySearch(t, ms);
+            return idx >= 0 ? idx : -idx - 1;
+        }
+
+        private static int sgv(int i) {
+            return 126 + (int) (36 * Math.sin(i / 30.0));
+        }
+    }
+}
@@ -1,16 +1,19 @@
 package che.glucosemonitorbe.ai;
 
 import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.GlucoseReportDTO;
 import che.glucosemonitorbe.dto.RapidInsulinIobParameters;
 import che.glucosemonitorbe.dto.UserInsulinPreferencesDTO;
 import che.glucosemonitorbe.dto.UserSettingsDTO;
 import che.glucosemonitorbe.entity.Note;
-import che.glucosemonitorbe.repository.CgmReadingRepository;
 import che.glucosemonitorbe.repository.NoteRepository;
 import che.glucosemonitorbe.service.CarbsOnBoardService;
 import che.glucosemonitorbe.service.InsulinCalculatorService;
 import che.glucosemonitorbe.service.UserInsulinPreferencesService;
 import che.glucosemonitorbe.service.UserSettingsService;
+import che.glucosemonitorbe.service.cgm.CgmRollupService;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -22,6 +25,7 @@ import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -34,12 +38,13 @@ import static org.mockito.Mockito.when;
 @MockitoSettings(strictness = Strictness.LENIENT)
 class ContextAggregatorServiceTest {
 
-    @Mock CgmReadingRepository chartDataRepository;
+    @Mock CgmSeriesCache cgmSeriesCache;
     @Mock NoteRepository noteRepository;
     @Mock UserSettingsService userSettingsService;
     @Mock UserInsulinPreferencesService insulinPreferencesService;
     @Mock CarbsOnBoardService carbsOnBoardService;
     @Mock InsulinCalculatorService insulinCalculatorService;
+    @Mock CgmRollupService cgmRollupService;
 
     @InjectMocks ContextAggregatorService service;
 
@@ -63,6 +68,8 @@ class ContextAggregatorServiceTest {
         when(noteRepository.findByUserIdAndTimestampBetween(eq(userId), any(), any())).thenReturn(List.of());
         when(carbsOnBoardService.calculateTotalCarbsOnBoard(any(), any(), eq(userId))).thenReturn(0.0);
         when(insulinCalculatorService.calculateTotalActiveInsulin(any(), any(), anyDouble(), anyDouble())).thenReturn(0.0);
+        when(cgmRollupService.summary(any(), anyInt()))
+                .thenReturn(new GlucoseReportDTO.Summary(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0));
     }
 
     @Test
@@ -72,7 +79,7 @@ class ContextAggregatorServiceTest {
         long now = System.currentTimeMillis();
         CgmReading r1 = chartRow(108, now - 3_600_000L);
         CgmReading r2 = chartRow(162, now - 60_000L);
-        when(chartDataRepository.findByUserIdOrderByDateTimestampAsc(userId)).thenReturn(List.of(r1, r2));
+        givenReadings(userId, List.of(r1, r2));
 
         AnalysisContext ctx = service.buildContext(userId, 12);
 
@@ -86,13 +93,29 @@ class ContextAggregatorServiceTest {
     @Test
     @DisplayName("buildContext with no glucose readings returns zero stats")
     void buildContext_noReadings_zeroStats() {
-        when(chartDataRepository.findByUserIdOrderByDateTimestampAsc(userId)).thenReturn(List.of());
+        givenReadings(userId, List.of());
 
         AnalysisContext ctx = service.buildContext(userId, 12);
 
         assertThat(ctx.getLatestGlucose()).isZero();
         assertThat(ctx.getMinGlucose()).isZero();
         assertThat(ctx.getGlucoseValues()).isEmpty();
+        assertThat(ctx.getAvgGlucose14d()).isNull();
+        assertThat(ctx.getTimeInRange14d()).isNull();
+    }
+
+    @Test
+    @DisplayName("buildContext adds the 14-day mean, CV and time in range from the rollups")
+    void buildContext_longRangeFromRollups() {
+        givenReadings(userId, List.of());
+        when(cgmRollupService.summary(userId, 14)).thenReturn(new GlucoseReportDTO.Summary(
+                4032, 7.8, 2.6, 33.3, 6.9, 2.8, 19.4, 3.1, 71.5, 25.4, 4.4, 6.0, 7.4, 9.2, 12.6));
+
+        AnalysisContext ctx = service.buildContext(userId, 12);
+
+        assertThat(ctx.getAvgGlucose14d()).isEqualTo(7.8);
+        assertThat(ctx.getGlucoseCv14d()).isEqualTo(33.3);
+        assertThat(ctx.getTimeInRange14d()).isEqualTo(71.5);
     }
 
     @Test
@@ -100,7 +123,7 @@ class ContextAggregatorServiceTest {
     void buildContext_2hPredictionClamped() {
         long now = System.currentTimeMillis();
         CgmReading r = chartRow(450, now - 1000); // 25 mmol/L
-        when(chartDataRepository.findByUserIdOrderByDateTimestampAsc(userId)).thenReturn(List.of(r));
+        givenReadings(userId, List.of(r));
         when(carbsOnBoardService.calculateTotalCarbsOnBoard(any(), any(), eq(userId))).thenReturn(200.0); // huge COB
 
         AnalysisContext ctx = service.buildContext(userId, 12);
@@ -114,7 +137,7 @@ class ContextAggregatorServiceTest {
     void buildContext_correctionUnitsCalculatedWhenHyper() {
         long now = System.currentTimeMillis();
         CgmReading r = chartRow((int)(11.5 * 18), now - 1000);
-        when(chartDataRepository.findByUserIdOrderByDateTimestampAsc(userId)).thenReturn(List.of(r));
+        givenReadings(userId, List.of(r));
         when(insulinCalculatorService.calculateTotalActiveInsulin(any(), any(), anyDouble(), anyDouble())).thenReturn(0.0);
 
         AnalysisContext ctx = service.buildContext(userId, 12);
@@ -146,7 +169,7 @@ class ContextAggregatorServiceTest {
 
         when(noteRepository.findByUserIdAndTimestampBetween(eq(uid), any(), any()))
                 .thenReturn(List.of(bolusNote, mealNote));
-        when(chartDataRepository.findByUserIdOrderByDateTimestampAsc(uid)).thenReturn(List.of());
+        givenReadings(uid, List.of());
 
         AnalysisContext ctx = service.buildContext(uid, 12);
 
@@ -177,15 +200,39 @@ class ContextAggregatorServiceTest {
 
         when(noteRepository.findByUserIdAndTimestampBetween(eq(uid), any(), any()))
                 .thenReturn(List.of(bolusNote, mealNote));
-        when(chartDataRepository.findByUserIdOrderByDateTimestampAsc(uid)).thenReturn(List.of());
+        givenReadings(uid, List.of());
 
         AnalysisContext ctx = service.buildContext(uid, 12);
 
         assertThat(ctx.getPreBolusTimingContribution()).isGreaterThan(0.0);
     }
 
+    @Test
+    @DisplayName("buildContext reports variability, time in range and the 30 min delta")
+    void buildContext_variabilityAndTimeInRange() {
+        long now = System.currentTimeMillis();
+        List<CgmReading> rows = new ArrayList<>();
+        // 12 readings 5 min apart: 3 low (3.0), 6 in range (6.0), 3 high (12.0); latest 12.0.
+        int[] sgv = {54, 54, 54, 108, 108, 108, 108, 108, 108, 216, 216, 216};
+        for (int i = 0; i < sgv.length; i++) rows.add(chartRow(sgv[i], now - (sgv.length - i) * 300_000L));
+        givenReadings(userId, rows);
+
+        AnalysisContext ctx = service.buildContext(userId, 12);
+
+        assertThat(ctx.getAvgGlucose()).isCloseTo(6.75, within(0.01));
+        assertThat(ctx.getGlucoseSd()).isCloseTo(3.27, within(0.01));
+        assertThat(ctx.getTimeBelowRange()).isEqualTo(25.0);
+        assertThat(ctx.getTimeInRange()).isEqualTo(50.0);
+        assertThat(ctx.getTimeAboveRange()).isEqualTo(25.0);
+        assertThat(ctx.getDeltaGlucose30m()).isCloseTo(6.0, within(0.01));
+    }
+
     // ---- helpers ----
 
+    private void givenReadings(UUID uid, List<CgmReading> rows) {
+        when(cgmSeriesCache.range(eq(uid), anyLong(), anyLong())).thenReturn(CgmSeries.of(rows));
+    }
+
     private CgmReading chartRow(int sgv, long tsMs) {
         CgmReading row = new CgmReading();
         row.setSgv(sgv);
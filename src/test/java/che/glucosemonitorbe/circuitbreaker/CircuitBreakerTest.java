@@ -3,6 +3,8 @@ package che.glucosemonitorbe.circuitbreaker;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.CompletableFuture;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -201,6 +203,35 @@ class CircuitBreakerTest {
         assertThat(stats.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
     }
 
+    // -- async ------------------------------------------------------------------
+
+    @Test
+    void asyncFailures_countTowardOpeningAndFallBack() {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            String result = cb.executeAsyncWithFallback(
+                    () -> CompletableFuture.<String>failedFuture(new RuntimeException("simulated failure")),
+                    () -> "fallback").join();
+            assertThat(result).isEqualTo("fallback");
+        }
+        assertThat(cb.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        boolean[] called = {false};
+        assertThat(cb.executeAsyncWithFallback(() -> {
+            called[0] = true;
+            return CompletableFuture.completedFuture("ok");
+        }, () -> "fallback").join()).isEqualTo("fallback");
+        assertThat(called[0]).isFalse();
+    }
+
+    @Test
+    void asyncSuccess_resetsFailureCount() {
+        triggerFailures(FAILURE_THRESHOLD - 1);
+
+        assertThat(cb.executeAsyncWithFallback(() -> CompletableFuture.completedFuture("ok"), () -> "fallback").join())
+                .isEqualTo("ok");
+        assertThat(cb.getFailureCount()).isZero();
+    }
+
     // -- helpers ---------------------------------------------------------------
 
     private void triggerFailures(int count) {
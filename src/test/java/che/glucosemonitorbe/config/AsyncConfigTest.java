@@ -0,0 +1,31 @@
+package che.glucosemonitorbe.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncConfigTest {
+
+    static class ThreeJobs {
+        @Scheduled(initialDelay = 3_600_000, fixedDelay = 3_600_000)
+        void first() { }
+
+        @Scheduled(initialDelay = 3_600_000, fixedDelay = 3_600_000)
+        void second() { }
+
+        @Scheduled(cron = "0 0 3 * * *")
+        void third() { }
+    }
+
+    @Test
+    void taskScheduler_getsOneThreadPerScheduledMethod() {
+        try (AnnotationConfigApplicationContext context =
+                     new AnnotationConfigApplicationContext(AsyncConfig.class, ThreeJobs.class)) {
+            assertThat(context.getBean("taskScheduler", ThreadPoolTaskScheduler.class).getPoolSize())
+                    .isEqualTo(3);
+        }
+    }
+}
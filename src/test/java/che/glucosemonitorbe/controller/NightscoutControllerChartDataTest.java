@@ -0,0 +1,154 @@
+package che.glucosemonitorbe.controller;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.CgmReadingCursor;
+import che.glucosemonitorbe.dto.NightscoutEntryDto;
+import che.glucosemonitorbe.dto.UserDto;
+import che.glucosemonitorbe.nightscout.NightScoutIntegration;
+import che.glucosemonitorbe.service.CgmReadingService;
+import che.glucosemonitorbe.service.UserDataSourceConfigService;
+import che.glucosemonitorbe.service.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/** Keyset-paginated and streamed {@code /api/nightscout/chart-data}. */
+class NightscoutControllerChartDataTest {
+
+    private final CgmReadingService chartDataService = mock(CgmReadingService.class);
+    private final UserService userService = mock(UserService.class);
+    private final UserDataSourceConfigService dataSourceConfigService = mock(UserDataSourceConfigService.class);
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private MockMvc mockMvc;
+    private Authentication auth;
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() {
+        NightscoutController controller = new NightscoutController(
+                mock(NightScoutIntegration.class), chartDataService, userService, dataSourceConfigService, mapper);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        userId = UUID.randomUUID();
+        when(userService.getUserByUsername("testuser"))
+                .thenReturn(UserDto.builder().id(userId).username("testuser").build());
+        auth = new UsernamePasswordAuthenticationToken(
+                "testuser", null, List.of(new SimpleGrantedAuthority("ROLE_USER")));
+    }
+
+    private static NightscoutEntryDto entry(String id, long date) {
+        return new NightscoutEntryDto(id, 120, date, null, 4, "Flat", "dev", "sgv", 0, null);
+    }
+
+    @Test
+    @DisplayName("a full page carries the (timestamp, id) cursor of the next older page; a short page does not")
+    void chartData_fullPage_setsNextCursor() throws Exception {
+        CgmReadingCursor next = new CgmReadingCursor(7000L, UUID.fromString("00000000-0000-0000-0000-0000000000e1"));
+        when(chartDataService.getLatestEntries(userId, null, new CgmReadingCursor(9000L, null), 2))
+                .thenReturn(new CgmReadingService.EntryPage(List.of(entry("e1", 7000L), entry("e2", 8000L)), next));
+        when(chartDataService.getLatestEntries(userId, null, next, 2))
+                .thenReturn(new CgmReadingService.EntryPage(List.of(entry("e0", 6000L)), null));
+
+        mockMvc.perform(get("/api/nightscout/chart-data").principal(auth)
+                        .param("count", "2").param("before", "9000"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(NightscoutController.NEXT_CURSOR_HEADER,
+                        "7000_00000000-0000-0000-0000-0000000000e1"));
+        mockMvc.perform(get("/api/nightscout/chart-data").principal(auth)
+                        .param("count", "2").param("before", "7000_00000000-0000-0000-0000-0000000000e1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(NightscoutController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    @DisplayName("a malformed cursor is rejected before any query runs")
+    void chartData_malformedCursor_isBadRequest() throws Exception {
+        mockMvc.perform(get("/api/nightscout/chart-data").principal(auth)
+                        .param("before", "7000_not-a-uuid"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(chartDataService);
+    }
+
+    @Test
+    @DisplayName("LibreLinkUp users are served LibreLinkUp readings only, filtered in the query")
+    void chartData_libreUser_filtersBySourceInQuery() throws Exception {
+        when(dataSourceConfigService.chartDataSource(userId)).thenReturn(CgmReading.DataSource.LIBRE_LINK_UP);
+        when(chartDataService.getLatestEntries(userId, CgmReading.DataSource.LIBRE_LINK_UP, null, 100))
+                .thenReturn(new CgmReadingService.EntryPage(List.of(entry("llu-1", 1000L)), null));
+
+        MvcResult result = mockMvc.perform(get("/api/nightscout/chart-data").principal(auth))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getContentAsString()).contains("llu-1");
+        verify(chartDataService, never()).getChartDataAsEntries(any());
+    }
+
+    @Test
+    @DisplayName("the stream emits one NDJSON entry line per reading and a done line with the next cursor")
+    void stream_emitsEntriesThenDone() throws Exception {
+        CgmReadingCursor next = new CgmReadingCursor(2000L, UUID.fromString("00000000-0000-0000-0000-0000000000e1"));
+        when(chartDataService.streamEntries(eq(userId), eq(null), eq(new CgmReadingCursor(5000L, null)), eq(3), any()))
+                .thenAnswer(inv -> {
+                    Consumer<NightscoutEntryDto> sink = inv.getArgument(4);
+                    sink.accept(entry("e3", 4000L));
+                    sink.accept(entry("e2", 3000L));
+                    sink.accept(entry("e1", 2000L));
+                    return next;
+                });
+
+        MvcResult started = mockMvc.perform(get("/api/nightscout/chart-data/stream").principal(auth)
+                        .param("count", "3").param("before", "5000"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        List<String> lines = result.getResponse().getContentAsString().lines().toList();
+        assertThat(lines).hasSize(4);
+        JsonNode first = mapper.readTree(lines.get(0));
+        assertThat(first.get("type").asText()).isEqualTo("entry");
+        assertThat(first.get("entry").get("_id").asText()).isEqualTo("e3");
+        JsonNode done = mapper.readTree(lines.get(3));
+        assertThat(done.get("type").asText()).isEqualTo("done");
+        assertThat(done.get("count").asInt()).isEqualTo(3);
+        assertThat(done.get("nextCursor").asText()).isEqualTo("2000_00000000-0000-0000-0000-0000000000e1");
+    }
+
+    @Test
+    @DisplayName("stream requests are capped at MAX_STREAM_COUNT readings")
+    void stream_capsCount() throws Exception {
+        when(chartDataService.streamEntries(any(), any(), any(), anyInt(), any())).thenReturn(null);
+
+        MvcResult started = mockMvc.perform(get("/api/nightscout/chart-data/stream").principal(auth)
+                        .param("count", "1000000"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+
+        verify(chartDataService).streamEntries(eq(userId), eq(null), eq(null),
+                eq(NightscoutController.MAX_STREAM_COUNT), any());
+    }
+}
@@ -1,6 +1,5 @@
 package che.glucosemonitorbe.controller;
 
-import che.glucosemonitorbe.domain.UserDataSourceConfig;
 import che.glucosemonitorbe.dto.NightscoutEntryDto;
 import che.glucosemonitorbe.dto.UserDto;
 import che.glucosemonitorbe.nightscout.NightScoutIntegration;
@@ -23,11 +22,12 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -168,16 +168,14 @@ class NightscoutControllerDateRangeTest {
 
     /**
      * When ?since=<epochMs> is supplied, the controller must delegate to
-     * getChartDataAsEntriesSince (incremental fetch) rather than getChartDataAsEntries.
+     * getChartDataAsEntriesSince (incremental fetch) rather than the latest-page query.
      */
     @Test
     void chartData_withSinceParam_callsEntriesSince() throws Exception {
         long sinceMs = 1640998800000L;
         NightscoutEntryDto entry = new NightscoutEntryDto("llu-new", 130, sinceMs + 300_000L,
                 null, 4, "Flat", "dev", "sgv", 0, null);
-        when(chartDataService.getChartDataAsEntriesSince(userId, sinceMs)).thenReturn(List.of(entry));
-        when(dataSourceConfigService.getActiveConfigEntity(userId, UserDataSourceConfig.DataSourceType.LIBRE_LINK_UP))
-                .thenReturn(Optional.empty());
+        when(chartDataService.getChartDataAsEntriesSince(userId, sinceMs, null)).thenReturn(List.of(entry));
 
         MvcResult result = mockMvc.perform(get("/api/nightscout/chart-data")
                         .principal(auth)
@@ -187,23 +185,22 @@ class NightscoutControllerDateRangeTest {
 
         String body = result.getResponse().getContentAsString();
         assertThat(body).contains("llu-new");
-        verify(chartDataService).getChartDataAsEntriesSince(userId, sinceMs);
-        verify(chartDataService, never()).getChartDataAsEntries(userId);
+        verify(chartDataService).getChartDataAsEntriesSince(userId, sinceMs, null);
+        verify(chartDataService, never()).getLatestEntries(any(), any(), any(), anyInt());
     }
 
     /**
-     * Without ?since, the controller must call getChartDataAsEntries (full fetch)
-     * and cap results to the default count of 100.
+     * Without ?since, the controller must read only the newest page (default count of 100)
+     * instead of the user's full history.
      */
     @Test
-    void chartData_withoutSince_callsGetAllEntries() throws Exception {
+    void chartData_withoutSince_readsLatestPage() throws Exception {
         List<NightscoutEntryDto> allEntries = List.of(
                 new NightscoutEntryDto("e1", 120, 1000L, null, 4, "Flat", "dev", "sgv", 0, null),
                 new NightscoutEntryDto("e2", 130, 2000L, null, 4, "Flat", "dev", "sgv", 0, null)
         );
-        when(chartDataService.getChartDataAsEntries(userId)).thenReturn(allEntries);
-        when(dataSourceConfigService.getActiveConfigEntity(userId, UserDataSourceConfig.DataSourceType.LIBRE_LINK_UP))
-                .thenReturn(Optional.empty());
+        when(chartDataService.getLatestEntries(userId, null, null, 100))
+                .thenReturn(new CgmReadingService.EntryPage(allEntries, null));
 
         MvcResult result = mockMvc.perform(get("/api/nightscout/chart-data")
                         .principal(auth))
@@ -212,8 +209,9 @@ class NightscoutControllerDateRangeTest {
 
         String body = result.getResponse().getContentAsString();
         assertThat(body).contains("e1").contains("e2");
-        verify(chartDataService).getChartDataAsEntries(userId);
-        verify(chartDataService, never()).getChartDataAsEntriesSince(any(UUID.class), any(Long.class));
+        verify(chartDataService).getLatestEntries(userId, null, null, 100);
+        verify(chartDataService, never()).getChartDataAsEntries(userId);
+        verify(chartDataService, never()).getChartDataAsEntriesSince(any(UUID.class), anyLong(), any());
     }
 
     /**
@@ -229,9 +227,7 @@ class NightscoutControllerDateRangeTest {
             manyEntries.add(new NightscoutEntryDto("id-" + i, 100 + i, sinceMs + i * 1000L,
                     null, 4, "Flat", "dev", "sgv", 0, null));
         }
-        when(chartDataService.getChartDataAsEntriesSince(userId, sinceMs)).thenReturn(manyEntries);
-        when(dataSourceConfigService.getActiveConfigEntity(userId, UserDataSourceConfig.DataSourceType.LIBRE_LINK_UP))
-                .thenReturn(Optional.empty());
+        when(chartDataService.getChartDataAsEntriesSince(userId, sinceMs, null)).thenReturn(manyEntries);
 
         MvcResult result = mockMvc.perform(get("/api/nightscout/chart-data")
                         .principal(auth)
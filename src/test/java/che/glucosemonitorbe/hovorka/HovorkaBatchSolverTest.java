@@ -0,0 +1,109 @@
+package che.glucosemonitorbe.hovorka;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The batched solver against the scalar in-place RK4 step: every lane must track its own
+ * {@link HovorkaOdeSolver} integration bit for bit, with either kernel. Eleven lanes so the vector
+ * kernel runs both full SIMD chunks and its scalar tail on 256- and 512-bit species.
+ */
+class HovorkaBatchSolverTest {
+
+    private static final int LANES = 11;
+    private static final int MINUTES = 300;
+
+    private final HovorkaOdeSolver solver = new HovorkaOdeSolver(new DallaManGutModel());
+
+    @Test
+    @DisplayName("scalar kernel: every lane is bit-identical to its own scalar integration")
+    void scalarKernel_matchesScalarSolverBitForBit() {
+        assertLanesMatchScalarSolver(false);
+    }
+
+    @Test
+    @DisplayName("vector kernel: every lane is bit-identical to its own scalar integration")
+    void vectorKernel_matchesScalarSolverBitForBit() {
+        assumeTrue(HovorkaBatchSolver.vectorApiAvailable(), "jdk.incubator.vector not resolved");
+        assertLanesMatchScalarSolver(true);
+    }
+
+    private void assertLanesMatchScalarSolver(boolean vectorized) {
+        List<HovorkaBatchSolver.Lane> lanes = new ArrayList<>();
+        for (int k = 0; k < LANES; k++) lanes.add(lane(k));
+        HovorkaBatchSolver batch = new HovorkaBatchSolver(lanes, vectorized);
+        assertThat(batch.isVectorized()).isEqualTo(vectorized);
+
+        HovorkaStateBuffer[] bufs = new HovorkaStateBuffer[LANES];
+        for (int k = 0; k < LANES; k++) bufs[k] = HovorkaStateBuffer.of(lanes.get(k).initial());
+        HovorkaOdeSolver.Workspace ws = new HovorkaOdeSolver.Workspace();
+
+        for (int m = 1; m <= MINUTES; m++) {
+            batch.step();
+            for (int k = 0; k < LANES; k++) {
+                HovorkaBatchSolver.Lane lane = lanes.get(k);
+                int tapeGi = m < lane.mealGi().length ? lane.mealGi()[m] : -1;
+                solver.step(bufs[k], lane.params(), at(lane.carbMmol(), m),
+                        tapeGi >= 0 ? tapeGi : bufs[k].activeGI(), at(lane.protFatKcal(), m),
+                        at(lane.insulinEffect(), m), at(lane.uptakeRate(), m), ws);
+                assertThat(batch.state(k)).as("lane %d at minute %d", k, m).isEqualTo(bufs[k].toState());
+                assertThat(batch.glucoseMmolL(k)).isEqualTo(bufs[k].glucoseMmolL(lane.params()));
+            }
+        }
+        assertThat(batch.minute()).isEqualTo(MINUTES);
+    }
+
+    /**
+     * Lane k: its own body weight, ISF and gastric tMaxG, a meal (GI and protein+fat varying) at a lane-
+     * specific minute, a bolus-shaped insulin-effect curve, activity uptake on every third lane, and a few
+     * edge cases - no meal at all (k_empt stays at k_min), a tape shorter than the run.
+     */
+    private static HovorkaBatchSolver.Lane lane(int k) {
+        double weight = 55.0 + 4.0 * k;
+        double vG  = HovorkaParameters.VG_PER_KG * weight;
+        double f01 = HovorkaParameters.F01_PER_KG * weight;
+        HovorkaParameters p = new HovorkaParameters(vG, f01, f01, f01 * (1.0 + 0.05 * k),
+                HovorkaParameters.K12_POP, HovorkaParameters.K21_POP,
+                (35.0 + 6.0 * k) / 1.68, 0.8, 1.6 + 0.15 * k, weight);
+
+        HovorkaState initial = k % 4 == 0 || k == 2
+                ? HovorkaState.steadyState(6.0 + 0.3 * k, p)
+                : new HovorkaState((6.0 + 0.3 * k) * vG, (6.0 + 0.3 * k) * vG, 20.0 + k, 30.0, 15.0,
+                        0.05 * k, 0.02 * k, 40.0 * (k % 3), 60.0 + k, 50 + 5 * k);
+
+        int size = k == 5 ? MINUTES / 2 : MINUTES + 1;
+        double[] carb = new double[size];
+        int[] gi = new int[size];
+        double[] protFat = new double[size];
+        double[] ie = new double[size];
+        java.util.Arrays.fill(gi, -1);
+        if (k != 2) {
+            int meal = 10 + 9 * k;
+            carb[meal] = 150.0 + 20.0 * k;
+            gi[meal] = k == 7 ? -1 : 35 + 10 * k;
+            protFat[meal] = 80.0 * (k % 3);
+            if (k % 2 == 1 && meal + 90 < size) carb[meal + 90] = 60.0;   // second meal, GI unchanged
+        }
+        double peak = 0.02 * p.isf() * p.effectiveInsulinVolume();
+        for (int m = 1; m < size; m++) {
+            double t = m - 5.0 * k;
+            ie[m] = t > 0 ? peak * (t / 60.0) * Math.exp(1.0 - t / 60.0) : 0.0;
+        }
+        double[] uptake = null;
+        if (k % 3 == 0) {
+            uptake = new double[size];
+            for (int m = 120; m < Math.min(size, 180); m++) uptake[m] = 0.002;
+        }
+        return new HovorkaBatchSolver.Lane(p, initial, carb, gi, protFat, ie, uptake);
+    }
+
+    private static double at(double[] tape, int m) {
+        return tape != null && m < tape.length ? tape[m] : 0.0;
+    }
+}
@@ -621,10 +621,201 @@ class HovorkaGlucosePredictionServiceTest {
                         .isBetween(3.1, 6.1));   // g0 ± 1.5 mmol/L
     }
 
+    // ---
+    // Prepared path: compiled once, re-integrated with re-scaled isf / aG (calibration replay)
+    // ---
+
+    @Test
+    @DisplayName("prepared path re-integrated with scaled isf/aG matches a from-scratch build")
+    void preparedPath_matchesFromScratchPathAtScaledParameters() {
+        List<CarbsEntry> carbs = List.of(
+                CarbsEntry.builder().timestamp(NOW.minusMinutes(40)).carbs(45.0).build(),
+                CarbsEntry.builder().timestamp(NOW.plusMinutes(30)).carbs(30.0).protein(12.0).fat(9.0).build());
+        List<InsulinDose> doses = List.of(
+                InsulinDose.builder().timestamp(NOW.minusMinutes(45)).units(4.0).build(),
+                InsulinDose.builder().timestamp(NOW.minusHours(9)).units(3.0).build(),   // fully decayed
+                InsulinDose.builder().timestamp(NOW.plusMinutes(25)).units(2.5).build());
+        Note basal = new Note();
+        basal.setTimestamp(NOW.minusHours(20));
+        basal.setInsulin(18.0);
+        basal.setType(Note.TYPE_LONG_ACTING);
+
+        HovorkaGlucosePredictionService.PreparedPath prepared = service.preparePath(
+                params, new RapidInsulinIobParameters(4.5, 55.0), null, 7.4, NOW,
+                carbs, doses, List.of(basal), 240);
+
+        // aG unchanged: the stored warm state is used as-is -> bit-identical to a fresh build.
+        HovorkaParameters isfOnly = scaled(params, 1.3, 1.0);
+        assertThat(service.buildPredictionPath(prepared, isfOnly, USER_ID, ActivityProvider.NONE))
+                .containsExactlyElementsOf(service.buildPredictionPath(
+                        isfOnly, 7.4, NOW, carbs, doses, List.of(basal), USER_ID, 240));
+
+        // aG changed: the warm gut state is rescaled, equal up to rounding of the 0.1 mmol/L output.
+        HovorkaParameters both = scaled(params, 0.85, 1.25);
+        List<PredictionPointDTO> fromPrepared =
+                service.buildPredictionPath(prepared, both, USER_ID, ActivityProvider.NONE);
+        List<PredictionPointDTO> fromScratch = service.buildPredictionPath(
+                both, 7.4, NOW, carbs, doses, List.of(basal), USER_ID, 240);
+        assertThat(fromPrepared).hasSameSizeAs(fromScratch);
+        for (int i = 0; i < fromScratch.size(); i++) {
+            assertThat(fromPrepared.get(i).getPredictedGlucose())
+                    .as("G at %s", fromScratch.get(i).getTimestamp())
+                    .isCloseTo(fromScratch.get(i).getPredictedGlucose(), within(0.1));
+        }
+
+        // Structural parameters are baked into the prepared tapes and warm state.
+        org.assertj.core.api.Assertions.assertThatThrownBy(() -> service.buildPredictionPath(
+                        prepared, paramsWithTMaxG(60.0), USER_ID, ActivityProvider.NONE))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("a path cursor advanced minute by minute reproduces the emitted path, activity included")
+    void pathCursor_matchesEmittedPath() {
+        List<CarbsEntry> carbs = List.of(
+                CarbsEntry.builder().timestamp(NOW.minusMinutes(40)).carbs(45.0).build(),
+                CarbsEntry.builder().timestamp(NOW.plusMinutes(30)).carbs(30.0).build());
+        List<InsulinDose> doses = List.of(
+                InsulinDose.builder().timestamp(NOW.minusMinutes(45)).units(4.0).build());
+        ActivityProvider walk = t -> t.isAfter(NOW.plusMinutes(60)) && t.isBefore(NOW.plusMinutes(120)) ? 0.6 : 0.0;
+        RapidInsulinIobParameters iob = new RapidInsulinIobParameters(4.5, 55.0);
+
+        for (ActivityProvider activity : List.of(ActivityProvider.NONE, walk)) {
+            List<PredictionPointDTO> path = service.buildPredictionPath(
+                    params, 7.4, NOW, carbs, doses, List.of(), USER_ID, 360, activity);
+            HovorkaGlucosePredictionService.PathCursor cursor = service.openCursor(
+                    service.preparePath(params, iob, null, 7.4, NOW, carbs, doses, List.of(), 360),
+                    params, activity);
+
+            for (PredictionPointDTO pt : path) {
+                int minute = (int) java.time.Duration.between(NOW, pt.getTimestamp()).toMinutes();
+                assertThat(cursor.advanceTo(minute)).as("G at +%d min", minute).isEqualTo(pt.getPredictedGlucose());
+            }
+            org.assertj.core.api.Assertions.assertThatThrownBy(() -> cursor.advanceTo(5))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    @DisplayName("the adaptive integrator emits the RK4 path's schedule and glucose, activity included")
+    void dormandPrince_matchesRk4Path() {
+        List<CarbsEntry> carbs = List.of(
+                CarbsEntry.builder().timestamp(NOW.minusMinutes(40)).carbs(45.0).build(),
+                CarbsEntry.builder().timestamp(NOW.plusMinutes(30)).carbs(30.0).protein(12.0).fat(9.0).build());
+        List<InsulinDose> doses = List.of(
+                InsulinDose.builder().timestamp(NOW.minusMinutes(45)).units(4.0).build(),
+                InsulinDose.builder().timestamp(NOW.plusMinutes(25)).units(2.5).build());
+        ActivityProvider walk = t -> t.isAfter(NOW.plusMinutes(200)) && t.isBefore(NOW.plusMinutes(260)) ? 0.6 : 0.0;
+        HovorkaGlucosePredictionService.PreparedPath prepared = service.preparePath(
+                params, new RapidInsulinIobParameters(4.5, 55.0), null, 7.4, NOW, carbs, doses, List.of(), 480);
+
+        for (ActivityProvider activity : List.of(ActivityProvider.NONE, walk)) {
+            List<PredictionPointDTO> rk4 = service.buildPredictionPath(
+                    params, 7.4, NOW, carbs, doses, List.of(), USER_ID, 480, activity);
+            List<PredictionPointDTO> dp = service.buildPredictionPath(
+                    prepared, params, USER_ID, activity, OdeIntegrator.DORMAND_PRINCE);
+
+            assertThat(dp).extracting(PredictionPointDTO::getTimestamp)
+                    .containsExactlyElementsOf(rk4.stream().map(PredictionPointDTO::getTimestamp).toList());
+            // Emitted glucose is rounded to 0.1 mmol/L, so states 0.01 apart may land one step apart;
+            // the unrounded 0.01 bound is checked in HovorkaOdeSolverTest.
+            for (int i = 0; i < rk4.size(); i++) {
+                assertThat(dp.get(i).getPredictedGlucose())
+                        .as("G at %s", rk4.get(i).getTimestamp())
+                        .isCloseTo(rk4.get(i).getPredictedGlucose(), within(0.1));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("branched paths equal one full build per branch, sequential and on a pool")
+    void branchedPaths_matchIndividualBuilds() {
+        List<CarbsEntry> history = List.of(
+                CarbsEntry.builder().timestamp(NOW.minusMinutes(40)).carbs(45.0).build());
+        List<InsulinDose> doses = List.of(
+                InsulinDose.builder().timestamp(NOW.minusMinutes(45)).units(4.0).build(),
+                InsulinDose.builder().timestamp(NOW).units(5.0).build());
+        List<HovorkaGlucosePredictionService.PathBranch> branches = new java.util.ArrayList<>();
+        for (int pause : new int[]{0, 10, 30}) {
+            branches.add(new HovorkaGlucosePredictionService.PathBranch(List.of(
+                    CarbsEntry.builder().timestamp(NOW.plusMinutes(pause)).carbs(50.0).protein(20.0).fat(15.0).build()),
+                    240 + pause));
+        }
+        branches.add(new HovorkaGlucosePredictionService.PathBranch(List.of(), 120));
+
+        List<List<PredictionPointDTO>> expected = new java.util.ArrayList<>();
+        for (HovorkaGlucosePredictionService.PathBranch b : branches) {
+            List<CarbsEntry> carbs = new java.util.ArrayList<>(history);
+            carbs.addAll(b.prospectiveCarbs());
+            expected.add(service.buildPredictionPath(params, 7.4, NOW, carbs, doses, List.of(), USER_ID,
+                    b.pathMinutes()));
+        }
+
+        assertThat(service.buildBranchedPredictionPaths(params, 7.4, NOW, history, doses, List.of(), USER_ID,
+                branches, null)).isEqualTo(expected);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(3);
+        try {
+            assertThat(service.buildBranchedPredictionPaths(params, 7.4, NOW, history, doses, List.of(), USER_ID,
+                    branches, pool)).isEqualTo(expected);
+        } finally {
+            pool.shutdown();
+        }
+
+        List<HovorkaGlucosePredictionService.PathBranch> past = List.of(new HovorkaGlucosePredictionService.PathBranch(
+                List.of(CarbsEntry.builder().timestamp(NOW.minusMinutes(5)).carbs(20.0).build()), 60));
+        org.assertj.core.api.Assertions.assertThatThrownBy(() -> service.buildBranchedPredictionPaths(
+                        params, 7.4, NOW, history, doses, List.of(), USER_ID, past, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("batched paths equal one prepared-path build per anchor, activity included")
+    void batchedPaths_matchIndividualBuilds() {
+        List<CarbsEntry> carbs = List.of(
+                CarbsEntry.builder().timestamp(NOW.minusMinutes(40)).carbs(45.0).build(),
+                CarbsEntry.builder().timestamp(NOW.plusMinutes(30)).carbs(30.0).protein(12.0).fat(9.0).build());
+        List<InsulinDose> doses = List.of(
+                InsulinDose.builder().timestamp(NOW.minusMinutes(45)).units(4.0).build(),
+                InsulinDose.builder().timestamp(NOW.plusMinutes(25)).units(2.5).build());
+        ActivityProvider walk = t -> t.isAfter(NOW.plusMinutes(90)) && t.isBefore(NOW.plusMinutes(150)) ? 0.6 : 0.0;
+        RapidInsulinIobParameters iob = new RapidInsulinIobParameters(4.5, 55.0);
+
+        // Six anchors 15 min apart with different horizons and twin scales (five lanes + a tail).
+        List<HovorkaGlucosePredictionService.PreparedPath> prepared = new java.util.ArrayList<>();
+        List<HovorkaParameters> scaledParams = new java.util.ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            LocalDateTime anchor = NOW.minusMinutes(15L * i);
+            prepared.add(service.preparePath(params, iob, null, 7.4 - 0.2 * i, anchor, carbs, doses, List.of(),
+                    120 + 60 * i));
+            scaledParams.add(i == 0 ? params : scaled(params, 0.8 + 0.1 * i, 1.0 + 0.05 * i));
+        }
+
+        for (ActivityProvider activity : List.of(ActivityProvider.NONE, walk)) {
+            List<List<PredictionPointDTO>> batched =
+                    service.buildPredictionPaths(prepared, scaledParams, USER_ID, activity);
+            assertThat(batched).hasSize(prepared.size());
+            for (int i = 0; i < prepared.size(); i++) {
+                assertThat(batched.get(i)).as("anchor %d", i).containsExactlyElementsOf(
+                        service.buildPredictionPath(prepared.get(i), scaledParams.get(i), USER_ID, activity));
+            }
+            assertThat(batched.get(0)).containsExactlyElementsOf(service.buildPredictionPath(
+                    params, 7.4, NOW, carbs, doses, List.of(), USER_ID, 120, activity));
+        }
+
+        org.assertj.core.api.Assertions.assertThatThrownBy(() -> service.buildPredictionPaths(
+                        prepared, List.of(params), USER_ID, ActivityProvider.NONE))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     // ---
     // Helpers
     // ---
 
+    private static HovorkaParameters scaled(HovorkaParameters p, double isfScale, double agScale) {
+        return new HovorkaParameters(p.vG(), p.f01(), p.egpNet(), p.egp0(), p.k12(), p.k21(),
+                p.tMaxG(), p.aG() * agScale, p.isf() * isfScale, p.weightKg());
+    }
+
     /** Build params with a given tMaxG and all other fields at population defaults. */
     private HovorkaParameters paramsWithTMaxG(double tMaxG) {
         double weight = 70.0;
@@ -498,6 +498,175 @@ class HovorkaOdeSolverTest {
         assertThat(s.activeGI()).isEqualTo(70);
     }
 
+    // -- Allocation-free in-place mode -----------------------------------------
+
+    @Test
+    void inPlaceStep_bitIdenticalToArrayRk4Reference() {
+        HovorkaState ref = HovorkaState.steadyState(7.0, params);
+        HovorkaStateBuffer buf = HovorkaStateBuffer.of(ref);
+        HovorkaOdeSolver.Workspace ws = new HovorkaOdeSolver.Workspace();
+        double effect = 2.0 * params.isf() * params.effectiveInsulinVolume() / 120.0;
+
+        for (int m = 1; m <= 300; m++) {
+            double carbs   = (m == 10) ? 250.0 : (m == 90 ? 80.0 : 0.0);
+            int    gi      = (m == 90) ? 45 : 70;
+            double protFat = (m == 10) ? 300.0 : 0.0;
+            double act     = (m > 150 && m < 200) ? 0.002 : 0.0;
+            ref = referenceStep(ref, carbs, gi, protFat, effect, act);
+            solver.step(buf, params, carbs, gi, protFat, effect, act, ws);
+            assertThat(buf.toState()).isEqualTo(ref);
+        }
+    }
+
+    @Test
+    void sensitivityStep_stateUnchangedAndTangentsMatchCentralDifferences() {
+        double isf = 2.2, aG = 0.8, egp0 = HovorkaParameters.EGP0_PER_KG * 70.0;
+
+        HovorkaStateBuffer plain = runMealBolusScenario(isf, aG, egp0, null);
+        HovorkaSensitivityBuffer sens = new HovorkaSensitivityBuffer();
+        HovorkaStateBuffer dual = runMealBolusScenario(isf, aG, egp0, sens);
+
+        // The dual-number path must not perturb the primal integration at all.
+        assertThat(dual.toState()).isEqualTo(plain.toState());
+
+        double[] theta = {isf, aG, egp0};
+        for (int j = 0; j < HovorkaSensitivityBuffer.NP; j++) {
+            double h = 1e-5 * theta[j];
+            double[] up = theta.clone(), down = theta.clone();
+            up[j] += h;
+            down[j] -= h;
+            HovorkaStateBuffer bUp = runMealBolusScenario(up[0], up[1], up[2], null);
+            HovorkaStateBuffer bDown = runMealBolusScenario(down[0], down[1], down[2], null);
+            for (int i = 0; i < HovorkaStateBuffer.N; i++) {
+                double fd = (bUp.y[i] - bDown.y[i]) / (2 * h);
+                assertThat(sens.d(j, i))
+                        .as("d y[%d] / d theta[%d]", i, j)
+                        .isCloseTo(fd, within(1e-5 + 1e-4 * Math.abs(fd)));
+            }
+        }
+        assertThat(sens.d(HovorkaSensitivityBuffer.ISF, HovorkaStateBuffer.Q1)).isNegative();
+        assertThat(sens.d(HovorkaSensitivityBuffer.AG, HovorkaStateBuffer.Q1)).isPositive();
+        assertThat(sens.d(HovorkaSensitivityBuffer.EGP0, HovorkaStateBuffer.Q1)).isPositive();
+    }
+
+    /**
+     * 4 h after a 60 g + 300 kcal meal and a 4 U bolus, a second low-GI snack and an activity bout.
+     * Carbs scale with aG and the insulin effect with isf, as in the prediction service; when
+     * {@code sens} is given the same run is integrated with forward sensitivities.
+     */
+    private HovorkaStateBuffer runMealBolusScenario(double isf, double aG, double egp0,
+                                                    HovorkaSensitivityBuffer sens) {
+        HovorkaParameters p = new HovorkaParameters(params.vG(), params.f01(), params.egpNet(), egp0,
+                params.k12(), params.k21(), params.tMaxG(), aG, isf, params.weightKg());
+        HovorkaStateBuffer buf = HovorkaStateBuffer.of(HovorkaState.steadyState(6.5, p));
+        HovorkaOdeSolver.Workspace ws = new HovorkaOdeSolver.Workspace();
+        double[] dCarb = new double[HovorkaSensitivityBuffer.NP];
+        double[] dIe = new double[HovorkaSensitivityBuffer.NP];
+        for (int m = 1; m <= 240; m++) {
+            double grams   = (m == 10) ? 60.0 : (m == 90 ? 20.0 : 0.0);
+            double carbs   = grams * aG / 0.18;
+            int    gi      = (m == 90) ? 45 : 70;
+            double protFat = (m == 10) ? 300.0 : 0.0;
+            double rate    = Math.max(0.0, iobExponential(4.0, m - 6, 270, 55) - iobExponential(4.0, m - 5, 270, 55));
+            double effect  = isf * p.effectiveInsulinVolume() * rate;
+            double act     = (m > 150 && m < 200) ? 0.002 : 0.0;
+            if (sens == null) {
+                solver.step(buf, p, carbs, gi, protFat, effect, act, ws);
+            } else {
+                dCarb[HovorkaSensitivityBuffer.AG] = grams / 0.18;
+                dIe[HovorkaSensitivityBuffer.ISF]  = p.effectiveInsulinVolume() * rate;
+                solver.step(buf, sens, p, carbs, dCarb, gi, protFat, effect, dIe, act, ws);
+            }
+        }
+        return buf;
+    }
+
+    // -- Adaptive Dormand-Prince integrator ------------------------------------
+
+    @Test
+    void dormandPrince_tracksRk4ReferenceEveryMinute_withFarFewerEvaluations() {
+        int minutes = 480;
+        double[] carbs = new double[minutes + 1], protFat = new double[minutes + 1], effect = new double[minutes + 1];
+        int[] gi = new int[minutes + 1];
+        java.util.Arrays.fill(gi, -1);
+        carbs[10] = 60.0 * params.aG() / 0.18;
+        gi[10] = 70;
+        protFat[10] = 150.0;
+        carbs[200] = 20.0 * params.aG() / 0.18;
+        gi[200] = 45;
+        for (int m = 1; m <= minutes; m++) {
+            double rate = Math.max(0.0, iobExponential(1.0, m - 6, 270, 55) - iobExponential(1.0, m - 5, 270, 55));
+            effect[m] = params.isf() * params.effectiveInsulinVolume() * rate;
+        }
+        HovorkaState start = HovorkaState.steadyState(6.5, params);
+
+        HovorkaStateBuffer rk4 = HovorkaStateBuffer.of(start);
+        HovorkaOdeSolver.Workspace ws = new HovorkaOdeSolver.Workspace();
+        HovorkaStateBuffer adaptive = HovorkaStateBuffer.of(start);
+        DormandPrinceIntegrator dp = new DormandPrinceIntegrator(solver, params, carbs, gi, protFat, effect, null,
+                HovorkaStateBuffer.of(start), minutes,
+                DormandPrinceIntegrator.DEFAULT_RTOL, DormandPrinceIntegrator.DEFAULT_ATOL);
+
+        double excursion = 0.0;
+        for (int m = 1; m <= minutes; m++) {
+            solver.step(rk4, params, carbs[m], gi[m] >= 0 ? gi[m] : rk4.activeGI(), protFat[m], effect[m], 0.0, ws);
+            dp.advanceTo(m, adaptive);
+            assertThat(adaptive.glucoseMmolL(params))
+                    .as("G at +%d min", m)
+                    .isCloseTo(rk4.glucoseMmolL(params), within(0.01));
+            assertThat(adaptive.activeGI()).isEqualTo(rk4.activeGI());
+            excursion = Math.max(excursion, Math.abs(rk4.glucoseMmolL(params) - 6.5));
+        }
+        assertThat(excursion).as("the scenario actually moves glucose").isGreaterThan(1.0);
+        // RK4 spends 4 evaluations per minute.
+        assertThat(dp.evaluations()).isLessThan(minutes);
+    }
+
+    @Test
+    void dormandPrince_fastingStretch_takesLongSteps() {
+        int minutes = 480;
+        double[] zeros = new double[minutes + 1];
+        int[] noGi = new int[minutes + 1];
+        java.util.Arrays.fill(noGi, -1);
+        HovorkaStateBuffer start = HovorkaStateBuffer.of(HovorkaState.steadyState(5.5, params));
+        HovorkaStateBuffer out = new HovorkaStateBuffer();
+        DormandPrinceIntegrator dp = new DormandPrinceIntegrator(solver, params, zeros, noGi, zeros, zeros, null,
+                start, minutes, DormandPrinceIntegrator.DEFAULT_RTOL, DormandPrinceIntegrator.DEFAULT_ATOL);
+
+        for (int m = 5; m <= minutes; m += 5) {
+            dp.advanceTo(m, out);
+            assertThat(out.glucoseMmolL(params)).isCloseTo(5.5, within(0.10));
+        }
+        // At most MAX_STEP_MIN per step: 8 h fits in a couple of dozen accepted steps.
+        assertThat(dp.evaluations()).isLessThan(200);
+    }
+
+    /** Pre-workspace RK4 step (fresh arrays per stage) - the reference the in-place kernel must match. */
+    private HovorkaState referenceStep(HovorkaState s, double carbs, int gi, double protFat,
+                                       double effect, double act) {
+        double meal = s.mealMmol();
+        int activeGi = s.activeGI();
+        double qsto1 = s.qsto1();
+        if (carbs > 0) {
+            qsto1 += carbs;
+            meal = qsto1 + s.qsto2();
+            activeGi = gi;
+        }
+        double[] y = {s.q1(), s.q2(), qsto1, s.qsto2(), s.qgut(), s.inc(), s.x3(), s.protFatGut() + protFat};
+        double[] k1 = solver.derivatives(y, params, meal, activeGi, effect, act);
+        double[] y2 = new double[8], y3 = new double[8], y4 = new double[8];
+        for (int i = 0; i < 8; i++) y2[i] = y[i] + k1[i] * 0.5;
+        double[] k2 = solver.derivatives(y2, params, meal, activeGi, effect, act);
+        for (int i = 0; i < 8; i++) y3[i] = y[i] + k2[i] * 0.5;
+        double[] k3 = solver.derivatives(y3, params, meal, activeGi, effect, act);
+        for (int i = 0; i < 8; i++) y4[i] = y[i] + k3[i];
+        double[] k4 = solver.derivatives(y4, params, meal, activeGi, effect, act);
+        double[] yn = new double[8];
+        for (int i = 0; i < 8; i++) yn[i] = y[i] + (k1[i] + 2 * k2[i] + 2 * k3[i] + k4[i]) / 6.0;
+        return new HovorkaState(yn[0], yn[1], yn[2], yn[3], yn[4], yn[5], yn[6], yn[7], meal, activeGi)
+                .clampNonNegative();
+    }
+
     // -- Helper: OpenAPS IOB (same formula as InsulinCalculatorService) --------
 
     private static double iobExponential(double units, double minsAgo, double diaMin, double peak) {
@@ -39,6 +39,46 @@ class LmParameterFitterTest {
         assertTrue(res.rmse() < 1e-4, "residuals should be driven to ~0, got rmse=" + res.rmse());
     }
 
+    @Test
+    @DisplayName("an exact-Jacobian model converges to the same fit with fewer model evaluations than FD")
+    void jacobianModelMatchesFdFitWithFewerEvaluations() {
+        double trueA = 2.5, trueB = -0.35;
+        double[] xs = {0.0, 0.5, 1.0, 1.5, 2.0, 3.0, 4.0, 5.0};
+        double[] ys = new double[xs.length];
+        for (int i = 0; i < xs.length; i++) ys[i] = trueA * Math.exp(trueB * xs[i]);
+        int[] calls = new int[2];
+
+        LmParameterFitter.ResidualModel fd = p -> {
+            calls[0]++;
+            double[] r = new double[xs.length];
+            for (int i = 0; i < xs.length; i++) r[i] = p[0] * Math.exp(p[1] * xs[i]) - ys[i];
+            return r;
+        };
+        LmParameterFitter.JacobianModel exact = p -> {
+            calls[1]++;
+            double[] r = new double[xs.length];
+            double[][] jac = new double[xs.length][2];
+            for (int i = 0; i < xs.length; i++) {
+                double e = Math.exp(p[1] * xs[i]);
+                r[i] = p[0] * e - ys[i];
+                jac[i][0] = e;
+                jac[i][1] = p[0] * xs[i] * e;
+            }
+            return new LmParameterFitter.Evaluation(r, jac);
+        };
+
+        double[] start = {1.0, 0.0}, lower = {0.1, -5.0}, upper = {10.0, 5.0};
+        LmParameterFitter.Result viaFd = fitter.fit(fd, start, lower, upper);
+        LmParameterFitter.Result viaJac = fitter.fitWithJacobian(exact, start, lower, upper);
+
+        assertEquals(trueA, viaJac.params()[0], 1e-6, "a should be recovered");
+        assertEquals(trueB, viaJac.params()[1], 1e-6, "b should be recovered");
+        assertEquals(viaFd.params()[0], viaJac.params()[0], 1e-3);
+        assertEquals(viaFd.params()[1], viaJac.params()[1], 1e-3);
+        assertTrue(calls[1] < calls[0],
+                "exact Jacobian should need fewer model evaluations: " + calls[1] + " vs " + calls[0]);
+    }
+
     @Test
     @DisplayName("hard-clamps the fitted parameters inside the physiological bounds")
     void clampsToBounds() {
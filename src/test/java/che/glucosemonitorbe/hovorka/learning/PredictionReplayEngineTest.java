@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -57,6 +58,124 @@ class PredictionReplayEngineTest {
         }
     }
 
+    @Test
+    void parallelReplay_matchesSequentialSampleForSample() {
+        HovorkaGlucosePredictionService predictor = rawPredictor();
+        RapidInsulinIobParameters rapidIob = new RapidInsulinIobParameters(4.5, 55.0);
+
+        // 24 h trace with several meals so many anchors carry non-trivial inputs.
+        List<PredictionReplayEngine.Reading> cgm = new ArrayList<>();
+        for (int m = 0; m <= 1440; m += 5) {
+            cgm.add(new PredictionReplayEngine.Reading(T0 + m * 60_000L, 7.0 + 1.5 * Math.sin(m / 90.0)));
+        }
+        List<PredictionReplayEngine.Event> events = List.of(
+                new PredictionReplayEngine.Event(T0 + 120 * 60_000L, 50.0, 5.0, false, 15.0, 10.0, 3.0),
+                new PredictionReplayEngine.Event(T0 + 600 * 60_000L, 70.0, 7.0, false, 25.0, 20.0, 5.0),
+                new PredictionReplayEngine.Event(T0 + 1000 * 60_000L, 0.0, 2.0, false, 0.0, 0.0, 0.0));
+
+        PredictionReplayEngine.Config seqCfg = new PredictionReplayEngine.Config();
+        PredictionReplayEngine.Config parCfg = new PredictionReplayEngine.Config();
+        parCfg.replayPool = PredictionReplayEngine.newReplayPool(4);
+        parCfg.anchorsPerTask = 2;
+        try {
+            PredictionReplayEngine seq = new PredictionReplayEngine(
+                    predictor, params70kg(), rapidIob, null, USER, cgm, events, seqCfg);
+            TwinScales scales = TwinScales.of(1.3, 0.8);
+            List<AnchorSample> expected = seq.replay(scales);
+
+            // One path per anchor, then batched leaves sized up from anchorsPerTask to batchLanes.
+            for (int lanes : new int[] {1, 3}) {
+                parCfg.batchLanes = lanes;
+                PredictionReplayEngine par = new PredictionReplayEngine(
+                        predictor, params70kg(), rapidIob, null, USER, cgm, events, parCfg);
+                assertThat(par.anchorCount()).isGreaterThan(Math.max(parCfg.anchorsPerTask, lanes));
+                assertThat(par.replay(scales)).as("batchLanes=%d", lanes).containsExactlyElementsOf(expected);
+            }
+        } finally {
+            parCfg.replayPool.shutdownNow();
+        }
+    }
+
+    @Test
+    void sensitivityReplay_sameSamplesAndGradientMatchesFiniteDifferences() {
+        HovorkaGlucosePredictionService predictor = rawPredictor();
+        RapidInsulinIobParameters rapidIob = new RapidInsulinIobParameters(4.5, 55.0);
+
+        List<PredictionReplayEngine.Reading> cgm = new ArrayList<>();
+        for (int m = 0; m <= 720; m += 5) {
+            cgm.add(new PredictionReplayEngine.Reading(T0 + m * 60_000L, 7.0 + 1.2 * Math.sin(m / 80.0)));
+        }
+        List<PredictionReplayEngine.Event> events = List.of(
+                new PredictionReplayEngine.Event(T0 + 90 * 60_000L, 60.0, 6.0, false, 20.0, 15.0, 4.0),
+                new PredictionReplayEngine.Event(T0 + 400 * 60_000L, 30.0, 3.0, false, 5.0, 5.0, 2.0));
+        PredictionReplayEngine engine = new PredictionReplayEngine(
+                predictor, params70kg(), rapidIob, null, USER, cgm, events, new PredictionReplayEngine.Config());
+
+        TwinScales base = TwinScales.of(1.1, 0.9);
+        AnchorSampleSource.SampleSensitivities sens = engine.replayWithSensitivity(base);
+        assertThat(sens.samples()).containsExactlyElementsOf(engine.replay(base));
+        assertThat(sens.dPredicted().length).isEqualTo(sens.samples().size());
+
+        // Predictions are rounded to 0.1 mmol/L, so compare aggregate central differences over all
+        // samples with a step large enough for the rounding noise to average out.
+        double h = 0.05;
+        for (int col : new int[]{TwinScales.ISF, TwinScales.AG}) {
+            TwinScales up   = col == TwinScales.ISF ? TwinScales.of(1.1 + h, 0.9) : TwinScales.of(1.1, 0.9 + h);
+            TwinScales down = col == TwinScales.ISF ? TwinScales.of(1.1 - h, 0.9) : TwinScales.of(1.1, 0.9 - h);
+            List<AnchorSample> sUp = engine.replay(up), sDown = engine.replay(down);
+            double fd = 0.0, analytic = 0.0;
+            for (int i = 0; i < sUp.size(); i++) {
+                fd += (sUp.get(i).predicted() - sDown.get(i).predicted()) / (2 * h);
+                analytic += sens.dPredicted()[i][col];
+            }
+            assertThat(analytic).as("sum of dPredicted/dScale[%d]", col)
+                    .isCloseTo(fd, within(0.05 * Math.abs(fd) + 0.5));
+        }
+        // egp0 is re-derived inside the integration and tMaxG is not wired - both columns are zero.
+        for (double[] d : sens.dPredicted()) {
+            assertThat(d[TwinScales.EGP]).isZero();
+            assertThat(d[TwinScales.TMAX_G]).isZero();
+        }
+    }
+
+    @Test
+    void eventWindows_ignoreOutOfWindowEventsAndInputOrder() {
+        HovorkaGlucosePredictionService predictor = rawPredictor();
+        RapidInsulinIobParameters rapidIob = new RapidInsulinIobParameters(4.5, 55.0);
+
+        List<PredictionReplayEngine.Reading> cgm = new ArrayList<>();
+        for (int m = 0; m <= 1440; m += 5) {
+            cgm.add(new PredictionReplayEngine.Reading(T0 + m * 60_000L, 7.0 + 1.0 * Math.sin(m / 70.0)));
+        }
+        long h = 3600_000L;
+        List<PredictionReplayEngine.Event> inWindow = List.of(
+                new PredictionReplayEngine.Event(T0 - 30 * h, 0.0, 16.0, true, 0.0, 0.0, 0.0),    // basal, 36 h lookback
+                new PredictionReplayEngine.Event(T0 - 2 * h, 40.0, 4.0, false, 10.0, 10.0, 2.0),  // warm-up meal
+                new PredictionReplayEngine.Event(T0 + 300 * 60_000L, 60.0, 6.0, false, 20.0, 25.0, 4.0),
+                new PredictionReplayEngine.Event(T0 + 900 * 60_000L, 0.0, 1.5, false, 0.0, 0.0, 0.0),
+                new PredictionReplayEngine.Event(T0 + 20 * h, 0.0, 14.0, true, 0.0, 0.0, 0.0));
+        // Never inside any anchor's window: basal older than 36 h before the first anchor, a meal older
+        // than 8 h before it, and a meal after the last anchor's horizon.
+        List<PredictionReplayEngine.Event> all = new ArrayList<>(inWindow);
+        all.add(new PredictionReplayEngine.Event(T0 - 40 * h, 0.0, 20.0, true, 0.0, 0.0, 0.0));
+        all.add(new PredictionReplayEngine.Event(T0 - 9 * h, 80.0, 8.0, false, 30.0, 30.0, 5.0));
+        all.add(new PredictionReplayEngine.Event(T0 + 72 * h, 50.0, 5.0, false, 0.0, 0.0, 0.0));
+        java.util.Collections.reverse(all);
+
+        PredictionReplayEngine.Config cfg = new PredictionReplayEngine.Config();
+        cfg.strideMin = 15;
+        PredictionReplayEngine expected = new PredictionReplayEngine(
+                predictor, params70kg(), rapidIob, null, USER, cgm, inWindow, cfg);
+        PredictionReplayEngine engine = new PredictionReplayEngine(
+                predictor, params70kg(), rapidIob, null, USER, cgm, all, cfg);
+
+        TwinScales scales = TwinScales.of(0.9, 1.2);
+        List<AnchorSample> samples = engine.replay(scales);
+        assertThat(engine.anchorCount()).isEqualTo(expected.anchorCount());
+        assertThat(samples).containsExactlyElementsOf(expected.replay(scales));
+        assertThat(samples).extracting(AnchorSample::regime).contains(Regime.MEAL, Regime.FASTING);
+    }
+
     private static HovorkaGlucosePredictionService rawPredictor() {
         DallaManGutModel gut = new DallaManGutModel();
         HovorkaOdeSolver solver = new HovorkaOdeSolver(gut);
@@ -11,56 +11,65 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.client.ExpectedCount.once;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
 @ExtendWith(MockitoExtension.class)
 @SuppressWarnings("null")
 class NightScoutIntegrationIntegrationTest {
 
+    // A public literal IP passes NightscoutUrlValidator without DNS; the mock server never connects.
+    private static final String BASE_URL = "https://8.8.8.8";
+    private static final String ENTRIES_URL = BASE_URL + "/api/v2/entries.json?count=1";
+
     @Mock
     private UserDataSourceConfigService userDataSourceConfigService;
 
     private RestTemplate restTemplate;
     private MockRestServiceServer server;
     private NightScoutIntegration integration;
+    private CircuitBreakerManager circuitBreakerManager;
 
     @BeforeEach
     void setUp() {
         restTemplate = new RestTemplate();
+        circuitBreakerManager = new CircuitBreakerManager();
         server = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
         integration = new NightScoutIntegration(
                 restTemplate,
+                HttpClient.newHttpClient(),
                 new ObjectMapper(),
                 userDataSourceConfigService,
-                new CircuitBreakerManager()
+                circuitBreakerManager
         );
     }
 
     @Test
     void getGlucoseEntriesShouldParseNightscoutPayload() throws Exception {
-        UUID userId = UUID.randomUUID();
-        // example.com resolves publicly; private/local hosts are rejected by NightscoutUrlValidator.
-        NightscoutCredentials creds = new NightscoutCredentials(
-                "https://example.com", "my-secret", "my-token");
-        when(userDataSourceConfigService.getNightscoutCredentials(userId))
-                .thenReturn(Optional.of(creds));
+        UUID userId = userWithCredentials();
 
-        server.expect(once(), requestTo("https://example.com/api/v2/entries.json?count=1"))
+        server.expect(once(), requestTo(ENTRIES_URL))
                 .andExpect(method(HttpMethod.GET))
                 .andExpect(header("Authorization", "Bearer my-token"))
                 .andExpect(header("api-secret", sha1("my-secret")))
@@ -73,6 +82,80 @@ class NightScoutIntegrationIntegrationTest {
         server.verify();
     }
 
+    @Test
+    void getGlucoseEntriesByDateShouldStreamEveryEntry() {
+        UUID userId = userWithCredentials();
+        server.expect(once(), requestTo(startsWith(BASE_URL + "/api/v2/entries.json?find")))
+                .andRespond(withSuccess("[{\"sgv\":101,\"date\":1,\"noise\":1},{\"sgv\":\"102\",\"date\":2}]",
+                        MediaType.APPLICATION_JSON));
+
+        List<NightscoutEntryDto> entries = integration.getGlucoseEntriesByDate(
+                userId, Instant.ofEpochSecond(0), Instant.ofEpochSecond(60));
+
+        assertEquals(List.of(101, 102), entries.stream().map(NightscoutEntryDto::getSgv).toList());
+        assertEquals(0, failures("nightscout-entries-by-date:", userId));
+        server.verify();
+    }
+
+    @Test
+    void getGlucoseEntriesShouldReturnEmptyListForEmptyArray() {
+        UUID userId = userWithCredentials();
+        server.expect(once(), requestTo(ENTRIES_URL)).andRespond(withSuccess("[]", MediaType.APPLICATION_JSON));
+
+        assertTrue(integration.getGlucoseEntries(userId, 1).isEmpty());
+        assertEquals(0, failures("nightscout-entries:", userId));
+    }
+
+    @Test
+    void getGlucoseEntriesShouldFallBackOnServerError() {
+        UUID userId = userWithCredentials();
+        server.expect(once(), requestTo(ENTRIES_URL)).andRespond(withServerError());
+
+        assertTrue(integration.getGlucoseEntries(userId, 1).isEmpty());
+        assertEquals(1, failures("nightscout-entries:", userId));
+    }
+
+    @Test
+    void getGlucoseEntriesShouldFallBackOnRedirect() {
+        // Redirects are not followed and pass the default error handler, so the extractor rejects them.
+        UUID userId = userWithCredentials();
+        HttpHeaders location = new HttpHeaders();
+        location.add(HttpHeaders.LOCATION, "http://10.0.0.1/api/v2/entries.json");
+        server.expect(once(), requestTo(ENTRIES_URL)).andRespond(withStatus(HttpStatus.FOUND).headers(location));
+
+        assertTrue(integration.getGlucoseEntries(userId, 1).isEmpty());
+        assertEquals(1, failures("nightscout-entries:", userId));
+    }
+
+    @Test
+    void getGlucoseEntriesShouldFallBackOnEmptyBody() {
+        UUID userId = userWithCredentials();
+        server.expect(once(), requestTo(ENTRIES_URL)).andRespond(withSuccess("", MediaType.APPLICATION_JSON));
+
+        assertTrue(integration.getGlucoseEntries(userId, 1).isEmpty());
+        assertEquals(1, failures("nightscout-entries:", userId));
+    }
+
+    @Test
+    void getGlucoseEntriesShouldFallBackOnMalformedJson() {
+        UUID userId = userWithCredentials();
+        server.expect(once(), requestTo(ENTRIES_URL))
+                .andRespond(withSuccess("[{\"sgv\":123,\"date\":", MediaType.APPLICATION_JSON));
+
+        assertTrue(integration.getGlucoseEntries(userId, 1).isEmpty());
+        assertEquals(1, failures("nightscout-entries:", userId));
+    }
+
+    @Test
+    void getGlucoseEntriesShouldFallBackOnNonArrayBody() {
+        UUID userId = userWithCredentials();
+        server.expect(once(), requestTo(ENTRIES_URL))
+                .andRespond(withSuccess("{\"status\":\"ok\"}", MediaType.APPLICATION_JSON));
+
+        assertTrue(integration.getGlucoseEntries(userId, 1).isEmpty());
+        assertEquals(1, failures("nightscout-entries:", userId));
+    }
+
     @Test
     void probeNightscoutShouldRejectInvalidUrl() {
         NightscoutTestResponseDto result = integration.probeNightscout("nightscout.local", "", "");
@@ -90,6 +173,17 @@ class NightScoutIntegrationIntegrationTest {
                 || result.getMessage().toLowerCase().contains("local"));
     }
 
+    private UUID userWithCredentials() {
+        UUID userId = UUID.randomUUID();
+        when(userDataSourceConfigService.getNightscoutCredentials(userId))
+                .thenReturn(Optional.of(new NightscoutCredentials(BASE_URL, "my-secret", "my-token")));
+        return userId;
+    }
+
+    private int failures(String breakerPrefix, UUID userId) {
+        return circuitBreakerManager.getCircuitBreaker(breakerPrefix + userId).getFailureCount();
+    }
+
     private static String sha1(String value) throws Exception {
         MessageDigest digest = MessageDigest.getInstance("SHA-1");
         byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
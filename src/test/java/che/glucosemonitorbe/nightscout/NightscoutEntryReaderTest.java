@@ -0,0 +1,117 @@
+package che.glucosemonitorbe.nightscout;
+
+import che.glucosemonitorbe.dto.NightscoutEntryDto;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NightscoutEntryReaderTest {
+
+    private static final ObjectMapper LENIENT = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final JsonFactory FACTORY = LENIENT.getFactory();
+
+    /** Realistic payload: extra fields, nested values, numbers as strings and floats, nulls. */
+    private static final String PAYLOAD = """
+            [
+              {"_id":"a1","sgv":123,"date":1711990000000,"dateString":"2024-04-01T16:46:40.000Z","trend":4,
+               "direction":"Flat","device":"xDrip-DexcomG6","type":"sgv","utcOffset":60,
+               "sysTime":"2024-04-01T16:46:40.000Z","noise":1,"filtered":131200.5,"mills":1711990000000,
+               "meta":{"nested":{"sgv":999}},"tags":[1,{"sgv":2}]},
+              {"_id":"a2","sgv":"118","date":1711989700000.0,"direction":null,"trend":"3","utcOffset":0},
+              {"_id":"a3","sgv":117.0,"date":"1711989400000","type":"sgv"}
+            ]""";
+
+    @Test
+    @DisplayName("streaming read matches the lenient databind mapping it replaces")
+    void read_matchesDatabind() throws IOException {
+        List<NightscoutEntryDto> expected = LENIENT.readValue(PAYLOAD, new TypeReference<>() {});
+
+        List<NightscoutEntryDto> actual = NightscoutEntryReader.read(FACTORY, stream(PAYLOAD));
+
+        assertThat(actual).isEqualTo(expected);
+        assertThat(actual.get(0).getSgv()).isEqualTo(123);
+        assertThat(actual.get(1).getDate()).isEqualTo(1711989700000L);
+        assertThat(actual.get(2).getSgv()).isEqualTo(117);
+    }
+
+    @Test
+    @DisplayName("the async body handler yields the same entries however the body is chunked")
+    void bodyHandler_isChunkingIndependent() {
+        List<NightscoutEntryDto> expected = LENIENT.convertValue(readTree(), new TypeReference<>() {});
+        byte[] body = PAYLOAD.getBytes(StandardCharsets.UTF_8);
+
+        for (int chunk : new int[]{1, 7, 64, body.length}) {
+            assertThat(feed(200, body, chunk)).as("chunk=%d", chunk).isEqualTo(expected);
+        }
+        assertThat(feed(200, "[]".getBytes(StandardCharsets.UTF_8), 1)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("non-2xx statuses, non-array bodies and truncated bodies fail")
+    void malformedResponses_fail() {
+        assertThatThrownBy(() -> feed(401, "[]".getBytes(StandardCharsets.UTF_8), 2))
+                .isInstanceOf(CompletionException.class)
+                .hasMessageContaining("status: 401");
+        assertThatThrownBy(() -> feed(200, "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8), 4))
+                .hasMessageContaining("Expected a JSON array");
+        assertThatThrownBy(() -> NightscoutEntryReader.read(FACTORY, stream("[{\"sgv\":1},")))
+                .isInstanceOf(IOException.class);
+    }
+
+    // -- helpers ---------------------------------------------------------------
+
+    private static ByteArrayInputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonNode readTree() {
+        try {
+            return LENIENT.readTree(PAYLOAD);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Drives the body subscriber the way HttpClient does: onSubscribe, onNext per chunk, onComplete. */
+    private static List<NightscoutEntryDto> feed(int status, byte[] body, int chunkSize) {
+        HttpResponse.BodySubscriber<List<NightscoutEntryDto>> subscriber =
+                NightscoutEntryReader.bodyHandler(FACTORY).apply(new HttpResponse.ResponseInfo() {
+                    @Override public int statusCode() { return status; }
+                    @Override public HttpHeaders headers() { return HttpHeaders.of(Map.of(), (a, b) -> true); }
+                    @Override public HttpClient.Version version() { return HttpClient.Version.HTTP_2; }
+                });
+        boolean[] cancelled = {false};
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override public void request(long n) { }
+            @Override public void cancel() { cancelled[0] = true; }
+        });
+        for (int off = 0; off < body.length && !cancelled[0]; off += chunkSize) {
+            List<ByteBuffer> chunks = new ArrayList<>();
+            chunks.add(ByteBuffer.wrap(body, off, Math.min(chunkSize, body.length - off)).asReadOnlyBuffer());
+            subscriber.onNext(chunks);
+        }
+        if (!cancelled[0]) subscriber.onComplete();
+        return subscriber.getBody().toCompletableFuture().join();
+    }
+}
@@ -2,6 +2,7 @@ package che.glucosemonitorbe.repository;
 
 import che.glucosemonitorbe.domain.CgmReading;
 import che.glucosemonitorbe.domain.User;
+import che.glucosemonitorbe.service.cgm.GlucoseRollup;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,15 +13,21 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -37,6 +44,9 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
  *   <li>fallback uniqueness on {@code (user_id, data_source, date_timestamp)} when external_id is null</li>
  *   <li>scoped queries - {@code findExisting*} only return matches for the given source</li>
  *   <li>scoped delete - {@code deleteByUserIdAndExternalIds} respects the data source</li>
+ *   <li>bulk upsert - {@link CgmReadingBulkWriter} arbitrates on the same partial indexes</li>
+ *   <li>monthly partitions - retention drops whole expired months</li>
+ *   <li>hourly rollups - {@link CgmRollupRepository} merges buckets additively</li>
  * </ul>
  */
 @SpringBootTest
@@ -58,6 +68,10 @@ class CgmReadingRepositoryIntegrationTest {
                     .withPassword("test");
 
     @Autowired private CgmReadingRepository repository;
+    @Autowired private CgmReadingBulkWriter bulkWriter;
+    @Autowired private CgmReadingPartitions partitions;
+    @Autowired private CgmRollupRepository rollups;
+    @Autowired private JdbcTemplate jdbcTemplate;
     @Autowired private UserRepository userRepository;
     @PersistenceContext private EntityManager em;
 
@@ -88,8 +102,10 @@ class CgmReadingRepositoryIntegrationTest {
     void sameExternalIdSameSource_violates() {
         repository.save(reading(userId, CgmReading.DataSource.NIGHTSCOUT, "dup-1", 1_700_000_000L, 120));
 
+        // The partitioned table's unique index carries the partition key, so the duplicate is the same
+        // upstream record at the same reading time.
         assertThatThrownBy(() ->
-                repository.saveAndFlush(reading(userId, CgmReading.DataSource.NIGHTSCOUT, "dup-1", 1_700_000_300L, 130))
+                repository.saveAndFlush(reading(userId, CgmReading.DataSource.NIGHTSCOUT, "dup-1", 1_700_000_000L, 130))
         ).isInstanceOf(DataIntegrityViolationException.class);
     }
 
@@ -150,6 +166,34 @@ class CgmReadingRepositoryIntegrationTest {
         assertThat(ns).containsExactly(1_000L);
     }
 
+    // -- keyset pages ---------------------------------------------------------------
+
+    @Test
+    @DisplayName("Keyset pages split a timestamp tie at the boundary without skipping or repeating a reading")
+    void keysetPages_tieAtPageBoundary_emitsEveryReadingOnce() {
+        repository.save(reading(userId, CgmReading.DataSource.NIGHTSCOUT,    "tie-a", 1_700_000_600L, 100));
+        repository.save(reading(userId, CgmReading.DataSource.NIGHTSCOUT,    "tie-b", 1_700_000_300L, 110));
+        repository.save(reading(userId, CgmReading.DataSource.LIBRE_LINK_UP, "tie-c", 1_700_000_300L, 111));
+        repository.save(reading(userId, CgmReading.DataSource.NIGHTSCOUT,    "tie-d", 1_700_000_000L, 120));
+        repository.flush();
+
+        // Page of 2 ends on the first of the two 1_700_000_300 readings.
+        List<CgmReading> first = repository.findByUserIdAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+                userId, Long.MAX_VALUE, PageRequest.ofSize(2));
+        CgmReading boundary = first.get(1);
+        List<CgmReading> second = repository.findPageBefore(
+                userId, boundary.getDateTimestamp(), boundary.getId(), PageRequest.ofSize(2));
+
+        List<String> seen = new ArrayList<>();
+        first.forEach(r -> seen.add(r.getExternalId()));
+        second.forEach(r -> seen.add(r.getExternalId()));
+        assertThat(boundary.getDateTimestamp()).isEqualTo(1_700_000_300L);
+        assertThat(seen).hasSize(4).doesNotHaveDuplicates()
+                .containsExactlyInAnyOrder("tie-a", "tie-b", "tie-c", "tie-d");
+        assertThat(second.get(0).getDateTimestamp()).isEqualTo(1_700_000_300L);
+        assertThat(second.get(1).getExternalId()).isEqualTo("tie-d");
+    }
+
     // -- scoped delete ------------------------------------------------------------
 
     @Test
@@ -205,8 +249,168 @@ class CgmReadingRepositoryIntegrationTest {
                 .isEqualTo(fresh.getExternalId());
     }
 
+    // -- bulk upsert --------------------------------------------------------------
+
+    @Test
+    @DisplayName("Bulk upsert inserts new rows, skips stored ones and back-fills a zero trend")
+    void bulkUpsert_insertsSkipsAndBackfills() {
+        CgmReading zeroTrend = reading(userId, CgmReading.DataSource.NIGHTSCOUT, "ns-1", 1_700_000_000L, 120);
+        zeroTrend.setTrend(0);
+        repository.save(zeroTrend);
+        repository.save(reading(userId, CgmReading.DataSource.NIGHTSCOUT, null, 1_700_000_300L, 125));
+        em.flush();
+
+        CgmReading backfill = reading(userId, CgmReading.DataSource.NIGHTSCOUT, "ns-1", 1_700_000_000L, 120);
+        backfill.setTrend(4);
+        backfill.setDirection("Flat");
+        CgmReading fresh = reading(userId, CgmReading.DataSource.NIGHTSCOUT, "ns-2", 1_700_000_600L, 130);
+        CgmReading storedTs = reading(userId, CgmReading.DataSource.NIGHTSCOUT, null, 1_700_000_300L, 125);
+        CgmReading freshTs = reading(userId, CgmReading.DataSource.NIGHTSCOUT, null, 1_700_000_900L, 135);
+
+        assertThat(bulkWriter.isAvailable()).isTrue();
+        CgmReadingBulkWriter.Result result = bulkWriter.upsert(userId, CgmReading.DataSource.NIGHTSCOUT,
+                List.of(backfill, fresh, storedTs, freshTs), LocalDateTime.now());
+        em.clear();
+
+        assertThat(result.inserted()).containsExactlyInAnyOrder(fresh, freshTs);
+        assertThat(result.inserted()).allMatch(r -> r.getId() != null);
+        assertThat(result.trendBackfilled()).containsExactly(backfill);
+        assertThat(repository.countByUserId(userId)).isEqualTo(4);
+        assertThat(repository.findByUserIdAndDataSourceAndExternalId(
+                userId, CgmReading.DataSource.NIGHTSCOUT, "ns-1"))
+                .get().extracting(CgmReading::getTrend).isEqualTo(4);
+
+        // Re-running the batch changes nothing: the trend is no longer zero.
+        CgmReadingBulkWriter.Result again = bulkWriter.upsert(userId, CgmReading.DataSource.NIGHTSCOUT,
+                List.of(backfill, fresh, storedTs, freshTs), LocalDateTime.now());
+        assertThat(again.inserted()).isEmpty();
+        assertThat(again.trendBackfilled()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Bulk upsert replaces the stored row when an upstream id is re-sent with a moved date")
+    void bulkUpsert_resentIdWithMovedDate_replacesRow() {
+        CgmReading old = repository.save(
+                reading(userId, CgmReading.DataSource.NIGHTSCOUT, "ns-moved", 1_700_000_000L, 120));
+        em.flush();
+
+        CgmReading corrected = reading(userId, CgmReading.DataSource.NIGHTSCOUT, "ns-moved", 1_700_000_060L, 120);
+        CgmReadingBulkWriter.Result result = bulkWriter.upsert(userId, CgmReading.DataSource.NIGHTSCOUT,
+                List.of(corrected), LocalDateTime.now());
+        em.clear();
+
+        assertThat(result.moved()).singleElement().satisfies(m -> {
+            assertThat(m.getId()).isEqualTo(old.getId());
+            assertThat(m.getDateTimestamp()).isEqualTo(1_700_000_000L);
+            assertThat(m.getSgv()).isEqualTo(120);
+        });
+        assertThat(result.inserted()).containsExactly(corrected);
+        assertThat(repository.countByUserId(userId)).isEqualTo(1);
+        assertThat(repository.findByUserIdAndDataSourceAndExternalId(
+                userId, CgmReading.DataSource.NIGHTSCOUT, "ns-moved"))
+                .get().extracting(CgmReading::getDateTimestamp).isEqualTo(1_700_000_060L);
+    }
+
+    @Test
+    @DisplayName("Bulk upsert conflicts are scoped per source")
+    void bulkUpsert_scopedPerSource() {
+        repository.save(reading(userId, CgmReading.DataSource.NIGHTSCOUT, "shared-1", 1_700_000_000L, 120));
+        em.flush();
+
+        CgmReadingBulkWriter.Result result = bulkWriter.upsert(userId, CgmReading.DataSource.LIBRE_LINK_UP,
+                List.of(reading(userId, CgmReading.DataSource.LIBRE_LINK_UP, "shared-1", 1_700_000_000L, 120)),
+                LocalDateTime.now());
+
+        assertThat(result.inserted()).hasSize(1);
+        assertThat(repository.countByUserId(userId)).isEqualTo(2);
+    }
+
+    // -- monthly partitions -------------------------------------------------------
+
+    @Test
+    @DisplayName("Retention drops whole expired monthly partitions and keeps current months")
+    void partitions_dropExpiredMonths() {
+        assertThat(partitions.isPartitioned()).isTrue();
+        jdbcTemplate.queryForObject("SELECT cgm_readings_create_month_partition(DATE '2020-01-01')", Boolean.class);
+        repository.save(reading(userId, CgmReading.DataSource.NIGHTSCOUT, "jan-2020",
+                Instant.parse("2020-01-15T12:00:00Z").toEpochMilli(), 120));
+        repository.save(reading(userId, CgmReading.DataSource.NIGHTSCOUT, "now",
+                System.currentTimeMillis(), 130));
+        em.flush();
+
+        int dropped = partitions.dropPartitionsBefore(Instant.parse("2021-01-01T00:00:00Z").toEpochMilli());
+        em.clear();
+
+        assertThat(dropped).isEqualTo(1);
+        assertThat(repository.findByUserIdOrderByDateTimestampAsc(userId))
+                .extracting(CgmReading::getExternalId).containsExactly("now");
+        assertThat(partitions.ensurePartitions(3)).isZero(); // created by the migration
+    }
+
+    // -- rollups --------------------------------------------------------------------
+
+    @Test
+    @DisplayName("Rollup merges add counters and histograms into the existing bucket of the same source and width")
+    void rollupMerge_isAdditive() {
+        long hour = 1_700_000_000_000L / 3_600_000L * 3_600_000L;
+        CgmReading.DataSource ns = CgmReading.DataSource.NIGHTSCOUT;
+        assertThat(rollups.isAvailable()).isTrue();
+        TreeMap<Long, GlucoseRollup> first = new TreeMap<>();
+        first.put(hour, rollupOf(60, 120));
+        first.put(hour + 3_600_000L, rollupOf(200));
+        TreeMap<Long, GlucoseRollup> second = new TreeMap<>();
+        second.put(hour, rollupOf(125, 300));
+
+        rollups.merge(userId, ns, 3_600_000L, first);
+        rollups.merge(userId, ns, 3_600_000L, second);
+
+        List<GlucoseRollup.Bucket> stored = rollups.find(userId, ns, 3_600_000L, hour, hour + 2 * 3_600_000L);
+        assertThat(stored).extracting(GlucoseRollup.Bucket::startMs).containsExactly(hour, hour + 3_600_000L);
+        GlucoseRollup merged = stored.get(0).rollup();
+        GlucoseRollup expected = rollupOf(60, 120, 125, 300);
+        assertThat(merged.count()).isEqualTo(4);
+        assertThat(merged.sum()).isEqualTo(expected.sum());
+        assertThat(merged.sumSq()).isEqualTo(expected.sumSq());
+        assertThat(merged.min()).isEqualTo(60);
+        assertThat(merged.max()).isEqualTo(300);
+        assertThat(merged.below()).isEqualTo(1);
+        assertThat(merged.inRange()).isEqualTo(2);
+        assertThat(merged.above()).isEqualTo(1);
+        assertThat(merged.histogram()).isEqualTo(expected.histogram());
+        assertThat(rollups.find(userId, ns, 86_400_000L, hour - 86_400_000L, hour + 86_400_000L)).isEmpty();
+        assertThat(rollups.find(otherUserId, ns, 3_600_000L, hour, hour + 2 * 3_600_000L)).isEmpty();
+        assertThat(rollups.deleteByUserId(userId)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Rollups are kept per source; a source-less read merges the sources per bucket")
+    void rollupFind_filtersOrMergesSources() {
+        long hour = 1_700_000_000_000L / 3_600_000L * 3_600_000L;
+        rollups.merge(userId, CgmReading.DataSource.NIGHTSCOUT, 3_600_000L, new TreeMap<>(Map.of(hour, rollupOf(100))));
+        rollups.merge(userId, CgmReading.DataSource.LIBRE_LINK_UP, 3_600_000L,
+                new TreeMap<>(Map.of(hour, rollupOf(110, 130))));
+
+        assertThat(rollups.find(userId, CgmReading.DataSource.LIBRE_LINK_UP, 3_600_000L, hour, hour + 3_600_000L))
+                .singleElement().satisfies(b -> assertThat(b.rollup().count()).isEqualTo(2));
+        assertThat(rollups.find(userId, CgmReading.DataSource.NIGHTSCOUT, 3_600_000L, hour, hour + 3_600_000L))
+                .singleElement().satisfies(b -> assertThat(b.rollup().max()).isEqualTo(100));
+        assertThat(rollups.find(userId, null, 3_600_000L, hour, hour + 3_600_000L))
+                .singleElement().satisfies(b -> {
+                    assertThat(b.startMs()).isEqualTo(hour);
+                    assertThat(b.rollup().count()).isEqualTo(3);
+                    assertThat(b.rollup().sum()).isEqualTo(340);
+                });
+        assertThat(rollups.deleteByUserId(userId)).isEqualTo(2);
+    }
+
     // -- helpers ------------------------------------------------------------------
 
+    private static GlucoseRollup rollupOf(int... sgv) {
+        GlucoseRollup r = new GlucoseRollup();
+        for (int v : sgv) r.add(v);
+        return r;
+    }
+
     private User newUser(String prefix) {
         String suffix = UUID.randomUUID().toString().substring(0, 8);
         User u = User.builder()
@@ -0,0 +1,63 @@
+package che.glucosemonitorbe.scheduler;
+
+import che.glucosemonitorbe.repository.CgmReadingPartitions;
+import che.glucosemonitorbe.service.CgmReadingService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CgmPartitionMaintenanceSchedulerTest {
+
+    @Mock
+    private CgmReadingPartitions partitions;
+    @Mock
+    private CgmReadingService cgmReadingService;
+
+    @InjectMocks
+    private CgmPartitionMaintenanceScheduler scheduler;
+
+    @Test
+    void maintainPartitions_notPartitioned_doesNothing() {
+        ReflectionTestUtils.setField(scheduler, "retentionMonths", 12);
+
+        scheduler.maintainPartitions();
+
+        verify(partitions, never()).ensurePartitions(anyInt());
+        verifyNoInteractions(cgmReadingService);
+    }
+
+    @Test
+    void maintainPartitions_createsAheadAndAppliesRetention() {
+        ReflectionTestUtils.setField(scheduler, "monthsAhead", 3);
+        ReflectionTestUtils.setField(scheduler, "retentionMonths", 12);
+        when(partitions.isPartitioned()).thenReturn(true);
+
+        Instant before = ZonedDateTime.now(ZoneOffset.UTC).minusMonths(12).toInstant();
+        scheduler.maintainPartitions();
+
+        verify(partitions).ensurePartitions(3);
+        verify(cgmReadingService).dropExpiredPartitions(argThat(cutoff -> !cutoff.isBefore(before)
+                && cutoff.isBefore(before.plusSeconds(60))));
+        verify(cgmReadingService, never()).cleanupOldData(any());
+    }
+
+    @Test
+    void maintainPartitions_retentionOff_keepsEverything() {
+        when(partitions.isPartitioned()).thenReturn(true);
+
+        scheduler.maintainPartitions();
+
+        verifyNoInteractions(cgmReadingService);
+    }
+}
@@ -17,8 +17,10 @@ import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
@@ -88,6 +90,21 @@ class LibreLinkUpGlucoseSyncSchedulerTest {
         assertThat(stillRunning.isCancelled()).isTrue();
     }
 
+    @Test
+    void awaitAndTally_countsPermitTimeoutsApartFromOutcomes() {
+        CompletableFuture<Outcome> completed = CompletableFuture.completedFuture(Outcome.NO_CHANGE);
+        CompletableFuture<Outcome> noPermit = CompletableFuture.failedFuture(
+                new CompletionException(new TimeoutException("no sync permit")));
+
+        LibreLinkUpGlucoseSyncScheduler.SyncTally tally = assertTimeoutPreemptively(
+                Duration.ofSeconds(2),
+                () -> scheduler.awaitAndTally(List.of(completed, noPermit), 2));
+
+        assertThat(tally.completed()).isEqualTo(1);
+        assertThat(tally.get(Outcome.NO_CHANGE)).isEqualTo(1);
+        assertThat(tally.permitTimeouts()).isEqualTo(1);
+    }
+
     @Test
     void syncLibreForAllUsers_oneSlowUserDoesNotBlockTheTickPastTheBudget() throws InterruptedException {
         UUID slowUser = UUID.randomUUID();
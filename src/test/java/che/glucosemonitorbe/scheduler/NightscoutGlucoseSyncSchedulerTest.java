@@ -8,6 +8,7 @@ import che.glucosemonitorbe.nightscout.NightScoutIntegration;
 import che.glucosemonitorbe.repository.UserDataSourceConfigRepository;
 import che.glucosemonitorbe.service.CgmReadingService;
 import che.glucosemonitorbe.service.UserGlucoseSyncStateService;
+import che.glucosemonitorbe.service.cgm.CgmWriteBehindBuffer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -19,6 +20,7 @@ import org.springframework.test.util.ReflectionTestUtils;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -35,6 +37,8 @@ class NightscoutGlucoseSyncSchedulerTest {
     @Mock
     private CgmReadingService cgmReadingService;
     @Mock
+    private CgmWriteBehindBuffer cgmWriteBehind;
+    @Mock
     private UserGlucoseSyncStateService syncStateService;
 
     @InjectMocks
@@ -43,6 +47,7 @@ class NightscoutGlucoseSyncSchedulerTest {
     @BeforeEach
     void setEntryCount() {
         ReflectionTestUtils.setField(scheduler, "entryCount", 100);
+        ReflectionTestUtils.setField(scheduler, "syncTimeoutMs", 2_000L);
     }
 
     @Test
@@ -65,17 +70,34 @@ class NightscoutGlucoseSyncSchedulerTest {
                 UserDataSourceConfig.DataSourceType.NIGHTSCOUT))
                 .thenReturn(List.of(u1, u2));
         List<NightscoutEntryDto> batch = List.of(new NightscoutEntryDto("a", 100, 1L, null, 0, "Flat", null, "sgv", 0, null));
-        when(nightScoutIntegration.getGlucoseEntries(any(), eq(100))).thenReturn(batch);
+        when(nightScoutIntegration.getGlucoseEntriesAsync(any(), eq(100))).thenReturn(CompletableFuture.completedFuture(batch));
         when(syncStateService.getOrCreate(any())).thenReturn(UserGlucoseSyncState.builder().build());
 
         scheduler.syncNightscoutForAllUsers();
 
-        verify(nightScoutIntegration).getGlucoseEntries(u1, 100);
-        verify(nightScoutIntegration).getGlucoseEntries(u2, 100);
+        verify(nightScoutIntegration).getGlucoseEntriesAsync(u1, 100);
+        verify(nightScoutIntegration).getGlucoseEntriesAsync(u2, 100);
         verify(cgmReadingService).storeChartData(u1, batch, CgmReading.DataSource.NIGHTSCOUT);
         verify(cgmReadingService).storeChartData(u2, batch, CgmReading.DataSource.NIGHTSCOUT);
     }
 
+    @Test
+    void syncNightscoutForAllUsers_writeBehindEnabled_queuesInsteadOfCommittingPerUser() {
+        UUID u1 = UUID.randomUUID();
+        when(configRepository.findDistinctUserIdsByDataSourceAndIsActiveTrue(
+                UserDataSourceConfig.DataSourceType.NIGHTSCOUT))
+                .thenReturn(List.of(u1));
+        List<NightscoutEntryDto> batch = List.of(new NightscoutEntryDto("a", 100, 1L, null, 0, "Flat", null, "sgv", 0, null));
+        when(nightScoutIntegration.getGlucoseEntriesAsync(u1, 100)).thenReturn(CompletableFuture.completedFuture(batch));
+        when(syncStateService.getOrCreate(any())).thenReturn(UserGlucoseSyncState.builder().build());
+        when(cgmWriteBehind.isEnabled()).thenReturn(true);
+
+        scheduler.syncNightscoutForAllUsers();
+
+        verify(cgmWriteBehind).store(u1, batch, CgmReading.DataSource.NIGHTSCOUT, false);
+        verifyNoInteractions(cgmReadingService);
+    }
+
     @Test
     void syncNightscoutForAllUsers_continuesAfterOneUserFails() {
         UUID u1 = UUID.randomUUID();
@@ -84,12 +106,28 @@ class NightscoutGlucoseSyncSchedulerTest {
                 UserDataSourceConfig.DataSourceType.NIGHTSCOUT))
                 .thenReturn(List.of(u1, u2));
         when(syncStateService.getOrCreate(any())).thenReturn(UserGlucoseSyncState.builder().build());
-        when(nightScoutIntegration.getGlucoseEntries(u1, 100)).thenThrow(new RuntimeException("down"));
-        when(nightScoutIntegration.getGlucoseEntries(u2, 100)).thenReturn(List.of());
+        when(nightScoutIntegration.getGlucoseEntriesAsync(u1, 100)).thenThrow(new RuntimeException("down"));
+        when(nightScoutIntegration.getGlucoseEntriesAsync(u2, 100)).thenReturn(CompletableFuture.completedFuture(List.of()));
 
         scheduler.syncNightscoutForAllUsers();
 
         verify(cgmReadingService).storeChartData(eq(u2), any(), eq(CgmReading.DataSource.NIGHTSCOUT));
         verify(cgmReadingService, never()).storeChartData(eq(u1), any(), any());
     }
+
+    @Test
+    void syncNightscoutForAllUsers_failedAsyncFetch_marksErrorAndSkipsStore() {
+        UUID u1 = UUID.randomUUID();
+        when(configRepository.findDistinctUserIdsByDataSourceAndIsActiveTrue(
+                UserDataSourceConfig.DataSourceType.NIGHTSCOUT))
+                .thenReturn(List.of(u1));
+        when(syncStateService.getOrCreate(any())).thenReturn(UserGlucoseSyncState.builder().build());
+        when(nightScoutIntegration.getGlucoseEntriesAsync(u1, 100))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("reset by peer")));
+
+        scheduler.syncNightscoutForAllUsers();
+
+        verify(syncStateService).markError(eq(u1), any());
+        verifyNoInteractions(cgmReadingService);
+    }
 }
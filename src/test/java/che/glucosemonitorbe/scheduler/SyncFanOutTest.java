@@ -0,0 +1,180 @@
+package che.glucosemonitorbe.scheduler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SyncFanOutTest {
+
+    private final SyncFanOut fanOut = new SyncFanOut("test", "test-sync");
+
+    @AfterEach
+    void close() {
+        fanOut.close();
+    }
+
+    private static long inSeconds(int s) {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(s);
+    }
+
+    @Test
+    void perHostLimit_capsOneHostWhileOtherHostsProceed() throws Exception {
+        fanOut.configure(2, 100, null);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger busyHostRunning = new AtomicInteger();
+        AtomicInteger busyHostPeak = new AtomicInteger();
+
+        List<CompletableFuture<Integer>> busy = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            busy.add(fanOut.submit("ns.example.org", inSeconds(5), () -> {
+                busyHostPeak.accumulateAndGet(busyHostRunning.incrementAndGet(), Math::max);
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                busyHostRunning.decrementAndGet();
+                return 1;
+            }));
+        }
+        long waitUntil = inSeconds(2);
+        while (busyHostRunning.get() < 2 && System.nanoTime() < waitUntil) Thread.onSpinWait();
+        assertThat(fanOut.inFlight()).isEqualTo(2);
+
+        // Another host is not queued behind the saturated one.
+        assertThat(fanOut.submit("other.example.org", inSeconds(5), () -> 7).get(2, TimeUnit.SECONDS)).isEqualTo(7);
+
+        release.countDown();
+        CompletableFuture.allOf(busy.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertThat(busyHostPeak.get()).isEqualTo(2);
+    }
+
+    @Test
+    void syncWithoutPermitBeforeDeadline_isDroppedNotRun() throws Exception {
+        fanOut.configure(1, 1, null);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> holder = fanOut.submit("a", inSeconds(5), () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        });
+        AtomicInteger ran = new AtomicInteger();
+
+        CompletableFuture<Integer> late = fanOut.submit("b", System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100),
+                ran::incrementAndGet);
+
+        assertThatThrownBy(() -> late.get(2, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(TimeoutException.class);
+        release.countDown();
+        assertThat(holder.get(2, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(ran.get()).isZero();
+        // Permits were returned: the overall gate is free again.
+        assertThat(fanOut.submit("b", inSeconds(1), () -> 2).get(2, TimeUnit.SECONDS)).isEqualTo(2);
+    }
+
+    @Test
+    void asyncSync_holdsPermitsUntilItsStageCompletes_withoutAThreadWaiting() throws Exception {
+        fanOut.configure(1, 10, null);
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        AtomicInteger tasksStarted = new AtomicInteger();
+
+        CompletableFuture<String> first = fanOut.submitAsync("ns.example.org", inSeconds(5), () -> {
+            tasksStarted.incrementAndGet();
+            return upstream;
+        });
+        long waitUntil = inSeconds(2);
+        while (tasksStarted.get() < 1 && System.nanoTime() < waitUntil) Thread.onSpinWait();
+
+        // The task returned immediately, but its sync is still in flight and holds the host permit.
+        assertThat(fanOut.inFlight()).isEqualTo(1);
+        CompletableFuture<String> second = fanOut.submitAsync("ns.example.org", inSeconds(5),
+                () -> CompletableFuture.completedFuture("second"));
+        Thread.sleep(100);
+        assertThat(second).isNotDone();
+
+        upstream.complete("first");
+        assertThat(first.get(2, TimeUnit.SECONDS)).isEqualTo("first");
+        assertThat(second.get(2, TimeUnit.SECONDS)).isEqualTo("second");
+        assertThat(fanOut.inFlight()).isZero();
+    }
+
+    @Test
+    void asyncSync_failedStageReleasesPermits() throws Exception {
+        fanOut.configure(1, 1, null);
+        CompletableFuture<String> failed = fanOut.submitAsync("a", inSeconds(5),
+                () -> CompletableFuture.failedFuture(new IllegalStateException("down")));
+        assertThatThrownBy(() -> failed.get(2, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        CompletableFuture<String> thrown = fanOut.submitAsync("a", inSeconds(5), () -> {
+            throw new IllegalStateException("before the fetch");
+        });
+        assertThatThrownBy(() -> thrown.get(2, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+
+        assertThat(fanOut.submit("a", inSeconds(1), () -> 3).get(2, TimeUnit.SECONDS)).isEqualTo(3);
+    }
+
+    @Test
+    void hostLookup_runsOnTheSyncThreadAndGatesByItsResult() throws Exception {
+        fanOut.configure(1, 10, null);
+        Thread caller = Thread.currentThread();
+        List<Thread> lookupThreads = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Integer> first = fanOut.submit(() -> {
+            lookupThreads.add(Thread.currentThread());
+            return "eu.example.org";
+        }, inSeconds(5), () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        });
+        CompletableFuture<Integer> sameHost = fanOut.submit(() -> "eu.example.org", inSeconds(5), () -> 2);
+
+        long waitUntil = inSeconds(2);
+        while (fanOut.inFlight() < 1 && System.nanoTime() < waitUntil) Thread.onSpinWait();
+        assertThat(sameHost).isNotDone();
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(sameHost.get(5, TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(lookupThreads).singleElement().isNotSameAs(caller)
+                .satisfies(t -> assertThat(t.isVirtual()).isTrue());
+    }
+
+    @Test
+    void isPermitTimeout_unwrapsCompletionException() {
+        TimeoutException timeout = new TimeoutException("no permit");
+
+        assertThat(SyncFanOut.isPermitTimeout(timeout)).isTrue();
+        assertThat(SyncFanOut.isPermitTimeout(new CompletionException(timeout))).isTrue();
+        assertThat(SyncFanOut.isPermitTimeout(new IllegalStateException("boom"))).isFalse();
+    }
+
+    @Test
+    void hostOf_normalisesUrls() {
+        assertThat(SyncFanOut.hostOf("https://My-NS.herokuapp.com/")).isEqualTo("my-ns.herokuapp.com");
+        assertThat(SyncFanOut.hostOf("https://api-eu.libreview.io")).isEqualTo("api-eu.libreview.io");
+        assertThat(SyncFanOut.hostOf(null)).isEmpty();
+    }
+}
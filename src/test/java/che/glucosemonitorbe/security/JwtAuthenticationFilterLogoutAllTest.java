@@ -21,7 +21,7 @@ import static org.mockito.Mockito.*;
 class JwtAuthenticationFilterLogoutAllTest {
 
     @Mock private JwtTokenProvider tokenProvider;
-    @Mock private org.springframework.security.core.userdetails.UserDetailsService userDetailsService;
+    @Mock private CustomUserDetailsService userDetailsService;
     @Mock private TokenBlacklistService tokenBlacklistService;
 
     @InjectMocks
@@ -660,14 +660,53 @@ class CarbsOnBoardServiceTest {
     void getCOBTimeline_returnsStartAndEndPoints() {
         // Real-life: 40g entry logged "now"
         CarbsEntry e = carbEntry(now, 40.0, "MEDIUM", null);
+        e.setUserId(USER_ID);
 
         List<CarbsOnBoardService.COBPoint> timeline = service.getCOBTimeline(e, 3);
 
-        assertThat(timeline).hasSize(2);
+        // 0..3h in 15-min steps, inclusive
+        assertThat(timeline).hasSize(13);
         assertThat(timeline.get(0).getTimestamp()).isEqualTo(e.getTimestamp());
         assertThat(timeline.get(0).getCarbsOnBoard()).isEqualTo(40.0);
-        assertThat(timeline.get(1).getTimestamp()).isEqualTo(e.getTimestamp().plusHours(3));
-        assertThat(timeline.get(1).getCarbsOnBoard()).isEqualTo(0.0);
+        assertThat(timeline.get(12).getTimestamp()).isEqualTo(e.getTimestamp().plusHours(3));
+        assertThat(timeline.get(12).getCarbsOnBoard()).isEqualTo(0.0);
+        for (CarbsOnBoardService.COBPoint p : timeline) {
+            assertThat(p.getCarbsOnBoard()).isEqualTo(service.calculateRemainingCarbs(e, p.getTimestamp(), USER_ID));
+        }
+    }
+
+    @Test
+    void getCOBTimeline_noCarbs_isEmpty() {
+        assertThat(service.getCOBTimeline(carbEntry(now, 0.0, "MEDIUM", null), 3)).isEmpty();
+        assertThat(service.getCOBTimeline((CarbsEntry) null, 3)).isEmpty();
+    }
+
+    // -- calculateCarbsOnBoardCurve: one pass over a step grid ------------------
+
+    @Test
+    void carbsOnBoardCurve_matchesPerStepTotals() {
+        // Timestamps off the minute boundary on both sides of "now": a grid step that lands within a
+        // minute before an entry must still count it at minute 0, as ChronoUnit.MINUTES.between does.
+        LocalDateTime t0 = LocalDateTime.of(2026, 3, 4, 12, 0, 0, 250_000_000);
+        UserSettingsDTO settings = new UserSettingsDTO(UUID.randomUUID(), USER_ID, 2.0, 1.0, 45, 0);
+        List<CarbsEntry> entries = new ArrayList<>();
+        entries.add(carbEntry(t0.minusMinutes(47).minusSeconds(13), 45.0, "MEDIUM", null));
+        entries.add(carbEntry(t0.plusMinutes(22).plusSeconds(31), 30.0, "FAST", null));
+        entries.add(carbEntry(t0.plusMinutes(60), 80.0, null, 5.0));
+        entries.add(giEnhancedEntry(t0.minusMinutes(10).plusSeconds(5), 60.0, 70.0, 8.0, 25.0, 20.0));
+        entries.add(carbEntry(t0.minusMinutes(5), 0.0, "FAST", null));
+        entries.add(null);
+        int[] grid = new int[120];
+        for (int i = 0; i < grid.length; i++) grid[i] = 5 * i;
+
+        double[] curve = service.calculateCarbsOnBoardCurve(entries, t0, grid, settings);
+
+        for (int i = 0; i < grid.length; i++) {
+            assertThat(curve[i]).as("COB at +%d min", grid[i])
+                    .isEqualTo(service.calculateTotalCarbsOnBoard(entries, t0.plusMinutes(grid[i]), settings));
+        }
+        assertThat(curve[5]).isPositive();
+        verifyNoInteractions(settingsService);
     }
 
     // -- calculateCOB ------------------------------------------------------------
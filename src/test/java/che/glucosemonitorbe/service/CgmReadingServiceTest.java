@@ -1,23 +1,37 @@
 package che.glucosemonitorbe.service;
 
 import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.CgmReadingCursor;
 import che.glucosemonitorbe.dto.NightscoutEntryDto;
+import che.glucosemonitorbe.repository.CgmReadingBulkWriter;
+import che.glucosemonitorbe.repository.CgmReadingPartitions;
 import che.glucosemonitorbe.repository.CgmReadingRepository;
+import che.glucosemonitorbe.service.cgm.CgmReadingsStoredEvent;
+import che.glucosemonitorbe.service.cgm.CgmRollupService;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -28,6 +42,21 @@ class CgmReadingServiceTest {
     @Mock
     private CgmReadingRepository repository;
 
+    @Mock
+    private CgmSeriesCache seriesCache;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private CgmReadingBulkWriter bulkWriter;
+
+    @Mock
+    private CgmReadingPartitions partitions;
+
+    @Mock
+    private CgmRollupService rollupService;
+
     @InjectMocks
     private CgmReadingService chartDataService;
 
@@ -49,7 +78,8 @@ class CgmReadingServiceTest {
     @Test
     @DisplayName("storeChartData inserts every new entry and tags them NIGHTSCOUT")
     void storeChartData_nightscout_insertsAndTagsSource() {
-        when(repository.findExistingExternalIds(eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), anyList()))
+        when(repository.findByUserIdAndDataSourceAndExternalIdIn(
+                eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), anyList()))
                 .thenReturn(Collections.emptyList());
         when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
 
@@ -61,13 +91,18 @@ class CgmReadingServiceTest {
         assertEquals(testEntries.size(), captor.getValue().size());
         assertTrue(captor.getValue().stream()
                 .allMatch(r -> r.getDataSource() == CgmReading.DataSource.NIGHTSCOUT));
+        verify(seriesCache).onStored(testUserId, captor.getValue());
+        verify(rollupService).onStored(testUserId, captor.getValue());
+        verify(eventPublisher).publishEvent(new CgmReadingsStoredEvent(testUserId, testEntries.size(),
+                testEntries.stream().mapToLong(NightscoutEntryDto::getDate).max().orElseThrow()));
     }
 
     @Test
     @DisplayName("storeChartData skips entries already stored under the same source")
     void storeChartData_skipsAlreadyStored() {
-        when(repository.findExistingExternalIds(eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), anyList()))
-                .thenReturn(List.of("entry1"));
+        when(repository.findByUserIdAndDataSourceAndExternalIdIn(
+                eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), anyList()))
+                .thenReturn(List.of(stored("entry1", 1640995200000L)));
         when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
 
         chartDataService.storeChartData(testUserId, testEntries, CgmReading.DataSource.NIGHTSCOUT);
@@ -77,20 +112,42 @@ class CgmReadingServiceTest {
         assertEquals(2, captor.getValue().size());
     }
 
+    @Test
+    @DisplayName("storeChartData replaces a stored reading whose upstream id is re-sent with a corrected time")
+    void storeChartData_resentIdWithMovedDate_replacesStoredReading() {
+        CgmReading old = stored("entry1", 1640995200000L - 60_000L);
+        when(repository.findByUserIdAndDataSourceAndExternalIdIn(
+                eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), anyList()))
+                .thenReturn(List.of(old));
+        when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+
+        chartDataService.storeChartData(testUserId, testEntries, CgmReading.DataSource.NIGHTSCOUT);
+
+        verify(repository).deleteAllByIdInBatch(List.of(old.getId()));
+        verify(rollupService).onRemoved(testUserId, List.of(old));
+        verify(seriesCache).evict(testUserId);
+        ArgumentCaptor<List<CgmReading>> captor = ArgumentCaptor.forClass(List.class);
+        verify(repository).saveAll(captor.capture());
+        assertEquals(3, captor.getValue().size());
+        assertEquals(1640995200000L, captor.getValue().get(0).getDateTimestamp());
+        verify(repository, never()).updateTrendIfZero(any(), any(), any(), any(), any());
+    }
+
     // -- storeChartData / LIBRE_LINK_UP --------------------------------------------
 
     @Test
     @DisplayName("storeChartData with LIBRE_LINK_UP tags rows correctly and scopes the existence check")
     void storeChartData_libre_tagsAndScopes() {
-        when(repository.findExistingExternalIds(eq(testUserId), eq(CgmReading.DataSource.LIBRE_LINK_UP), anyList()))
+        when(repository.findByUserIdAndDataSourceAndExternalIdIn(
+                eq(testUserId), eq(CgmReading.DataSource.LIBRE_LINK_UP), anyList()))
                 .thenReturn(Collections.emptyList());
         when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
 
         chartDataService.storeChartData(testUserId, testEntries, CgmReading.DataSource.LIBRE_LINK_UP);
 
-        verify(repository).findExistingExternalIds(
+        verify(repository).findByUserIdAndDataSourceAndExternalIdIn(
                 eq(testUserId), eq(CgmReading.DataSource.LIBRE_LINK_UP), anyList());
-        verify(repository, never()).findExistingExternalIds(
+        verify(repository, never()).findByUserIdAndDataSourceAndExternalIdIn(
                 eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), anyList());
 
         ArgumentCaptor<List<CgmReading>> captor = ArgumentCaptor.forClass(List.class);
@@ -112,7 +169,7 @@ class CgmReadingServiceTest {
 
         chartDataService.storeChartData(testUserId, tsOnly, CgmReading.DataSource.LIBRE_LINK_UP);
 
-        verify(repository, never()).findExistingExternalIds(any(), any(), anyList());
+        verify(repository, never()).findByUserIdAndDataSourceAndExternalIdIn(any(), any(), anyList());
         ArgumentCaptor<List<CgmReading>> captor = ArgumentCaptor.forClass(List.class);
         verify(repository).saveAll(captor.capture());
         assertEquals(1, captor.getValue().size()); // ts=2 already stored, only ts=1 inserted
@@ -127,7 +184,8 @@ class CgmReadingServiceTest {
                 new NightscoutEntryDto("a", 105, 2L, null, 0, "Flat", null, "sgv", 0, null), // dup id
                 new NightscoutEntryDto("b", 110, 3L, null, 0, "Flat", null, "sgv", 0, null)
         );
-        when(repository.findExistingExternalIds(eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), anyList()))
+        when(repository.findByUserIdAndDataSourceAndExternalIdIn(
+                eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), anyList()))
                 .thenReturn(Collections.emptyList());
         when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
 
@@ -138,6 +196,91 @@ class CgmReadingServiceTest {
         assertEquals(2, captor.getValue().size());
     }
 
+    // -- storeChartData / bulk upsert ----------------------------------------------
+
+    @Test
+    @DisplayName("storeChartData hands the deduped batch to the bulk writer when it is available")
+    void storeChartData_bulkUpsert_skipsExistenceQueries() {
+        List<NightscoutEntryDto> withDupe = new ArrayList<>(testEntries);
+        withDupe.add(testEntries.get(0));
+        when(bulkWriter.isAvailable()).thenReturn(true);
+        when(bulkWriter.upsert(eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), anyList(), any()))
+                .thenAnswer(inv -> {
+                    List<CgmReading> batch = inv.getArgument(2);
+                    // entry1 already stored with trend 0 -> back-filled; the rest are new.
+                    return new CgmReadingBulkWriter.Result(
+                            batch.subList(1, batch.size()), List.of(batch.get(0)), List.of());
+                });
+
+        chartDataService.storeChartData(testUserId, withDupe, CgmReading.DataSource.NIGHTSCOUT);
+
+        ArgumentCaptor<List<CgmReading>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bulkWriter).upsert(eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), captor.capture(), any());
+        assertEquals(3, captor.getValue().size());
+        verify(repository, never()).findByUserIdAndDataSourceAndExternalIdIn(any(), any(), anyList());
+        verify(repository, never()).updateTrendIfZero(any(), any(), any(), any(), any());
+        verify(repository, never()).saveAll(anyList());
+        verify(seriesCache).onTrendBackfilled(testUserId, 1640995200000L, 1);
+        verify(seriesCache).onStored(testUserId, captor.getValue().subList(1, 3));
+        verify(rollupService).onStored(testUserId, captor.getValue().subList(1, 3));
+        verify(eventPublisher).publishEvent(new CgmReadingsStoredEvent(testUserId, 2, 1641002400000L));
+    }
+
+    @Test
+    @DisplayName("storeChartData takes readings the bulk writer moved to a new time back out of the rollups")
+    void storeChartData_bulkUpsert_movedReadings_removedFromRollups() {
+        CgmReading old = stored("entry1", 1640995200000L - 60_000L);
+        when(bulkWriter.isAvailable()).thenReturn(true);
+        when(bulkWriter.upsert(eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), anyList(), any()))
+                .thenAnswer(inv -> {
+                    List<CgmReading> batch = inv.getArgument(2);
+                    return new CgmReadingBulkWriter.Result(batch.subList(0, 1), List.of(), List.of(old));
+                });
+
+        chartDataService.storeChartData(testUserId, testEntries, CgmReading.DataSource.NIGHTSCOUT);
+
+        InOrder order = inOrder(rollupService);
+        order.verify(rollupService).onRemoved(testUserId, List.of(old));
+        order.verify(rollupService).onStored(eq(testUserId), argThat(list -> list.size() == 1));
+        verify(seriesCache).evict(testUserId);
+    }
+
+    @Test
+    @DisplayName("storeChartData publishes nothing when the bulk writer inserted no rows")
+    void storeChartData_bulkUpsert_nothingNew_noEvent() {
+        when(bulkWriter.isAvailable()).thenReturn(true);
+        when(bulkWriter.upsert(any(), any(), anyList(), any()))
+                .thenReturn(new CgmReadingBulkWriter.Result(List.of(), List.of(), List.of()));
+
+        chartDataService.storeChartData(testUserId, testEntries, CgmReading.DataSource.LIBRE_LINK_UP);
+
+        verifyNoInteractions(repository, eventPublisher);
+        verify(seriesCache, never()).onStored(any(), anyList());
+        verify(rollupService, never()).onStored(any(), anyList());
+    }
+
+    @Test
+    @DisplayName("storeChartData skips entries without a reading timestamp, even when they carry an id")
+    @ExtendWith(OutputCaptureExtension.class)
+    void storeChartData_skipsEntriesWithoutDate(CapturedOutput output) {
+        List<NightscoutEntryDto> batch = List.of(
+                new NightscoutEntryDto("a", 100, null, null, 0, "Flat", null, "sgv", 0, null),
+                new NightscoutEntryDto("b", 110, 3L, null, 0, "Flat", null, "sgv", 0, null)
+        );
+        when(repository.findByUserIdAndDataSourceAndExternalIdIn(
+                eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), eq(List.of("b"))))
+                .thenReturn(Collections.emptyList());
+        when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+
+        chartDataService.storeChartData(testUserId, batch, CgmReading.DataSource.NIGHTSCOUT);
+
+        ArgumentCaptor<List<CgmReading>> captor = ArgumentCaptor.forClass(List.class);
+        verify(repository).saveAll(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals("b", captor.getValue().get(0).getExternalId());
+        assertTrue(output.getOut().contains("skipped 1 of 2 entries without a reading time"));
+    }
+
     @Test
     @DisplayName("storeChartData with empty/null input is a no-op")
     void storeChartData_emptyInput_noop() {
@@ -150,7 +293,8 @@ class CgmReadingServiceTest {
     @Test
     @DisplayName("storeChartDataAsync delegates to storeChartData with the same source")
     void storeChartDataAsync_delegates() {
-        when(repository.findExistingExternalIds(eq(testUserId), eq(CgmReading.DataSource.LIBRE_LINK_UP), anyList()))
+        when(repository.findByUserIdAndDataSourceAndExternalIdIn(
+                eq(testUserId), eq(CgmReading.DataSource.LIBRE_LINK_UP), anyList()))
                 .thenReturn(Collections.emptyList());
         when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
 
@@ -165,13 +309,24 @@ class CgmReadingServiceTest {
     @Test
     @DisplayName("storeChartDataAsync swallows exceptions instead of propagating")
     void storeChartDataAsync_swallowsExceptions() {
-        when(repository.findExistingExternalIds(any(), any(), anyList()))
+        when(repository.findByUserIdAndDataSourceAndExternalIdIn(any(), any(), anyList()))
                 .thenThrow(new RuntimeException("db down"));
 
         // Should not throw - async writer absorbs the failure and logs it.
         chartDataService.storeChartDataAsync(testUserId, testEntries, CgmReading.DataSource.NIGHTSCOUT);
     }
 
+    private CgmReading stored(String externalId, long dateTimestamp) {
+        return CgmReading.builder()
+                .id(UUID.randomUUID())
+                .userId(testUserId)
+                .dataSource(CgmReading.DataSource.NIGHTSCOUT)
+                .externalId(externalId)
+                .sgv(120)
+                .dateTimestamp(dateTimestamp)
+                .build();
+    }
+
     // -- read paths ---------------------------------------------------------------
 
     @Test
@@ -227,6 +382,34 @@ class CgmReadingServiceTest {
     void clearChartData_delegates() {
         chartDataService.clearChartData(testUserId);
         verify(repository, times(1)).deleteByUserId(testUserId);
+        verify(rollupService).onCleared(testUserId);
+    }
+
+    // -- retention -----------------------------------------------------------------
+
+    @Test
+    @DisplayName("dropExpiredPartitions drops the months before the UTC cutoff instead of deleting rows")
+    void dropExpiredPartitions_usesUtcEpochCutoff() {
+        Instant cutoff = Instant.parse("2025-01-01T00:00:00Z");
+        when(partitions.dropPartitionsBefore(anyLong())).thenReturn(2);
+
+        int dropped = chartDataService.dropExpiredPartitions(cutoff);
+
+        assertEquals(2, dropped);
+        verify(partitions).dropPartitionsBefore(1735689600000L);
+        verify(repository, never()).deleteOlderThan(any());
+        verify(seriesCache).evictAll();
+    }
+
+    @Test
+    @DisplayName("cleanupOldData deletes rows and returns the row count")
+    void cleanupOldData_deletesRows() {
+        LocalDateTime cutoff = LocalDateTime.of(2025, 1, 1, 0, 0);
+        when(repository.deleteOlderThan(cutoff)).thenReturn(0);
+
+        assertEquals(0, chartDataService.cleanupOldData(cutoff));
+        verifyNoInteractions(partitions);
+        verify(seriesCache, never()).evictAll();
     }
 
     // -- getChartDataAsEntriesSince ------------------------------------------------
@@ -298,4 +481,106 @@ class CgmReadingServiceTest {
         assertEquals("dexcom",   dto.getDevice());
         assertEquals(60,         dto.getUtcOffset());
     }
+
+    // -- keyset pagination ---------------------------------------------------------
+
+    private CgmReading readingAt(long ts) {
+        return readingAt(ts, UUID.randomUUID());
+    }
+
+    private CgmReading readingAt(long ts, UUID id) {
+        return CgmReading.builder()
+                .id(id)
+                .userId(testUserId)
+                .dataSource(CgmReading.DataSource.NIGHTSCOUT)
+                .externalId("e" + ts + "-" + id)
+                .sgv(100)
+                .dateTimestamp(ts)
+                .build();
+    }
+
+    @Test
+    @DisplayName("getLatestEntries reads one newest-first keyset page and returns it oldest first")
+    void getLatestEntries_singleKeysetPage() {
+        CgmReading oldest = readingAt(2000L);
+        when(repository.findByUserIdAndDataSourceAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+                eq(testUserId), eq(CgmReading.DataSource.NIGHTSCOUT), eq(Long.MAX_VALUE), any()))
+                .thenReturn(List.of(readingAt(3000L), oldest));
+
+        CgmReadingService.EntryPage result = chartDataService.getLatestEntries(
+                testUserId, CgmReading.DataSource.NIGHTSCOUT, null, 2);
+
+        assertEquals(List.of(2000L, 3000L), result.entries().stream().map(NightscoutEntryDto::getDate).toList());
+        assertEquals(new CgmReadingCursor(2000L, oldest.getId()), result.next());
+        verify(repository, never()).findByUserIdOrderByDateTimestampAsc(testUserId);
+    }
+
+    @Test
+    @DisplayName("a page boundary inside a timestamp tie continues with the rest of the tie, not strictly older rows")
+    void getLatestEntries_tieAtPageBoundary_continuesInsideTheTie() {
+        UUID higher = UUID.fromString("00000000-0000-0000-0000-000000000002");
+        UUID lower = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        when(repository.findByUserIdAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+                eq(testUserId), eq(Long.MAX_VALUE), any()))
+                .thenReturn(List.of(readingAt(3000L), readingAt(2000L, higher)));
+        when(repository.findPageBefore(eq(testUserId), eq(2000L), eq(higher), any()))
+                .thenReturn(List.of(readingAt(2000L, lower), readingAt(1000L)));
+
+        CgmReadingService.EntryPage first = chartDataService.getLatestEntries(testUserId, null, null, 2);
+        CgmReadingService.EntryPage second = chartDataService.getLatestEntries(testUserId, null, first.next(), 2);
+
+        assertEquals(new CgmReadingCursor(2000L, higher), first.next());
+        assertEquals(List.of(1000L, 2000L), second.entries().stream().map(NightscoutEntryDto::getDate).toList());
+        verify(repository, never()).findByUserIdAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+                eq(testUserId), eq(2000L), any());
+    }
+
+    @Test
+    @DisplayName("a bare timestamp cursor starts strictly older than that timestamp; a short page has no next cursor")
+    void getLatestEntries_timestampOnlyCursor() {
+        when(repository.findByUserIdAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+                eq(testUserId), eq(5000L), any()))
+                .thenReturn(List.of(readingAt(4000L)));
+
+        CgmReadingService.EntryPage result = chartDataService.getLatestEntries(
+                testUserId, null, CgmReadingCursor.valueOf("5000"), 2);
+
+        assertEquals(List.of(4000L), result.entries().stream().map(NightscoutEntryDto::getDate).toList());
+        assertNull(result.next());
+    }
+
+    @Test
+    @DisplayName("streamEntries walks keyset pages from the cursor and stops at a short page")
+    void streamEntries_pagesByCursor() {
+        int page = CgmReadingService.STREAM_PAGE_SIZE;
+        List<CgmReading> first = new ArrayList<>();
+        for (int i = 0; i < page; i++) first.add(readingAt(100_000L - i));
+        CgmReading last = first.get(page - 1);
+        when(repository.findByUserIdAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+                eq(testUserId), eq(100_001L), any()))
+                .thenReturn(first);
+        when(repository.findPageBefore(eq(testUserId), eq(last.getDateTimestamp()), eq(last.getId()), any()))
+                .thenReturn(List.of(readingAt(last.getDateTimestamp() - 1)));
+
+        List<Long> emitted = new ArrayList<>();
+        CgmReadingCursor next = chartDataService.streamEntries(testUserId, null,
+                new CgmReadingCursor(100_001L, null), page + 10, e -> emitted.add(e.getDate()));
+
+        assertEquals(page + 1, emitted.size());
+        assertEquals(last.getDateTimestamp() - 1, emitted.get(page));
+        assertNull(next);
+    }
+
+    @Test
+    @DisplayName("streamEntries returns the oldest emitted reading as cursor when the limit is reached")
+    void streamEntries_limitReached_returnsCursor() {
+        CgmReading oldest = readingAt(2000L);
+        when(repository.findByUserIdAndDateTimestampLessThanOrderByDateTimestampDescIdDesc(
+                eq(testUserId), eq(Long.MAX_VALUE), any()))
+                .thenReturn(List.of(readingAt(3000L), oldest));
+
+        CgmReadingCursor next = chartDataService.streamEntries(testUserId, null, null, 2, e -> { });
+
+        assertEquals(new CgmReadingCursor(2000L, oldest.getId()), next);
+    }
 }
@@ -0,0 +1,233 @@
+package che.glucosemonitorbe.service;
+
+import che.glucosemonitorbe.config.FeatureToggleConfig;
+import che.glucosemonitorbe.entity.DigitalTwinBatchCursor;
+import che.glucosemonitorbe.hovorka.learning.DigitalTwinCalibrator;
+import che.glucosemonitorbe.hovorka.learning.PredictionReplayEngine;
+import che.glucosemonitorbe.repository.DigitalTwinBatchCursorRepository;
+import che.glucosemonitorbe.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DigitalTwinBatchServiceTest {
+
+    @Mock private DigitalTwinCalibrationService calibrationService;
+    @Mock private UserRepository userRepository;
+    @Mock private DigitalTwinBatchCursorRepository cursorRepository;
+    @Mock private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private final FeatureToggleConfig featureToggleConfig = new FeatureToggleConfig();
+    private DigitalTwinBatchService service;
+
+    private final UUID u1 = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private final UUID u2 = UUID.fromString("00000000-0000-0000-0000-000000000002");
+    private final UUID u3 = UUID.fromString("00000000-0000-0000-0000-000000000003");
+    private final UUID u4 = UUID.fromString("00000000-0000-0000-0000-000000000004");
+
+    @BeforeEach
+    void setUp() {
+        featureToggleConfig.setDigitalTwinEnabled(true);
+        service = new DigitalTwinBatchService(
+                calibrationService, userRepository, cursorRepository, featureToggleConfig, meterRegistryProvider);
+        ReflectionTestUtils.setField(service, "concurrency", 2);
+        ReflectionTestUtils.setField(service, "perUserTimeoutMs", 60_000L);
+        ReflectionTestUtils.setField(service, "maxRunMs", 0L);
+    }
+
+    private static DigitalTwinCalibrator.Result result(boolean improved) {
+        return new DigitalTwinCalibrator.Result(null, null, null, 1.0, 0.9, 100, 30, improved, "HIGH", "ok");
+    }
+
+    private DigitalTwinBatchCursor lastSavedCursor() {
+        ArgumentCaptor<DigitalTwinBatchCursor> captor = ArgumentCaptor.forClass(DigitalTwinBatchCursor.class);
+        verify(cursorRepository, atLeastOnce()).save(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    @DisplayName("counts every outcome: applied, attempted, skipped, failed and timed out")
+    void countsOutcomes() {
+        UUID u5 = UUID.fromString("00000000-0000-0000-0000-000000000005");
+        when(cursorRepository.findById(DigitalTwinBatchService.BATCH_NAME)).thenReturn(Optional.empty());
+        when(userRepository.findIdsByEmailNotLikeOrderById(DigitalTwinBatchService.SEED_EMAIL_PATTERN))
+                .thenReturn(List.of(u1, u2, u3, u4, u5));
+        when(calibrationService.calibrateUser(eq(u1), anyLong())).thenReturn(result(true));
+        when(calibrationService.calibrateUser(eq(u2), anyLong())).thenReturn(result(false));
+        when(calibrationService.calibrateUser(eq(u3), anyLong())).thenReturn(null);
+        when(calibrationService.calibrateUser(eq(u4), anyLong())).thenThrow(new IllegalStateException("boom"));
+        when(calibrationService.calibrateUser(eq(u5), anyLong()))
+                .thenThrow(new PredictionReplayEngine.DeadlineExceededException());
+
+        DigitalTwinBatchService.BatchSummary s = service.calibrateAllRealUsers();
+
+        assertThat(s.totalUsers()).isEqualTo(5);
+        assertThat(s.attempted()).isEqualTo(2);
+        assertThat(s.applied()).isEqualTo(1);
+        assertThat(s.skipped()).isEqualTo(1);
+        assertThat(s.failed()).isEqualTo(1);
+        assertThat(s.timedOut()).isEqualTo(1);
+        assertThat(s.completed()).isTrue();
+        assertThat(s.resumed()).isFalse();
+
+        DigitalTwinBatchCursor cursor = lastSavedCursor();
+        assertThat(cursor.getStatus()).isEqualTo(DigitalTwinBatchCursor.Status.COMPLETED);
+        assertThat(cursor.getLastUserId()).isEqualTo(u5);
+        assertThat(cursor.getProcessed()).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("an unfinished recent run resumes after its cursor and keeps the original processed count")
+    void resumesFromCursor() {
+        DigitalTwinBatchCursor previous = DigitalTwinBatchCursor.builder()
+                .batchName(DigitalTwinBatchService.BATCH_NAME)
+                .runStartedAt(LocalDateTime.now().minusHours(2))
+                .lastUserId(u2)
+                .status(DigitalTwinBatchCursor.Status.INTERRUPTED)
+                .processed(2)
+                .build();
+        when(cursorRepository.findById(DigitalTwinBatchService.BATCH_NAME)).thenReturn(Optional.of(previous));
+        when(userRepository.findIdsByEmailNotLikeAndIdAfterOrderById(DigitalTwinBatchService.SEED_EMAIL_PATTERN, u2))
+                .thenReturn(List.of(u3, u4));
+        when(calibrationService.calibrateUser(any(UUID.class), anyLong())).thenReturn(result(true));
+
+        DigitalTwinBatchService.BatchSummary s = service.calibrateAllRealUsers();
+
+        assertThat(s.resumed()).isTrue();
+        assertThat(s.totalUsers()).isEqualTo(2);
+        assertThat(s.applied()).isEqualTo(2);
+        verify(calibrationService, never()).calibrateUser(eq(u1), anyLong());
+        verify(calibrationService, never()).calibrateUser(eq(u2), anyLong());
+        verify(userRepository, never()).findIdsByEmailNotLikeOrderById(anyString());
+
+        DigitalTwinBatchCursor cursor = lastSavedCursor();
+        assertThat(cursor.getStatus()).isEqualTo(DigitalTwinBatchCursor.Status.COMPLETED);
+        assertThat(cursor.getLastUserId()).isEqualTo(u4);
+        assertThat(cursor.getProcessed()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("a run interrupted the night before (started 24 h earlier) is resumed by the next nightly run")
+    void resumesPreviousNightsRun() {
+        DigitalTwinBatchCursor previous = DigitalTwinBatchCursor.builder()
+                .batchName(DigitalTwinBatchService.BATCH_NAME)
+                .runStartedAt(LocalDateTime.now().minusHours(24).minusMinutes(5))
+                .lastUserId(u2)
+                .status(DigitalTwinBatchCursor.Status.INTERRUPTED)
+                .processed(2)
+                .build();
+        when(cursorRepository.findById(DigitalTwinBatchService.BATCH_NAME)).thenReturn(Optional.of(previous));
+        when(userRepository.findIdsByEmailNotLikeAndIdAfterOrderById(DigitalTwinBatchService.SEED_EMAIL_PATTERN, u2))
+                .thenReturn(List.of(u3, u4));
+        when(calibrationService.calibrateUser(any(UUID.class), anyLong())).thenReturn(result(true));
+
+        DigitalTwinBatchService.BatchSummary s = service.calibrateAllRealUsers();
+
+        assertThat(s.resumed()).isTrue();
+        verify(calibrationService, never()).calibrateUser(eq(u1), anyLong());
+        verify(userRepository, never()).findIdsByEmailNotLikeOrderById(anyString());
+        assertThat(lastSavedCursor().getProcessed()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("an unfinished run older than the resume window is abandoned - the run starts from the first user")
+    void staleRunStartsFresh() {
+        DigitalTwinBatchCursor previous = DigitalTwinBatchCursor.builder()
+                .batchName(DigitalTwinBatchService.BATCH_NAME)
+                .runStartedAt(LocalDateTime.now().minusHours(48))
+                .lastUserId(u2)
+                .status(DigitalTwinBatchCursor.Status.INTERRUPTED)
+                .processed(2)
+                .build();
+        when(cursorRepository.findById(DigitalTwinBatchService.BATCH_NAME)).thenReturn(Optional.of(previous));
+        when(userRepository.findIdsByEmailNotLikeOrderById(DigitalTwinBatchService.SEED_EMAIL_PATTERN))
+                .thenReturn(List.of(u1, u2));
+        when(calibrationService.calibrateUser(any(UUID.class), anyLong())).thenReturn(result(false));
+
+        DigitalTwinBatchService.BatchSummary s = service.calibrateAllRealUsers();
+
+        assertThat(s.resumed()).isFalse();
+        assertThat(s.attempted()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("a completed previous run is not resumed - the next run starts from the first user")
+    void completedRunStartsFresh() {
+        DigitalTwinBatchCursor previous = DigitalTwinBatchCursor.builder()
+                .batchName(DigitalTwinBatchService.BATCH_NAME)
+                .runStartedAt(LocalDateTime.now().minusHours(1))
+                .lastUserId(u2)
+                .status(DigitalTwinBatchCursor.Status.COMPLETED)
+                .processed(2)
+                .build();
+        when(cursorRepository.findById(DigitalTwinBatchService.BATCH_NAME)).thenReturn(Optional.of(previous));
+        when(userRepository.findIdsByEmailNotLikeOrderById(DigitalTwinBatchService.SEED_EMAIL_PATTERN))
+                .thenReturn(List.of(u1, u2));
+        when(calibrationService.calibrateUser(any(UUID.class), anyLong())).thenReturn(result(false));
+
+        DigitalTwinBatchService.BatchSummary s = service.calibrateAllRealUsers();
+
+        assertThat(s.resumed()).isFalse();
+        assertThat(s.attempted()).isEqualTo(2);
+        assertThat(lastSavedCursor().getProcessed()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("an exhausted run budget leaves users unstarted and marks the cursor INTERRUPTED")
+    void runBudgetInterrupts() {
+        ReflectionTestUtils.setField(service, "concurrency", 1);
+        ReflectionTestUtils.setField(service, "maxRunMs", 50L);
+        when(cursorRepository.findById(DigitalTwinBatchService.BATCH_NAME)).thenReturn(Optional.empty());
+        when(userRepository.findIdsByEmailNotLikeOrderById(DigitalTwinBatchService.SEED_EMAIL_PATTERN))
+                .thenReturn(List.of(u1, u2, u3));
+        when(calibrationService.calibrateUser(eq(u1), anyLong())).thenAnswer(inv -> {
+            Thread.sleep(200);   // burns the whole run budget
+            return result(true);
+        });
+
+        DigitalTwinBatchService.BatchSummary s = service.calibrateAllRealUsers();
+
+        assertThat(s.completed()).isFalse();
+        assertThat(s.applied()).isEqualTo(1);
+        verify(calibrationService, never()).calibrateUser(eq(u2), anyLong());
+        DigitalTwinBatchCursor cursor = lastSavedCursor();
+        assertThat(cursor.getStatus()).isEqualTo(DigitalTwinBatchCursor.Status.INTERRUPTED);
+        assertThat(cursor.getLastUserId()).isEqualTo(u1);
+        assertThat(cursor.getProcessed()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("feature flag off: no users loaded, no cursor touched")
+    void disabledIsNoOp() {
+        featureToggleConfig.setDigitalTwinEnabled(false);
+
+        DigitalTwinBatchService.BatchSummary s = service.calibrateAllRealUsers();
+
+        assertThat(s.totalUsers()).isZero();
+        verifyNoInteractions(userRepository, cursorRepository, calibrationService);
+    }
+}
@@ -108,7 +108,7 @@ class GlucoseAlertServiceTest {
      * can both see no cooldown entry and both deliver the same alert, causing duplicate
      * notifications to the user.
      *
-     * This test runs two concurrent evaluateAll calls for the same user+type and verifies
+     * This test runs two concurrent evaluateNow calls for the same user+type and verifies
      * the alert is delivered at most once. It FAILS intermittently (or deterministically
      * with a delay inserted) against the current non-atomic implementation.
      */
@@ -146,11 +146,11 @@ class GlucoseAlertServiceTest {
             return mockResponse;
         }).when(calculationsService).calculateGlucoseData(any());
 
-        // Submit two concurrent evaluateAll calls
+        // Submit two concurrent evaluations (the anomaly detector's entry point)
         for (int i = 0; i < 2; i++) {
             executor.submit(() -> {
                 try {
-                    alertService.evaluateAll(userId, username, 4.2, -0.1, null);
+                    alertService.evaluateNow(userId, username, 4.2, -0.1, null);
                 } catch (Exception ignored) {}
             });
         }
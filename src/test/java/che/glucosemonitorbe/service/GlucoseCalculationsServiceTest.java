@@ -50,6 +50,7 @@ class GlucoseCalculationsServiceTest {
     @Mock private NoteToCarbsEntryMapper noteToCarbsEntryMapper;
     @Mock private HovorkaGlucosePredictionService hovorkaService;
 
+    private PredictionResultCache predictionResultCache;
     private GlucoseCalculationsService service;
 
     @BeforeEach
@@ -72,16 +73,23 @@ class GlucoseCalculationsServiceTest {
             return entry;
         }).when(noteToCarbsEntryMapper).toCarbsEntry(any(Note.class));
 
+        // Default COB/IOB curves over the prediction grid: nothing on board (as the 0.0 point stubs)
+        when(cobService.calculateCarbsOnBoardCurve(any(), any(), any(int[].class), any()))
+                .thenAnswer(invocation -> new double[invocation.<int[]>getArgument(2).length]);
+        when(insulinCalculatorService.calculateActiveInsulinCurve(any(), any(), any(int[].class), anyDouble(), anyDouble()))
+                .thenAnswer(invocation -> new double[invocation.<int[]>getArgument(2).length]);
+
+        predictionResultCache = new PredictionResultCache(true, 300, 1000, null);
         service = new GlucoseCalculationsService(
                 cobService, insulinCalculatorService, noteRepository,
                 userService, userInsulinPreferencesService, objectMapper,
-                featureToggleConfig, userSettingsService, noteToCarbsEntryMapper);
+                featureToggleConfig, userSettingsService, noteToCarbsEntryMapper, predictionResultCache);
     }
 
     @Test
     void determineTrendUsesAdjustedThresholds() throws Exception {
         // Use a minimal service instance for the private-method reflection test
-        GlucoseCalculationsService svc = new GlucoseCalculationsService(null, null, null, null, null, null, null, null, null);
+        GlucoseCalculationsService svc = new GlucoseCalculationsService(null, null, null, null, null, null, null, null, null, null);
         Method method = GlucoseCalculationsService.class.getDeclaredMethod("determineTrend", PredictionFactors.class, double.class);
         method.setAccessible(true);
 
@@ -295,7 +303,7 @@ class GlucoseCalculationsServiceTest {
         GlucoseCalculationsService svc = new GlucoseCalculationsService(
                 realCobService, insulinCalculatorService, noteRepository,
                 userService, userInsulinPreferencesService, objectMapper,
-                featureToggleConfig, userSettingsMock, noteToCarbsEntryMapper);
+                featureToggleConfig, userSettingsMock, noteToCarbsEntryMapper, predictionResultCache);
 
         String username = "p4user";
         UUID userId = UUID.randomUUID();
@@ -543,6 +551,13 @@ class GlucoseCalculationsServiceTest {
                     long elapsedMinutes = java.time.Duration.between(currentTime, t).toMinutes();
                     return 10.0 - elapsedMinutes * 0.01;
                 });
+        when(insulinCalculatorService.calculateActiveInsulinCurve(any(), any(LocalDateTime.class), any(int[].class), anyDouble(), anyDouble()))
+                .thenAnswer(invocation -> {
+                    int[] offsets = invocation.getArgument(2);
+                    double[] iob = new double[offsets.length];
+                    for (int i = 0; i < offsets.length; i++) iob[i] = 10.0 - offsets[i] * 0.01;
+                    return iob;
+                });
 
         Method method = GlucoseCalculationsService.class.getDeclaredMethod(
                 "buildPredictionPath",
@@ -735,4 +750,51 @@ class GlucoseCalculationsServiceTest {
         assertThatThrownBy(() -> service.calculateGlucoseData(request))
                 .isInstanceOf(DataAccessResourceFailureException.class);
     }
+
+    // -- Prediction result cache -------------------------------------------------
+
+    @Test
+    void repeatedPoll_servedFromCache_untilNotesChange() {
+        String username = "poller";
+        UUID userId = UUID.randomUUID();
+        when(userService.getUserByUsername(username))
+                .thenReturn(UserDto.builder().id(userId).username(username).build());
+        UserSettingsDTO userSettings = new UserSettingsDTO();
+        userSettings.setUserId(userId);
+        userSettings.setCarbRatio(2.0);
+        userSettings.setIsf(1.0);
+        userSettings.setCarbHalfLife(45);
+        userSettings.setMaxCOBDuration(240);
+        when(userSettingsService.getUserSettings(userId)).thenReturn(userSettings);
+        when(userInsulinPreferencesService.getRapidIobParameters(userId))
+                .thenReturn(new RapidInsulinIobParameters(4.0, 75.0));
+        when(noteRepository.findByUserIdAndTimestampBetween(any(), any(), any())).thenReturn(List.of());
+
+        GlucoseCalculationsRequest poll = GlucoseCalculationsRequest.builder()
+                .currentGlucose(7.0).userId(username).includePredictionFactors(false).build();
+
+        GlucoseCalculationsResponse first = service.calculateGlucoseData(poll);
+        GlucoseCalculationsResponse second = service.calculateGlucoseData(poll);
+        assertThat(second).isSameAs(first);
+        verify(userSettingsService, times(1)).getUserSettings(userId);
+
+        // A different reading is a different request.
+        service.calculateGlucoseData(GlucoseCalculationsRequest.builder()
+                .currentGlucose(7.4).userId(username).includePredictionFactors(false).build());
+        verify(userSettingsService, times(2)).getUserSettings(userId);
+
+        // What-if overlays are never cached.
+        GlucoseCalculationsRequest whatIf = GlucoseCalculationsRequest.builder()
+                .currentGlucose(7.4).userId(username).includePredictionFactors(false)
+                .prospectiveNotes(List.of(new ProspectiveNoteDTO())).build();
+        service.calculateGlucoseData(whatIf);
+        verify(userSettingsService, times(3)).getUserSettings(userId);
+
+        // A note change invalidates the cached poll.
+        service.calculateGlucoseData(poll);
+        predictionResultCache.onNotesChanged(userId);
+        GlucoseCalculationsResponse afterNote = service.calculateGlucoseData(poll);
+        assertThat(afterNote).isNotSameAs(first);
+        verify(userSettingsService, times(5)).getUserSettings(userId);
+    }
 }
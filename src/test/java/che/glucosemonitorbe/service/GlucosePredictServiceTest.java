@@ -120,6 +120,29 @@ class GlucosePredictServiceTest {
                 anyList(), anyList(), anyList(),
                 eq(USER_ID), anyInt()))
                 .thenAnswer(inv -> emitCurve(inv.getArgument(2), inv.getArgument(7), 7.0));
+
+        // The optimiser simulates its candidates as branches of one integration. The real engine
+        // guarantees each branch equals buildPredictionPath on history + the branch's carbs, so the
+        // stub delegates per branch - the per-test curve overrides and captors above still apply.
+        when(hovorkaService.buildBranchedPredictionPaths(
+                any(HovorkaParameters.class),
+                anyDouble(), any(LocalDateTime.class),
+                anyList(), anyList(), anyList(),
+                eq(USER_ID), anyList(), any()))
+                .thenAnswer(inv -> {
+                    List<CarbsEntry> history = inv.getArgument(3);
+                    List<HovorkaGlucosePredictionService.PathBranch> branches = inv.getArgument(7);
+                    List<List<PredictionPointDTO>> paths = new ArrayList<>();
+                    for (HovorkaGlucosePredictionService.PathBranch b : branches) {
+                        List<CarbsEntry> carbs = new ArrayList<>(history);
+                        carbs.addAll(b.prospectiveCarbs());
+                        paths.add(hovorkaService.buildPredictionPath(
+                                inv.getArgument(0), inv.getArgument(1), inv.getArgument(2),
+                                carbs, inv.getArgument(4), inv.getArgument(5),
+                                USER_ID, b.pathMinutes()));
+                    }
+                    return paths;
+                });
     }
 
     // ---
@@ -198,14 +221,17 @@ class GlucosePredictServiceTest {
     }
 
     @Test
-    @DisplayName("with insulin dose -> optimizer runs 7 candidates + 1 final = 8 ODE calls")
-    void withInsulinDose_optimizerRunsSevenPlusFinalCall() {
+    @DisplayName("with insulin dose -> optimizer runs 7 candidate branches and reuses the winner, no final call")
+    void withInsulinDose_optimizerRunsSevenBranchesNoFinalCall() {
         PredictRequest req = simpleRequest(8.5, 4.0, 60, 0, 0, 0); // insulinDose=4u
 
         sut.predict(req, USERNAME);
 
-        // 7 candidates [0,5,10,15,20,25,30] + 1 final = 8 total calls
-        verify(hovorkaService, times(8)).buildPredictionPath(
+        // 7 candidates [0,5,10,15,20,25,30] in one branched call; the winner is the final curve
+        verify(hovorkaService, times(1)).buildBranchedPredictionPaths(
+                any(HovorkaParameters.class),
+                anyDouble(), any(), anyList(), anyList(), anyList(), any(), anyList(), any());
+        verify(hovorkaService, times(7)).buildPredictionPath(
                 any(HovorkaParameters.class),
                 anyDouble(), any(), anyList(), anyList(), anyList(), any(), anyInt());
     }
@@ -997,7 +1023,7 @@ class GlucosePredictServiceTest {
     }
 
     @Test
-    @DisplayName("advisory path: final simulation reproduces the winning candidate - bolus at now, meal at now + preBolusMinutes")
+    @DisplayName("advisory path: the returned curve is the winning candidate's - bolus at now, meal at now + preBolusMinutes")
     void advisory_finalLegMatchesWinningCandidate() {
         // Pins ruling 1 (the final-leg bolus timestamp fix): stubs a curve where a genuinely
         // non-zero pause (20 min) wins outright - perfect target (cost 0) only at pause=20,
@@ -1040,32 +1066,32 @@ class GlucosePredictServiceTest {
                 mealsCaptor.capture(), dosesCaptor.capture(), anyList(), eq(USER_ID),
                 pathCaptor.capture());
 
+        // No re-simulation after the search: only the seven candidate branches ran.
+        assertThat(pathCaptor.getAllValues()).hasSize(7);
+
         LocalDateTime now = nowCaptor.getValue();
-        List<CarbsEntry>  finalMeals = mealsCaptor.getAllValues().get(mealsCaptor.getAllValues().size() - 1);
-        List<InsulinDose> finalDoses = dosesCaptor.getAllValues().get(dosesCaptor.getAllValues().size() - 1);
+        int winner = -1;
+        for (int i = 0; i < mealsCaptor.getAllValues().size(); i++) {
+            if (pauseOf(now, mealsCaptor.getAllValues().get(i)) == resp.getPreBolusMinutes()) winner = i;
+        }
+        assertThat(winner).as("one candidate simulated the meal at now + preBolusMinutes").isNotNegative();
 
-        LocalDateTime finalMealAt = finalMeals.stream()
-                .filter(e -> "predict".equals(e.getMealType()))
-                .map(CarbsEntry::getTimestamp)
-                .findFirst().orElseThrow();
-        LocalDateTime finalBolusAt = finalDoses.stream()
+        LocalDateTime winnerBolusAt = dosesCaptor.getAllValues().get(winner).stream()
                 .map(InsulinDose::getTimestamp)
                 .max(LocalDateTime::compareTo).orElseThrow();
-
-        assertThat(finalBolusAt)
-                .as("final simulation's bolus must be at now, matching the optimiser's own candidates")
+        assertThat(winnerBolusAt)
+                .as("the winning candidate's bolus must be at now")
                 .isEqualTo(now);
-        assertThat(finalMealAt)
-                .as("final simulation's meal must be at now + preBolusMinutes")
-                .isEqualTo(now.plusMinutes(resp.getPreBolusMinutes()));
-
-        // The returned curve must be the winning candidate's own curve. Running the final leg
-        // for `horizon` alone would end `bestPause` minutes short of every window the optimiser
-        // scored, cutting the post-meal excursion the client asked about off the end.
-        List<Integer> paths = pathCaptor.getAllValues();
-        assertThat(paths.get(paths.size() - 1))
-                .as("final simulation must span horizon + preBolusMinutes (300 + 20)")
+
+        // The returned curve must be the winning candidate's own curve, spanning horizon + pause.
+        // Stopping at `horizon` alone would end `bestPause` minutes short of every window the
+        // optimiser scored, cutting the post-meal excursion the client asked about off the end.
+        assertThat(pathCaptor.getAllValues().get(winner))
+                .as("winning candidate must span horizon + preBolusMinutes (300 + 20)")
                 .isEqualTo(300 + resp.getPreBolusMinutes());
+        assertThat(resp.getCurve()).extracting(PredictionPointDTO::getPredictedGlucose).containsOnly(5.5);
+        assertThat(resp.getCurve().get(resp.getCurve().size() - 1).getTimestamp())
+                .isEqualTo(now.plusMinutes(300 + resp.getPreBolusMinutes()));
     }
 
     // ---
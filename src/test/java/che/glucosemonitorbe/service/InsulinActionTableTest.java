@@ -0,0 +1,73 @@
+package che.glucosemonitorbe.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class InsulinActionTableTest {
+
+    /** Catalog rapid curves (FIASP, APIDRA), a fractional-DIA curve and the near-linear degenerate one. */
+    private static final double[][] CURVES = {{4.5, 55.0}, {4.0, 75.0}, {3.3, 60.0}, {5.0, 150.0}};
+
+    @Test
+    @DisplayName("whole minutes are bit-identical to the closed form for any dose size")
+    void wholeMinutes_matchClosedFormExactly() {
+        for (double[] c : CURVES) {
+            InsulinActionTable table = InsulinActionTable.of(c[0], c[1]);
+            for (double units : new double[]{0.5, 1.0, 3.7, 12.0}) {
+                for (int m = -5; m <= c[0] * 60 + 5; m++) {
+                    assertThat(table.iob(units, m)).as("IOB %s U at %d min on %s/%s", units, m, c[0], c[1])
+                            .isEqualTo(InsulinCalculatorService.iobOpenApsExponential(units, m, c[0], c[1]));
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("fractional minutes interpolate within 1e-4 U per unit of the closed form")
+    void fractionalMinutes_closeToClosedForm() {
+        for (double[] c : CURVES) {
+            InsulinActionTable table = InsulinActionTable.of(c[0], c[1]);
+            for (double t = 0.0; t < c[0] * 60; t += 0.37) {
+                assertThat(table.iob(4.0, t)).as("IOB at %s min", t)
+                        .isCloseTo(InsulinCalculatorService.iobOpenApsExponential(4.0, t, c[0], c[1]), within(4e-4));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("activity is the per-minute IOB decay of the closed form")
+    void activity_matchesClosedFormDecay() {
+        InsulinActionTable table = InsulinActionTable.of(4.5, 55.0);
+        double total = 0.0;
+        for (int m = -3; m <= 4.5 * 60 + 3; m++) {
+            double expected = Math.max(0.0,
+                    InsulinCalculatorService.iobOpenApsExponential(5.0, m - 1, 4.5, 55.0)
+                    - InsulinCalculatorService.iobOpenApsExponential(5.0, m, 4.5, 55.0));
+            assertThat(table.activity(5.0, m)).as("activity at %d min", m).isCloseTo(expected, within(1e-12));
+            total += table.activity(5.0, m);
+        }
+        assertThat(total).as("the whole dose is absorbed over the DIA").isCloseTo(5.0, within(1e-9));
+        assertThat(table.activity(-2.0, 60)).isZero();
+        assertThat(table.activity(5.0, 0)).isZero();
+    }
+
+    @Test
+    @DisplayName("one table per curve, shared by every caller")
+    void tablesAreSharedPerCurve() {
+        assertThat(InsulinActionTable.of(4.5, 55.0)).isSameAs(InsulinActionTable.of(4.5, 55.0));
+        assertThat(InsulinActionTable.of(4.5, 55.0)).isNotSameAs(InsulinActionTable.of(4.0, 75.0));
+    }
+
+    @Test
+    @DisplayName("curves too long to tabulate and invalid curves fall back to the closed form")
+    void untabulatedCurves_useClosedForm() {
+        InsulinActionTable basal = InsulinActionTable.of(60.0, 600.0);
+        assertThat(basal.iob(10.0, 1234.5))
+                .isEqualTo(InsulinCalculatorService.iobOpenApsExponential(10.0, 1234.5, 60.0, 600.0));
+        assertThat(InsulinActionTable.of(0.0, 55.0).iob(5.0, 10)).isZero();
+        assertThat(InsulinActionTable.of(4.5, 55.0).iob(5.0, Double.NaN)).isZero();
+    }
+}
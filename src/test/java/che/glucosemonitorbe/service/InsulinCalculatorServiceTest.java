@@ -355,6 +355,29 @@ class InsulinCalculatorServiceTest {
         }
     }
 
+    // -- calculateActiveInsulinCurve: one pass over a step grid ----------------
+
+    @Test
+    void activeInsulinCurve_matchesPerStepTotals() {
+        // Doses off the minute boundary on both sides of "now", so the seconds truncation is exercised
+        LocalDateTime now = LocalDateTime.of(2026, 6, 9, 13, 0, 17);
+        List<InsulinDose> doses = List.of(
+                InsulinDose.builder().timestamp(now.minusMinutes(95).minusSeconds(41)).units(4.5).build(),
+                InsulinDose.builder().timestamp(now.minusSeconds(30)).units(1.2).build(),
+                InsulinDose.builder().timestamp(now.plusMinutes(12).plusSeconds(29)).units(2.0).build(),
+                InsulinDose.builder().timestamp(now.minusMinutes(20)).units(0.0).build());
+        int[] grid = new int[60];
+        for (int i = 0; i < grid.length; i++) grid[i] = 5 * i;
+
+        double[] curve = service.calculateActiveInsulinCurve(doses, now, grid, 4.0, 75.0);
+
+        for (int i = 0; i < grid.length; i++) {
+            assertThat(curve[i]).as("IOB at +%d min", grid[i])
+                    .isEqualTo(service.calculateTotalActiveInsulin(doses, now.plusMinutes(grid[i]), 4.0, 75.0));
+        }
+        assertThat(service.calculateActiveInsulinCurve(doses, now, grid, 0.0, 75.0)).containsOnly(0.0);
+    }
+
     // -- getInsulinActivityStatus: future dose & falling phase -----------------
 
     @Test
@@ -8,9 +8,10 @@ import che.glucosemonitorbe.dto.IsfMealWindowProfileResponse;
 import che.glucosemonitorbe.dto.RapidInsulinIobParameters;
 import che.glucosemonitorbe.dto.UserSettingsDTO;
 import che.glucosemonitorbe.entity.Note;
-import che.glucosemonitorbe.repository.CgmReadingRepository;
 import che.glucosemonitorbe.repository.IsfMealWindowSnapshotRepository;
 import che.glucosemonitorbe.repository.NoteRepository;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -32,6 +33,7 @@ import java.util.UUID;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.offset;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
@@ -49,7 +51,7 @@ import static org.mockito.Mockito.when;
 class IsfMealWindowProfileServiceTest {
 
     @Mock private NoteRepository noteRepository;
-    @Mock private CgmReadingRepository cgmReadingRepository;
+    @Mock private CgmSeriesCache cgmSeriesCache;
     @Mock private UserInsulinPreferencesService userInsulinPreferencesService;
     @Mock private UserSettingsService userSettingsService;
     @Mock private InsulinCalculatorService insulinCalculatorService;
@@ -67,7 +69,7 @@ class IsfMealWindowProfileServiceTest {
     @BeforeEach
     void setUp() {
         service = new IsfMealWindowProfileService(
-                noteRepository, cgmReadingRepository,
+                noteRepository, cgmSeriesCache,
                 userInsulinPreferencesService, userSettingsService,
                 carbsOnBoardService, snapshotRepository);
 
@@ -134,8 +136,7 @@ class IsfMealWindowProfileServiceTest {
     void emptyData_fourBucketsAllEmpty() {
         when(noteRepository.findByUserIdAndTimestampBetween(eq(userId), any(), any()))
                 .thenReturn(List.of());
-        when(cgmReadingRepository.findByUserIdAndDateTimestampGreaterThanOrderByDateTimestampAsc(eq(userId), any()))
-                .thenReturn(List.of());
+        when(cgmSeriesCache.since(eq(userId), anyLong())).thenReturn(CgmSeries.EMPTY);
         when(snapshotRepository.findByUserId(userId)).thenReturn(List.of());
 
         IsfMealWindowProfileResponse response = service.recomputeForUser(userId);
@@ -420,8 +421,7 @@ class IsfMealWindowProfileServiceTest {
     private void stub(List<Note> notes, List<CgmReading> cgm) {
         when(noteRepository.findByUserIdAndTimestampBetween(eq(userId), any(), any()))
                 .thenReturn(notes);
-        when(cgmReadingRepository.findByUserIdAndDateTimestampGreaterThanOrderByDateTimestampAsc(eq(userId), any()))
-                .thenReturn(cgm);
+        when(cgmSeriesCache.since(eq(userId), anyLong())).thenReturn(CgmSeries.of(cgm));
     }
 
     private IsfMealWindowSnapshot captureSavedSnapshot(MealWindow window) {
@@ -7,6 +7,7 @@ import che.glucosemonitorbe.dto.LibreGlucoseData;
 import che.glucosemonitorbe.dto.LibreGlucoseReading;
 import che.glucosemonitorbe.dto.NightscoutEntryDto;
 import che.glucosemonitorbe.repository.UserDataSourceConfigRepository;
+import che.glucosemonitorbe.service.cgm.CgmWriteBehindBuffer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -38,6 +39,7 @@ class LibreLinkUpSyncServiceCgmTagTest {
     @Mock private UserDataSourceConfigRepository configRepository;
     @Mock private LibreLinkUpService libreLinkUpService;
     @Mock private CgmReadingService cgmReadingService;
+    @Mock private CgmWriteBehindBuffer cgmWriteBehind;
     @Mock private UserGlucoseSyncStateService syncStateService;
 
     @InjectMocks private LibreLinkUpSyncService sut;
@@ -100,6 +102,24 @@ class LibreLinkUpSyncServiceCgmTagTest {
                 .storeChartData(eq(userId), anyList(), eq(CgmReading.DataSource.NIGHTSCOUT));
     }
 
+    @Test
+    @DisplayName("with write-behind enabled an on-demand sync flushes its readings urgently")
+    void syncUser_writeBehind_onDemandIsUrgent() throws Exception {
+        when(cgmWriteBehind.isEnabled()).thenReturn(true);
+        when(syncStateService.getOrCreate(userId)).thenReturn(UserGlucoseSyncState.builder().build());
+        when(configRepository.findByUserIdAndDataSourceAndIsActiveTrue(
+                eq(userId), eq(UserDataSourceConfig.DataSourceType.LIBRE_LINK_UP)))
+                .thenReturn(Optional.of(libreConfig()));
+        when(libreLinkUpService.isAuthenticated(userId)).thenReturn(true);
+        when(libreLinkUpService.getGlucoseData(any(), anyInt(), eq(userId)))
+                .thenReturn(libreData(6.0));
+
+        sut.syncUser(userId, true);
+
+        verify(cgmWriteBehind).store(eq(userId), anyList(), eq(CgmReading.DataSource.LIBRE_LINK_UP), eq(true));
+        verify(cgmReadingService, never()).storeChartData(any(), anyList(), any());
+    }
+
     // -- fixtures -----------------------------------------------------------------
 
     private UserDataSourceConfig libreConfig() {
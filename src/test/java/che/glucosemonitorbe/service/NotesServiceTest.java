@@ -47,6 +47,9 @@ class NotesServiceTest {
     @Mock
     private NotePhotoStorageService notePhotoStorageService;
 
+    @Mock
+    private PredictionResultCache predictionResultCache;
+
     @InjectMocks
     private NotesService notesService;
 
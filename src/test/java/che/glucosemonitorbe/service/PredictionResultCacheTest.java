@@ -0,0 +1,131 @@
+package che.glucosemonitorbe.service;
+
+import che.glucosemonitorbe.dto.GlucoseCalculationsResponse;
+import che.glucosemonitorbe.service.cgm.CgmReadingsStoredEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PredictionResultCacheTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 10, 12, 0);
+    private static final PredictionResultCache.RequestKey KEY =
+            new PredictionResultCache.RequestKey(7.0, null, null, true, false, true);
+
+    private PredictionResultCache cache;
+    private GlucoseCalculationsResponse response;
+
+    @BeforeEach
+    void setUp() {
+        cache = new PredictionResultCache(true, 300, 100, null);
+        response = GlucoseCalculationsResponse.builder().currentGlucose(7.0).calculatedAt(T0).build();
+    }
+
+    private GlucoseCalculationsResponse lookup(LocalDateTime now) {
+        return cache.get(USER_ID, KEY, cache.stamp(USER_ID), now);
+    }
+
+    @Test
+    @DisplayName("an identical request under the same stamp is served until max-age")
+    void hitWithinMaxAge() {
+        cache.put(USER_ID, KEY, cache.stamp(USER_ID), T0, response);
+
+        assertThat(lookup(T0.plusSeconds(30))).isSameAs(response);
+        assertThat(lookup(T0.plusSeconds(300))).isSameAs(response);
+        assertThat(lookup(T0.plusSeconds(301))).isNull();
+        assertThat(lookup(T0.minusSeconds(1))).as("client clock behind the entry").isNull();
+        assertThat(cache.get(USER_ID, new PredictionResultCache.RequestKey(7.1, null, null, true, false, true),
+                cache.stamp(USER_ID), T0)).isNull();
+    }
+
+    @Test
+    @DisplayName("each input version bumps the stamp and drops the entry")
+    void hooksInvalidate() {
+        PredictionResultCache.Stamp s0 = cache.stamp(USER_ID);
+        cache.put(USER_ID, KEY, s0, T0, response);
+
+        cache.onNotesChanged(USER_ID);
+        PredictionResultCache.Stamp s1 = cache.stamp(USER_ID);
+        cache.onSettingsChanged(USER_ID);
+        PredictionResultCache.Stamp s2 = cache.stamp(USER_ID);
+        cache.onTwinFitted(USER_ID, T0);
+        PredictionResultCache.Stamp s3 = cache.stamp(USER_ID);
+        cache.onReadingsStored(new CgmReadingsStoredEvent(USER_ID, 1, 1_000L));
+        PredictionResultCache.Stamp s4 = cache.stamp(USER_ID);
+
+        assertThat(s1).isNotEqualTo(s0);
+        assertThat(s2).isNotEqualTo(s1);
+        assertThat(s3).isNotEqualTo(s2);
+        assertThat(s4.latestCgmMs()).isEqualTo(1_000L);
+        assertThat(lookup(T0)).isNull();
+
+        // A back-filled older batch leaves the stamp alone.
+        cache.onReadingsStored(new CgmReadingsStoredEvent(USER_ID, 1, 500L));
+        assertThat(cache.stamp(USER_ID)).isEqualTo(s4);
+    }
+
+    @Test
+    @DisplayName("a result computed under a superseded stamp is never served")
+    void racingComputationIsStale() {
+        PredictionResultCache.Stamp before = cache.stamp(USER_ID);
+        cache.onNotesChanged(USER_ID);
+        cache.put(USER_ID, KEY, before, T0, response);
+
+        assertThat(lookup(T0)).isNull();
+    }
+
+    @Test
+    @DisplayName("inside a transaction the stamp moves only after commit")
+    void bumpDeferredToCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            PredictionResultCache.Stamp before = cache.stamp(USER_ID);
+            cache.onSettingsChanged(USER_ID);
+            assertThat(cache.stamp(USER_ID)).isEqualTo(before);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertThat(cache.stamp(USER_ID).settingsVersion()).isEqualTo(before.settingsVersion() + 1);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("an idle user's stamp expires only after every entry computed before it has aged out")
+    void idleStampsExpire() {
+        AtomicLong nanos = new AtomicLong();
+        PredictionResultCache ticking = new PredictionResultCache(true, 300, 100, null, nanos::get);
+        PredictionResultCache.Stamp before = ticking.stamp(USER_ID);
+        ticking.onNotesChanged(USER_ID);
+        // Computation that read the stamp before the bump finishes afterwards.
+        ticking.put(USER_ID, KEY, before, T0, response);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(599));
+        assertThat(ticking.stamp(USER_ID).notesVersion()).isEqualTo(1);
+        assertThat(ticking.get(USER_ID, KEY, before, T0.plusSeconds(300))).isNull();
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(601));
+        assertThat(ticking.stamp(USER_ID)).isEqualTo(PredictionResultCache.Stamp.INITIAL);
+        assertThat(ticking.get(USER_ID, KEY, ticking.stamp(USER_ID), T0.plusSeconds(1200))).isNull();
+    }
+
+    @Test
+    @DisplayName("a disabled cache ignores invalidation hooks")
+    void disabled() {
+        PredictionResultCache off = new PredictionResultCache(false, 300, 100, null);
+        off.onNotesChanged(USER_ID);
+
+        assertThat(off.isEnabled()).isFalse();
+        assertThat(off.stamp(USER_ID)).isEqualTo(PredictionResultCache.Stamp.INITIAL);
+    }
+}
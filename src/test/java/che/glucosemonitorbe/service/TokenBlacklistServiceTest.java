@@ -0,0 +1,178 @@
+package che.glucosemonitorbe.service;
+
+import che.glucosemonitorbe.entity.RevokedToken;
+import che.glucosemonitorbe.repository.TokenBlacklistRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** The JWT hot path: lookups answered by the local revocation index unless it might be a hit. */
+class TokenBlacklistServiceTest {
+
+    private static final String SECRET =
+            "test-secret-key-for-unit-tests-only-please-use-at-least-sixty-four-bytes-long-value-1234567890";
+
+    private final TokenBlacklistRepository repository = mock(TokenBlacklistRepository.class);
+    private TokenBlacklistService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new TokenBlacklistService(repository);
+        ReflectionTestUtils.setField(service, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(service, "refreshExpirationMs", 86_400_000L);
+        ReflectionTestUtils.setField(service, "revocationIndexRebuildMs", 30_000L);
+        ReflectionTestUtils.setField(service, "revocationIndexFullRebuildMs", 3_600_000L);
+    }
+
+    private static RevokedToken row(String rawKey, Instant createdAt) {
+        RevokedToken token = new RevokedToken(sha256Hex(rawKey), createdAt.plusSeconds(3600));
+        ReflectionTestUtils.setField(token, "createdAt", createdAt);
+        return token;
+    }
+
+    private void tableHolds(String... rawKeys) {
+        List<String> hashes = new ArrayList<>();
+        for (String k : rawKeys) hashes.add(sha256Hex(k));
+        hashes.sort(null);
+        when(repository.countByExpiresAtAfter(any())).thenReturn((long) hashes.size());
+        when(repository.findActiveHashesAfter(eq(""), any(), any(Pageable.class))).thenReturn(hashes);
+    }
+
+    @Test
+    @DisplayName("before the index is built every lookup queries the table")
+    void beforeRebuild_queriesTable() {
+        assertThat(service.isTokenBlacklisted("some-token")).isFalse();
+
+        verify(repository).existsByTokenHashAndExpiresAtAfter(eq(sha256Hex("some-token")), any());
+    }
+
+    @Test
+    @DisplayName("once built, unrevoked tokens and users are answered without a query; revoked ones are confirmed")
+    void afterRebuild_onlyPossibleHitsQueryTable() {
+        tableHolds("revoked-token", TokenBlacklistService.LOGOUT_ALL_DEVICES_PREFIX + "bob");
+        service.rebuildRevocationIndex();
+        when(repository.existsByTokenHashAndExpiresAtAfter(eq(sha256Hex("revoked-token")), any())).thenReturn(true);
+        when(repository.existsByTokenHashAndExpiresAtAfter(
+                eq(sha256Hex(TokenBlacklistService.LOGOUT_ALL_DEVICES_PREFIX + "bob")), any())).thenReturn(true);
+
+        for (int i = 0; i < 200; i++) {
+            assertThat(service.isTokenBlacklisted("live-token-" + i)).isFalse();
+            assertThat(service.isUserGloballyLoggedOut("user-" + i)).isFalse();
+        }
+        assertThat(service.isTokenBlacklisted("revoked-token")).isTrue();
+        assertThat(service.isUserGloballyLoggedOut("bob")).isTrue();
+
+        // ~1% false positives allowed over the 400 misses, each confirmed (and refuted) by the table.
+        verify(repository, atMost(2 + 16)).existsByTokenHashAndExpiresAtAfter(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("a revocation made on this instance is enforced immediately, before the next rebuild")
+    void localRevocation_visibleWithoutRebuild() {
+        tableHolds();
+        service.rebuildRevocationIndex();
+        String token = "token-" + UUID.randomUUID();
+        when(repository.existsByTokenHashAndExpiresAtAfter(eq(sha256Hex(token)), any())).thenReturn(true);
+
+        service.blacklistToken(token);
+        service.blacklistAllDevicesForUser("carol");
+        when(repository.existsByTokenHashAndExpiresAtAfter(
+                eq(sha256Hex(TokenBlacklistService.LOGOUT_ALL_DEVICES_PREFIX + "carol")), any())).thenReturn(true);
+
+        assertThat(service.isTokenBlacklisted(token)).isTrue();
+        assertThat(service.isUserGloballyLoggedOut("carol")).isTrue();
+        verify(repository, times(2)).save(any(RevokedToken.class));
+    }
+
+    @Test
+    @DisplayName("a failing rebuild keeps the previous index serving")
+    void failedRebuild_keepsPreviousIndex() {
+        tableHolds();
+        service.rebuildRevocationIndex();
+        when(repository.findActiveHashesAfter(any(), any(), any(Pageable.class)))
+                .thenThrow(new RuntimeException("db down"));
+
+        service.rebuildRevocationIndex();
+
+        assertThat(service.isTokenBlacklisted("some-token")).isFalse();
+        verify(repository, never()).existsByTokenHashAndExpiresAtAfter(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("between full rebuilds only rows newer than the watermark are read, and they reach the index")
+    void refresh_catchesUpFromWatermarkWithoutRescanning() {
+        Instant watermark = Instant.parse("2026-01-01T10:00:00Z");
+        tableHolds();
+        when(repository.findMaxCreatedAt()).thenReturn(watermark);
+        service.refreshRevocationIndex();   // first refresh: full rebuild
+
+        String remote = "revoked-on-another-instance";
+        when(repository.findByCreatedAtAfterAndExpiresAtAfterOrderByCreatedAtAsc(
+                eq(watermark.minus(TokenBlacklistService.CATCH_UP_OVERLAP)), any(), any(Pageable.class)))
+                .thenReturn(List.of(row(remote, watermark.plusSeconds(5))));
+        when(repository.existsByTokenHashAndExpiresAtAfter(eq(sha256Hex(remote)), any())).thenReturn(true);
+        service.refreshRevocationIndex();
+
+        assertThat(service.isTokenBlacklisted(remote)).isTrue();
+        verify(repository, times(1)).findActiveHashesAfter(any(), any(), any(Pageable.class));
+
+        // The watermark moved to the newest row read.
+        service.refreshRevocationIndex();
+        verify(repository).findByCreatedAtAfterAndExpiresAtAfterOrderByCreatedAtAsc(
+                eq(watermark.plusSeconds(5).minus(TokenBlacklistService.CATCH_UP_OVERLAP)), any(), any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("once the full-rebuild period has passed the refresh rescans every active row")
+    void refresh_afterFullRebuildPeriod_rebuilds() {
+        ReflectionTestUtils.setField(service, "revocationIndexFullRebuildMs", 0L);
+        tableHolds();
+
+        service.refreshRevocationIndex();
+        service.refreshRevocationIndex();
+
+        verify(repository, times(2)).findActiveHashesAfter(any(), any(), any(Pageable.class));
+        verify(repository, never()).findByCreatedAtAfterAndExpiresAtAfterOrderByCreatedAtAsc(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("a failed catch-up keeps the index and retries from the same watermark")
+    void failedCatchUp_keepsIndexAndWatermark() {
+        Instant watermark = Instant.parse("2026-01-01T10:00:00Z");
+        tableHolds();
+        when(repository.findMaxCreatedAt()).thenReturn(watermark);
+        service.refreshRevocationIndex();
+        when(repository.findByCreatedAtAfterAndExpiresAtAfterOrderByCreatedAtAsc(any(), any(), any(Pageable.class)))
+                .thenThrow(new RuntimeException("db down"));
+
+        service.refreshRevocationIndex();
+        service.refreshRevocationIndex();
+
+        assertThat(service.isTokenBlacklisted("some-token")).isFalse();
+        verify(repository, times(2)).findByCreatedAtAfterAndExpiresAtAfterOrderByCreatedAtAsc(
+                eq(watermark.minus(TokenBlacklistService.CATCH_UP_OVERLAP)), any(), any(Pageable.class));
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
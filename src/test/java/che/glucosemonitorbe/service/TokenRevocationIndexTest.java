@@ -0,0 +1,90 @@
+package che.glucosemonitorbe.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenRevocationIndexTest {
+
+    private static final long MAX_AGE_MS = 60_000L;
+
+    private static String hash(String value) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean absent(TokenRevocationIndex index, String hash) {
+        return index.definitelyAbsent(hash, System.currentTimeMillis(), MAX_AGE_MS);
+    }
+
+    @Test
+    @DisplayName("no false negatives, and about 1% false positives at the sized capacity")
+    void falsePositiveRateWithinBound() {
+        TokenRevocationIndex index = new TokenRevocationIndex();
+        TokenRevocationIndex.Rebuild rebuild = index.beginRebuild(20_000);
+        for (int i = 0; i < 20_000; i++) rebuild.add(hash("revoked-" + i));
+        rebuild.publish();
+
+        for (int i = 0; i < 20_000; i++) {
+            assertThat(absent(index, hash("revoked-" + i))).isFalse();
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 20_000; i++) {
+            if (!absent(index, hash("live-" + i))) falsePositives++;
+        }
+        assertThat(falsePositives).isLessThan(400);   // < 2%
+    }
+
+    @Test
+    @DisplayName("revocations recorded during a rebuild survive the swap")
+    void addDuringRebuild_survivesPublish() {
+        TokenRevocationIndex index = new TokenRevocationIndex();
+        index.beginRebuild(0).publish();
+
+        TokenRevocationIndex.Rebuild rebuild = index.beginRebuild(100);
+        index.add(hash("revoked-mid-rebuild"));      // snapshot was read before this committed
+        assertThat(absent(index, hash("revoked-mid-rebuild"))).isFalse();
+        rebuild.publish();
+
+        assertThat(absent(index, hash("revoked-mid-rebuild"))).isFalse();
+    }
+
+    @Test
+    @DisplayName("an unbuilt or stale index never rules a token out; a superseded rebuild is not published")
+    void unbuiltOrStale_neverAbsent() {
+        TokenRevocationIndex index = new TokenRevocationIndex();
+        assertThat(absent(index, hash("t"))).isFalse();
+
+        TokenRevocationIndex.Rebuild superseded = index.beginRebuild(10);
+        TokenRevocationIndex.Rebuild latest = index.beginRebuild(10);
+        superseded.publish();
+        assertThat(absent(index, hash("t"))).isFalse();
+        latest.publish();
+        assertThat(absent(index, hash("t"))).isTrue();
+
+        long later = System.currentTimeMillis() + 2 * MAX_AGE_MS;
+        assertThat(index.definitelyAbsent(hash("t"), later, MAX_AGE_MS)).isFalse();
+    }
+
+    @Test
+    @DisplayName("incremental adds past the sized capacity ask for a rebuild")
+    void addsPastCapacity_needRebuild() {
+        TokenRevocationIndex index = new TokenRevocationIndex();
+        assertThat(index.needsRebuild()).isTrue();
+        index.beginRebuild(0).publish();
+        assertThat(index.needsRebuild()).isFalse();
+
+        for (int i = 0; i <= 4_096; i++) index.add(hash("remote-" + i));
+
+        assertThat(index.needsRebuild()).isTrue();
+    }
+}
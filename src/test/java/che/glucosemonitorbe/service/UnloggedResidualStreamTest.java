@@ -0,0 +1,155 @@
+package che.glucosemonitorbe.service;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.service.UnloggedEventDetectionService.Run;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.IntToDoubleFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * The incremental residual stream must reach the same verdict as re-scanning the window from scratch
+ * (nearest-point alignment, {@code robustScale}, {@code strongestRun}) on every pass.
+ */
+class UnloggedResidualStreamTest {
+
+    private static final double MGDL_PER_MMOL = 18.0182;
+    private static final long MIN = 60_000L;
+    private static final int WINDOW_MIN = 180;
+    private static final int HORIZON_MIN = 360;
+    private static final long ALIGN_TOL_MS = 150_000L;
+    private static final long T0 = 1_700_000_000_000L;
+
+    /** Smooth model path with a slow drift, evaluated at any minute after the anchor. */
+    private static final IntToDoubleFunction PATH = m -> Math.round((7.0 + 1.5 * Math.sin(m / 40.0)) * 10.0) / 10.0;
+
+    @Test
+    @DisplayName("robustScaleOfSorted equals the sort-based 1.4826*MAD with the 0.3 floor")
+    void robustScaleOfSortedMatchesNaive() {
+        Random rnd = new Random(7);
+        for (int n = 0; n < 60; n++) {
+            double[] a = new double[n];
+            for (int i = 0; i < n; i++) a[i] = rnd.nextInt(3) == 0 ? 0.5 : rnd.nextGaussian() * 2.0;
+            Arrays.sort(a);
+            assertThat(UnloggedResidualStream.robustScaleOfSorted(a, n)).as("n=%d", n).isEqualTo(naiveScale(a));
+        }
+    }
+
+    @Test
+    @DisplayName("a sliding window fed incrementally matches a from-scratch scan at every pass")
+    void incrementalMatchesFromScratch() {
+        Random rnd = new Random(42);
+        List<CgmReading> all = new ArrayList<>();
+        long t = T0;
+        for (int i = 0; i < 60; i++) {
+            if (i == 30) t += 25 * MIN;                           // sensor gap
+            long jitter = (rnd.nextInt(7) - 3) * 30_000L;         // up to +-90 s, plus occasional misses
+            if (i % 17 == 5) jitter = 160_000L;                   // just outside the alignment tolerance
+            int minutes = (int) ((t - T0) / MIN);
+            double g = PATH.applyAsDouble(minutes) + (i > 35 && i < 50 ? 2.5 : rnd.nextGaussian() * 0.2);
+            all.add(reading(t + jitter, (int) Math.round(g * MGDL_PER_MMOL)));
+            t += 5 * MIN;
+        }
+        CgmSeries series = CgmSeries.of(all);
+
+        UnloggedResidualStream stream = new UnloggedResidualStream(
+                series.timeAt(0), HORIZON_MIN, LocalDateTime.MIN, 1L, ALIGN_TOL_MS, PATH);
+        for (long now = T0 + 60 * MIN; now <= series.timeAt(series.size() - 1); now += 5 * MIN) {
+            long startMs = now - WINDOW_MIN * MIN;
+            CgmSeries window = series.range(startMs, now);
+            assertThat(stream.advance(window, startMs, 1L)).isTrue();
+
+            List<long[]> tMs = new ArrayList<>();
+            List<Double> resid = new ArrayList<>();
+            fromScratch(series.timeAt(0), window, tMs, resid);
+
+            assertThat(stream.alignedCount()).isEqualTo(resid.size());
+            double sigma = UnloggedEventDetectionService.robustScale(resid);
+            assertThat(stream.robustScale()).isEqualTo(sigma);
+            Run expected = UnloggedEventDetectionService.strongestRun(tMs, resid, 2.0 * sigma, 45);
+            Run actual = stream.strongestRun(2.0 * sigma, 45);
+            if (expected == null) {
+                assertThat(actual).isNull();
+            } else {
+                assertThat(actual.startMs()).isEqualTo(expected.startMs());
+                assertThat(actual.endMs()).isEqualTo(expected.endMs());
+                assertThat(actual.mean()).isCloseTo(expected.mean(), within(1e-9));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("the stream refuses to continue on changed notes, back-filled readings, or past its horizon")
+    void refusesWhenAnchorIsStale() {
+        List<CgmReading> readings = new ArrayList<>();
+        for (int i = 0; i < 10; i++) readings.add(reading(T0 + i * 5 * MIN, 126));
+        CgmSeries series = CgmSeries.of(readings);
+
+        UnloggedResidualStream fresh = newStream();
+        assertThat(fresh.advance(series, T0, 1L)).isTrue();
+        assertThat(fresh.advance(series, T0, 2L)).as("notes changed").isFalse();
+
+        List<CgmReading> backfilled = new ArrayList<>(readings);
+        backfilled.add(3, reading(T0 + 17 * MIN, 130));
+        UnloggedResidualStream stream = newStream();
+        stream.advance(series, T0, 1L);
+        assertThat(stream.advance(CgmSeries.of(backfilled), T0, 1L)).as("back-fill").isFalse();
+
+        UnloggedResidualStream aged = newStream();
+        aged.advance(series, T0, 1L);
+        List<CgmReading> late = new ArrayList<>(readings);
+        late.add(reading(T0 + (HORIZON_MIN + 5) * MIN, 126));
+        assertThat(aged.advance(CgmSeries.of(late), T0, 1L)).as("past horizon").isFalse();
+    }
+
+    // -- Reference (the former windowed scan) ------------------------------------
+
+    private static void fromScratch(long anchorMs, CgmSeries window, List<long[]> tMs, List<Double> resid) {
+        TreeMap<Long, Double> predByMs = new TreeMap<>();
+        for (int m = 5; m <= HORIZON_MIN; m += 5) predByMs.put(anchorMs + m * MIN, PATH.applyAsDouble(m));
+        for (int i = 0; i < window.size(); i++) {
+            long target = window.timeAt(i);
+            Map.Entry<Long, Double> floor = predByMs.floorEntry(target), ceil = predByMs.ceilingEntry(target);
+            Map.Entry<Long, Double> best = null;
+            long bestDiff = Long.MAX_VALUE;
+            if (floor != null) { best = floor; bestDiff = target - floor.getKey(); }
+            if (ceil != null && ceil.getKey() - target < bestDiff) { best = ceil; bestDiff = ceil.getKey() - target; }
+            if (best == null || bestDiff > ALIGN_TOL_MS) continue;
+            tMs.add(new long[]{target});
+            resid.add(window.sgvAt(i) / MGDL_PER_MMOL - best.getValue());
+        }
+    }
+
+    private static double naiveScale(double[] sorted) {
+        int n = sorted.length;
+        if (n == 0) return 0.3;
+        double median = n % 2 == 1 ? sorted[n / 2] : 0.5 * (sorted[n / 2 - 1] + sorted[n / 2]);
+        double[] dev = new double[n];
+        for (int i = 0; i < n; i++) dev[i] = Math.abs(sorted[i] - median);
+        Arrays.sort(dev);
+        double mad = n % 2 == 1 ? dev[n / 2] : 0.5 * (dev[n / 2 - 1] + dev[n / 2]);
+        return Math.max(0.3, 1.4826 * mad);
+    }
+
+    private static UnloggedResidualStream newStream() {
+        return new UnloggedResidualStream(T0, HORIZON_MIN, LocalDateTime.MIN, 1L, ALIGN_TOL_MS, PATH);
+    }
+
+    private static CgmReading reading(long t, int sgv) {
+        CgmReading r = new CgmReading();
+        r.setDateTimestamp(t);
+        r.setSgv(sgv);
+        return r;
+    }
+}
@@ -30,6 +30,9 @@ class UserInsulinPreferencesServiceTest {
     @Mock
     private InsulinCatalogService insulinCatalogService;
 
+    @Mock
+    private PredictionResultCache predictionResultCache;
+
     @InjectMocks
     private UserInsulinPreferencesService service;
 
@@ -24,6 +24,9 @@ class UserSettingsServiceTest {
     @Mock
     private UserSettingsRepository repository;
 
+    @Mock
+    private PredictionResultCache predictionResultCache;
+
     @InjectMocks
     private UserSettingsService service;
 
@@ -59,6 +62,7 @@ class UserSettingsServiceTest {
         assertEquals(0.9, result.getIsf());
         assertEquals(50, result.getCarbHalfLife());
         assertEquals(300, result.getMaxCOBDuration());
+        verify(predictionResultCache).onSettingsChanged(userId);
     }
 
     @Test
@@ -70,6 +74,7 @@ class UserSettingsServiceTest {
         boolean exists = service.hasUserSettings(userId);
 
         verify(repository).deleteByUserId(userId);
+        verify(predictionResultCache).onSettingsChanged(userId);
         assertFalse(exists);
     }
 
@@ -4,6 +4,8 @@ import che.glucosemonitorbe.domain.CgmReading;
 import che.glucosemonitorbe.entity.Note;
 import che.glucosemonitorbe.entity.VerificationEvent;
 import che.glucosemonitorbe.repository.*;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -17,6 +19,7 @@ import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -30,7 +33,7 @@ class VerificationServiceTest {
     private VerificationSummaryRepository verificationSummaryRepository;
     private NoteRepository noteRepository;
     private UserSettingsRepository userSettingsRepository;
-    private CgmReadingRepository cgmReadingRepository;
+    private CgmSeriesCache cgmSeriesCache;
     private VerificationService service;
 
     @BeforeEach
@@ -39,10 +42,11 @@ class VerificationServiceTest {
         verificationSummaryRepository = mock(VerificationSummaryRepository.class);
         noteRepository = mock(NoteRepository.class);
         userSettingsRepository = mock(UserSettingsRepository.class);
-        cgmReadingRepository = mock(CgmReadingRepository.class);
+        cgmSeriesCache = mock(CgmSeriesCache.class);
+        when(cgmSeriesCache.range(any(), anyLong(), anyLong())).thenReturn(CgmSeries.EMPTY);
         service = new VerificationService(
                 verificationEventRepository, verificationSummaryRepository,
-                noteRepository, userSettingsRepository, cgmReadingRepository);
+                noteRepository, userSettingsRepository, cgmSeriesCache, mock(PredictionResultCache.class));
     }
 
     private Note qualifyingMeal() {
@@ -98,9 +102,8 @@ class VerificationServiceTest {
     }
 
     private void givenCgmReadings(List<CgmReading> readings) {
-        when(cgmReadingRepository.findByUserIdAndDateTimestampBetweenOrderByDateTimestampAsc(
-                eq(USER_ID), any(), any()))
-                .thenReturn(readings);
+        when(cgmSeriesCache.range(eq(USER_ID), anyLong(), anyLong()))
+                .thenReturn(CgmSeries.of(readings));
     }
 
     @Test
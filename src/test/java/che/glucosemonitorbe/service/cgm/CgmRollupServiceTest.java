@@ -0,0 +1,340 @@
+package che.glucosemonitorbe.service.cgm;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.GlucoseReportDTO;
+import che.glucosemonitorbe.repository.CgmReadingRepository;
+import che.glucosemonitorbe.repository.CgmRollupRepository;
+import che.glucosemonitorbe.service.UserDataSourceConfigService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class CgmRollupServiceTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final long HOUR = CgmRollupService.HOUR_MS;
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+    /** 2025-03-10 12:20 UTC (13:20 in Berlin). */
+    private static final long NOW = ZonedDateTime.of(2025, 3, 10, 12, 20, 0, 0, ZoneId.of("UTC"))
+            .toInstant().toEpochMilli();
+
+    private static final long DAY = CgmRollupService.DAY_MS;
+
+    private CgmRollupRepository repository;
+    private CgmSeriesCache seriesCache;
+    private CgmReadingRepository readingRepository;
+    private UserDataSourceConfigService dataSourceConfigService;
+    private CgmRollupService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CgmRollupRepository.class);
+        seriesCache = mock(CgmSeriesCache.class);
+        readingRepository = mock(CgmReadingRepository.class);
+        dataSourceConfigService = mock(UserDataSourceConfigService.class);
+        service = new CgmRollupService(repository, seriesCache, readingRepository, dataSourceConfigService);
+    }
+
+    private static CgmReading reading(long ts, Integer sgv) {
+        return reading(ts, sgv, CgmReading.DataSource.NIGHTSCOUT);
+    }
+
+    private static CgmReading reading(long ts, Integer sgv, CgmReading.DataSource source) {
+        CgmReading r = new CgmReading();
+        r.setUserId(USER_ID);
+        r.setDataSource(source);
+        r.setDateTimestamp(ts);
+        r.setSgv(sgv);
+        return r;
+    }
+
+    private static GlucoseRollup rollupOf(int... sgv) {
+        GlucoseRollup r = new GlucoseRollup();
+        for (int v : sgv) r.add(v);
+        return r;
+    }
+
+    // -- GlucoseRollup -----------------------------------------------------------
+
+    @Test
+    @DisplayName("rollup counts ranges on the 3.9-10.0 mmol/L boundaries and keeps exact moments")
+    void rollup_rangesAndMoments() {
+        GlucoseRollup r = rollupOf(54, 70, 71, 180, 181, 250);
+
+        assertThat(r.count()).isEqualTo(6);
+        assertThat(r.below()).isEqualTo(2);
+        assertThat(r.inRange()).isEqualTo(2);
+        assertThat(r.above()).isEqualTo(2);
+        assertThat(r.min()).isEqualTo(54);
+        assertThat(r.max()).isEqualTo(250);
+        assertThat(r.mean()).isCloseTo(134.333, within(0.001));
+        // population SD of the six values
+        assertThat(r.sd()).isCloseTo(73.309, within(0.001));
+    }
+
+    @Test
+    @DisplayName("merging rollups equals adding all readings to one, and percentiles stay within half a bin")
+    void rollup_mergeAndPercentiles() {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) values.add(60 + (i * 37) % 240);
+        GlucoseRollup whole = new GlucoseRollup();
+        GlucoseRollup a = new GlucoseRollup();
+        GlucoseRollup b = new GlucoseRollup();
+        for (int i = 0; i < values.size(); i++) {
+            whole.add(values.get(i));
+            (i % 3 == 0 ? a : b).add(values.get(i));
+        }
+
+        GlucoseRollup merged = a.merge(b);
+
+        assertThat(merged.count()).isEqualTo(whole.count());
+        assertThat(merged.sum()).isEqualTo(whole.sum());
+        assertThat(merged.sumSq()).isEqualTo(whole.sumSq());
+        assertThat(merged.histogram()).isEqualTo(whole.histogram());
+        List<Integer> sorted = values.stream().sorted().toList();
+        for (double q : new double[]{0.05, 0.25, 0.5, 0.75, 0.95}) {
+            double exact = sorted.get((int) Math.ceil(q * sorted.size()) - 1);
+            assertThat(merged.percentile(q)).as("q=%s", q)
+                    .isCloseTo(exact, within((double) GlucoseRollup.BIN_WIDTH));
+        }
+        assertThat(rollupOf(30, 450).percentile(0.0)).isEqualTo(30.0);
+        assertThat(rollupOf(30, 450).percentile(1.0)).isEqualTo(450.0);
+    }
+
+    // -- Maintenance -------------------------------------------------------------
+
+    @Test
+    @DisplayName("onStored merges the inserted readings into their UTC hour and day buckets, oldest first")
+    @SuppressWarnings("unchecked")
+    void onStored_groupsByHourAndDay() {
+        when(repository.isAvailable()).thenReturn(true);
+        long h0 = CgmRollupService.hourOf(NOW) - 2 * HOUR;
+
+        service.onStored(USER_ID, List.of(
+                reading(h0 + HOUR + 60_000, 200), reading(h0 + 5 * 60_000, 100),
+                reading(h0 + 10 * 60_000, 120), reading(h0 + 15 * 60_000, null)));
+
+        ArgumentCaptor<SortedMap<Long, GlucoseRollup>> hours = ArgumentCaptor.forClass(SortedMap.class);
+        ArgumentCaptor<SortedMap<Long, GlucoseRollup>> days = ArgumentCaptor.forClass(SortedMap.class);
+        InOrder order = inOrder(repository);
+        order.verify(repository).merge(eq(USER_ID), eq(CgmReading.DataSource.NIGHTSCOUT), eq(HOUR), hours.capture());
+        order.verify(repository).merge(eq(USER_ID), eq(CgmReading.DataSource.NIGHTSCOUT), eq(DAY), days.capture());
+        assertThat(hours.getValue().keySet()).containsExactly(h0, h0 + HOUR);
+        assertThat(hours.getValue().get(h0).count()).isEqualTo(2);
+        assertThat(hours.getValue().get(h0).sum()).isEqualTo(220);
+        assertThat(hours.getValue().get(h0 + HOUR).max()).isEqualTo(200);
+        assertThat(days.getValue().keySet()).containsExactly(CgmRollupService.dayOf(NOW));
+        assertThat(days.getValue().get(CgmRollupService.dayOf(NOW)).count()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("onStored keeps each data source in its own rollups")
+    @SuppressWarnings("unchecked")
+    void onStored_keysBySource() {
+        when(repository.isAvailable()).thenReturn(true);
+        long h0 = CgmRollupService.hourOf(NOW);
+
+        service.onStored(USER_ID, List.of(
+                reading(h0 + 60_000, 100, CgmReading.DataSource.NIGHTSCOUT),
+                reading(h0 + 60_000, 104, CgmReading.DataSource.LIBRE_LINK_UP),
+                reading(h0 + 120_000, 110, CgmReading.DataSource.LIBRE_LINK_UP)));
+
+        ArgumentCaptor<SortedMap<Long, GlucoseRollup>> ns = ArgumentCaptor.forClass(SortedMap.class);
+        ArgumentCaptor<SortedMap<Long, GlucoseRollup>> llu = ArgumentCaptor.forClass(SortedMap.class);
+        verify(repository).merge(eq(USER_ID), eq(CgmReading.DataSource.NIGHTSCOUT), eq(HOUR), ns.capture());
+        verify(repository).merge(eq(USER_ID), eq(CgmReading.DataSource.LIBRE_LINK_UP), eq(HOUR), llu.capture());
+        assertThat(ns.getValue().get(h0).count()).isEqualTo(1);
+        assertThat(llu.getValue().get(h0).count()).isEqualTo(2);
+        assertThat(llu.getValue().get(h0).sum()).isEqualTo(214);
+    }
+
+    @Test
+    @DisplayName("without the rollup store nothing is written")
+    void onStored_storeUnavailable_noop() {
+        when(repository.isAvailable()).thenReturn(false);
+
+        service.onStored(USER_ID, List.of(reading(NOW, 120)));
+        service.onCleared(USER_ID);
+
+        verify(repository, never()).merge(any(), any(), anyLong(), any());
+        verify(repository, never()).deleteByUserId(any());
+    }
+
+    @Test
+    @DisplayName("onRemoved subtracts the removed readings from their hour and day buckets")
+    @SuppressWarnings("unchecked")
+    void onRemoved_subtractsFromHourAndDay() {
+        when(repository.isAvailable()).thenReturn(true);
+        long h0 = CgmRollupService.hourOf(NOW);
+
+        service.onRemoved(USER_ID, List.of(reading(h0 + 60_000, 150)));
+
+        ArgumentCaptor<SortedMap<Long, GlucoseRollup>> hours = ArgumentCaptor.forClass(SortedMap.class);
+        verify(repository).subtract(eq(USER_ID), eq(CgmReading.DataSource.NIGHTSCOUT), eq(HOUR), hours.capture());
+        verify(repository).subtract(eq(USER_ID), eq(CgmReading.DataSource.NIGHTSCOUT), eq(DAY), any());
+        assertThat(hours.getValue().get(h0).sum()).isEqualTo(150);
+        verify(repository, never()).merge(any(), any(), anyLong(), any());
+    }
+
+    // -- Queries -----------------------------------------------------------------
+
+    @Test
+    @DisplayName("report reads the window's hourly buckets and groups them by local hour and date")
+    void report_fromStoredBuckets() {
+        when(repository.isAvailable()).thenReturn(true);
+        long end = CgmRollupService.hourOf(NOW) + HOUR;
+        long start = end - 7 * 24 * HOUR;
+        // 11:00 UTC on 2025-03-09 and 2025-03-10 -> 12:00 in Berlin; 23:00 UTC on 2025-03-09 -> 00:00 on the 10th.
+        long h1 = CgmRollupService.hourOf(NOW) - HOUR - 24 * HOUR;
+        long h2 = CgmRollupService.hourOf(NOW) - HOUR;
+        long h3 = CgmRollupService.hourOf(NOW) - 13 * HOUR;
+        when(repository.find(USER_ID, null, HOUR, start, end)).thenReturn(List.of(
+                new GlucoseRollup.Bucket(h1, rollupOf(90, 108, 126)),
+                new GlucoseRollup.Bucket(h3, rollupOf(54, 216)),
+                new GlucoseRollup.Bucket(h2, rollupOf(144, 162, 180))));
+
+        GlucoseReportDTO report = service.report(USER_ID, 7, BERLIN, NOW);
+
+        assertThat(report.fromMs()).isEqualTo(start);
+        assertThat(report.toMs()).isEqualTo(end);
+        assertThat(report.timeZone()).isEqualTo("Europe/Berlin");
+
+        GlucoseReportDTO.Summary s = report.summary();
+        assertThat(s.readingCount()).isEqualTo(8);
+        assertThat(s.mean()).isEqualTo(7.5);   // 1080 / 8 = 135 mg/dL
+        assertThat(s.gmi()).isEqualTo(6.5);    // 3.31 + 0.02392 * 135
+        assertThat(s.min()).isEqualTo(3.0);
+        assertThat(s.max()).isEqualTo(12.0);
+        assertThat(s.timeBelowRange()).isEqualTo(12.5);
+        assertThat(s.timeInRange()).isEqualTo(75.0);
+        assertThat(s.timeAboveRange()).isEqualTo(12.5);
+
+        assertThat(report.agp()).extracting(GlucoseReportDTO.AgpHour::hour).containsExactly(0, 12);
+        GlucoseReportDTO.AgpHour noon = report.agp().get(1);
+        assertThat(noon.readingCount()).isEqualTo(6);
+        assertThat(noon.median()).isEqualTo(7.2); // upper edge of the 125-130 mg/dL bin holding the 3rd of 6
+        assertThat(noon.p5()).isGreaterThanOrEqualTo(5.0);
+        assertThat(noon.p95()).isLessThanOrEqualTo(10.0);
+
+        assertThat(report.daily()).extracting(GlucoseReportDTO.Day::date)
+                .containsExactly(LocalDate.of(2025, 3, 9), LocalDate.of(2025, 3, 10));
+        assertThat(report.daily().get(0).mean()).isEqualTo(6.0);
+        assertThat(report.daily().get(1).readingCount()).isEqualTo(5);
+        verifyNoInteractions(seriesCache);
+    }
+
+    @Test
+    @DisplayName("without the rollup store the same buckets are built from the raw series")
+    void report_fallbackMatchesStore() {
+        long h = CgmRollupService.hourOf(NOW) - 5 * HOUR;
+        List<CgmReading> raw = List.of(
+                reading(h + 60_000, 90), reading(h + 30 * 60_000, 126),
+                reading(h + HOUR + 60_000, 216), reading(h + 2 * HOUR, 54));
+        when(repository.isAvailable()).thenReturn(false);
+        when(seriesCache.range(eq(USER_ID), anyLong(), anyLong())).thenReturn(CgmSeries.of(raw));
+
+        List<GlucoseRollup.Bucket> buckets = service.hourly(USER_ID, null, h - HOUR, h + 3 * HOUR);
+
+        assertThat(buckets).extracting(GlucoseRollup.Bucket::startMs).containsExactly(h, h + HOUR, h + 2 * HOUR);
+        assertThat(buckets.get(0).rollup().count()).isEqualTo(2);
+        verify(seriesCache).range(USER_ID, h - HOUR, h + 3 * HOUR - 1);
+
+        GlucoseReportDTO.Summary s = service.report(USER_ID, 14, BERLIN, NOW).summary();
+        assertThat(s.readingCount()).isEqualTo(4);
+        assertThat(s.timeBelowRange()).isEqualTo(25.0);
+        assertThat(s.timeAboveRange()).isEqualTo(25.0);
+        verify(repository, never()).find(any(), any(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("without the rollup store a LibreLinkUp user's buckets are built from LibreLinkUp readings only")
+    void report_fallbackReadsConfiguredSource() {
+        long h = CgmRollupService.hourOf(NOW) - 5 * HOUR;
+        when(repository.isAvailable()).thenReturn(false);
+        when(dataSourceConfigService.chartDataSource(USER_ID)).thenReturn(CgmReading.DataSource.LIBRE_LINK_UP);
+        when(readingRepository.findByUserIdAndDataSourceAndDateTimestampGreaterThanOrderByDateTimestampAsc(
+                eq(USER_ID), eq(CgmReading.DataSource.LIBRE_LINK_UP), anyLong()))
+                .thenReturn(List.of(reading(h + 60_000, 90, CgmReading.DataSource.LIBRE_LINK_UP),
+                        reading(NOW + HOUR, 300, CgmReading.DataSource.LIBRE_LINK_UP)));
+
+        GlucoseReportDTO.Summary s = service.report(USER_ID, 14, BERLIN, NOW).summary();
+
+        assertThat(s.readingCount()).isEqualTo(1);   // the reading past the window end is left out
+        verifyNoInteractions(seriesCache);
+    }
+
+    @Test
+    @DisplayName("a LibreLinkUp user's report reads the LibreLinkUp rollups only")
+    void report_readsConfiguredSource() {
+        when(repository.isAvailable()).thenReturn(true);
+        when(dataSourceConfigService.chartDataSource(USER_ID)).thenReturn(CgmReading.DataSource.LIBRE_LINK_UP);
+        when(repository.find(eq(USER_ID), eq(CgmReading.DataSource.LIBRE_LINK_UP), eq(HOUR), anyLong(), anyLong()))
+                .thenReturn(List.of(new GlucoseRollup.Bucket(CgmRollupService.hourOf(NOW), rollupOf(100, 120))));
+
+        assertThat(service.report(USER_ID, 7, BERLIN, NOW).summary().readingCount()).isEqualTo(2);
+        verify(repository, never()).find(eq(USER_ID), isNull(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("the summary reads daily rows for whole UTC days and hourly rows only for the partial edge days")
+    void summary_dailyInteriorHourlyEdges() {
+        when(repository.isAvailable()).thenReturn(true);
+        long end = CgmRollupService.hourOf(NOW) + HOUR;          // 2025-03-10 13:00 UTC
+        long start = end - 7 * DAY;                             // 2025-03-03 13:00 UTC
+        long firstDay = CgmRollupService.dayOf(start) + DAY;    // 2025-03-04 00:00 UTC
+        long lastDay = CgmRollupService.dayOf(end);             // 2025-03-10 00:00 UTC
+        when(repository.find(USER_ID, null, HOUR, start, firstDay))
+                .thenReturn(List.of(new GlucoseRollup.Bucket(start, rollupOf(100))));
+        when(repository.find(USER_ID, null, DAY, firstDay, lastDay))
+                .thenReturn(List.of(new GlucoseRollup.Bucket(firstDay, rollupOf(110, 120)),
+                        new GlucoseRollup.Bucket(firstDay + DAY, rollupOf(130))));
+        when(repository.find(USER_ID, null, HOUR, lastDay, end))
+                .thenReturn(List.of(new GlucoseRollup.Bucket(lastDay, rollupOf(140))));
+
+        GlucoseReportDTO.Summary s = service.summary(USER_ID, 7, NOW);
+
+        assertThat(s.readingCount()).isEqualTo(5);
+        assertThat(s.mean()).isEqualTo(6.7);   // 600 / 5 = 120 mg/dL
+        verify(repository, times(3)).find(any(), any(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("an empty window yields zero statistics and no AGP hours or days")
+    void report_empty() {
+        when(repository.isAvailable()).thenReturn(true);
+        when(repository.find(eq(USER_ID), any(), anyLong(), anyLong(), anyLong())).thenReturn(List.of());
+
+        GlucoseReportDTO report = service.report(USER_ID, 90, BERLIN, NOW);
+
+        assertThat(report.summary().readingCount()).isZero();
+        assertThat(report.summary().mean()).isZero();
+        assertThat(report.agp()).isEmpty();
+        assertThat(report.daily()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("windows are limited to 1-90 days")
+    void report_rejectsOutOfRangeDays() {
+        assertThatThrownBy(() -> service.summary(USER_ID, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.report(USER_ID, 91, BERLIN, NOW)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,190 @@
+package che.glucosemonitorbe.service.cgm;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.repository.CgmReadingRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CgmSeriesCacheTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final long STEP = 5 * 60_000L;
+
+    private CgmReadingRepository repository;
+    private CgmSeriesCache cache;
+    private long base;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CgmReadingRepository.class);
+        cache = new CgmSeriesCache(repository, 35, 1_000_000, 60);
+        base = System.currentTimeMillis() - 2 * 3600_000L;
+    }
+
+    private static CgmReading reading(long ts, Integer sgv, Integer trend) {
+        CgmReading r = new CgmReading();
+        r.setUserId(USER_ID);
+        r.setDateTimestamp(ts);
+        r.setSgv(sgv);
+        r.setTrend(trend);
+        return r;
+    }
+
+    /** Stored rows {@code base + i*STEP} for i in [0, n), sgv = 100 + i. */
+    private void givenStored(int n) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) rows.add(new Object[]{base + i * STEP, 100 + i, i == 0 ? null : 4});
+        when(repository.findSeriesColumns(eq(USER_ID), anyLong())).thenReturn(rows);
+    }
+
+    // -- CgmSeries ---------------------------------------------------------------
+
+    @Test
+    @DisplayName("of() sorts, drops readings without sgv and keeps one reading per timestamp")
+    void of_sortsFiltersAndDedupes() {
+        CgmSeries s = CgmSeries.of(List.of(
+                reading(3000, 130, 5), reading(1000, 110, null), reading(2000, null, 3),
+                reading(1000, 999, 2)));
+
+        assertThat(s.size()).isEqualTo(2);
+        assertThat(s.timeAt(0)).isEqualTo(1000);
+        assertThat(s.sgvAt(0)).isEqualTo(110);
+        assertThat(s.trendAt(0)).isZero();
+        assertThat(s.timeAt(1)).isEqualTo(3000);
+        assertThat(s.trendAt(1)).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("range() is inclusive at both ends and indexes relative to the view")
+    void range_inclusiveView() {
+        CgmSeries s = CgmSeries.of(List.of(
+                reading(1000, 100, 0), reading(2000, 110, 0), reading(3000, 120, 0), reading(4000, 130, 0)));
+
+        CgmSeries mid = s.range(2000, 3000);
+        assertThat(mid.size()).isEqualTo(2);
+        assertThat(mid.sgvAt(0)).isEqualTo(110);
+        assertThat(mid.sgvAt(1)).isEqualTo(120);
+        assertThat(s.range(4001, Long.MAX_VALUE).isEmpty()).isTrue();
+        assertThat(s.range(3000, 2000).isEmpty()).isTrue();
+    }
+
+    @Test
+    @DisplayName("nearestIndex() honours the tolerance and prefers the earlier reading on a tie")
+    void nearestIndex_toleranceAndTie() {
+        CgmSeries s = CgmSeries.of(List.of(reading(1000, 100, 0), reading(2000, 110, 0), reading(3000, 120, 0)));
+
+        assertThat(s.nearestIndex(2400, 1000)).isEqualTo(1);
+        assertThat(s.nearestIndex(2500, 1000)).isEqualTo(1);
+        assertThat(s.nearestIndex(2600, 1000)).isEqualTo(2);
+        assertThat(s.nearestIndex(5000, 1000)).isEqualTo(-1);
+        assertThat(s.range(2000, 3000).nearestIndex(500, 2000)).isZero();
+    }
+
+    @Test
+    @DisplayName("downsample() keeps the first reading of each aligned bucket")
+    void downsample_firstPerBucket() {
+        List<CgmReading> readings = new ArrayList<>();
+        for (int m = 0; m < 60; m += 5) readings.add(reading(m * 60_000L, 100 + m, 0));
+
+        CgmSeries s = CgmSeries.of(readings).downsample(15 * 60_000L);
+
+        assertThat(s.size()).isEqualTo(4);
+        assertThat(s.sgvAt(1)).isEqualTo(115);
+        assertThat(s.timeAt(3)).isEqualTo(45 * 60_000L);
+    }
+
+    // -- CgmSeriesCache ----------------------------------------------------------
+
+    @Test
+    @DisplayName("a user's series is loaded once and served from memory afterwards")
+    void range_loadsOnceThenServesFromMemory() {
+        givenStored(12);
+
+        CgmSeries first = cache.range(USER_ID, base, base + 5 * STEP);
+        CgmSeries since = cache.since(USER_ID, base + 9 * STEP);
+
+        assertThat(first.size()).isEqualTo(6);
+        assertThat(first.trendAt(0)).isZero();
+        assertThat(since.size()).isEqualTo(2);
+        assertThat(since.sgvAt(0)).isEqualTo(110);
+        verify(repository, times(1)).findSeriesColumns(eq(USER_ID), anyLong());
+        verify(repository, never()).findByUserIdAndDateTimestampBetweenOrderByDateTimestampAsc(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("ranges older than the cached window fall through to the repository")
+    void range_beforeWindow_queriesRepository() {
+        givenStored(3);
+        long old = System.currentTimeMillis() - 40L * 24 * 3600_000L;
+        when(repository.findByUserIdAndDateTimestampBetweenOrderByDateTimestampAsc(USER_ID, old, old + STEP))
+                .thenReturn(List.of(reading(old, 140, 0)));
+
+        cache.since(USER_ID, base);
+        CgmSeries s = cache.range(USER_ID, old, old + STEP);
+
+        assertThat(s.size()).isEqualTo(1);
+        assertThat(s.sgvAt(0)).isEqualTo(140);
+    }
+
+    @Test
+    @DisplayName("stored batches are appended in order, merged out of order and de-duplicated")
+    void onStored_appendsAndMerges() {
+        givenStored(4);
+        cache.since(USER_ID, base - STEP);
+
+        cache.onStored(USER_ID, List.of(reading(base + 4 * STEP, 200, 4), reading(base + 5 * STEP, 201, 4)));
+        CgmSeries beforeMerge = cache.since(USER_ID, base - STEP);
+        cache.onStored(USER_ID, List.of(
+                reading(base + STEP / 2, 150, 3),     // back-filled gap
+                reading(base + 2 * STEP, 999, 3)));    // already cached - existing reading wins
+        CgmSeries s = cache.since(USER_ID, base - STEP);
+
+        assertThat(beforeMerge.size()).isEqualTo(6);
+        assertThat(s.size()).isEqualTo(7);
+        assertThat(s.sgvAt(1)).isEqualTo(150);
+        assertThat(s.sgvAt(3)).isEqualTo(102);
+        assertThat(s.sgvAt(6)).isEqualTo(201);
+        for (int i = 1; i < s.size(); i++) assertThat(s.timeAt(i)).isGreaterThan(s.timeAt(i - 1));
+        // Earlier snapshots never change under their reader.
+        assertThat(beforeMerge.sgvAt(1)).isEqualTo(101);
+    }
+
+    @Test
+    @DisplayName("trend back-fill only replaces a missing arrow")
+    void onTrendBackfilled_fillsZeroTrendOnly() {
+        givenStored(3);
+        cache.since(USER_ID, base - STEP);
+
+        cache.onTrendBackfilled(USER_ID, base, 6);
+        cache.onTrendBackfilled(USER_ID, base + STEP, 1);
+        CgmSeries s = cache.since(USER_ID, base - STEP);
+
+        assertThat(s.trendAt(0)).isEqualTo(6);
+        assertThat(s.trendAt(1)).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("uncached users are not loaded by a write, and evict forces a reload")
+    void onStoredAndEvict() {
+        givenStored(2);
+        cache.onStored(USER_ID, List.of(reading(base, 100, 0)));
+        verify(repository, never()).findSeriesColumns(any(), anyLong());
+
+        cache.since(USER_ID, base - STEP);
+        cache.evict(USER_ID);
+        cache.since(USER_ID, base - STEP);
+
+        verify(repository, times(2)).findSeriesColumns(eq(USER_ID), anyLong());
+    }
+}
@@ -0,0 +1,150 @@
+package che.glucosemonitorbe.service.cgm;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.dto.NightscoutEntryDto;
+import che.glucosemonitorbe.service.CgmReadingService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** Group commit across users: size/latency flushes, per-batch retry and caller-runs backpressure. */
+class CgmWriteBehindBufferTest {
+
+    private final CgmReadingService cgmReadingService = mock(CgmReadingService.class);
+    @SuppressWarnings("unchecked")
+    private final ObjectProvider<MeterRegistry> noMetrics = mock(ObjectProvider.class);
+    private CgmWriteBehindBuffer buffer;
+
+    @AfterEach
+    void stop() {
+        if (buffer != null) buffer.stop();
+    }
+
+    private CgmWriteBehindBuffer started(int maxBatchRows, long maxLatencyMs, int capacityRows) {
+        buffer = new CgmWriteBehindBuffer(cgmReadingService, noMetrics, true, maxBatchRows, maxLatencyMs,
+                capacityRows, true, 30_000);
+        buffer.start();
+        return buffer;
+    }
+
+    @Test
+    @DisplayName("concurrent users' batches are committed together, each caller returning after its group commits")
+    void concurrentBatches_shareCommits() throws Exception {
+        started(1_000, 50, 100_000);
+        List<UUID> users = new ArrayList<>();
+        for (int i = 0; i < 40; i++) users.add(UUID.randomUUID());
+
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<Void>> done = new ArrayList<>();
+            for (UUID u : users) {
+                done.add(CompletableFuture.runAsync(
+                        () -> buffer.store(u, entries(12), CgmReading.DataSource.NIGHTSCOUT, false), callers));
+            }
+            CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).join();
+        }
+
+        assertThat(buffer.queuedRows()).isZero();
+        assertThat(buffer.commits()).isLessThan(users.size());
+        verify(cgmReadingService, atLeastOnce()).storeChartDataGroup(anyList());
+        verify(cgmReadingService, never()).storeChartData(any(), anyList(), any());
+    }
+
+    @Test
+    @DisplayName("a failing group is retried one batch at a time; only the bad batch's caller sees the error")
+    void failedGroup_retriedPerBatch() {
+        started(1_000, 10_000, 100_000);
+        UUID good = UUID.randomUUID();
+        UUID bad = UUID.randomUUID();
+        doThrow(new IllegalStateException("constraint")).when(cgmReadingService).storeChartDataGroup(anyList());
+        doThrow(new IllegalStateException("constraint")).when(cgmReadingService)
+                .storeChartData(eq(bad), anyList(), any());
+
+        CompletableFuture<Void> goodDone = buffer.submit(
+                new CgmWriteBatch(good, entries(3), CgmReading.DataSource.NIGHTSCOUT));
+        assertThatThrownBy(() -> buffer.store(bad, entries(3), CgmReading.DataSource.NIGHTSCOUT, true))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("constraint");
+
+        assertThat(goodDone).isCompleted();
+        assertThat(goodDone.isCompletedExceptionally()).isFalse();
+        verify(cgmReadingService).storeChartData(eq(good), anyList(), eq(CgmReading.DataSource.NIGHTSCOUT));
+    }
+
+    @Test
+    @DisplayName("a batch that does not fit in the queue is written by its caller")
+    void fullQueue_callerRuns() {
+        // Not started: nothing drains the queue, so the second batch overflows it.
+        buffer = new CgmWriteBehindBuffer(cgmReadingService, noMetrics, true, 10, 10_000, 10, true, 30_000);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        CgmWriteBatch firstBatch = new CgmWriteBatch(first, entries(8), CgmReading.DataSource.NIGHTSCOUT);
+        CompletableFuture<Void> queued = buffer.submit(firstBatch);
+        CompletableFuture<Void> direct = buffer.submit(new CgmWriteBatch(second, entries(8), CgmReading.DataSource.NIGHTSCOUT));
+
+        assertThat(queued).isNotDone();
+        assertThat(direct).isCompleted();
+        assertThat(buffer.callerRuns()).isEqualTo(1);
+        verify(cgmReadingService).storeChartData(eq(second), anyList(), eq(CgmReading.DataSource.NIGHTSCOUT));
+
+        buffer.flush();
+        assertThat(queued).isCompleted();
+        verify(cgmReadingService).storeChartDataGroup(List.of(firstBatch));
+    }
+
+    @Test
+    @DisplayName("a caller whose batch is still queued after await-timeout-ms writes it itself")
+    void awaitTimeout_callerRunsQueuedBatch() {
+        // Not started: the batch stays queued until the caller gives up on the group commit.
+        buffer = new CgmWriteBehindBuffer(cgmReadingService, noMetrics, true, 10, 10_000, 100, true, 50);
+        UUID user = UUID.randomUUID();
+
+        buffer.store(user, entries(3), CgmReading.DataSource.NIGHTSCOUT, false);
+
+        assertThat(buffer.queuedRows()).isZero();
+        assertThat(buffer.callerRuns()).isEqualTo(1);
+        verify(cgmReadingService).storeChartData(eq(user), anyList(), eq(CgmReading.DataSource.NIGHTSCOUT));
+        buffer.flush();
+        verify(cgmReadingService, never()).storeChartDataGroup(anyList());
+    }
+
+    @Test
+    @DisplayName("an Error on the flusher fails its group, and later batches are written by their callers")
+    void flusherError_failsPendingAndFallsBackToCaller() {
+        buffer = new CgmWriteBehindBuffer(cgmReadingService, noMetrics, true, 1, 1, 100, true, 2_000);
+        doThrow(new AssertionError("flusher died")).when(cgmReadingService).storeChartDataGroup(anyList());
+        buffer.start();
+
+        CompletableFuture<Void> lost = buffer.submit(
+                new CgmWriteBatch(UUID.randomUUID(), entries(3), CgmReading.DataSource.NIGHTSCOUT));
+        assertThatThrownBy(lost::join).hasCauseInstanceOf(AssertionError.class);
+
+        UUID later = UUID.randomUUID();
+        buffer.store(later, entries(3), CgmReading.DataSource.NIGHTSCOUT, false);
+        verify(cgmReadingService).storeChartData(eq(later), anyList(), eq(CgmReading.DataSource.NIGHTSCOUT));
+        assertThat(buffer.queuedRows()).isZero();
+    }
+
+    private static List<NightscoutEntryDto> entries(int n) {
+        List<NightscoutEntryDto> out = new ArrayList<>(n);
+        long base = 1_700_000_000_000L;
+        for (int i = 0; i < n; i++) {
+            out.add(new NightscoutEntryDto("e" + i, 100 + i, base + i * 300_000L, null, 4, "Flat", null, "sgv", 0, null));
+        }
+        return out;
+    }
+}
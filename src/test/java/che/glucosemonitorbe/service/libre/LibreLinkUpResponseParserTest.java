@@ -12,11 +12,17 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.HttpHeaders;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * Direct unit tests for the LibreLinkUp wire/mapping helpers (previously tested via reflection on
@@ -299,4 +305,38 @@ class LibreLinkUpResponseParserTest {
         assertThat(info.getActivationDate()).isNull();
     }
 
+    // -- parseResponseStream ------------------------------------------------------
+
+    @Test
+    @DisplayName("parseResponseStream - gzip, BOM-prefixed and plain bodies decode like parseResponseBytes")
+    void parseResponseStream_sniffsGzipAndBom() throws Exception {
+        String payload = "{\"status\":0,\"data\":{\"graphData\":[{\"ValueInMgPerDl\":108}]}}";
+        byte[] plain = payload.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gz)) {
+            out.write(plain);
+        }
+        byte[] bom = new byte[plain.length + 3];
+        bom[0] = (byte) 0xef;
+        bom[1] = (byte) 0xbb;
+        bom[2] = (byte) 0xbf;
+        System.arraycopy(plain, 0, bom, 3, plain.length);
+        HttpHeaders gzipHeader = new HttpHeaders();
+        gzipHeader.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        JsonNode expected = json(payload);
+        assertThat(parser.parseResponseStream(new ByteArrayInputStream(gz.toByteArray()), new HttpHeaders()))
+                .isEqualTo(expected);
+        assertThat(parser.parseResponseStream(new ByteArrayInputStream(bom), new HttpHeaders())).isEqualTo(expected);
+        assertThat(parser.parseResponseStream(new ByteArrayInputStream(plain), gzipHeader)).isEqualTo(expected);
+        assertThat(parser.parseResponseStream(new ByteArrayInputStream(plain), gzipHeader))
+                .isEqualTo(parser.parseResponseBytes(plain, gzipHeader));
+    }
+
+    @Test
+    @DisplayName("parseResponseStream - empty body is rejected")
+    void parseResponseStream_emptyBody() {
+        assertThatThrownBy(() -> parser.parseResponseStream(new ByteArrayInputStream(new byte[0]), new HttpHeaders()))
+                .hasMessageContaining("Empty LibreLinkUp response body");
+    }
 }
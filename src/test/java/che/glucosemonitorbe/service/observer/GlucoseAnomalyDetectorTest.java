@@ -0,0 +1,152 @@
+package che.glucosemonitorbe.service.observer;
+
+import che.glucosemonitorbe.domain.CgmReading;
+import che.glucosemonitorbe.domain.User;
+import che.glucosemonitorbe.repository.NoteRepository;
+import che.glucosemonitorbe.repository.UserRepository;
+import che.glucosemonitorbe.service.cgm.CgmReadingsStoredEvent;
+import che.glucosemonitorbe.service.cgm.CgmSeries;
+import che.glucosemonitorbe.service.cgm.CgmSeriesCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class GlucoseAnomalyDetectorTest {
+
+    private static final long STEP = 5 * 60_000L;
+
+    private final CgmSeriesCache cache = mock(CgmSeriesCache.class);
+    private final NoteRepository noteRepository = mock(NoteRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final GlucoseAlertService alertService = mock(GlucoseAlertService.class);
+    /** Queues tasks so the test decides when they run. */
+    private final Deque<Runnable> queued = new ArrayDeque<>();
+    private final TaskExecutor executor = queued::add;
+
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = UUID.randomUUID();
+        when(userRepository.findById(userId))
+                .thenReturn(Optional.of(User.builder().id(userId).username("alice").build()));
+        when(noteRepository.findByUserIdAndTimestampBetween(eq(userId), any(), any())).thenReturn(List.of());
+    }
+
+    private GlucoseAnomalyDetector detector(TaskExecutor executor, boolean enabled) {
+        return new GlucoseAnomalyDetector(cache, noteRepository, userRepository, alertService, executor, enabled);
+    }
+
+    private static CgmSeries series(int... sgv) {
+        long t0 = System.currentTimeMillis() - (sgv.length - 1) * STEP;
+        List<CgmReading> readings = new ArrayList<>();
+        for (int i = 0; i < sgv.length; i++) {
+            CgmReading r = new CgmReading();
+            r.setDateTimestamp(t0 + i * STEP);
+            r.setSgv(sgv[i]);
+            readings.add(r);
+        }
+        return CgmSeries.of(readings);
+    }
+
+    private void runQueued() {
+        while (!queued.isEmpty()) queued.poll().run();
+    }
+
+    @Test
+    @DisplayName("computeRoc returns the least-squares slope in mmol/L per minute")
+    void computeRoc_linearDrop() {
+        // -9 mg/dL per 5 min = -0.1 mmol/L per minute
+        assertThat(GlucoseAnomalyDetector.computeRoc(series(180, 171, 162, 153)))
+                .isCloseTo(-0.1, within(1e-9));
+        assertThat(GlucoseAnomalyDetector.computeRoc(series(120))).isZero();
+    }
+
+    @Test
+    @DisplayName("a stored batch evaluates the user's latest reading and ROC from cgm_readings")
+    void readingsStored_evaluatesFromSeries() {
+        when(cache.range(eq(userId), anyLong(), anyLong())).thenReturn(series(180, 171, 162, 153));
+
+        detector(executor, true).onReadingsStored(new CgmReadingsStoredEvent(userId, 1, 0L));
+        verifyNoInteractions(alertService);
+        runQueued();
+
+        verify(alertService).evaluateNow(eq(userId), eq("alice"), doubleThat(g -> Math.abs(g - 8.5) < 1e-9),
+                doubleThat(roc -> Math.abs(roc + 0.1) < 1e-9), isNull());
+    }
+
+    @Test
+    @DisplayName("fewer than two recent readings skip evaluation")
+    void singleReading_skipsEvaluation() {
+        when(cache.range(eq(userId), anyLong(), anyLong())).thenReturn(series(120));
+
+        detector(executor, true).onReadingsStored(new CgmReadingsStoredEvent(userId, 1, 0L));
+        runQueued();
+
+        verifyNoInteractions(alertService);
+    }
+
+    @Test
+    @DisplayName("batches stored while an evaluation is queued or running coalesce into one re-run")
+    void burstOfBatches_coalescesPerUser() {
+        GlucoseAnomalyDetector detector = detector(executor, true);
+        when(cache.range(eq(userId), anyLong(), anyLong())).thenAnswer(inv -> {
+            // Two more batches land while the first evaluation is running.
+            detector.submit(userId);
+            detector.submit(userId);
+            return series(120, 121);
+        }).thenReturn(series(120, 121));
+
+        detector.submit(userId);
+        detector.submit(userId);
+        assertThat(queued).hasSize(1);
+        runQueued();
+
+        // first run + one coalesced re-run, all on the single queued task
+        verify(alertService, times(2)).evaluateNow(eq(userId), any(), anyDouble(), anyDouble(), any());
+
+        // the user is idle again, so the next batch schedules a fresh task
+        detector.submit(userId);
+        assertThat(queued).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("a rejected task leaves the user schedulable on their next sync")
+    void rejectedTask_doesNotWedgeUser() {
+        boolean[] full = {true};
+        TaskExecutor flaky = task -> {
+            if (full[0]) throw new TaskRejectedException("queue full");
+            queued.add(task);
+        };
+        GlucoseAnomalyDetector detector = detector(flaky, true);
+
+        detector.submit(userId);
+        full[0] = false;
+        detector.submit(userId);
+
+        assertThat(queued).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("the observer does nothing when disabled")
+    void disabled_ignoresEvents() {
+        detector(executor, false).onReadingsStored(new CgmReadingsStoredEvent(userId, 3, 0L));
+
+        assertThat(queued).isEmpty();
+        verifyNoInteractions(cache, alertService);
+    }
+}
@@ -0,0 +1,107 @@
+package che.glucosemonitorbe.hovorka;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API derivatives for {@link HovorkaBatchSolver}: the lanes of the batch map onto SIMD lanes of
+ * {@link DoubleVector#SPECIES_PREFERRED}, the remainder runs through the solver's scalar loop.
+ *
+ * <p>Three passes per evaluation: the k_empt tanh arguments (vector), their {@link Math#tanh} (scalar -
+ * the Vector API's {@code TANH} is not bit-compatible with {@code Math.tanh}), then the rest of the
+ * right-hand side (vector). The vector passes use only IEEE add/sub/mul/div/min/max in the scalar
+ * solver's order and blends for its branches, so results equal the scalar kernel's bit for bit.</p>
+ *
+ * <p>Lives in the {@code vector} source set, the only code compiled against the incubator module, and is
+ * instantiated reflectively by {@link HovorkaBatchSolver} once the module is confirmed resolved.</p>
+ */
+final class HovorkaVectorKernel implements HovorkaBatchSolver.VectorKernel {
+
+    private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+
+    HovorkaVectorKernel() {}
+
+    @Override
+    public void derivatives(HovorkaBatchSolver b, double[][] in, double[][] out) {
+        int n = b.lanes;
+        int bound = S.loopBound(n);
+
+        double[] yQsto1 = in[HovorkaStateBuffer.QSTO1], yQsto2 = in[HovorkaStateBuffer.QSTO2];
+        for (int i = 0; i < bound; i += S.length()) {
+            DoubleVector qsto = DoubleVector.fromArray(S, yQsto1, i).max(0.0)
+                    .add(DoubleVector.fromArray(S, yQsto2, i).max(0.0));
+            DoubleVector.fromArray(S, b.alpha, i)
+                    .mul(qsto.sub(DoubleVector.fromArray(S, b.bMeal, i))).intoArray(b.tanhU, i);
+            DoubleVector.fromArray(S, b.c, i)
+                    .mul(qsto.sub(DoubleVector.fromArray(S, b.dMeal, i))).intoArray(b.tanhV, i);
+        }
+        for (int k = 0; k < bound; k++) {
+            b.tanhU[k] = Math.tanh(b.tanhU[k]);
+            b.tanhV[k] = Math.tanh(b.tanhV[k]);
+        }
+
+        for (int i = 0; i < bound; i += S.length()) {
+            DoubleVector q1    = DoubleVector.fromArray(S, in[HovorkaStateBuffer.Q1], i).max(0.0);
+            DoubleVector q2    = DoubleVector.fromArray(S, in[HovorkaStateBuffer.Q2], i).max(0.0);
+            DoubleVector qsto1 = DoubleVector.fromArray(S, yQsto1, i).max(0.0);
+            DoubleVector qsto2 = DoubleVector.fromArray(S, yQsto2, i).max(0.0);
+            DoubleVector qgut  = DoubleVector.fromArray(S, in[HovorkaStateBuffer.QGUT], i).max(0.0);
+            DoubleVector inc   = DoubleVector.fromArray(S, in[HovorkaStateBuffer.INC], i).max(0.0);
+            DoubleVector x3    = DoubleVector.fromArray(S, in[HovorkaStateBuffer.X3], i).max(0.0);
+            DoubleVector pf    = DoubleVector.fromArray(S, in[HovorkaStateBuffer.PROT_FAT_GUT], i).max(0.0);
+
+            DoubleVector vG  = DoubleVector.fromArray(S, b.vG, i);
+            DoubleVector k12 = DoubleVector.fromArray(S, b.k12, i);
+            DoubleVector k21 = DoubleVector.fromArray(S, b.k21, i);
+            DoubleVector kGri = DoubleVector.fromArray(S, b.kGri, i);
+            DoubleVector kMin = DoubleVector.fromArray(S, b.kMin, i);
+            DoubleVector kAbs = DoubleVector.fromArray(S, b.kAbs, i);
+            DoubleVector ie     = DoubleVector.fromArray(S, b.insulinEffect, i);
+            DoubleVector uptake = DoubleVector.fromArray(S, b.uptakeRate, i);
+
+            DoubleVector g    = q1.div(vG).min(25.0).max(1.0);
+            DoubleVector f01c = DoubleVector.fromArray(S, b.f01, i)
+                    .mul(g.div(HovorkaParameters.G_THRESHOLD).min(1.0));
+            DoubleVector fr = DoubleVector.zero(S).blend(
+                    q1.sub(vG.mul(HovorkaOdeSolver.KE2)).mul(HovorkaOdeSolver.KE1),
+                    g.compare(VectorOperators.GT, HovorkaOdeSolver.KE2));
+
+            VectorMask<Double> hasMeal = DoubleVector.fromArray(S, b.mealMmol, i)
+                    .compare(VectorOperators.GT, 0.0);
+            DoubleVector kemptCurve = DoubleVector.fromArray(S, b.kMax, i).sub(kMin).div(2.0)
+                    .mul(DoubleVector.fromArray(S, b.tanhU, i)
+                            .sub(DoubleVector.fromArray(S, b.tanhV, i)).add(2.0))
+                    .add(kMin);
+            // Ileal brake: k_empt × 1 / (1 + κ·Inc)
+            DoubleVector kemptEff = kMin.blend(kemptCurve, hasMeal)
+                    .mul(DoubleVector.broadcast(S, 1.0).div(inc.mul(HovorkaOdeSolver.KAPPA_GLP1).add(1.0)));
+            DoubleVector ra = kAbs.mul(DallaManGutModel.F).mul(qgut);
+
+            DoubleVector scale = DoubleVector.fromArray(S, b.insulinScale, i);
+            DoubleVector plasmInsulin = DoubleVector.zero(S).blend(
+                    ie.div(scale).mul(HovorkaOdeSolver.V_I_SCALE),
+                    scale.compare(VectorOperators.GT, 0.0));
+            DoubleVector egp = DoubleVector.fromArray(S, b.egp0, i)
+                    .mul(DoubleVector.broadcast(S, 1.0).sub(x3).max(0.0));
+
+            f01c.neg().sub(fr).sub(k12.mul(q1)).add(k21.mul(q2))
+                    .add(ra).add(egp).sub(ie)
+                    .sub(inc.mul(HovorkaOdeSolver.ALPHA_INC).mul(q1))
+                    .sub(uptake.mul(q1))
+                    .intoArray(out[HovorkaStateBuffer.Q1], i);
+            k12.mul(q1).sub(k21.mul(q2)).intoArray(out[HovorkaStateBuffer.Q2], i);
+            kGri.neg().mul(qsto1).intoArray(out[HovorkaStateBuffer.QSTO1], i);
+            kGri.mul(qsto1).sub(kemptEff.mul(qsto2)).intoArray(out[HovorkaStateBuffer.QSTO2], i);
+            kemptEff.mul(qsto2).sub(kAbs.mul(qgut)).intoArray(out[HovorkaStateBuffer.QGUT], i);
+            pf.mul(HovorkaOdeSolver.K_INC_PF).sub(inc.mul(HovorkaOdeSolver.K_DEL))
+                    .intoArray(out[HovorkaStateBuffer.INC], i);
+            x3.mul(-HovorkaOdeSolver.KA3).add(plasmInsulin.mul(HovorkaOdeSolver.KB3))
+                    .intoArray(out[HovorkaStateBuffer.X3], i);
+            pf.mul(-HovorkaOdeSolver.K_PF_DRAIN).intoArray(out[HovorkaStateBuffer.PROT_FAT_GUT], i);
+        }
+
+        b.scalarDerivatives(in, out, bound, n);
+    }
+}